@@ -0,0 +1,67 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 用合成的 NV12 帧驱动流水线，验证推理耗时超出预算时输入尺寸逐级降到最小，预算充足时保持默认尺寸。
+ */
+@RunWith(AndroidJUnit4.class)
+public class AdaptiveResolutionTest {
+
+    private static final String TAG = "AdaptiveResolution";
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+    private static final int FRAMES = 60;
+    private static final int[] SIZES = {160, 256, 320};
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void stepsDownWhenOverBudget() throws Exception {
+        // 任何设备都无法在 0.01ms 内完成推理
+        PipelineStats stats = run(0.01f);
+        Log.i(TAG, "over budget " + stats);
+        assertEquals(SIZES[0], stats.inputSize);
+        assertEquals(SIZES.length - 1, stats.resolutionSwitches);
+    }
+
+    @Test
+    public void keepsDefaultSizeWithinBudget() throws Exception {
+        PipelineStats stats = run(10_000f);
+        Log.i(TAG, "within budget " + stats);
+        assertEquals(320, stats.inputSize);
+        assertEquals(0, stats.resolutionSwitches);
+    }
+
+    private static PipelineStats run(float budgetMs) throws InterruptedException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        VideoProcessor processor = VideoProcessor.createOffline(context.getAssets(), 0);
+        try {
+            processor.configureInference(1);
+            processor.configureAdaptiveResolution(SIZES, budgetMs);
+            ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+            for (int i = 0; i < FRAMES; i++) {
+                SyntheticFrames.fillNv12Gradient(frame, WIDTH, HEIGHT, i * 4);
+                processor.submitNv12Frame(frame, WIDTH, HEIGHT, i * 33_333L);
+            }
+            return SyntheticFrames.waitForStats(processor,
+                    s -> s.inferredFrames + s.inferenceQueueDropped >= FRAMES, 30_000);
+        } finally {
+            processor.release();
+        }
+    }
+}
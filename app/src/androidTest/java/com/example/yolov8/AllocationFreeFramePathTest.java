@@ -0,0 +1,79 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 用合成的 NV12 帧驱动 解码 -> 推理 -> 渲染 流水线，验证预热之后各阶段不再分配堆内存。
+ * 依赖调试包中以 YOLOV8_ALLOC_COUNTER 构建的原生库，release 构建下跳过。
+ */
+@RunWith(AndroidJUnit4.class)
+public class AllocationFreeFramePathTest {
+
+    private static final String TAG = "AllocationFreeFramePath";
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+    private static final int FRAMES = 60;
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void steadyStateFramesDoNotAllocate() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        // 渲染结果写入 ImageReader 并立即丢弃，避免窗口缓冲区无人消费导致渲染阶段阻塞
+        HandlerThread sinkThread = new HandlerThread("AllocationTestSink");
+        sinkThread.start();
+        ImageReader reader = ImageReader.newInstance(WIDTH, HEIGHT, PixelFormat.RGBA_8888, 3);
+        reader.setOnImageAvailableListener(r -> {
+            Image image = r.acquireLatestImage();
+            if (image != null) {
+                image.close();
+            }
+        }, new Handler(sinkThread.getLooper()));
+
+        VideoProcessor processor = new VideoProcessor(reader.getSurface(), context.getAssets());
+        try {
+            PipelineStats initial = processor.getPipelineStats();
+            assertNotNull(initial);
+            assumeTrue("原生库未启用分配计数(需要调试构建)", initial.isAllocationCounted());
+
+            ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+            for (int i = 0; i < FRAMES; i++) {
+                SyntheticFrames.fillNv12Gradient(frame, WIDTH, HEIGHT, i * 4);
+                processor.submitNv12Frame(frame, WIDTH, HEIGHT, i * 33_333L);
+            }
+
+            PipelineStats stats = SyntheticFrames.waitForStats(processor, s -> s.renderedFrames >= FRAMES, 30_000);
+            Log.i(TAG, stats.toString());
+
+            assertEquals(FRAMES, stats.renderedFrames);
+            assertEquals("解码阶段", 0, stats.decodeAllocations);
+            assertEquals("推理阶段(不含 ncnn 内部)", 0, stats.inferenceAllocations);
+            assertEquals("渲染阶段", 0, stats.renderAllocations);
+        } finally {
+            processor.release();
+            reader.close();
+            sinkThread.quitSafely();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 在同一段视频上比较只用 yolov8n、只用 yolov8s 与 n -> s 级联推理的端到端帧率，并输出级联中升级到大模型的帧所占比例。
+ * 运行方式：adb shell am instrument -w -e clip /sdcard/Movies/street.mp4 ...
+ */
+@RunWith(AndroidJUnit4.class)
+public class CascadeBenchmark {
+
+    private static final String TAG = "CascadeBenchmark";
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void compareNanoSmallAndCascade() throws Exception {
+        String clip = InstrumentationRegistry.getArguments().getString("clip");
+        assumeTrue("需要通过 -e clip <path> 指定测试视频", clip != null && new File(clip).canRead());
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        assumeTrue("assets 中没有 yolov8s.bin", hasAsset(context, "yolov8s.bin"));
+
+        Uri uri = Uri.fromFile(new File(clip));
+        VideoProcessor processor = VideoProcessor.createOffline(context.getAssets(), 0);
+        try {
+            processor.startOfflineAnalysis(uri, context, new File(context.getCacheDir(), "nano.csv"));
+            waitFor(processor);
+            OfflineAnalysisResult nano = processor.getLastOfflineResult();
+
+            assertTrue(processor.configureCascade("yolov8s", 0.25f, 0.55f, 2, 30));
+            waitForModelLoad(processor);
+            processor.startOfflineAnalysis(uri, context, new File(context.getCacheDir(), "cascade.csv"));
+            waitFor(processor);
+            OfflineAnalysisResult cascade = processor.getLastOfflineResult();
+            assertTrue(processor.configureCascade(null, 0, 0, 0, 0));
+
+            assertTrue(processor.switchModel("yolov8s"));
+            waitForModelLoad(processor);
+            assertEquals("yolov8s", processor.getModelName());
+            processor.startOfflineAnalysis(uri, context, new File(context.getCacheDir(), "small.csv"));
+            waitFor(processor);
+            OfflineAnalysisResult small = processor.getLastOfflineResult();
+
+            assertNotNull(nano);
+            assertNotNull(cascade);
+            assertNotNull(small);
+            Log.i(TAG, "yolov8n " + nano);
+            Log.i(TAG, "yolov8s " + small);
+            Log.i(TAG, String.format("cascade %s, escalated %.1f%%", cascade, cascade.getEscalationRate() * 100));
+            assertEquals(nano.frames, cascade.frames);
+            assertEquals(nano.frames, small.frames);
+            assertEquals(0, nano.escalatedFrames);
+            // 每 30 帧至少定期升级一次
+            assertTrue(cascade.escalatedFrames >= cascade.frames / 30);
+        } finally {
+            processor.release();
+        }
+    }
+
+    private static void waitFor(VideoProcessor processor) throws InterruptedException {
+        processor.awaitCompletion();
+    }
+
+    private static void waitForModelLoad(VideoProcessor processor) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + 30_000;
+        while (processor.isModelSwitchPending() && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse("模型加载超时", processor.isModelSwitchPending());
+    }
+
+    private static boolean hasAsset(Context context, String name) {
+        try (InputStream in = context.getAssets().open(name)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 同时运行多个 VideoProcessor，验证各实例的流水线互不干扰，且总吞吐量随实例数增长。
+ * 每个实例只用一个推理线程，N 个实例在 N 个核心上应接近 N 倍的单实例吞吐量。
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentProcessorsTest {
+
+    private static final String TAG = "ConcurrentProcessors";
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+    private static final int FRAMES = 40;
+    private static final int MAX_PROCESSORS = 4;
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void throughputScalesWithProcessors() throws Exception {
+        int processors = Math.min(MAX_PROCESSORS, Runtime.getRuntime().availableProcessors());
+        assumeTrue("需要至少两个 CPU 核心", processors >= 2);
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        // 第一次运行包含模型加载与各缓冲的预热，不计入比较
+        run(context, 1);
+
+        double single = run(context, 1);
+        double concurrent = run(context, processors);
+        double speedup = concurrent / single;
+        Log.i(TAG, String.format("1 processor %.1f fps, %d processors %.1f fps, speedup %.2fx",
+                single, processors, concurrent, speedup));
+
+        // 留出大小核差异与调度开销的余量
+        assertTrue("吞吐量没有随实例数增长: " + speedup, speedup >= processors * 0.5);
+    }
+
+    /**
+     * 同时向 count 个实例各提交 FRAMES 帧，返回所有帧渲染完成时的总帧率。
+     */
+    private static double run(Context context, int count) throws Exception {
+        HandlerThread sinkThread = new HandlerThread("ConcurrentProcessorsSink");
+        sinkThread.start();
+        Handler sinkHandler = new Handler(sinkThread.getLooper());
+        List<ImageReader> readers = new ArrayList<>();
+        List<VideoProcessor> processors = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                // 渲染结果写入 ImageReader 并立即丢弃，避免窗口缓冲区无人消费导致渲染阶段阻塞
+                ImageReader reader = ImageReader.newInstance(WIDTH, HEIGHT, PixelFormat.RGBA_8888, 3);
+                reader.setOnImageAvailableListener(r -> {
+                    Image image = r.acquireLatestImage();
+                    if (image != null) {
+                        image.close();
+                    }
+                }, sinkHandler);
+                readers.add(reader);
+                processors.add(new VideoProcessor(reader.getSurface(), context.getAssets(), 1));
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            List<Thread> feeders = new ArrayList<>();
+            for (VideoProcessor processor : processors) {
+                Thread feeder = new Thread(() -> feed(processor));
+                feeder.start();
+                feeders.add(feeder);
+            }
+            for (Thread feeder : feeders) {
+                feeder.join();
+            }
+            for (VideoProcessor processor : processors) {
+                PipelineStats stats = SyntheticFrames.waitForStats(processor, s -> s.renderedFrames >= FRAMES, 60_000);
+                assertEquals(FRAMES, stats.inferredFrames);
+                assertEquals(FRAMES, stats.renderedFrames);
+                assertEquals(0, stats.droppedFrames());
+            }
+            long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+            return count * FRAMES * 1000.0 / elapsed;
+        } finally {
+            for (VideoProcessor processor : processors) {
+                processor.release();
+            }
+            for (ImageReader reader : readers) {
+                reader.close();
+            }
+            sinkThread.quitSafely();
+        }
+    }
+
+    //每个实例使用自己的帧缓冲，亮度渐变随帧平移
+    private static void feed(VideoProcessor processor) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+        for (int i = 0; i < FRAMES; i++) {
+            SyntheticFrames.fillNv12Gradient(frame, WIDTH, HEIGHT, i * 4);
+            processor.submitNv12Frame(frame, WIDTH, HEIGHT, i * 33_333L);
+        }
+    }
+}
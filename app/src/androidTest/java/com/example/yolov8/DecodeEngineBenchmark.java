@@ -0,0 +1,73 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.net.Uri;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 在同一段视频上比较轮询解码与回调解码的帧延迟、唤醒次数和 CPU 时间。
+ * 运行方式：adb shell am instrument -w -e clip /sdcard/Movies/test.mp4 ...
+ */
+@RunWith(AndroidJUnit4.class)
+public class DecodeEngineBenchmark {
+
+    private static final String TAG = "DecodeEngineBenchmark";
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void compareCallbackWithPolling() throws Exception {
+        String clip = InstrumentationRegistry.getArguments().getString("clip");
+        assumeTrue("需要通过 -e clip <path> 指定测试视频", clip != null && new File(clip).canRead());
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        SurfaceTexture texture = new SurfaceTexture(0);
+        Surface surface = new Surface(texture);
+        VideoProcessor processor = new VideoProcessor(surface, context.getAssets());
+        try {
+            // 只保留最新帧，避免推理速度通过背压影响解码引擎的测量结果
+            processor.configurePipeline(1, VideoProcessor.DropPolicy.LATEST_WINS,
+                    1, VideoProcessor.DropPolicy.LATEST_WINS);
+
+            // 先跑一遍预热解码器和文件缓存
+            decode(processor, VideoProcessor.DecodeMode.POLLING, clip, context);
+
+            DecodeStats polling = decode(processor, VideoProcessor.DecodeMode.POLLING, clip, context);
+            DecodeStats callback = decode(processor, VideoProcessor.DecodeMode.CALLBACK, clip, context);
+            Log.i(TAG, polling.toString());
+            Log.i(TAG, callback.toString());
+
+            assertEquals(polling.getFrames(), callback.getFrames());
+        } finally {
+            processor.release();
+            surface.release();
+            texture.release();
+        }
+    }
+
+    private static DecodeStats decode(VideoProcessor processor, VideoProcessor.DecodeMode mode,
+                                      String clip, Context context) throws InterruptedException {
+        processor.setDecodeMode(mode);
+        processor.startProcessing(Uri.fromFile(new File(clip)), context);
+        processor.awaitCompletion();
+        DecodeStats stats = processor.getLastDecodeStats();
+        assertNotNull(stats);
+        assertEquals(mode == VideoProcessor.DecodeMode.CALLBACK ? "callback" : "polling", stats.engine);
+        return stats;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 同一段视频处理两次：第一次推理并写入检测缓存，第二次所有帧都使用缓存，不再推理。
+ * 运行方式：adb shell am instrument -w -e clip /sdcard/Movies/test.mp4 ...
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectionCachePlaybackTest {
+
+    private static final String TAG = "DetectionCachePlayback";
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void secondRunSkipsInference() throws Exception {
+        String clip = InstrumentationRegistry.getArguments().getString("clip");
+        assumeTrue("需要通过 -e clip <path> 指定测试视频", clip != null && new File(clip).canRead());
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Uri uri = Uri.fromFile(new File(clip));
+        File directory = new File(context.getCacheDir(), "detection_cache_test");
+        File[] stale = directory.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+        DetectionCache cache = new DetectionCache(directory, 64L << 20, context.getAssets());
+
+        // 不渲染的实例同样会记录和使用缓存，只是不显示
+        VideoProcessor processor = VideoProcessor.createOffline(context.getAssets(), 0);
+        try {
+            processor.setDetectionCache(cache);
+            play(processor, uri, context);
+            DecodeStats first = processor.getLastDecodeStats();
+            File[] entries = directory.listFiles((dir, name) -> name.endsWith(".ydl"));
+            assertNotNull(entries);
+            assertEquals(1, entries.length);
+
+            PipelineStats second = play(processor, uri, context);
+            Log.i(TAG, "first " + first + ", entry " + entries[0].length() + " bytes");
+            Log.i(TAG, "second " + processor.getLastDecodeStats() + " " + second);
+            assertTrue(second.decodedFrames > 0);
+            assertEquals(0, second.inferredFrames);
+            assertEquals(second.decodedFrames, second.cachedFrames);
+        } finally {
+            processor.release();
+        }
+    }
+
+    private static PipelineStats play(VideoProcessor processor, Uri uri, Context context) throws InterruptedException {
+        processor.startProcessing(uri, context);
+        processor.awaitCompletion();
+        return processor.getPipelineStats();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 在合成的约一百万个检测(一小时 30fps 视频)上比较 DetectionIndex 查询与逐帧扫描检测日志的耗时。
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectionIndexBenchmark {
+
+    private static final String TAG = "DetectionIndexBenchmark";
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int FRAMES = 30 * 60 * 60;
+    private static final int QUERIES = 1000;
+
+    @Test
+    public void queryMillionDetections() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File file = new File(context.getCacheDir(), "index_benchmark.ydl");
+        Random random = new Random(1);
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        DetectionLogHeader header = new DetectionLogHeader("yolov8n", 320, 192, 0.4f, 0.5f, WIDTH, HEIGHT);
+        try (DetectionLogWriter writer = new DetectionLogWriter(file, header)) {
+            int[] classIds = new int[16];
+            float[] probs = new float[16];
+            float[] rects = new float[64];
+            for (int f = 0; f < FRAMES; f++) {
+                int count = random.nextInt(17);
+                for (int i = 0; i < count; i++) {
+                    // 少数类别占大多数，与真实场景接近
+                    classIds[i] = random.nextInt(4) == 0 ? random.nextInt(80) : random.nextInt(3);
+                    probs[i] = 0.4f + random.nextFloat() * 0.6f;
+                    float w = 20 + random.nextFloat() * 300;
+                    float h = 20 + random.nextFloat() * 300;
+                    rects[i * 4] = random.nextFloat() * (WIDTH - w);
+                    rects[i * 4 + 1] = random.nextFloat() * (HEIGHT - h);
+                    rects[i * 4 + 2] = w;
+                    rects[i * 4 + 3] = h;
+                }
+                writer.append(f * 33_333L, count, classIds, probs, rects);
+            }
+        }
+        long writeNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        try (DetectionLogReader reader = new DetectionLogReader(file)) {
+            start = SystemClock.elapsedRealtimeNanos();
+            DetectionIndex index = DetectionIndex.build(reader, 10_000_000L);
+            long buildNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            // “car(2) 在 00:10 到 02:00 之间出现在左三分之一”一类的查询，时间窗口与区域随机
+            DetectionIndex.Result result = new DetectionIndex.Result();
+            long[] starts = new long[QUERIES];
+            long[] ends = new long[QUERIES];
+            for (int q = 0; q < QUERIES; q++) {
+                starts[q] = (long) (random.nextFloat() * 3500) * 1_000_000L;
+                ends[q] = starts[q] + (10 + random.nextInt(110)) * 1_000_000L;
+            }
+
+            long matches = 0;
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int q = 0; q < QUERIES; q++) {
+                matches += index.query(2, starts[q], ends[q], 0f, 0f, 1f / 3, 1f, result);
+            }
+            long queryNanos = (SystemClock.elapsedRealtimeNanos() - start) / QUERIES;
+
+            long scanMatches = 0;
+            int scans = 20;
+            DetectionLogReader.Frame frame = new DetectionLogReader.Frame();
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int q = 0; q < scans; q++) {
+                for (int f = reader.indexOf(starts[q]); f < reader.getFrameCount(); f++) {
+                    reader.seek(f, frame);
+                    if (frame.getTimestampUs() >= ends[q]) {
+                        break;
+                    }
+                    for (int i = 0; i < frame.getCount(); i++) {
+                        if (frame.getClassId(i) == 2 && frame.getLeft(i) < WIDTH / 3f) {
+                            scanMatches++;
+                        }
+                    }
+                }
+            }
+            long scanNanos = (SystemClock.elapsedRealtimeNanos() - start) / scans;
+
+            Log.i(TAG, String.format("%d detections: write %.0fms, build %.0fms, query %.1fus (%d matches), "
+                            + "log scan %.1fus",
+                    index.getDetectionCount(), writeNanos / 1e6, buildNanos / 1e6, queryNanos / 1e3,
+                    matches / QUERIES, scanNanos / 1e3));
+            assertTrue(index.getDetectionCount() > 1_000_000);
+            assertTrue(scanMatches > 0);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 验证后台预热：future 完成后模型已加载，之后创建实例不再加载模型，耗时远小于冷启动时的加载。
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectorPrewarmTest {
+
+    private static final String TAG = "DetectorPrewarm";
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @After
+    public void tearDown() {
+        Detector.releaseShared();
+    }
+
+    @Test
+    public void processorReusesPrewarmedModel() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Detector.releaseShared();
+
+        long start = SystemClock.elapsedRealtime();
+        CompletableFuture<Detector> ready = Detector.prewarm(context.getAssets(), VideoProcessor.TARGET_SIZE);
+        assertSame(ready, Detector.prewarm(context.getAssets(), VideoProcessor.TARGET_SIZE));
+        Detector detector = ready.get(30, TimeUnit.SECONDS);
+        long prewarmMillis = SystemClock.elapsedRealtime() - start;
+        assertNotNull(detector);
+        assertTrue(detector.isLoaded());
+
+        start = SystemClock.elapsedRealtime();
+        VideoProcessor processor = new VideoProcessor(null, context.getAssets());
+        long createMillis = SystemClock.elapsedRealtime() - start;
+        try {
+            assertEquals(VideoProcessor.MODEL_NAME, processor.getModelName());
+            Log.i(TAG, "prewarm " + prewarmMillis + "ms, create after prewarm " + createMillis + "ms");
+            assertTrue(createMillis < prewarmMillis);
+        } finally {
+            processor.release();
+        }
+    }
+
+    @Test
+    public void warmUpRejectsInvalidSize() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Detector detector = new Detector(context.getAssets(), VideoProcessor.MODEL_NAME, false);
+        try {
+            assertTrue(detector.warmUp(320) >= 0);
+            assertEquals(-1, detector.warmUp(300), 0);
+        } finally {
+            detector.release();
+        }
+        assertEquals(-1, detector.warmUp(320), 0);
+    }
+}
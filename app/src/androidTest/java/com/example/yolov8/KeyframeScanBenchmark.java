@@ -0,0 +1,66 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 在同一段视频上比较完整离线分析与关键帧扫描的耗时，并输出按镜头汇总的类别。
+ * 运行方式：adb shell am instrument -w -e clip /sdcard/Movies/long.mp4 ...
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeyframeScanBenchmark {
+
+    private static final String TAG = "KeyframeScanBenchmark";
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void scanIsFasterThanFullAnalysis() throws Exception {
+        String clip = InstrumentationRegistry.getArguments().getString("clip");
+        assumeTrue("需要通过 -e clip <path> 指定测试视频", clip != null && new File(clip).canRead());
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Uri uri = Uri.fromFile(new File(clip));
+        VideoProcessor processor = VideoProcessor.createOffline(context.getAssets(), 0);
+        try {
+            processor.startOfflineAnalysis(uri, context, new File(context.getCacheDir(), "full.csv"));
+            waitFor(processor);
+            OfflineAnalysisResult full = processor.getLastOfflineResult();
+
+            processor.startKeyframeScan(uri, context, new File(context.getCacheDir(), "keyframes.csv"));
+            waitFor(processor);
+            KeyframeScan scan = processor.getLastKeyframeScan();
+
+            assertNotNull(full);
+            assertNotNull(scan);
+            Log.i(TAG, "full " + full);
+            Log.i(TAG, scan + String.format(" speedup %.1fx", (double) full.wallTimeMillis / Math.max(1, scan.wallTimeMillis)));
+            for (KeyframeScan.Shot shot : scan.shots) {
+                Log.i(TAG, "shot " + shot);
+            }
+            assertTrue(scan.keyframes > 0);
+            assertTrue(scan.keyframes < full.frames);
+            assertTrue(scan.wallTimeMillis < full.wallTimeMillis);
+        } finally {
+            processor.release();
+        }
+    }
+
+    private static void waitFor(VideoProcessor processor) throws InterruptedException {
+        processor.awaitCompletion();
+    }
+}
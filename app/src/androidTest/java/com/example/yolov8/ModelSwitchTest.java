@@ -0,0 +1,83 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 持续提交合成帧的同时切换到 yolov8s，验证新模型加载期间推理没有停顿，切换完成后使用新模型。
+ */
+@RunWith(AndroidJUnit4.class)
+public class ModelSwitchTest {
+
+    private static final String TAG = "ModelSwitch";
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void switchesWithoutStallingInference() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        assumeTrue("assets 中没有 yolov8s.bin", hasAsset(context, "yolov8s.bin"));
+
+        VideoProcessor processor = VideoProcessor.createOffline(context.getAssets(), 0);
+        try {
+            assertEquals("yolov8n", processor.getModelName());
+            ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+            long timestamp = 0;
+            for (int i = 0; i < 5; i++) {
+                processor.submitNv12Frame(frame, WIDTH, HEIGHT, timestamp += 33_333L);
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            assertTrue(processor.switchModel("yolov8s"));
+            assertFalse("切换进行中不接受新的切换", processor.switchModel("yolov8n"));
+
+            // 加载期间继续提交帧，记录提交一帧(队列满时等待推理腾出位置)的最长耗时
+            long longestSubmit = 0;
+            long inferredDuringLoad = processor.getPipelineStats().inferredFrames;
+            while (processor.isModelSwitchPending() && SystemClock.elapsedRealtime() - start < 30_000) {
+                long before = SystemClock.elapsedRealtime();
+                processor.submitNv12Frame(frame, WIDTH, HEIGHT, timestamp += 33_333L);
+                longestSubmit = Math.max(longestSubmit, SystemClock.elapsedRealtime() - before);
+            }
+            long loadMillis = SystemClock.elapsedRealtime() - start;
+            inferredDuringLoad = processor.getPipelineStats().inferredFrames - inferredDuringLoad;
+
+            PipelineStats stats = processor.getPipelineStats();
+            Log.i(TAG, String.format("load %dms, %d frames inferred meanwhile, longest submit %dms, %s",
+                    loadMillis, inferredDuringLoad, longestSubmit, stats));
+            assertEquals("yolov8s", processor.getModelName());
+            assertEquals(1, stats.modelSwitches);
+            assertTrue(inferredDuringLoad > 0);
+            assertTrue(longestSubmit < loadMillis);
+        } finally {
+            processor.release();
+        }
+    }
+
+    private static boolean hasAsset(Context context, String name) {
+        try (InputStream in = context.getAssets().open(name)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
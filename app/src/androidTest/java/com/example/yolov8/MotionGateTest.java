@@ -0,0 +1,67 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 用合成的 NV12 帧验证运动门控：静止画面只在超过最大间隔时推理，整体变化的画面每帧都推理。
+ */
+@RunWith(AndroidJUnit4.class)
+public class MotionGateTest {
+
+    private static final String TAG = "MotionGate";
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+    private static final int FRAMES = 60;
+    private static final long FRAME_US = 33_333L;
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void staticFramesSkipInference() throws Exception {
+        PipelineStats stats = run(false);
+        Log.i(TAG, "static " + stats);
+        // 第一帧与之后每隔 1 秒(约 30 帧)各推理一次
+        assertEquals(2, stats.inferredFrames);
+        assertEquals(FRAMES - 2, stats.skippedFrames);
+    }
+
+    @Test
+    public void movingFramesAreAllInferred() throws Exception {
+        PipelineStats stats = run(true);
+        Log.i(TAG, "moving " + stats);
+        assertEquals(FRAMES, stats.inferredFrames);
+        assertEquals(0, stats.skippedFrames);
+    }
+
+    private static PipelineStats run(boolean moving) throws InterruptedException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        VideoProcessor processor = VideoProcessor.createOffline(context.getAssets(), 0);
+        try {
+            processor.configureMotionGate(12, 0.01f, 1000);
+            ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+            for (int i = 0; i < FRAMES; i++) {
+                // 每帧平移 16 个像素，静止时每帧相同
+                SyntheticFrames.fillNv12Gradient(frame, WIDTH, HEIGHT, moving ? i * 16 : 0);
+                processor.submitNv12Frame(frame, WIDTH, HEIGHT, i * FRAME_US);
+            }
+            return SyntheticFrames.waitForStats(processor,
+                    s -> s.inferredFrames + s.skippedFrames >= FRAMES, 30_000);
+        } finally {
+            processor.release();
+        }
+    }
+}
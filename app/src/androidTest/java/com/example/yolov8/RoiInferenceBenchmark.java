@@ -0,0 +1,62 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 在同一段视频上比较整帧推理与区域推理的端到端帧率和检测数，适合目标少且小的固定机位画面。
+ * 运行方式：adb shell am instrument -w -e clip /sdcard/Movies/small_objects.mp4 ...
+ */
+@RunWith(AndroidJUnit4.class)
+public class RoiInferenceBenchmark {
+
+    private static final String TAG = "RoiInferenceBenchmark";
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void compareFullFrameAndRoi() throws Exception {
+        String clip = InstrumentationRegistry.getArguments().getString("clip");
+        assumeTrue("需要通过 -e clip <path> 指定测试视频", clip != null && new File(clip).canRead());
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Uri uri = Uri.fromFile(new File(clip));
+        VideoProcessor processor = VideoProcessor.createOffline(context.getAssets(), 0);
+        try {
+            processor.startOfflineAnalysis(uri, context, new File(context.getCacheDir(), "full_frame.csv"));
+            waitFor(processor);
+            OfflineAnalysisResult full = processor.getLastOfflineResult();
+
+            processor.configureRoiInference(15, 0.5f, 3);
+            processor.startOfflineAnalysis(uri, context, new File(context.getCacheDir(), "roi.csv"));
+            waitFor(processor);
+            OfflineAnalysisResult roi = processor.getLastOfflineResult();
+
+            assertNotNull(full);
+            assertNotNull(roi);
+            Log.i(TAG, "full frame " + full);
+            Log.i(TAG, "roi " + roi);
+            assertEquals(full.frames, roi.frames);
+        } finally {
+            processor.release();
+        }
+    }
+
+    private static void waitFor(VideoProcessor processor) throws InterruptedException {
+        processor.awaitCompletion();
+    }
+}
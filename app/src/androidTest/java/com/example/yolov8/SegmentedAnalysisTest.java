@@ -0,0 +1,68 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 在同一段视频上比较顺序离线分析与按 GOP 分段并行分析：输出必须逐行一致，并记录加速比。
+ * 运行方式：adb shell am instrument -w -e clip /sdcard/Movies/test.mp4 ...
+ */
+@RunWith(AndroidJUnit4.class)
+public class SegmentedAnalysisTest {
+
+    private static final String TAG = "SegmentedAnalysis";
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void segmentedRunMatchesSequentialRun() throws Exception {
+        String clip = InstrumentationRegistry.getArguments().getString("clip");
+        assumeTrue("需要通过 -e clip <path> 指定测试视频", clip != null && new File(clip).canRead());
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Uri uri = Uri.fromFile(new File(clip));
+        int segments = Math.min(4, Runtime.getRuntime().availableProcessors());
+        File sequentialOutput = new File(context.getCacheDir(), "sequential.csv");
+        File segmentedOutput = new File(context.getCacheDir(), "segmented.csv");
+
+        // 两种方式的每个推理实例都只用一个线程，结果不受线程划分影响
+        VideoProcessor processor = VideoProcessor.createOffline(context.getAssets(), 1);
+        OfflineAnalysisResult sequential;
+        try {
+            processor.startOfflineAnalysis(uri, context, sequentialOutput);
+            processor.awaitCompletion();
+            sequential = processor.getLastOfflineResult();
+        } finally {
+            processor.release();
+        }
+        assertNotNull(sequential);
+
+        OfflineAnalysisResult segmented = new SegmentedAnalyzer(context.getAssets(), segments, 1)
+                .analyze(uri, context, segmentedOutput);
+        Log.i(TAG, "sequential " + sequential);
+        Log.i(TAG, segments + " segments " + segmented);
+        Log.i(TAG, String.format("speedup %.2fx", segmented.getFramesPerSecond() / sequential.getFramesPerSecond()));
+
+        assertEquals(sequential.frames, segmented.frames);
+        assertEquals(sequential.detections, segmented.detections);
+        List<String> expected = Files.readAllLines(sequentialOutput.toPath());
+        List<String> actual = Files.readAllLines(segmentedOutput.toPath());
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 比较 Surface 重建后的首帧耗时：模型没有被持有时新建实例需要重新加载模型，
+ * 由 Detector 持有时新建实例或在原实例上重新绑定 Surface 都不再加载模型。
+ */
+@RunWith(AndroidJUnit4.class)
+public class SurfaceRebindTest {
+
+    private static final String TAG = "SurfaceRebind";
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+
+    static {
+        System.loadLibrary("yolov8ncnn");
+    }
+
+    @Test
+    public void retainedDetectorShortensTimeToFirstFrame() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+
+        // 没有其他实例持有模型，创建实例时加载
+        Detector.releaseShared();
+        long cold = firstFrameOfNewProcessor(context, frame);
+
+        Detector detector = new Detector(context.getAssets(), VideoProcessor.MODEL_NAME, false);
+        try {
+            assertTrue(detector.isLoaded());
+            long retained = firstFrameOfNewProcessor(context, frame);
+
+            SurfaceTexture texture = newTexture();
+            Surface surface = new Surface(texture);
+            VideoProcessor processor = new VideoProcessor(surface, context.getAssets());
+            SurfaceTexture rebindTexture = newTexture();
+            Surface rebindSurface = new Surface(rebindTexture);
+            long rebind;
+            try {
+                processor.detachSurface();
+                assertTrue(processor.attachSurface(rebindSurface));
+                processor.submitNv12Frame(frame, WIDTH, HEIGHT, 0);
+                rebind = waitForFirstFrame(processor);
+            } finally {
+                processor.release();
+                surface.release();
+                texture.release();
+                rebindSurface.release();
+                rebindTexture.release();
+            }
+
+            Log.i(TAG, String.format("time to first frame: cold %dms, retained detector %dms, rebind %dms", cold, retained, rebind));
+            assertTrue(cold >= 0 && retained >= 0 && rebind >= 0);
+            assertTrue(retained < cold);
+            assertTrue(rebind < cold);
+        } finally {
+            detector.release();
+        }
+    }
+
+    private static long firstFrameOfNewProcessor(Context context, ByteBuffer frame) throws InterruptedException {
+        SurfaceTexture texture = newTexture();
+        Surface surface = new Surface(texture);
+        VideoProcessor processor = new VideoProcessor(surface, context.getAssets());
+        try {
+            processor.submitNv12Frame(frame, WIDTH, HEIGHT, 0);
+            return waitForFirstFrame(processor);
+        } finally {
+            processor.release();
+            surface.release();
+            texture.release();
+        }
+    }
+
+    private static SurfaceTexture newTexture() {
+        SurfaceTexture texture = new SurfaceTexture(0);
+        texture.setDefaultBufferSize(WIDTH, HEIGHT);
+        return texture;
+    }
+
+    private static long waitForFirstFrame(VideoProcessor processor) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + 30_000;
+        PipelineStats stats = processor.getPipelineStats();
+        while (stats.timeToFirstFrameMillis < 0 && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(5);
+            stats = processor.getPipelineStats();
+        }
+        return stats.timeToFirstFrameMillis;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.yolov8;
+
+import android.os.SystemClock;
+
+import java.nio.ByteBuffer;
+import java.util.function.Predicate;
+
+/**
+ * 仪器测试共用的合成帧与流水线等待工具。
+ */
+final class SyntheticFrames {
+
+    private SyntheticFrames() {
+    }
+
+    /**
+     * 写入一帧 NV12：亮度为按 shift 平移的对角渐变，色度为常量。
+     * @param shift 渐变平移的像素数，相同的 shift 得到完全相同的帧。
+     */
+    static void fillNv12Gradient(ByteBuffer frame, int width, int height, int shift) {
+        frame.clear();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                frame.put((byte) ((x + y + shift) & 0xff));
+            }
+        }
+        for (int i = 0; i < width * height / 2; i += 2) {
+            frame.put((byte) 96);
+            frame.put((byte) 160);
+        }
+        frame.rewind();
+    }
+
+    /**
+     * 轮询流水线统计直到满足条件或超时。
+     * @return 最后一次读取的统计，超时时不满足条件，由调用方断言。
+     */
+    static PipelineStats waitForStats(VideoProcessor processor, Predicate<PipelineStats> done, long timeoutMs)
+            throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        PipelineStats stats = processor.getPipelineStats();
+        while (!done.test(stats) && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(10);
+            stats = processor.getPipelineStats();
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,67 @@
+#include "alloc_counter.h"
+
+#include <stdlib.h>
+
+#include <new>
+
+#if YOLOV8_ALLOC_COUNTER
+static thread_local int64_t g_thread_allocations = 0;
+
+static void* counted_malloc(size_t size)
+{
+    g_thread_allocations++;
+    void* ptr = malloc(size ? size : 1);
+    if (!ptr)
+        throw std::bad_alloc();
+    return ptr;
+}
+
+static void* counted_aligned_malloc(size_t size, size_t alignment)
+{
+    g_thread_allocations++;
+    void* ptr = nullptr;
+    if (posix_memalign(&ptr, alignment < sizeof(void*) ? sizeof(void*) : alignment, size ? size : 1) != 0)
+        throw std::bad_alloc();
+    return ptr;
+}
+
+void* operator new(size_t size) { return counted_malloc(size); }
+void* operator new[](size_t size) { return counted_malloc(size); }
+void* operator new(size_t size, const std::nothrow_t&) noexcept { g_thread_allocations++; return malloc(size ? size : 1); }
+void* operator new[](size_t size, const std::nothrow_t&) noexcept { g_thread_allocations++; return malloc(size ? size : 1); }
+void* operator new(size_t size, std::align_val_t alignment) { return counted_aligned_malloc(size, (size_t)alignment); }
+void* operator new[](size_t size, std::align_val_t alignment) { return counted_aligned_malloc(size, (size_t)alignment); }
+
+void operator delete(void* ptr) noexcept { free(ptr); }
+void operator delete[](void* ptr) noexcept { free(ptr); }
+void operator delete(void* ptr, size_t) noexcept { free(ptr); }
+void operator delete[](void* ptr, size_t) noexcept { free(ptr); }
+void operator delete(void* ptr, const std::nothrow_t&) noexcept { free(ptr); }
+void operator delete[](void* ptr, const std::nothrow_t&) noexcept { free(ptr); }
+void operator delete(void* ptr, std::align_val_t) noexcept { free(ptr); }
+void operator delete[](void* ptr, std::align_val_t) noexcept { free(ptr); }
+void operator delete(void* ptr, size_t, std::align_val_t) noexcept { free(ptr); }
+void operator delete[](void* ptr, size_t, std::align_val_t) noexcept { free(ptr); }
+#endif // YOLOV8_ALLOC_COUNTER
+
+namespace alloc_counter {
+
+bool enabled()
+{
+#if YOLOV8_ALLOC_COUNTER
+    return true;
+#else
+    return false;
+#endif
+}
+
+int64_t thread_count()
+{
+#if YOLOV8_ALLOC_COUNTER
+    return g_thread_allocations;
+#else
+    return 0;
+#endif
+}
+
+} // namespace alloc_counter
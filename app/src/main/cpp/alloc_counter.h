@@ -0,0 +1,19 @@
+#ifndef YOLOV8_ALLOC_COUNTER_H
+#define YOLOV8_ALLOC_COUNTER_H
+
+#include <stdint.h>
+
+//调试用的堆分配计数
+//以 -DYOLOV8_ALLOC_COUNTER=ON 构建时替换本库内的全局 operator new，按线程统计分配次数；
+//cv::Mat 的数据块分配会同时创建 UMatData，因此也会被计入；ncnn::Mat 的分配由 ScratchAllocator::misses() 单独统计
+namespace alloc_counter {
+
+//是否编译进了计数功能
+bool enabled();
+
+//当前线程累计的堆分配次数，未启用时恒为 0
+int64_t thread_count();
+
+} // namespace alloc_counter
+
+#endif //YOLOV8_ALLOC_COUNTER_H
@@ -0,0 +1,70 @@
+#include "cascade_policy.h"
+
+CascadePolicy::CascadePolicy()
+    : min_confidence(0.f), max_confidence(0.f), min_uncertain(0), refresh_interval(0), since_escalation(0)
+{
+}
+
+void CascadePolicy::configure(float _min_confidence, float _max_confidence, int _min_uncertain, int _refresh_interval)
+{
+    ncnn::MutexLockGuard guard(lock);
+    min_confidence = _min_confidence;
+    max_confidence = _max_confidence;
+    min_uncertain = _min_uncertain;
+    refresh_interval = _refresh_interval;
+    since_escalation = 0;
+}
+
+void CascadePolicy::reset()
+{
+    ncnn::MutexLockGuard guard(lock);
+    since_escalation = 0;
+}
+
+bool CascadePolicy::enabled() const
+{
+    ncnn::MutexLockGuard guard(lock);
+    return min_uncertain > 0 || refresh_interval > 0;
+}
+
+float CascadePolicy::candidate_threshold(float prob_threshold) const
+{
+    ncnn::MutexLockGuard guard(lock);
+    if (min_uncertain <= 0 && refresh_interval <= 0)
+        return prob_threshold;
+    return min_confidence;
+}
+
+bool CascadePolicy::should_escalate(const std::vector<Object>& candidates)
+{
+    ncnn::MutexLockGuard guard(lock);
+    if (min_uncertain <= 0 && refresh_interval <= 0)
+        return false;
+
+    bool escalate = refresh_interval > 0 && ++since_escalation >= refresh_interval;
+    if (!escalate && min_uncertain > 0)
+    {
+        int uncertain = 0;
+        for (size_t i = 0; i < candidates.size(); i++)
+        {
+            if (candidates[i].prob >= min_confidence && candidates[i].prob < max_confidence)
+                uncertain++;
+        }
+        escalate = uncertain >= min_uncertain;
+    }
+    //按置信度升级的帧同样刷新了结果，定期升级从这一帧重新计数
+    if (escalate)
+        since_escalation = 0;
+    return escalate;
+}
+
+void CascadePolicy::drop_below(std::vector<Object>& objects, float prob_threshold)
+{
+    size_t kept = 0;
+    for (size_t i = 0; i < objects.size(); i++)
+    {
+        if (objects[i].prob >= prob_threshold)
+            objects[kept++] = objects[i];
+    }
+    objects.resize(kept);
+}
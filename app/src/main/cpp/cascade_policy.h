@@ -0,0 +1,52 @@
+#ifndef YOLOV8_CASCADE_POLICY_H
+#define YOLOV8_CASCADE_POLICY_H
+
+#include <vector>
+
+#include <platform.h>
+
+#include "yolo.h"
+
+//级联推理：每帧先用小模型(yolov8n)推理，只有结果不可信时才用大模型(yolov8s)重新推理这一帧
+//小模型以较低的阈值 min_confidence 输出候选，落在 [min_confidence, max_confidence) 之间的检测视为接近阈值、不可信，
+//这类检测达到 min_uncertain 个，或距上一次大模型推理已满 refresh_interval 帧时升级
+//多个推理工作线程共享同一个实例，内部加锁
+class CascadePolicy {
+public:
+    CascadePolicy();
+
+    //min_confidence: 小模型输出候选的阈值，应低于最终的输出阈值
+    //max_confidence: 低于该分数的检测视为不可信
+    //min_uncertain: 不可信的检测达到该数量时升级，<= 0 时不按置信度升级
+    //refresh_interval: 每隔该帧数无论结果如何都升级一次，<= 0 时不定期升级
+    //两者都 <= 0 时关闭
+    void configure(float min_confidence, float max_confidence, int min_uncertain, int refresh_interval);
+
+    //重新计算定期升级的间隔
+    void reset();
+
+    bool enabled() const;
+
+    //小模型推理使用的阈值，关闭时为 prob_threshold
+    float candidate_threshold(float prob_threshold) const;
+
+    //根据小模型的候选判断本帧是否用大模型重新推理
+    bool should_escalate(const std::vector<Object>& candidates);
+
+    //丢弃低于 prob_threshold 的候选，得到与单独推理相同阈值的结果
+    static void drop_below(std::vector<Object>& objects, float prob_threshold);
+
+private:
+    CascadePolicy(const CascadePolicy&);
+    CascadePolicy& operator=(const CascadePolicy&);
+
+    mutable ncnn::Mutex lock;
+    float min_confidence;
+    float max_confidence;
+    int min_uncertain;
+    int refresh_interval;
+
+    int since_escalation;
+};
+
+#endif //YOLOV8_CASCADE_POLICY_H
@@ -0,0 +1,212 @@
+#include "frame_queue.h"
+
+FramePool::~FramePool()
+{
+    for (size_t i = 0; i < slots.size(); i++)
+    {
+        delete slots[i];
+    }
+}
+
+void FramePool::reset(int count)
+{
+    ncnn::MutexLockGuard guard(lock);
+
+    for (size_t i = 0; i < slots.size(); i++)
+    {
+        delete slots[i];
+    }
+    slots.clear();
+    free_slots.clear();
+
+    slots.reserve(count);
+    free_slots.reserve(count);
+    for (int i = 0; i < count; i++)
+    {
+        FrameSlot* slot = new FrameSlot();
+        //预留检测结果的容量，避免稳定运行时扩容
+        slot->objects.reserve(MAX_OBJECTS_PER_FRAME);
+        slots.push_back(slot);
+        free_slots.push_back(slot);
+    }
+}
+
+FrameSlot* FramePool::acquire()
+{
+    ncnn::MutexLockGuard guard(lock);
+    while (free_slots.empty())
+    {
+        available.wait(lock);
+    }
+    FrameSlot* slot = free_slots.back();
+    free_slots.pop_back();
+    return slot;
+}
+
+void FramePool::release(FrameSlot* slot)
+{
+    ncnn::MutexLockGuard guard(lock);
+    slot->objects.clear();
+    free_slots.push_back(slot);
+    available.signal();
+}
+
+FrameQueue::FrameQueue(FramePool& _pool) : pool(_pool)
+{
+    head = 0;
+    count = 0;
+    policy = BLOCK;
+    closed = false;
+    max_depth = 0;
+    pushed = 0;
+    dropped = 0;
+}
+
+void FrameQueue::configure(int capacity, DropPolicy _policy)
+{
+    ncnn::MutexLockGuard guard(lock);
+    while (count > 0)
+    {
+        drop_front();
+    }
+    ring.assign(capacity < 1 ? 1 : capacity, nullptr);
+    head = 0;
+    policy = _policy;
+    max_depth = 0;
+    pushed = 0;
+    dropped = 0;
+}
+
+void FrameQueue::drop_front()
+{
+    FrameSlot* slot = ring[head];
+    ring[head] = nullptr;
+    head = (head + 1) % (int)ring.size();
+    count--;
+    dropped++;
+    pool.release(slot);
+}
+
+bool FrameQueue::push(FrameSlot* slot)
+{
+    ncnn::MutexLockGuard guard(lock);
+
+    if (policy == BLOCK)
+    {
+        while (!closed && count == (int)ring.size())
+        {
+            not_full.wait(lock);
+        }
+    }
+
+    if (closed)
+    {
+        pool.release(slot);
+        return false;
+    }
+
+    if (policy == LATEST_WINS)
+    {
+        while (count > 0)
+        {
+            drop_front();
+        }
+    }
+    else if (count == (int)ring.size())
+    {
+        drop_front();
+    }
+
+    ring[(head + count) % (int)ring.size()] = slot;
+    count++;
+    pushed++;
+    if (count > max_depth)
+        max_depth = count;
+
+    not_empty.signal();
+    return true;
+}
+
+FrameSlot* FrameQueue::pop()
+{
+    ncnn::MutexLockGuard guard(lock);
+    while (!closed && count == 0)
+    {
+        not_empty.wait(lock);
+    }
+    if (count == 0)
+        return nullptr;
+
+    FrameSlot* slot = ring[head];
+    ring[head] = nullptr;
+    head = (head + 1) % (int)ring.size();
+    count--;
+
+    not_full.signal();
+    return slot;
+}
+
+void FrameQueue::close()
+{
+    ncnn::MutexLockGuard guard(lock);
+    closed = true;
+    not_empty.broadcast();
+    not_full.broadcast();
+}
+
+void FrameQueue::open()
+{
+    ncnn::MutexLockGuard guard(lock);
+    closed = false;
+}
+
+QueueStats FrameQueue::stats()
+{
+    ncnn::MutexLockGuard guard(lock);
+    QueueStats s;
+    s.depth = count;
+    s.max_depth = max_depth;
+    s.pushed = pushed;
+    s.dropped = dropped;
+    return s;
+}
+
+FrameReorderer::FrameReorderer(FrameQueue& _output) : output(_output)
+{
+    next_dispatch = 0;
+    next_emit = 0;
+}
+
+void FrameReorderer::reset(int window)
+{
+    ncnn::MutexLockGuard guard(lock);
+    pending.assign(window < 1 ? 1 : window, nullptr);
+    next_dispatch = 0;
+    next_emit = 0;
+}
+
+void FrameReorderer::dispatch(FrameSlot* slot)
+{
+    ncnn::MutexLockGuard guard(lock);
+    while (next_dispatch - next_emit >= (int64_t)pending.size())
+    {
+        room.wait(lock);
+    }
+    slot->sequence = next_dispatch++;
+}
+
+void FrameReorderer::complete(FrameSlot* slot)
+{
+    ncnn::MutexLockGuard guard(lock);
+    pending[slot->sequence % (int64_t)pending.size()] = slot;
+
+    //下游队列为 BLOCK 时会在持锁状态下等待，背压随之传递到所有工作线程
+    const int window = (int)pending.size();
+    while (FrameSlot* next = pending[next_emit % window])
+    {
+        pending[next_emit % window] = nullptr;
+        next_emit++;
+        output.push(next);
+    }
+    room.broadcast();
+}
@@ -0,0 +1,110 @@
+#ifndef YOLOV8_FRAME_QUEUE_H
+#define YOLOV8_FRAME_QUEUE_H
+
+#include <stdint.h>
+#include <vector>
+
+#include <opencv2/core/core.hpp>
+
+#include <platform.h>
+
+#include "yolo.h"
+
+//队列已满时的处理策略，数值与 Java 侧 VideoProcessor.DropPolicy 的 ordinal 保持一致
+enum DropPolicy {
+    DROP_OLDEST = 0, //丢弃队首最旧的帧，为新帧腾出位置
+    LATEST_WINS = 1, //新帧到达时丢弃所有未处理的帧，消费者总是拿到最新的一帧
+    BLOCK = 2,       //阻塞生产者直到队列出现空位，不丢帧
+};
+
+//FrameSlot::objects 预留的容量
+static const int MAX_OBJECTS_PER_FRAME = 128;
+
+//在 解码 -> 推理 -> 渲染 各阶段之间流转的帧，由 FramePool 持有并循环复用
+//帧以紧凑的 YUV420 保存，推理直接读取 YUV 平面，只有渲染阶段才转换为 RGB
+struct FrameSlot {
+    YuvFrame frame;
+    int64_t timestamp = 0;
+    int64_t sequence = 0; //推理派发序号，由 FrameReorderer 分配
+    bool cached = false; //objects 来自 Java 侧的检测缓存，推理阶段跳过该帧
+    bool reuse = false;  //运动门控判定为静止帧，推理阶段跳过，渲染阶段沿用上一推理帧的检测结果
+    std::vector<Object> objects;
+};
+
+//固定数量的帧缓冲池，被丢弃或处理完的帧都回到这里
+class FramePool {
+public:
+    ~FramePool();
+    //重新分配 count 个帧，调用时所有帧都必须已经归还
+    void reset(int count);
+    //取出一个空闲帧，池为空时阻塞等待
+    FrameSlot* acquire();
+    void release(FrameSlot* slot);
+
+private:
+    ncnn::Mutex lock;
+    ncnn::ConditionVariable available;
+    std::vector<FrameSlot*> slots;
+    std::vector<FrameSlot*> free_slots;
+};
+
+struct QueueStats {
+    int depth;       //当前排队的帧数
+    int max_depth;   //历史最大排队帧数，用于评估队列容量是否合适
+    int64_t pushed;  //累计入队帧数
+    int64_t dropped; //因策略被丢弃的帧数
+};
+
+//有界帧队列，满时按 DropPolicy 丢帧或阻塞，被丢弃的帧直接归还 FramePool
+class FrameQueue {
+public:
+    explicit FrameQueue(FramePool& pool);
+    //只能在没有生产者和消费者时调用
+    void configure(int capacity, DropPolicy policy);
+    //返回 false 表示队列已关闭，帧已归还给 FramePool
+    bool push(FrameSlot* slot);
+    //阻塞直到有帧可取；队列关闭且为空时返回 nullptr
+    FrameSlot* pop();
+    void close();
+    void open();
+    QueueStats stats();
+
+private:
+    void drop_front();
+
+    FramePool& pool;
+    ncnn::Mutex lock;
+    ncnn::ConditionVariable not_empty;
+    ncnn::ConditionVariable not_full;
+    std::vector<FrameSlot*> ring;
+    int head;
+    int count;
+    DropPolicy policy;
+    bool closed;
+    int max_depth;
+    int64_t pushed;
+    int64_t dropped;
+};
+
+//多个推理工作线程完成帧的顺序不确定，按派发顺序(即解码输出的时间戳顺序)重新排列后再交给下游
+//同时在途的帧数不超过 window，超出时派发等待，避免一个慢帧让后续帧无限堆积
+class FrameReorderer {
+public:
+    explicit FrameReorderer(FrameQueue& output);
+    //只能在没有工作线程时调用
+    void reset(int window);
+    //等待在途帧数低于 window，为 slot 分配派发序号；调用方需保证取帧与分配序号的顺序一致
+    void dispatch(FrameSlot* slot);
+    //按序号把已完成的帧依次推入下游队列，序号之前的帧未完成时先暂存
+    void complete(FrameSlot* slot);
+
+private:
+    FrameQueue& output;
+    ncnn::Mutex lock;
+    ncnn::ConditionVariable room;
+    std::vector<FrameSlot*> pending;
+    int64_t next_dispatch;
+    int64_t next_emit;
+};
+
+#endif //YOLOV8_FRAME_QUEUE_H
@@ -0,0 +1,29 @@
+#include "memory_usage.h"
+
+#include <stdio.h>
+#include <string.h>
+
+MemoryUsage read_memory_usage()
+{
+    MemoryUsage usage;
+    usage.rss_kb = -1;
+    usage.anon_kb = -1;
+    usage.file_kb = -1;
+
+    FILE* fp = fopen("/proc/self/status", "re");
+    if (!fp)
+        return usage;
+    char line[128];
+    while (fgets(line, sizeof(line), fp))
+    {
+        long value = 0;
+        if (sscanf(line, "VmRSS: %ld kB", &value) == 1)
+            usage.rss_kb = value;
+        else if (sscanf(line, "RssAnon: %ld kB", &value) == 1)
+            usage.anon_kb = value;
+        else if (sscanf(line, "RssFile: %ld kB", &value) == 1)
+            usage.file_kb = value;
+    }
+    fclose(fp);
+    return usage;
+}
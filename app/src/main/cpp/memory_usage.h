@@ -0,0 +1,14 @@
+#ifndef YOLOV8_MEMORY_USAGE_H
+#define YOLOV8_MEMORY_USAGE_H
+
+//当前进程的常驻内存(KB)，读取 /proc/self/status，读取失败的项为 -1
+//映射的模型权重计入 file_kb，可以在内存紧张时直接丢弃后再从 APK 读回；拷贝到堆上的权重计入 anon_kb
+struct MemoryUsage {
+    long rss_kb;
+    long anon_kb;
+    long file_kb;
+};
+
+MemoryUsage read_memory_usage();
+
+#endif //YOLOV8_MEMORY_USAGE_H
@@ -0,0 +1,92 @@
+#include "motion_gate.h"
+
+#include <stdlib.h>
+#include <string.h>
+
+MotionGate::MotionGate()
+    : luma_delta(0), changed_fraction(0.f), max_stale_us(0), last_fraction(0.f)
+{
+    reset();
+}
+
+void MotionGate::configure(int _luma_delta, float _changed_fraction, int64_t _max_stale_us)
+{
+    luma_delta = _luma_delta;
+    changed_fraction = _changed_fraction;
+    max_stale_us = _max_stale_us;
+    reset();
+}
+
+void MotionGate::reset()
+{
+    has_reference = false;
+    reference_width = 0;
+    reference_height = 0;
+    reference_timestamp = 0;
+}
+
+bool MotionGate::enabled() const
+{
+    return max_stale_us > 0;
+}
+
+bool MotionGate::should_infer(const YuvPlanes& planes, int64_t timestamp)
+{
+    if (!enabled())
+        return true;
+
+    thumbnail(planes, current);
+
+    //分辨率变化、时间戳回退(seek 或循环播放)或超出最大间隔时必须推理
+    bool infer = !has_reference || planes.width != reference_width || planes.height != reference_height
+            || timestamp < reference_timestamp || timestamp - reference_timestamp >= max_stale_us;
+
+    int changed = 0;
+    for (int i = 0; i < GRID_W * GRID_H; i++)
+    {
+        if (abs((int)current[i] - (int)reference[i]) > luma_delta)
+            changed++;
+    }
+    last_fraction = has_reference ? (float)changed / (GRID_W * GRID_H) : 1.f;
+    if (last_fraction > changed_fraction)
+        infer = true;
+
+    if (infer)
+    {
+        memcpy(reference, current, sizeof(reference));
+        reference_width = planes.width;
+        reference_height = planes.height;
+        reference_timestamp = timestamp;
+        has_reference = true;
+    }
+    return infer;
+}
+
+float MotionGate::last_changed_fraction() const
+{
+    return last_fraction;
+}
+
+void MotionGate::thumbnail(const YuvPlanes& planes, uint8_t* cells) const
+{
+    int sums[GRID_W * GRID_H];
+    int counts[GRID_W * GRID_H];
+    memset(sums, 0, sizeof(sums));
+    memset(counts, 0, sizeof(counts));
+
+    const int w = planes.width;
+    const int h = planes.height;
+    for (int row = SAMPLE_STEP / 2; row < h; row += SAMPLE_STEP)
+    {
+        const uint8_t* line = planes.y + (size_t)row * planes.y_row_stride;
+        const int base = row * GRID_H / h * GRID_W;
+        for (int col = SAMPLE_STEP / 2; col < w; col += SAMPLE_STEP)
+        {
+            const int cell = base + col * GRID_W / w;
+            sums[cell] += line[col];
+            counts[cell]++;
+        }
+    }
+    for (int i = 0; i < GRID_W * GRID_H; i++)
+        cells[i] = counts[i] > 0 ? (uint8_t)(sums[i] / counts[i]) : 0;
+}
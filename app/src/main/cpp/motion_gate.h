@@ -0,0 +1,50 @@
+#ifndef YOLOV8_MOTION_GATE_H
+#define YOLOV8_MOTION_GATE_H
+
+#include <stdint.h>
+
+#include "yuv_convert.h"
+
+//固定机位的画面大部分帧几乎不变，运动门控在 Y 平面上做降采样帧差，静止的帧不再推理，沿用上一推理帧的检测结果
+//参考帧是上一次推理的帧而不是相邻帧，缓慢的变化累积到阈值后同样会触发推理
+//只在解码阶段(持有 NativeProcessor::lock)调用，缩略图为定长数组，不分配内存
+class MotionGate {
+public:
+    MotionGate();
+
+    //luma_delta: 网格单元平均亮度变化超过该值(0~255)即视为变化
+    //changed_fraction: 变化的单元占比超过该值时推理
+    //max_stale_us: 距离上一次推理超过该时长时无论是否变化都推理，<= 0 时关闭门控
+    void configure(int luma_delta, float changed_fraction, int64_t max_stale_us);
+
+    //丢弃参考帧，下一帧一定推理
+    void reset();
+
+    bool enabled() const;
+
+    //返回该帧是否需要推理；需要推理时把它作为新的参考帧
+    bool should_infer(const YuvPlanes& planes, int64_t timestamp);
+
+    //最近一帧中变化单元的占比，用于调试阈值
+    float last_changed_fraction() const;
+
+    enum { GRID_W = 32, GRID_H = 18, SAMPLE_STEP = 4 };
+
+private:
+    //按 SAMPLE_STEP 间隔采样 Y 平面，得到 GRID_W x GRID_H 个单元的平均亮度
+    void thumbnail(const YuvPlanes& planes, uint8_t* cells) const;
+
+    int luma_delta;
+    float changed_fraction;
+    int64_t max_stale_us;
+
+    bool has_reference;
+    int reference_width;
+    int reference_height;
+    int64_t reference_timestamp;
+    uint8_t reference[GRID_W * GRID_H];
+    uint8_t current[GRID_W * GRID_H];
+    float last_fraction;
+};
+
+#endif //YOLOV8_MOTION_GATE_H
@@ -0,0 +1,89 @@
+#include "resolution_controller.h"
+
+#include <algorithm>
+
+const float ResolutionController::UP_MARGIN = 0.8f;
+const float ResolutionController::EMA_ALPHA = 0.2f;
+
+ResolutionController::ResolutionController()
+    : budget_ms(0.f), index(0), ema_ms(0.0), settle(0), over(0), under(0), switch_count(0)
+{
+}
+
+void ResolutionController::configure(const std::vector<int>& _sizes, float _budget_ms, int initial_index)
+{
+    ncnn::MutexLockGuard guard(lock);
+    sizes = _sizes;
+    budget_ms = _budget_ms;
+    index = sizes.empty() ? 0 : std::max(0, std::min((int)sizes.size() - 1, initial_index));
+    ema_ms = 0.0;
+    settle = SETTLE_FRAMES;
+    over = 0;
+    under = 0;
+    switch_count = 0;
+}
+
+int ResolutionController::current() const
+{
+    return index;
+}
+
+int ResolutionController::size(int i) const
+{
+    return i >= 0 && i < (int)sizes.size() ? sizes[i] : 0;
+}
+
+int ResolutionController::count() const
+{
+    return (int)sizes.size();
+}
+
+bool ResolutionController::report(int i, double latency_ms)
+{
+    ncnn::MutexLockGuard guard(lock);
+    if (budget_ms <= 0.f || sizes.size() < 2 || i != index)
+        return false;
+
+    //切换后的前几帧包含缓冲重建与缓存预热的开销
+    if (settle > 0)
+    {
+        settle--;
+        return false;
+    }
+    ema_ms = ema_ms == 0.0 ? latency_ms : ema_ms + EMA_ALPHA * (latency_ms - ema_ms);
+
+    over = ema_ms > budget_ms ? over + 1 : 0;
+    if (over >= DOWN_FRAMES && index > 0)
+    {
+        switch_to(index - 1);
+        return true;
+    }
+
+    //推理耗时近似与输入面积成正比
+    if (index + 1 < (int)sizes.size())
+    {
+        const double ratio = (double)sizes[index + 1] / sizes[index];
+        under = ema_ms * ratio * ratio < budget_ms * UP_MARGIN ? under + 1 : 0;
+        if (under >= UP_FRAMES)
+        {
+            switch_to(index + 1);
+            return true;
+        }
+    }
+    return false;
+}
+
+int64_t ResolutionController::switches() const
+{
+    return switch_count;
+}
+
+void ResolutionController::switch_to(int i)
+{
+    index = i;
+    ema_ms = 0.0;
+    settle = SETTLE_FRAMES;
+    over = 0;
+    under = 0;
+    switch_count++;
+}
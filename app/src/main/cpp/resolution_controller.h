@@ -0,0 +1,55 @@
+#ifndef YOLOV8_RESOLUTION_CONTROLLER_H
+#define YOLOV8_RESOLUTION_CONTROLLER_H
+
+#include <stdint.h>
+
+#include <atomic>
+#include <vector>
+
+#include <platform.h>
+
+//按每帧推理耗时在一组候选输入尺寸之间切换，使推理耗时保持在预算之内
+//耗时连续超出预算时立即降一级；按面积估计的上一级耗时连续低于预算的 UP_MARGIN 时才升一级，
+//两个方向的门槛与帧数不同，避免在两个尺寸之间来回切换
+//多个推理工作线程共享同一个控制器，current() 无锁读取，report() 内部加锁
+class ResolutionController {
+public:
+    ResolutionController();
+
+    //sizes 按升序排列；budget_ms <= 0 或只有一个尺寸时不切换，始终使用 initial_index
+    void configure(const std::vector<int>& sizes, float budget_ms, int initial_index);
+
+    //当前应使用的尺寸下标
+    int current() const;
+    int size(int index) const;
+    int count() const;
+
+    //报告一帧在 index 尺寸下的推理耗时，切换后前 SETTLE_FRAMES 帧与旧尺寸的报告不参与判断
+    //返回是否切换了尺寸
+    bool report(int index, double latency_ms);
+
+    //累计切换次数
+    int64_t switches() const;
+
+    enum { SETTLE_FRAMES = 4, DOWN_FRAMES = 3, UP_FRAMES = 30 };
+    static const float UP_MARGIN;
+    static const float EMA_ALPHA;
+
+private:
+    ResolutionController(const ResolutionController&);
+    ResolutionController& operator=(const ResolutionController&);
+
+    void switch_to(int index);
+
+    ncnn::Mutex lock;
+    std::vector<int> sizes;
+    float budget_ms;
+    std::atomic<int> index;
+    double ema_ms;
+    int settle;
+    int over;
+    int under;
+    std::atomic<int64_t> switch_count;
+};
+
+#endif //YOLOV8_RESOLUTION_CONTROLLER_H
@@ -0,0 +1,109 @@
+#include "roi_planner.h"
+
+#include <algorithm>
+
+const float RoiPlanner::MAX_AREA_FRACTION = 0.5f;
+
+//以目标框中心为中心，四周按 margin 扩展，且两边都不小于 min_side；左上角与宽高对齐到偶数，并限制在画面内
+static cv::Rect expand_box(const cv::Rect_<float>& box, float margin, int min_side, int width, int height)
+{
+    int w = std::max(min_side, (int)(box.width * (1.f + 2.f * margin)));
+    int h = std::max(min_side, (int)(box.height * (1.f + 2.f * margin)));
+    w = std::min(w, width) & ~1;
+    h = std::min(h, height) & ~1;
+
+    const float cx = box.x + box.width * 0.5f;
+    const float cy = box.y + box.height * 0.5f;
+    int left = std::max(0, std::min(width - w, (int)(cx - w * 0.5f))) & ~1;
+    int top = std::max(0, std::min(height - h, (int)(cy - h * 0.5f))) & ~1;
+    return cv::Rect(left, top, w, h);
+}
+
+RoiPlanner::RoiPlanner()
+    : full_interval(0), margin(0.f), max_regions(0)
+{
+    reset();
+}
+
+void RoiPlanner::configure(int _full_interval, float _margin, int _max_regions)
+{
+    ncnn::MutexLockGuard guard(lock);
+    full_interval = _full_interval;
+    margin = _margin;
+    max_regions = _max_regions;
+    since_full = 0;
+    last_timestamp = INT64_MIN;
+    has_objects = false;
+}
+
+void RoiPlanner::reset()
+{
+    ncnn::MutexLockGuard guard(lock);
+    since_full = 0;
+    last_timestamp = INT64_MIN;
+    has_objects = false;
+}
+
+bool RoiPlanner::plan(int64_t timestamp, int width, int height, int crop_size, std::vector<cv::Rect>& regions)
+{
+    regions.clear();
+    ncnn::MutexLockGuard guard(lock);
+    //帧按时间戳顺序派发，比已报告的结果更早说明发生了 seek 或循环播放，已知目标不再可信
+    if (timestamp < last_timestamp)
+    {
+        last_timestamp = INT64_MIN;
+        has_objects = false;
+    }
+    if (full_interval <= 1 || !has_objects || boxes.empty() || ++since_full >= full_interval)
+    {
+        since_full = 0;
+        return false;
+    }
+
+    for (size_t i = 0; i < boxes.size(); i++)
+        regions.push_back(expand_box(boxes[i], margin, crop_size, width, height));
+
+    //相交的区域合并为外接矩形，直到没有区域相交
+    bool merged = true;
+    while (merged)
+    {
+        merged = false;
+        for (size_t i = 0; i < regions.size() && !merged; i++)
+        {
+            for (size_t j = i + 1; j < regions.size(); j++)
+            {
+                if ((regions[i] & regions[j]).area() > 0)
+                {
+                    regions[i] |= regions[j];
+                    regions.erase(regions.begin() + j);
+                    merged = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    int64_t area = 0;
+    for (size_t i = 0; i < regions.size(); i++)
+        area += regions[i].area();
+    if ((int)regions.size() > max_regions || area > (int64_t)(MAX_AREA_FRACTION * width * height))
+    {
+        regions.clear();
+        since_full = 0;
+        return false;
+    }
+    return true;
+}
+
+void RoiPlanner::update(int64_t timestamp, const std::vector<Object>& objects)
+{
+    ncnn::MutexLockGuard guard(lock);
+    //多个工作线程完成的顺序不一定与时间戳一致
+    if (full_interval <= 1 || timestamp < last_timestamp)
+        return;
+    last_timestamp = timestamp;
+    boxes.resize(objects.size());
+    for (size_t i = 0; i < objects.size(); i++)
+        boxes[i] = objects[i].rect;
+    has_objects = !objects.empty();
+}
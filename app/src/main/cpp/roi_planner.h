@@ -0,0 +1,55 @@
+#ifndef YOLOV8_ROI_PLANNER_H
+#define YOLOV8_ROI_PLANNER_H
+
+#include <stdint.h>
+
+#include <vector>
+
+#include <opencv2/core/core.hpp>
+
+#include <platform.h>
+
+#include "yolo.h"
+
+//目标少且小时，把整帧缩到网络输入尺寸会把大部分计算花在背景上，还会丢失小目标的细节
+//RoiPlanner 根据最近一次的检测结果规划若干裁剪区域，只在这些区域上推理，
+//每隔 full_interval 帧、没有已知目标或区域总面积过大时仍做一次整帧推理以发现新目标
+//多个推理工作线程共享同一个实例，内部加锁
+class RoiPlanner {
+public:
+    RoiPlanner();
+
+    //full_interval: 两次整帧推理之间最多间隔的帧数，<= 1 时关闭，每帧都整帧推理
+    //margin: 区域在目标框四周各扩展框宽高的比例
+    //max_regions: 合并相交区域后区域数超过该值时整帧推理
+    void configure(int full_interval, float margin, int max_regions);
+
+    //丢弃已知目标，下一帧整帧推理
+    void reset();
+
+    //规划时间戳为 timestamp 的一帧的推理区域，crop_size 为网络输入尺寸，区域不小于它以便按原始分辨率推理
+    //返回 false 表示本帧整帧推理，regions 为空
+    bool plan(int64_t timestamp, int width, int height, int crop_size, std::vector<cv::Rect>& regions);
+
+    //报告一帧的检测结果，只保留时间戳最新的一帧；关闭时忽略
+    void update(int64_t timestamp, const std::vector<Object>& objects);
+
+    //区域面积之和超过整帧的该比例时整帧推理更划算
+    static const float MAX_AREA_FRACTION;
+
+private:
+    RoiPlanner(const RoiPlanner&);
+    RoiPlanner& operator=(const RoiPlanner&);
+
+    ncnn::Mutex lock;
+    int full_interval;
+    float margin;
+    int max_regions;
+
+    int since_full;
+    int64_t last_timestamp;
+    bool has_objects;
+    std::vector<cv::Rect_<float> > boxes;
+};
+
+#endif //YOLOV8_ROI_PLANNER_H
@@ -0,0 +1,112 @@
+#include "scratch_allocator.h"
+
+ScratchAllocator::ScratchAllocator(bool _thread_safe)
+{
+    block_count = 0;
+    thread_safe = _thread_safe;
+    miss_count = 0;
+}
+
+ScratchAllocator::~ScratchAllocator()
+{
+    for (int i = 0; i < block_count; i++)
+    {
+        if (blocks[i].in_use)
+        {
+            NCNN_LOGE("ScratchAllocator %p still in use", blocks[i].ptr);
+        }
+        ncnn::fastFree(blocks[i].ptr);
+    }
+}
+
+void ScratchAllocator::clear()
+{
+    if (thread_safe) lock.lock();
+
+    int kept = 0;
+    for (int i = 0; i < block_count; i++)
+    {
+        if (blocks[i].in_use)
+            blocks[kept++] = blocks[i];
+        else
+            ncnn::fastFree(blocks[i].ptr);
+    }
+    block_count = kept;
+
+    if (thread_safe) lock.unlock();
+}
+
+void* ScratchAllocator::fastMalloc(size_t size)
+{
+    if (thread_safe) lock.lock();
+
+    //选择能容纳 size 的最小空闲块
+    int best = -1;
+    for (int i = 0; i < block_count; i++)
+    {
+        if (!blocks[i].in_use && blocks[i].size >= size && (best == -1 || blocks[i].size < blocks[best].size))
+            best = i;
+    }
+
+    if (best == -1)
+    {
+        miss_count++;
+
+        if (block_count == MAX_BLOCKS)
+        {
+            //表已满时淘汰一个空闲块，没有空闲块就不再记录
+            for (int i = 0; i < block_count; i++)
+            {
+                if (!blocks[i].in_use)
+                {
+                    ncnn::fastFree(blocks[i].ptr);
+                    blocks[i] = blocks[--block_count];
+                    break;
+                }
+            }
+        }
+
+        void* ptr = ncnn::fastMalloc(size);
+        if (block_count < MAX_BLOCKS)
+        {
+            blocks[block_count].ptr = ptr;
+            blocks[block_count].size = size;
+            blocks[block_count].in_use = true;
+            block_count++;
+        }
+
+        if (thread_safe) lock.unlock();
+        return ptr;
+    }
+
+    blocks[best].in_use = true;
+    void* ptr = blocks[best].ptr;
+
+    if (thread_safe) lock.unlock();
+    return ptr;
+}
+
+void ScratchAllocator::fastFree(void* ptr)
+{
+    if (thread_safe) lock.lock();
+
+    for (int i = 0; i < block_count; i++)
+    {
+        if (blocks[i].ptr == ptr)
+        {
+            blocks[i].in_use = false;
+            if (thread_safe) lock.unlock();
+            return;
+        }
+    }
+
+    if (thread_safe) lock.unlock();
+
+    //表满时分配的内存块不在表中
+    ncnn::fastFree(ptr);
+}
+
+int64_t ScratchAllocator::misses() const
+{
+    return miss_count;
+}
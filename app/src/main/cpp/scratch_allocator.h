@@ -0,0 +1,45 @@
+#ifndef YOLOV8_SCRATCH_ALLOCATOR_H
+#define YOLOV8_SCRATCH_ALLOCATOR_H
+
+#include <stdint.h>
+
+#include <allocator.h>
+#include <platform.h>
+
+//固定容量的内存块池，供 ncnn 的 blob / workspace 使用
+//ncnn::PoolAllocator 每次分配和释放都会创建 std::list 节点，这里用定长表记录内存块，
+//预热完成后的分配与释放都不会再触碰堆，真正向系统申请内存的次数通过 misses() 统计
+class ScratchAllocator : public ncnn::Allocator {
+public:
+    //workspace 会在 ncnn 的多个计算线程中同时使用，需要 thread_safe
+    explicit ScratchAllocator(bool thread_safe);
+    virtual ~ScratchAllocator();
+
+    //释放所有空闲内存块
+    void clear();
+
+    virtual void* fastMalloc(size_t size);
+    virtual void fastFree(void* ptr);
+
+    //向系统申请内存的次数
+    int64_t misses() const;
+
+private:
+    ScratchAllocator(const ScratchAllocator&);
+    ScratchAllocator& operator=(const ScratchAllocator&);
+
+    struct Block {
+        void* ptr;
+        size_t size;
+        bool in_use;
+    };
+    enum { MAX_BLOCKS = 256 };
+
+    Block blocks[MAX_BLOCKS];
+    int block_count;
+    bool thread_safe;
+    ncnn::Mutex lock;
+    int64_t miss_count;
+};
+
+#endif //YOLOV8_SCRATCH_ALLOCATOR_H
@@ -0,0 +1,251 @@
+#include "tiled_detector.h"
+
+#include <algorithm>
+
+const float TiledDetector::SEAM_OVERLAP = 0.6f;
+
+//目标框距切片内侧边缘小于该值(像素)时认为被切片截断
+static const float SEAM_EPSILON = 2.f;
+
+TiledDetector::TiledDetector(const YOLO* _yolo, int lane_count, int threads_per_lane)
+    : yolo(_yolo), tile_size(0), overlap(0.f), full_frame_size(0), planes(), prob_threshold(0.f), nms_threshold(0.f),
+      task_count(0), next_task(0), generation(0), pending(0), quit(false)
+{
+    for (int i = 0; i < std::max(1, lane_count); i++)
+    {
+        Lane* lane = new Lane();
+        lane->owner = this;
+        lane->thread = nullptr;
+        lane->tile_scratch.num_threads = threads_per_lane;
+        lane->full_scratch.num_threads = threads_per_lane;
+        lanes.push_back(lane);
+    }
+    //通道 0 在调用线程上执行
+    for (size_t i = 1; i < lanes.size(); i++)
+        lanes[i]->thread = new ncnn::Thread(lane_main, lanes[i]);
+}
+
+TiledDetector::~TiledDetector()
+{
+    {
+        ncnn::MutexLockGuard guard(lock);
+        quit = true;
+        start.broadcast();
+    }
+    for (size_t i = 0; i < lanes.size(); i++)
+    {
+        if (lanes[i]->thread)
+        {
+            lanes[i]->thread->join();
+            delete lanes[i]->thread;
+        }
+        delete lanes[i];
+    }
+}
+
+void TiledDetector::configure(int _tile_size, float _overlap, int _full_frame_size)
+{
+    tile_size = _tile_size;
+    overlap = std::max(0.f, std::min(0.9f, _overlap));
+    full_frame_size = _full_frame_size;
+    for (size_t i = 0; i < lanes.size(); i++)
+    {
+        lanes[i]->tile_scratch.target_size = tile_size;
+        lanes[i]->full_scratch.target_size = full_frame_size;
+    }
+}
+
+void TiledDetector::set_yolo(const YOLO* _yolo)
+{
+    for (size_t i = 0; i < lanes.size(); i++)
+    {
+        lanes[i]->tile_scratch.unbind();
+        lanes[i]->full_scratch.unbind();
+    }
+    yolo = _yolo;
+}
+
+int TiledDetector::tile_count() const
+{
+    return (int)tiles.size();
+}
+
+int TiledDetector::lane_count() const
+{
+    return (int)lanes.size();
+}
+
+void TiledDetector::plan_tiles(int width, int height, int tile_size, float overlap, std::vector<cv::Rect>& tiles)
+{
+    tiles.clear();
+    const int tw = std::min(tile_size, width) & ~1;
+    const int th = std::min(tile_size, height) & ~1;
+    const int stride = std::max(2, (int)(tile_size * (1.f - overlap)));
+    const int nx = width <= tw ? 1 : (width - tw + stride - 1) / stride + 1;
+    const int ny = height <= th ? 1 : (height - th + stride - 1) / stride + 1;
+    //切片在两端贴边，中间均匀分布，实际重叠不小于 overlap
+    for (int j = 0; j < ny; j++)
+    {
+        const int top = ny == 1 ? 0 : (int)((int64_t)(height - th) * j / (ny - 1)) & ~1;
+        for (int i = 0; i < nx; i++)
+        {
+            const int left = nx == 1 ? 0 : (int)((int64_t)(width - tw) * i / (nx - 1)) & ~1;
+            tiles.push_back(cv::Rect(left, top, tw, th));
+        }
+    }
+}
+
+void* TiledDetector::lane_main(void* args)
+{
+    Lane* lane = static_cast<Lane*>(args);
+    TiledDetector* detector = lane->owner;
+    int64_t seen = 0;
+    for (;;)
+    {
+        {
+            ncnn::MutexLockGuard guard(detector->lock);
+            while (detector->generation == seen && !detector->quit)
+                detector->start.wait(detector->lock);
+            if (detector->quit)
+                break;
+            seen = detector->generation;
+        }
+
+        detector->run_tasks(*lane);
+
+        ncnn::MutexLockGuard guard(detector->lock);
+        if (--detector->pending == 0)
+            detector->finished.signal();
+    }
+    return nullptr;
+}
+
+void TiledDetector::run_tasks(Lane& lane)
+{
+    for (int i = next_task++; i < task_count; i = next_task++)
+    {
+        if (i < (int)tiles.size())
+        {
+            const cv::Rect& tile = tiles[i];
+            yolo->detect(crop_yuv_planes(planes, tile.x, tile.y, tile.width, tile.height), results[i], lane.tile_scratch,
+                         prob_threshold, nms_threshold);
+        }
+        else
+        {
+            yolo->detect(planes, results[i], lane.full_scratch, prob_threshold, nms_threshold);
+        }
+    }
+}
+
+int TiledDetector::detect(const YuvPlanes& _planes, std::vector<Object>& objects, float _prob_threshold, float _nms_threshold)
+{
+    objects.clear();
+    if (tile_size <= 0)
+        return -1;
+
+    planes = _planes;
+    prob_threshold = _prob_threshold;
+    nms_threshold = _nms_threshold;
+    plan_tiles(planes.width, planes.height, tile_size, overlap, tiles);
+    task_count = (int)tiles.size() + (full_frame_size > 0 ? 1 : 0);
+    if ((int)results.size() < task_count)
+        results.resize(task_count);
+    for (int i = 0; i < task_count; i++)
+        results[i].clear();
+    next_task = 0;
+
+    {
+        ncnn::MutexLockGuard guard(lock);
+        pending = (int)lanes.size() - 1;
+        generation++;
+        start.broadcast();
+    }
+    run_tasks(*lanes[0]);
+    {
+        ncnn::MutexLockGuard guard(lock);
+        while (pending > 0)
+            finished.wait(lock);
+    }
+
+    merge_tile_results(tiles, results, task_count, planes.width, planes.height, objects, merge_scratch, prob_threshold, nms_threshold);
+    return 0;
+}
+
+void merge_tile_results(const std::vector<cv::Rect>& tiles, const std::vector<std::vector<Object> >& results, int task_count,
+                        int width, int height, std::vector<Object>& objects, TileMergeScratch& scratch,
+                        float prob_threshold, float iou_threshold)
+{
+    std::vector<Object>& candidates = scratch.candidates;
+    std::vector<char>& truncated = scratch.truncated;
+    std::vector<char>& alive = scratch.alive;
+    std::vector<int>& order = scratch.order;
+    std::vector<int>& picked = scratch.picked;
+    candidates.clear();
+    truncated.clear();
+    for (int i = 0; i < task_count; i++)
+    {
+        const bool is_tile = i < (int)tiles.size();
+        const cv::Rect tile = is_tile ? tiles[i] : cv::Rect(0, 0, width, height);
+        for (size_t j = 0; j < results[i].size(); j++)
+        {
+            Object obj = results[i][j];
+            obj.rect.x += tile.x;
+            obj.rect.y += tile.y;
+            //只有贴着切片内侧边缘(不是画面边缘)的框才可能被截断
+            const bool cut = is_tile
+                    && ((tile.x > 0 && obj.rect.x - tile.x < SEAM_EPSILON)
+                        || (tile.y > 0 && obj.rect.y - tile.y < SEAM_EPSILON)
+                        || (tile.x + tile.width < width && tile.x + tile.width - obj.rect.br().x < SEAM_EPSILON)
+                        || (tile.y + tile.height < height && tile.y + tile.height - obj.rect.br().y < SEAM_EPSILON));
+            candidates.push_back(obj);
+            truncated.push_back(cut ? 1 : 0);
+        }
+    }
+
+    //被截断的框按分数从高到低并入与其大部分重叠的同类别框，跨越接缝的两半合成完整的框
+    const int n = (int)candidates.size();
+    order.resize(n);
+    for (int i = 0; i < n; i++)
+        order[i] = i;
+    std::sort(order.begin(), order.end(), [&candidates](int a, int b) { return candidates[a].prob > candidates[b].prob; });
+    alive.assign(n, 1);
+    for (int oi = n - 1; oi >= 0; oi--)
+    {
+        const int c = order[oi];
+        if (!truncated[c])
+            continue;
+        for (int oj = 0; oj < n; oj++)
+        {
+            const int b = order[oj];
+            if (b == c || !alive[b] || candidates[b].label != candidates[c].label)
+                continue;
+            const float inter = (candidates[b].rect & candidates[c].rect).area();
+            const float smaller = std::min(candidates[b].rect.area(), candidates[c].rect.area());
+            if (smaller > 0.f && inter / smaller > TiledDetector::SEAM_OVERLAP)
+            {
+                candidates[b].rect |= candidates[c].rect;
+                candidates[b].prob = std::max(candidates[b].prob, candidates[c].prob);
+                alive[c] = 0;
+                break;
+            }
+        }
+    }
+
+    objects.clear();
+    for (int i = 0; i < n; i++)
+    {
+        if (alive[i])
+            objects.push_back(candidates[i]);
+    }
+
+    //全局按类别 NMS，去掉重叠区域内被多个切片重复检出的目标
+    NmsParams params;
+    params.class_aware = true;
+    params.iou_threshold = iou_threshold;
+    params.score_threshold = prob_threshold;
+    candidates.swap(objects);
+    scratch.nms.run(candidates, picked, params);
+    objects.resize(picked.size());
+    for (size_t i = 0; i < picked.size(); i++)
+        objects[i] = candidates[picked[i]];
+}
@@ -0,0 +1,104 @@
+#ifndef YOLOV8_TILED_DETECTOR_H
+#define YOLOV8_TILED_DETECTOR_H
+
+#include <stdint.h>
+
+#include <atomic>
+#include <vector>
+
+#include <opencv2/core/core.hpp>
+
+#include <platform.h>
+
+#include "yolo.h"
+
+//切片推理合并阶段的缓冲，每帧复用
+struct TileMergeScratch {
+    std::vector<Object> candidates;
+    std::vector<char> truncated;
+    std::vector<char> alive;
+    std::vector<int> order;
+    std::vector<int> picked;
+    NmsEngine nms;
+};
+
+//把各任务的检测结果(切片内坐标)映射回 width x height 的原图，合并接缝处被截断的框后做全局按类别 NMS
+//results[i] 对应 tiles[i]，task_count 大于切片数时最后一份是整帧推理的结果；不依赖模型
+void merge_tile_results(const std::vector<cv::Rect>& tiles, const std::vector<std::vector<Object> >& results, int task_count,
+                        int width, int height, std::vector<Object>& objects, TileMergeScratch& scratch,
+                        float prob_threshold = 0.4f, float nms_threshold = 0.5f);
+
+//切片推理：4K 等高分辨率画面整帧缩到网络输入尺寸时小目标会消失，整帧放大输入又太慢
+//这里把画面切成若干相互重叠、边长等于网络输入尺寸的切片，每个切片按原始分辨率推理，
+//结果映射回原图后先合并接缝处被截断的框，再做一次全局的按类别 NMS
+//切片在 lanes 个通道上并发执行：通道 0 是调用 detect 的线程，其余通道各有一个常驻线程，
+//每个通道持有独立的 DetectScratch(Extractor 与分配器)，共享同一个只读的 YOLO
+//可选的整帧低分辨率推理作为额外的一个任务参与调度，用于检出跨越多个切片的大目标
+class TiledDetector {
+public:
+    //threads_per_lane: 每个通道内 ncnn 推理使用的线程数，<= 0 时沿用 Net 的设置
+    TiledDetector(const YOLO* yolo, int lanes, int threads_per_lane);
+    ~TiledDetector();
+
+    //tile_size: 切片边长(原图像素)，同时也是网络输入尺寸，须为 32 的倍数
+    //overlap: 相邻切片重叠部分占切片边长的比例，应不小于常见目标的边长占比
+    //full_frame_size: 整帧推理的输入尺寸，<= 0 时不做整帧推理
+    //只能在没有检测进行时调用
+    void configure(int tile_size, float overlap, int full_frame_size);
+
+    //更换使用的模型，各通道的缓冲解除与旧 Net 的绑定；只能在没有检测进行时调用
+    void set_yolo(const YOLO* yolo);
+
+    int detect(const YuvPlanes& planes, std::vector<Object>& objects, float prob_threshold = 0.4f, float nms_threshold = 0.5f);
+
+    //上一帧的切片数，不含整帧推理
+    int tile_count() const;
+    int lane_count() const;
+
+    //按重叠比例在 width x height 的画面上均匀排布切片，左上角与边长对齐到偶数像素
+    static void plan_tiles(int width, int height, int tile_size, float overlap, std::vector<cv::Rect>& tiles);
+
+    //接缝处被截断的框与同类别框的交集占较小框面积超过该值时合并为外接矩形
+    static const float SEAM_OVERLAP;
+
+private:
+    TiledDetector(const TiledDetector&);
+    TiledDetector& operator=(const TiledDetector&);
+
+    struct Lane {
+        TiledDetector* owner;
+        ncnn::Thread* thread;
+        DetectScratch tile_scratch;
+        DetectScratch full_scratch;
+    };
+
+    static void* lane_main(void* args);
+    //各通道从 next_task 依次领取任务，直到本帧的任务全部领完
+    void run_tasks(Lane& lane);
+
+    const YOLO* yolo;
+    std::vector<Lane*> lanes;
+    int tile_size;
+    float overlap;
+    int full_frame_size;
+
+    //当前帧：由 detect 在派发前写好，派发期间只读
+    YuvPlanes planes;
+    float prob_threshold;
+    float nms_threshold;
+    std::vector<cv::Rect> tiles;
+    std::vector<std::vector<Object> > results; //每个任务一份，最后一份是整帧推理
+    int task_count;
+    std::atomic<int> next_task;
+
+    ncnn::Mutex lock;
+    ncnn::ConditionVariable start;
+    ncnn::ConditionVariable finished;
+    int64_t generation;
+    int pending;
+    bool quit;
+
+    TileMergeScratch merge_scratch;
+};
+
+#endif //YOLOV8_TILED_DETECTOR_H
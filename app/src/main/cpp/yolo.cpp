@@ -4,10 +4,20 @@
 
 #include "yolo.h"
 
+#include <fcntl.h>
+#include <stdio.h>
+#include <string.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <unistd.h>
+
 #include <opencv2/core/core.hpp>
 #include <opencv2/imgproc/imgproc.hpp>
 
 #include "cpu.h"
+#include "datareader.h"
+
+#include "alloc_counter.h"
 
 //使用位运算实现的快速exp近似计算，精度换速度
 static float fast_exp(float x) {
@@ -22,45 +32,6 @@ static float fast_exp(float x) {
 static float sigmoid(float x) {
     return 1.0f / (1.0f + fast_exp(-x));
 }
-//计算交集范围
-static float intersection_area(const Object& a, const Object& b) {
-    cv::Rect_<float> inter = a.rect & b.rect; //calculate the intersection of two rectangles using the & operator.
-    return inter.area();
-}
-//递归核心，在用户接口中调用，参数列表有三个参数。
-static void qsort_descent_inplace(std::vector<Object>& faceobjects, int left, int right) {
-    int i = left;
-    int j = right;
-    float p = faceobjects[(left + right) / 2].prob; //选取pivot
-    while (i <= j) {
-        while (faceobjects[i].prob > p) i++;
-        while (faceobjects[j].prob < p) j--;
-        if (i <= j) {
-            // swap
-            std::swap(faceobjects[i], faceobjects[j]);
-            i++;
-            j--;
-        }
-    }
-
-    //     #pragma omp parallel sections
-    {
-        //         #pragma omp section
-        {
-            if (left < j) qsort_descent_inplace(faceobjects, left, j); //递归调用
-        }
-        //         #pragma omp section
-        {
-            if (i < right) qsort_descent_inplace(faceobjects, i, right); //递归调用
-        }
-    }
-}
-//用于按置信度降序排列Object 采用快速排序。函数重载，用于提供用户接口
-static void qsort_descent_inplace(std::vector<Object>& faceobjects) {
-    if (faceobjects.empty())
-        return;
-    qsort_descent_inplace(faceobjects, 0, faceobjects.size() - 1);
-}
 //实现非极大值抑制
 /*
  关于非极大值抑制：
@@ -70,43 +41,266 @@ static void qsort_descent_inplace(std::vector<Object>& faceobjects) {
  * IoU计算的是两个框交集面积与并集面积的比值，取值范围在0到1之间。设定一个IoU阈值（例如0.5）。如果某个候选框与当前最高分候选框的IoU值超过了这个阈值，
  * 就意味着它们高度重叠，那么这个候选框将被“抑制”或移除。
  */
-static void nms_sorted_bboxes(const std::vector<Object>& faceobjects, std::vector<int>& picked, float nms_threshold)
+NmsParams::NmsParams()
+{
+    method = NMS_AUTO;
+    iou_threshold = 0.5f;
+    score_threshold = 0.f;
+    class_aware = true;
+    top_k = 1000;
+    bucket_min_candidates = 256;
+    soft_sigma = 0.5f;
+}
+
+//分桶抑制使用的空间网格边长
+static const int NMS_GRID = 16;
+
+void NmsEngine::reserve(int n)
+{
+    x0.reserve(n);
+    y0.reserve(n);
+    x1.reserve(n);
+    y1.reserve(n);
+    areas.reserve(n);
+    scores.reserve(n);
+    visit.reserve(n);
+    entry_box.reserve(n);
+    entry_next.reserve(n);
+    cell_head.reserve(NMS_GRID * NMS_GRID);
+}
+
+void NmsEngine::run(std::vector<Object>& proposals, std::vector<int>& picked, const NmsParams& params)
 {
     picked.clear();
 
-    const int n = faceobjects.size();
+    // sort all proposals by score from highest to lowest
+    struct
+    {
+        bool operator()(const Object& a, const Object& b) const
+        {
+            return a.prob > b.prob;
+        }
+    } prob_greater;
 
-    std::vector<float> areas(n);
-    for (int i = 0; i < n; i++)
+    //top-K 预筛选：只对分数最高的 K 个候选做部分排序
+    if (params.top_k > 0 && (int)proposals.size() > params.top_k)
+    {
+        std::partial_sort(proposals.begin(), proposals.begin() + params.top_k, proposals.end(), prob_greater);
+        proposals.resize(params.top_k);
+    }
+    else
     {
-        areas[i] = faceobjects[i].rect.width * faceobjects[i].rect.height;
+        std::sort(proposals.begin(), proposals.end(), prob_greater);
     }
 
+    const int n = proposals.size();
+    if (n == 0)
+        return;
+
+    load_boxes(proposals, params.class_aware);
+
+    NmsMethod method = params.method;
+    if (method == NMS_AUTO)
+        method = n >= params.bucket_min_candidates ? NMS_BUCKETED : NMS_GREEDY;
+
+    if (method == NMS_SOFT)
+        soft(proposals, picked, params);
+    else if (method == NMS_BUCKETED)
+        bucketed(proposals, picked, params.iou_threshold);
+    else
+        greedy(n, picked, params.iou_threshold);
+}
+
+//类别偏移技巧：把每个框平移 label * span，不同类别的框不再相交，
+//一次类别无关的 NMS 就等价于按类别分别做 NMS
+void NmsEngine::load_boxes(const std::vector<Object>& proposals, bool class_aware)
+{
+    const int n = proposals.size();
+
+    float span = 0.f;
+    if (class_aware)
+    {
+        float min_coord = FLT_MAX;
+        float max_coord = -FLT_MAX;
+        for (int i = 0; i < n; i++)
+        {
+            const cv::Rect_<float>& r = proposals[i].rect;
+            min_coord = std::min(min_coord, std::min(r.x, r.y));
+            max_coord = std::max(max_coord, std::max(r.x + r.width, r.y + r.height));
+        }
+        span = max_coord - min_coord + 1.f;
+    }
+
+    x0.resize(n);
+    y0.resize(n);
+    x1.resize(n);
+    y1.resize(n);
+    areas.resize(n);
     for (int i = 0; i < n; i++)
     {
-        const Object& a = faceobjects[i];
+        const cv::Rect_<float>& r = proposals[i].rect;
+        const float offset = class_aware ? proposals[i].label * span : 0.f;
+        x0[i] = r.x + offset;
+        y0[i] = r.y + offset;
+        x1[i] = r.x + r.width + offset;
+        y1[i] = r.y + r.height + offset;
+        areas[i] = r.width * r.height;
+    }
+}
 
+float NmsEngine::iou(int a, int b) const
+{
+    const float w = std::min(x1[a], x1[b]) - std::max(x0[a], x0[b]);
+    const float h = std::min(y1[a], y1[b]) - std::max(y0[a], y0[b]);
+    if (w <= 0.f || h <= 0.f)
+        return 0.f;
+
+    const float inter_area = w * h;
+    const float union_area = areas[a] + areas[b] - inter_area;
+    return union_area > 0.f ? inter_area / union_area : 0.f;
+}
+
+//按分数依次与所有已保留框比较，O(n * picked)
+void NmsEngine::greedy(int n, std::vector<int>& picked, float iou_threshold)
+{
+    for (int i = 0; i < n; i++)
+    {
         int keep = 1;
         for (int j = 0; j < (int)picked.size(); j++)
         {
-            const Object& b = faceobjects[picked[j]];
-
-            // intersection over union
-            float inter_area = intersection_area(a, b);
-            float union_area = areas[i] + areas[picked[j]] - inter_area;
-            // float IoU = inter_area / union_area
-            if (inter_area / union_area > nms_threshold)
+            if (iou(i, picked[j]) > iou_threshold)
+            {
                 keep = 0;
+                break;
+            }
         }
 
         if (keep)
             picked.push_back(i);
     }
 }
+
+//与 greedy 结果相同，但已保留框登记在覆盖到的网格单元中，
+//候选框只和共享单元的已保留框比较，候选很多且分散时接近线性
+void NmsEngine::bucketed(const std::vector<Object>& proposals, std::vector<int>& picked, float iou_threshold)
+{
+    const int n = proposals.size();
+
+    //网格建立在未加类别偏移的坐标上，不同类别之间的 IoU 由偏移保证为 0
+    float min_x = FLT_MAX;
+    float min_y = FLT_MAX;
+    float max_x = -FLT_MAX;
+    float max_y = -FLT_MAX;
+    for (int i = 0; i < n; i++)
+    {
+        const cv::Rect_<float>& r = proposals[i].rect;
+        min_x = std::min(min_x, r.x);
+        min_y = std::min(min_y, r.y);
+        max_x = std::max(max_x, r.x + r.width);
+        max_y = std::max(max_y, r.y + r.height);
+    }
+    const float cell_w = std::max((max_x - min_x) / NMS_GRID, 1e-3f);
+    const float cell_h = std::max((max_y - min_y) / NMS_GRID, 1e-3f);
+
+    cell_head.assign(NMS_GRID * NMS_GRID, -1);
+    entry_box.clear();
+    entry_next.clear();
+    //visit[j] == i 表示候选 i 已经和已保留框 j 比较过，跨单元时不重复计算
+    visit.assign(n, -1);
+
+    for (int i = 0; i < n; i++)
+    {
+        const cv::Rect_<float>& r = proposals[i].rect;
+        const int cx0 = std::min(NMS_GRID - 1, std::max(0, (int)((r.x - min_x) / cell_w)));
+        const int cy0 = std::min(NMS_GRID - 1, std::max(0, (int)((r.y - min_y) / cell_h)));
+        const int cx1 = std::min(NMS_GRID - 1, std::max(0, (int)((r.x + r.width - min_x) / cell_w)));
+        const int cy1 = std::min(NMS_GRID - 1, std::max(0, (int)((r.y + r.height - min_y) / cell_h)));
+
+        int keep = 1;
+        for (int cy = cy0; cy <= cy1 && keep; cy++)
+        {
+            for (int cx = cx0; cx <= cx1 && keep; cx++)
+            {
+                for (int e = cell_head[cy * NMS_GRID + cx]; e != -1; e = entry_next[e])
+                {
+                    const int j = entry_box[e];
+                    if (visit[j] == i)
+                        continue;
+                    visit[j] = i;
+
+                    if (iou(i, j) > iou_threshold)
+                    {
+                        keep = 0;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (!keep)
+            continue;
+
+        picked.push_back(i);
+        for (int cy = cy0; cy <= cy1; cy++)
+        {
+            for (int cx = cx0; cx <= cx1; cx++)
+            {
+                const int cell = cy * NMS_GRID + cx;
+                entry_box.push_back(i);
+                entry_next.push_back(cell_head[cell]);
+                cell_head[cell] = (int)entry_box.size() - 1;
+            }
+        }
+    }
+}
+
+//Gaussian Soft-NMS：与已选框重叠的候选按 exp(-iou^2 / sigma) 衰减分数，低于 score_threshold 时丢弃
+//保留框的 prob 改写为衰减后的分数，picked 按衰减后的分数降序
+void NmsEngine::soft(std::vector<Object>& proposals, std::vector<int>& picked, const NmsParams& params)
+{
+    const int n = proposals.size();
+
+    scores.resize(n);
+    visit.assign(n, 1);
+    for (int i = 0; i < n; i++)
+    {
+        scores[i] = proposals[i].prob;
+    }
+
+    for (;;)
+    {
+        int best = -1;
+        for (int i = 0; i < n; i++)
+        {
+            if (visit[i] && (best == -1 || scores[i] > scores[best]))
+                best = i;
+        }
+        if (best == -1 || scores[best] < params.score_threshold)
+            break;
+
+        picked.push_back(best);
+        visit[best] = 0;
+
+        for (int i = 0; i < n; i++)
+        {
+            if (!visit[i])
+                continue;
+
+            const float overlap = iou(best, i);
+            if (overlap > 0.f)
+                scores[i] *= expf(-(overlap * overlap) / params.soft_sigma);
+        }
+    }
+
+    for (size_t i = 0; i < picked.size(); i++)
+    {
+        proposals[picked[i]].prob = scores[picked[i]];
+    }
+}
 //预先计算并存储好所有可能的预测“基准点”及其尺度信息，以便后续高效地进行边界框解码。这个 grid_strides 向量的顺序通常也会与 NCNN 模型输出张量中预测结果的顺序相对应。
-static void generate_grids_and_stride(const int target_w, const int target_h, std::vector<int>& strides, std::vector<GridAndStride>& grid_strides)
+static void generate_grids_and_stride(const int target_w, const int target_h, const int* strides, int num_strides, std::vector<GridAndStride>& grid_strides)
 {
-    for (int i = 0; i < (int)strides.size(); i++)
+    for (int i = 0; i < num_strides; i++)
     {
         int stride = strides[i];
         int num_grid_w = target_w / stride;
@@ -125,98 +319,463 @@ static void generate_grids_and_stride(const int target_w, const int target_h, st
     }
 }
 
-static void generate_proposals(std::vector<GridAndStride> grid_strides, const ncnn::Mat& pred, float prob_threshold, std::vector<Object>& objects)
+//DFL：一条边的 REG_MAX 个分布 logit 做 softmax 后求期望，等价于原先的 Softmax 层 + 加权求和
+static inline float dfl_expectation(const float* logits)
+{
+    float max_logit = logits[0];
+    for (int l = 1; l < ProposalDecoder::REG_MAX; l++)
+    {
+        max_logit = std::max(max_logit, logits[l]);
+    }
+
+    float sum = 0.f;
+    float dis = 0.f;
+    for (int l = 0; l < ProposalDecoder::REG_MAX; l++)
+    {
+        const float e = expf(logits[l] - max_logit);
+        sum += e;
+        dis += l * e;
+    }
+    return dis / sum;
+}
+
+ProposalDecoder::ProposalDecoder()
+{
+    in_w = 0;
+    in_h = 0;
+}
+
+void ProposalDecoder::prepare(int _in_w, int _in_h)
+{
+    if (in_w == _in_w && in_h == _in_h)
+        return;
+
+    in_w = _in_w;
+    in_h = _in_h;
+
+    static const int strides[] = {8, 16, 32}; // might have stride=64
+    grid_strides.clear();
+    generate_grids_and_stride(in_w, in_h, strides, 3, grid_strides);
+}
+
+int ProposalDecoder::num_points() const
+{
+    return (int)grid_strides.size();
+}
+
+void ProposalDecoder::decode(const ncnn::Mat& pred, float prob_threshold, std::vector<Object>& proposals) const
 {
-    const int num_points = grid_strides.size();
-    const int num_class = 80;
-    const int reg_max_1 = 16;
+    const int num_points = std::min(pred.h, (int)grid_strides.size());
+    const int num_class = pred.w - 4 * REG_MAX;
+
+    //sigmoid 单调递增，把概率阈值换算成 logit 阈值后，未过阈值的点不必计算 sigmoid
+    float logit_threshold = -FLT_MAX;
+    if (prob_threshold >= 1.f)
+        logit_threshold = FLT_MAX;
+    else if (prob_threshold > 0.f)
+        logit_threshold = logf(prob_threshold / (1.f - prob_threshold));
 
     for (int i = 0; i < num_points; i++)
     {
-        const float* scores = pred.row(i) + 4 * reg_max_1;
+        const float* bbox_pred = pred.row(i);
+        const float* scores = bbox_pred + 4 * REG_MAX;
 
         // find label with max score
-        int label = -1;
-        float score = -FLT_MAX;
-        for (int k = 0; k < num_class; k++)
+        int label = 0;
+        float score = scores[0];
+        for (int k = 1; k < num_class; k++)
         {
-            float confidence = scores[k];
-            if (confidence > score)
+            if (scores[k] > score)
             {
                 label = k;
-                score = confidence;
+                score = scores[k];
             }
         }
-        float box_prob = sigmoid(score);
-        if (box_prob >= prob_threshold)
-        {
-            ncnn::Mat bbox_pred(reg_max_1, 4, (void*)pred.row(i));
-            {
-                ncnn::Layer* softmax = ncnn::create_layer("Softmax");
-
-                ncnn::ParamDict pd;
-                pd.set(0, 1); // axis
-                pd.set(1, 1);
-                softmax->load_param(pd);
+        if (score < logit_threshold)
+            continue;
+
+        const GridAndStride& gs = grid_strides[i];
+        const float pb_cx = (gs.grid0 + 0.5f) * gs.stride;
+        const float pb_cy = (gs.grid1 + 0.5f) * gs.stride;
+
+        const float x0 = pb_cx - dfl_expectation(bbox_pred) * gs.stride;
+        const float y0 = pb_cy - dfl_expectation(bbox_pred + REG_MAX) * gs.stride;
+        const float x1 = pb_cx + dfl_expectation(bbox_pred + REG_MAX * 2) * gs.stride;
+        const float y1 = pb_cy + dfl_expectation(bbox_pred + REG_MAX * 3) * gs.stride;
+
+        Object obj;
+        obj.rect.x = x0;
+        obj.rect.y = y0;
+        obj.rect.width = x1 - x0;
+        obj.rect.height = y1 - y0;
+        obj.label = label;
+        obj.prob = sigmoid(score);
+
+        proposals.push_back(obj);
+    }
+}
 
-                ncnn::Option opt;
-                opt.num_threads = 1;
-                opt.use_packing_layout = false;
+//双线性缩放 + RGB 转 BGR + 归一化，一次写入 in_pad 的有效区域，四周的填充始终为 0
+//等价于 from_pixels_resize + copy_make_border + substract_mean_normalize，但不产生中间图像
+static void letterbox_rgb(const cv::Mat& rgb, DetectScratch& s, const float* norm_vals)
+{
+    ncnn::Mat& in_pad = s.in_pad;
+    const int left = s.wpad / 2;
+    const int top = s.hpad / 2;
 
-                softmax->create_pipeline(opt);
+    for (int y = 0; y < s.h; y++)
+    {
+        const unsigned char* row0 = rgb.ptr<unsigned char>(s.yofs[y]);
+        const unsigned char* row1 = rgb.ptr<unsigned char>(s.yofs[y] + 1);
+        const float b = s.yalpha[y];
 
-                softmax->forward_inplace(bbox_pred, opt);
+        float* outb = in_pad.channel(0).row(top + y) + left;
+        float* outg = in_pad.channel(1).row(top + y) + left;
+        float* outr = in_pad.channel(2).row(top + y) + left;
 
-                softmax->destroy_pipeline(opt);
+        for (int x = 0; x < s.w; x++)
+        {
+            const unsigned char* p0 = row0 + s.xofs[x] * 3;
+            const unsigned char* p1 = row1 + s.xofs[x] * 3;
+            const float a = s.xalpha[x];
 
-                delete softmax;
+            float v[3];
+            for (int c = 0; c < 3; c++)
+            {
+                const float top_value = p0[c] + (p0[c + 3] - p0[c]) * a;
+                const float bottom_value = p1[c] + (p1[c + 3] - p1[c]) * a;
+                v[c] = top_value + (bottom_value - top_value) * b;
             }
 
-            float pred_ltrb[4];
-            for (int k = 0; k < 4; k++)
-            {
-                float dis = 0.f;
-                const float* dis_after_sm = bbox_pred.row(k);
-                for (int l = 0; l < reg_max_1; l++)
-                {
-                    dis += l * dis_after_sm[l];
-                }
+            outb[x] = v[2] * norm_vals[0];
+            outg[x] = v[1] * norm_vals[1];
+            outr[x] = v[0] * norm_vals[2];
+        }
+    }
+}
 
-                pred_ltrb[k] = dis * grid_strides[i].stride;
-            }
+//与 letterbox_rgb 相同，但直接从 YUV420 平面采样：亮度按原分辨率插值，色度按半分辨率插值
+//插值后的 YUV 按 BT.601 limited range 转为 RGB，系数与 yuv420_to_rgb 相同，全分辨率 RGB 图像不再生成
+static void letterbox_yuv(const YuvPlanes& p, DetectScratch& s, const float* norm_vals)
+{
+    ncnn::Mat& in_pad = s.in_pad;
+    const int left = s.wpad / 2;
+    const int top = s.hpad / 2;
+    const int ps = p.uv_pixel_stride;
+
+    for (int y = 0; y < s.h; y++)
+    {
+        const uint8_t* y0 = p.y + (size_t)s.yofs[y] * p.y_row_stride;
+        const uint8_t* y1 = y0 + p.y_row_stride;
+        const float by = s.yalpha[y];
+
+        const size_t crow = (size_t)s.cyofs[y] * p.uv_row_stride;
+        const uint8_t* u0 = p.u + crow;
+        const uint8_t* u1 = u0 + p.uv_row_stride;
+        const uint8_t* v0 = p.v + crow;
+        const uint8_t* v1 = v0 + p.uv_row_stride;
+        const float bc = s.cyalpha[y];
+
+        float* outb = in_pad.channel(0).row(top + y) + left;
+        float* outg = in_pad.channel(1).row(top + y) + left;
+        float* outr = in_pad.channel(2).row(top + y) + left;
+
+        for (int x = 0; x < s.w; x++)
+        {
+            const int sx = s.xofs[x];
+            const float a = s.xalpha[x];
+            const float yt = y0[sx] + (y0[sx + 1] - y0[sx]) * a;
+            const float yb = y1[sx] + (y1[sx + 1] - y1[sx]) * a;
+            const float yv = yt + (yb - yt) * by;
+
+            const int c0 = s.cxofs[x] * ps;
+            const int c1 = c0 + ps;
+            const float ac = s.cxalpha[x];
+            const float ut = u0[c0] + (u0[c1] - u0[c0]) * ac;
+            const float ub = u1[c0] + (u1[c1] - u1[c0]) * ac;
+            const float vt = v0[c0] + (v0[c1] - v0[c0]) * ac;
+            const float vb = v1[c0] + (v1[c1] - v1[c0]) * ac;
+            const float u = ut + (ub - ut) * bc - 128.f;
+            const float v = vt + (vb - vt) * bc - 128.f;
+
+            const float yy = std::max(yv - 16.f, 0.f) * 1.164f;
+            const float r = std::min(std::max(yy + 1.596f * v, 0.f), 255.f);
+            const float g = std::min(std::max(yy - 0.813f * v - 0.391f * u, 0.f), 255.f);
+            const float b = std::min(std::max(yy + 2.018f * u, 0.f), 255.f);
+
+            outb[x] = b * norm_vals[0];
+            outg[x] = g * norm_vals[1];
+            outr[x] = r * norm_vals[2];
+        }
+    }
+}
+
+//计算源坐标 (dst + 0.5) * scale - 0.5 对应的左侧像素与权重，右侧像素不会越界
+static void build_resize_table(int src_size, int dst_size, std::vector<int>& ofs, std::vector<float>& alpha)
+{
+    const float scale = (float)src_size / dst_size;
+    ofs.resize(dst_size);
+    alpha.resize(dst_size);
+    for (int i = 0; i < dst_size; i++)
+    {
+        float f = (i + 0.5f) * scale - 0.5f;
+        if (f < 0.f)
+            f = 0.f;
+        int i0 = (int)f;
+        float a = f - i0;
+        if (i0 >= src_size - 1)
+        {
+            i0 = std::max(src_size - 2, 0);
+            a = src_size > 1 ? 1.f : 0.f;
+        }
+        ofs[i] = i0;
+        alpha[i] = a;
+    }
+}
 
-            float pb_cx = (grid_strides[i].grid0 + 0.5f) * grid_strides[i].stride;
-            float pb_cy = (grid_strides[i].grid1 + 0.5f) * grid_strides[i].stride;
+//标签字形表：首次使用时用 ncnn 内置字体把可打印 ASCII 字符渲染成灰度遮罩，之后绘制只做查表混合
+//cv::putText 与 ncnn::draw_text_c3 每次调用都会分配临时缓冲
+static const int LABEL_FONT_SIZE = 14;
 
-            float x0 = pb_cx - pred_ltrb[0];
-            float y0 = pb_cy - pred_ltrb[1];
-            float x1 = pb_cx + pred_ltrb[2];
-            float y1 = pb_cy + pred_ltrb[3];
+struct GlyphAtlas {
+    enum { FIRST = 32, LAST = 126 };
 
-            Object obj;
-            obj.rect.x = x0;
-            obj.rect.y = y0;
-            obj.rect.width = x1 - x0;
-            obj.rect.height = y1 - y0;
-            obj.label = label;
-            obj.prob = box_prob;
+    GlyphAtlas()
+    {
+        glyph_w = LABEL_FONT_SIZE / 2;
+        glyph_h = LABEL_FONT_SIZE;
+        const int glyph_size = glyph_w * glyph_h;
+        masks = new unsigned char[(LAST - FIRST + 1) * glyph_size]();
 
-            objects.push_back(obj);
+        char text[2] = {0, 0};
+        for (int c = FIRST; c <= LAST; c++)
+        {
+            text[0] = (char)c;
+            ncnn::draw_text_c1(masks + (c - FIRST) * glyph_size, glyph_w, glyph_h, text, 0, 0, LABEL_FONT_SIZE, 255);
         }
     }
+    ~GlyphAtlas()
+    {
+        delete[] masks;
+    }
+
+    int glyph_w;
+    int glyph_h;
+    unsigned char* masks;
+};
+
+static const GlyphAtlas& glyph_atlas()
+{
+    static GlyphAtlas atlas;
+    return atlas;
+}
+
+static unsigned int pack_rgb(const unsigned char* color)
+{
+    return color[0] | (color[1] << 8) | (color[2] << 16);
+}
+
+DetectScratch::DetectScratch()
+    : target_size(0), prepared_size(0), src_w(0), src_h(0), w(0), h(0), wpad(0), hpad(0), scale(1.f),
+      net(nullptr), ex(nullptr), ex_reset(nullptr),
+      blob_allocator(false), workspace_allocator(true),
+      num_threads(0), extract_allocations(0)
+{
+}
+
+DetectScratch::~DetectScratch()
+{
+    //in_pad 与 Extractor 中的 blob 必须先于分配器释放
+    in_pad.release();
+    delete ex;
+    delete ex_reset;
+}
+
+int64_t DetectScratch::pool_misses() const
+{
+    return blob_allocator.misses() + workspace_allocator.misses();
+}
+
+void DetectScratch::unbind()
+{
+    delete ex;
+    delete ex_reset;
+    ex = nullptr;
+    ex_reset = nullptr;
+    net = nullptr;
 }
 
 YOLO::YOLO()
+    : weights_asset(nullptr), weights_map(nullptr), weights_map_size(0)
+{
+    //字形表在创建检测器时生成，避免第一次绘制标签时在渲染线程中分配
+    glyph_atlas();
+}
+
+YOLO::~YOLO()
 {
-    blob_pool_allocator.set_size_compare_ratio(0.f);
-    workspace_pool_allocator.set_size_compare_ratio(0.f);
+    release_weights();
 }
 
-int YOLO::load(AAssetManager* mgr, int _target_size, const float* _mean_vals, const float* _norm_vals, bool use_gpu)
+void YOLO::release_weights()
 {
+    default_scratch.unbind();
     yolo.clear();
-    blob_pool_allocator.clear();
-    workspace_pool_allocator.clear();
+    if (weights_asset)
+    {
+        AAsset_close(weights_asset);
+        weights_asset = nullptr;
+    }
+    if (weights_map)
+    {
+        munmap(weights_map, weights_map_size);
+        weights_map = nullptr;
+        weights_map_size = 0;
+    }
+}
+
+//从一段有长度的内存读取权重：与 DataReaderFromMemory 一样 reference 直接返回内存中的地址，
+//但每次读取前检查剩余字节数，.bin 被截断时读取返回 0，load_model 失败而不是越过映射末尾
+class DataReaderFromMappedMemory : public ncnn::DataReader
+{
+public:
+    DataReaderFromMappedMemory(const unsigned char* _data, size_t _size)
+        : mem(_data), remaining(_size)
+    {
+    }
+
+#if NCNN_STRING
+    //权重文件是二进制格式，不会按文本解析
+    virtual int scan(const char* /*format*/, void* /*p*/) const
+    {
+        return 0;
+    }
+#endif // NCNN_STRING
+
+    virtual size_t read(void* buf, size_t size) const
+    {
+        if (size > remaining)
+            return 0;
+        memcpy(buf, mem, size);
+        mem += size;
+        remaining -= size;
+        return size;
+    }
+
+    virtual size_t reference(size_t size, const void** buf) const
+    {
+        if (size > remaining)
+            return 0;
+        *buf = mem;
+        mem += size;
+        remaining -= size;
+        return size;
+    }
+
+private:
+    mutable const unsigned char* mem;
+    mutable size_t remaining;
+};
+
+int YOLO::load_model_mapped(const unsigned char* data, size_t size)
+{
+    if (!data || size == 0 || ((uintptr_t)data & 3) != 0)
+        return -1;
+    //reference 直接返回映射中的地址，fp32 权重不再拷贝
+    DataReaderFromMappedMemory dr(data, size);
+    if (yolo.load_model(dr) != 0)
+        return -1;
+    return 0;
+}
+
+bool YOLO::weights_mapped() const
+{
+    return weights_asset || weights_map;
+}
+
+int YOLO::load(AAssetManager* mgr, const char* model_name, int _target_size, const float* _mean_vals, const float* _norm_vals, bool use_gpu)
+{
+    char model_param[256];
+    char model_bin[256];
+    snprintf(model_param, sizeof(model_param), "%s.param", model_name);
+    snprintf(model_bin, sizeof(model_bin), "%s.bin", model_name);
+
+    prepare_net(use_gpu);
+    if (yolo.load_param(mgr, model_param) != 0)
+        return -1;
+
+    //AASSET_MODE_BUFFER 下未压缩的 asset 直接映射 APK，getBuffer 不分配内存；压缩的 asset 会被整体解压到堆上，不如流式读取
+    AAsset* asset = AAssetManager_open(mgr, model_bin, AASSET_MODE_BUFFER);
+    if (asset && !AAsset_isAllocated(asset))
+    {
+        const unsigned char* data = static_cast<const unsigned char*>(AAsset_getBuffer(asset));
+        if (load_model_mapped(data, (size_t)AAsset_getLength(asset)) == 0)
+        {
+            weights_asset = asset;
+            set_input(_target_size, _mean_vals, _norm_vals);
+            return 0;
+        }
+        //部分权重可能已经加载，重新加载网络结构后改为流式读取
+        prepare_net(use_gpu);
+        if (yolo.load_param(mgr, model_param) != 0)
+        {
+            AAsset_close(asset);
+            return -1;
+        }
+    }
+    if (asset)
+        AAsset_close(asset);
+
+    if (yolo.load_model(mgr, model_bin) != 0)
+        return -1;
+
+    set_input(_target_size, _mean_vals, _norm_vals);
+    return 0;
+}
+
+int YOLO::load(const char* parampath, const char* modelpath, int _target_size, const float* _mean_vals, const float* _norm_vals, bool use_gpu)
+{
+    prepare_net(use_gpu);
+    if (yolo.load_param(parampath) != 0 || yolo.load_model(modelpath) != 0)
+        return -1;
+
+    set_input(_target_size, _mean_vals, _norm_vals);
+    return 0;
+}
+
+int YOLO::load_mapped(const char* parampath, const char* modelpath, int _target_size, const float* _mean_vals, const float* _norm_vals, bool use_gpu)
+{
+    prepare_net(use_gpu);
+    if (yolo.load_param(parampath) != 0)
+        return -1;
+
+    int fd = open(modelpath, O_RDONLY | O_CLOEXEC);
+    if (fd < 0)
+        return -1;
+    struct stat st;
+    void* map = MAP_FAILED;
+    if (fstat(fd, &st) == 0 && st.st_size > 0)
+        map = mmap(nullptr, (size_t)st.st_size, PROT_READ, MAP_PRIVATE, fd, 0);
+    //映射建立后不再需要文件描述符
+    close(fd);
+    if (map == MAP_FAILED)
+        return -1;
+
+    weights_map = map;
+    weights_map_size = (size_t)st.st_size;
+    if (load_model_mapped(static_cast<const unsigned char*>(map), weights_map_size) != 0)
+    {
+        release_weights();
+        return -1;
+    }
+
+    set_input(_target_size, _mean_vals, _norm_vals);
+    return 0;
+}
+
+void YOLO::prepare_net(bool use_gpu)
+{
+    release_weights();
 
     ncnn::set_cpu_powersave(2);
     ncnn::set_omp_num_threads(ncnn::get_big_cpu_count());
@@ -228,16 +787,10 @@ int YOLO::load(AAssetManager* mgr, int _target_size, const float* _mean_vals, co
 #endif
 
     yolo.opt.num_threads = ncnn::get_big_cpu_count();
-    yolo.opt.blob_allocator = &blob_pool_allocator;
-    yolo.opt.workspace_allocator = &workspace_pool_allocator;
-
-    const char* model_param = "yolov8n.param";
-    const char* model_bin = "yolov8n.bin";
-
-
-    yolo.load_param(mgr, model_param);
-    yolo.load_model(mgr, model_bin);
+}
 
+void YOLO::set_input(int _target_size, const float* _mean_vals, const float* _norm_vals)
+{
     target_size = _target_size;
     mean_vals[0] = _mean_vals[0];
     mean_vals[1] = _mean_vals[1];
@@ -245,13 +798,19 @@ int YOLO::load(AAssetManager* mgr, int _target_size, const float* _mean_vals, co
     norm_vals[0] = _norm_vals[0];
     norm_vals[1] = _norm_vals[1];
     norm_vals[2] = _norm_vals[2];
+}
 
-    return 0;
+int YOLO::get_target_size() const
+{
+    return target_size;
 }
-int YOLO::detect(const cv::Mat& rgb, std::vector<Object>& objects, float prob_threshold, float nms_threshold)
+
+//输入分辨率或输入尺寸变化时重建缩放表、in_pad 与网格表，并按最大候选数预留容量
+void YOLO::prepare_scratch(DetectScratch& scratch, int width, int height) const
 {
-    int width = rgb.cols;
-    int height = rgb.rows;
+    const int target_size = scratch.target_size > 0 ? scratch.target_size : this->target_size;
+    if (scratch.src_w == width && scratch.src_h == height && scratch.prepared_size == target_size && !scratch.in_pad.empty())
+        return;
 
     // pad to multiple of 32
     int w = width;
@@ -270,39 +829,195 @@ int YOLO::detect(const cv::Mat& rgb, std::vector<Object>& objects, float prob_th
         w = w * scale;
     }
 
-    ncnn::Mat in = ncnn::Mat::from_pixels_resize(rgb.data, ncnn::Mat::PIXEL_RGB2BGR, width, height, w, h);
-
-    // pad to target_size rectangle
-    int wpad = (w + 31) / 32 * 32 - w;
-    int hpad = (h + 31) / 32 * 32 - h;
-    ncnn::Mat in_pad;
-    ncnn::copy_make_border(in, in_pad, hpad / 2, hpad - hpad / 2, wpad / 2, wpad - wpad / 2, ncnn::BORDER_CONSTANT, 0.f);
+    scratch.prepared_size = target_size;
+    scratch.src_w = width;
+    scratch.src_h = height;
+    scratch.w = w;
+    scratch.h = h;
+    scratch.wpad = (w + 31) / 32 * 32 - w;
+    scratch.hpad = (h + 31) / 32 * 32 - h;
+    scratch.scale = scale;
+
+    build_resize_table(width, w, scratch.xofs, scratch.xalpha);
+    build_resize_table(height, h, scratch.yofs, scratch.yalpha);
+    build_resize_table((width + 1) / 2, w, scratch.cxofs, scratch.cxalpha);
+    build_resize_table((height + 1) / 2, h, scratch.cyofs, scratch.cyalpha);
+
+    scratch.in_pad.create(w + scratch.wpad, h + scratch.hpad, 3, 4u, &scratch.blob_allocator);
+    scratch.in_pad.fill(0.f);
+
+    scratch.decoder.prepare(scratch.in_pad.w, scratch.in_pad.h);
+
+    const size_t num_points = scratch.decoder.num_points();
+    scratch.proposals.reserve(num_points);
+    scratch.picked.reserve(num_points);
+    scratch.nms.reserve(num_points);
+}
 
-    in_pad.substract_mean_normalize(0, norm_vals);
+void YOLO::set_nms_params(const NmsParams& params)
+{
+    nms_params = params;
+}
 
-    ncnn::Extractor ex = yolo.create_extractor();
+int YOLO::detect(const cv::Mat& rgb, std::vector<Object>& objects, float prob_threshold, float nms_threshold)
+{
+    return detect(rgb, objects, default_scratch, prob_threshold, nms_threshold);
+}
 
-    ex.input("images", in_pad);
+int YOLO::detect(const cv::Mat& rgb, std::vector<Object>& objects, DetectScratch& scratch, float prob_threshold, float nms_threshold) const
+{
+    ncnn::Mat out;
+    int ret = forward(rgb, scratch, out);
+    if (ret != 0)
+        return ret;
 
-    std::vector<Object> proposals;
+    return postprocess(out, scratch, objects, prob_threshold, nms_threshold);
+}
 
+int YOLO::detect(const YuvPlanes& planes, std::vector<Object>& objects, DetectScratch& scratch, float prob_threshold, float nms_threshold) const
+{
     ncnn::Mat out;
-    ex.extract("output", out);
+    int ret = forward(planes, scratch, out);
+    if (ret != 0)
+        return ret;
 
-    std::vector<int> strides = {8, 16, 32}; // might have stride=64
-    std::vector<GridAndStride> grid_strides;
-    generate_grids_and_stride(in_pad.w, in_pad.h, strides, grid_strides);
-    generate_proposals(grid_strides, out, prob_threshold, proposals);
+    return postprocess(out, scratch, objects, prob_threshold, nms_threshold);
+}
 
-    // sort all proposals by score from highest to lowest
-    qsort_descent_inplace(proposals);
+int YOLO::detect_regions(const YuvPlanes& planes, const std::vector<cv::Rect>& regions, std::vector<Object>& objects, DetectScratch& scratch, float prob_threshold, float nms_threshold) const
+{
+    objects.clear();
+    for (size_t i = 0; i < regions.size(); i++)
+    {
+        const int left = regions[i].x & ~1;
+        const int top = regions[i].y & ~1;
+        const int width = std::min(regions[i].x + regions[i].width, planes.width) - left;
+        const int height = std::min(regions[i].y + regions[i].height, planes.height) - top;
+        int ret = detect(crop_yuv_planes(planes, left, top, width, height), scratch.region_objects, scratch, prob_threshold, nms_threshold);
+        if (ret != 0)
+            return ret;
+
+        for (size_t j = 0; j < scratch.region_objects.size(); j++)
+        {
+            Object obj = scratch.region_objects[j];
+            obj.rect.x += left;
+            obj.rect.y += top;
+            objects.push_back(obj);
+        }
+    }
+    if (regions.size() < 2)
+        return 0;
+
+    //相邻区域重叠部分的目标会被检测两次
+    NmsParams params = nms_params;
+    params.iou_threshold = nms_threshold;
+    params.score_threshold = prob_threshold;
+    std::vector<Object>& proposals = scratch.proposals;
+    proposals.assign(objects.begin(), objects.end());
+    scratch.nms.run(proposals, scratch.picked, params);
+    objects.resize(scratch.picked.size());
+    for (size_t i = 0; i < scratch.picked.size(); i++)
+        objects[i] = proposals[scratch.picked[i]];
+
+    return 0;
+}
+
+int YOLO::preprocess(const cv::Mat& rgb, DetectScratch& scratch) const
+{
+    if (rgb.cols < 2 || rgb.rows < 2)
+        return -1;
+
+    prepare_scratch(scratch, rgb.cols, rgb.rows);
+    letterbox_rgb(rgb, scratch, norm_vals);
+    return 0;
+}
+
+int YOLO::preprocess(const YuvPlanes& planes, DetectScratch& scratch) const
+{
+    //色度平面至少需要两列两行才能插值
+    if (planes.width < 4 || planes.height < 4)
+        return -1;
+
+    prepare_scratch(scratch, planes.width, planes.height);
+    letterbox_yuv(planes, scratch, norm_vals);
+    return 0;
+}
+
+int YOLO::forward(const cv::Mat& rgb, DetectScratch& scratch, ncnn::Mat& out) const
+{
+    reset_extractor(scratch);
+
+    int ret = preprocess(rgb, scratch);
+    if (ret != 0)
+        return ret;
+
+    return extract(scratch, out);
+}
+
+int YOLO::forward(const YuvPlanes& planes, DetectScratch& scratch, ncnn::Mat& out) const
+{
+    reset_extractor(scratch);
+
+    int ret = preprocess(planes, scratch);
+    if (ret != 0)
+        return ret;
+
+    return extract(scratch, out);
+}
+
+void YOLO::reset_extractor(DetectScratch& scratch) const
+{
+    if (scratch.net != &yolo)
+    {
+        delete scratch.ex;
+        delete scratch.ex_reset;
+        scratch.ex_reset = new ncnn::Extractor(yolo.create_extractor());
+        scratch.ex_reset->set_blob_allocator(&scratch.blob_allocator);
+        scratch.ex_reset->set_workspace_allocator(&scratch.workspace_allocator);
+        if (scratch.num_threads > 0)
+            scratch.ex_reset->set_num_threads(scratch.num_threads);
+        scratch.ex = new ncnn::Extractor(*scratch.ex_reset);
+        scratch.net = &yolo;
+    }
+
+    //释放上一帧留在 Extractor 中的 blob，必须在改写 in_pad 之前
+    *scratch.ex = *scratch.ex_reset;
+}
+
+int YOLO::extract(DetectScratch& scratch, ncnn::Mat& out) const
+{
+    ncnn::Extractor& ex = *scratch.ex;
+    ex.input("images", scratch.in_pad);
+
+    const int64_t allocations = alloc_counter::thread_count();
+    int ret = ex.extract("output", out);
+    scratch.extract_allocations += alloc_counter::thread_count() - allocations;
+
+    return ret;
+}
+
+int YOLO::postprocess(const ncnn::Mat& out, DetectScratch& scratch, std::vector<Object>& objects, float prob_threshold, float nms_threshold) const
+{
+    const int width = scratch.src_w;
+    const int height = scratch.src_h;
+
+    std::vector<Object>& proposals = scratch.proposals;
+    proposals.clear();
+    scratch.decoder.decode(out, prob_threshold, proposals);
 
     // apply nms with nms_threshold
-    std::vector<int> picked;
-    nms_sorted_bboxes(proposals, picked, nms_threshold);
+    NmsParams params = nms_params;
+    params.iou_threshold = nms_threshold;
+    params.score_threshold = prob_threshold;
+    std::vector<int>& picked = scratch.picked;
+    scratch.nms.run(proposals, picked, params);
 
     int count = picked.size();
 
+    const int wpad = scratch.wpad;
+    const int hpad = scratch.hpad;
+    const float scale = scratch.scale;
+
     objects.resize(count);
     for (int i = 0; i < count; i++)
     {
@@ -339,7 +1054,55 @@ int YOLO::detect(const cv::Mat& rgb, std::vector<Object>& objects, float prob_th
     return 0;
 }
 
-int YOLO::draw(cv::Mat& rgb, const std::vector<Object>& objects)
+void get_label_size(const char* text, int* w, int* h)
+{
+    const GlyphAtlas& atlas = glyph_atlas();
+    *w = (int)strlen(text) * atlas.glyph_w;
+    *h = atlas.glyph_h;
+}
+
+void draw_label(cv::Mat& rgb, const char* text, int x, int y, const unsigned char* background, const unsigned char* foreground)
+{
+    const GlyphAtlas& atlas = glyph_atlas();
+
+    int label_w;
+    int label_h;
+    get_label_size(text, &label_w, &label_h);
+    ncnn::draw_rectangle_c3(rgb.data, rgb.cols, rgb.rows, (int)rgb.step[0], x, y, label_w, label_h, pack_rgb(background), -1);
+
+    const int glyph_size = atlas.glyph_w * atlas.glyph_h;
+    for (const char* p = text; *p; p++, x += atlas.glyph_w)
+    {
+        const int c = (unsigned char)*p;
+        if (c < GlyphAtlas::FIRST || c > GlyphAtlas::LAST)
+            continue;
+
+        const unsigned char* mask = atlas.masks + (c - GlyphAtlas::FIRST) * glyph_size;
+        for (int j = 0; j < atlas.glyph_h; j++)
+        {
+            const int yy = y + j;
+            if (yy < 0 || yy >= rgb.rows)
+                continue;
+
+            unsigned char* row = rgb.ptr<unsigned char>(yy);
+            for (int i = 0; i < atlas.glyph_w; i++)
+            {
+                const int xx = x + i;
+                const int alpha = mask[j * atlas.glyph_w + i];
+                if (xx < 0 || xx >= rgb.cols || alpha == 0)
+                    continue;
+
+                unsigned char* px = row + xx * 3;
+                for (int k = 0; k < 3; k++)
+                {
+                    px[k] = (unsigned char)((px[k] * (255 - alpha) + foreground[k] * alpha) / 255);
+                }
+            }
+        }
+    }
+}
+
+int YOLO::draw(cv::Mat& rgb, const std::vector<Object>& objects) const
 {
     static const char* class_names[] = {
             "person", "bicycle", "car", "motorcycle", "airplane", "bus", "train", "truck", "boat", "traffic light",
@@ -375,6 +1138,9 @@ int YOLO::draw(cv::Mat& rgb, const std::vector<Object>& objects)
             {139, 125,  96}
     };
 
+    static const unsigned char black[3] = {0, 0, 0};
+    static const unsigned char white[3] = {255, 255, 255};
+
     int color_index = 0;
 
     for (size_t i = 0; i < objects.size(); i++)
@@ -387,29 +1153,27 @@ int YOLO::draw(cv::Mat& rgb, const std::vector<Object>& objects)
         const unsigned char* color = colors[color_index % 19];
         color_index++;
 
-        cv::Scalar cc(color[0], color[1], color[2]);
-
-        cv::rectangle(rgb, obj.rect, cc, 2);
+        ncnn::draw_rectangle_c3(rgb.data, rgb.cols, rgb.rows, (int)rgb.step[0],
+                                (int)obj.rect.x, (int)obj.rect.y, (int)obj.rect.width, (int)obj.rect.height, pack_rgb(color), 2);
 
         char text[256];
-        sprintf(text, "%s %.1f%%", class_names[obj.label], obj.prob * 100);
+        snprintf(text, sizeof(text), "%s %.1f%%", class_names[obj.label], obj.prob * 100);
 
-        int baseLine = 0;
-        cv::Size label_size = cv::getTextSize(text, cv::FONT_HERSHEY_SIMPLEX, 0.5, 1, &baseLine);
+        int label_w = 0;
+        int label_h = 0;
+        get_label_size(text, &label_w, &label_h);
 
         int x = obj.rect.x;
-        int y = obj.rect.y - label_size.height - baseLine;
+        int y = obj.rect.y - label_h;
         if (y < 0)
             y = 0;
-        if (x + label_size.width > rgb.cols)
-            x = rgb.cols - label_size.width;
+        if (x + label_w > rgb.cols)
+            x = rgb.cols - label_w;
 
-        cv::rectangle(rgb, cv::Rect(cv::Point(x, y), cv::Size(label_size.width, label_size.height + baseLine)), cc, -1);
+        const unsigned char* textcc = (color[0] + color[1] + color[2] >= 381) ? black : white;
 
-        cv::Scalar textcc = (color[0] + color[1] + color[2] >= 381) ? cv::Scalar(0, 0, 0) : cv::Scalar(255, 255, 255);
-
-        cv::putText(rgb, text, cv::Point(x, y + label_size.height), cv::FONT_HERSHEY_SIMPLEX, 0.5, textcc, 1);
+        draw_label(rgb, text, x, y, color, textcc);
     }
 
     return 0;
-}
\ No newline at end of file
+}
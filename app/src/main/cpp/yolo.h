@@ -7,6 +7,10 @@
 #include <opencv2/core/core.hpp>
 
 #include <net.h>
+
+#include "scratch_allocator.h"
+#include "yuv_convert.h"
+
 struct Object {
     cv::Rect_<float> rect;
     int label;
@@ -18,21 +22,199 @@ struct GridAndStride {
     int stride;
 };
 
+enum NmsMethod {
+    NMS_AUTO = 0,     //候选数达到 bucket_min_candidates 时用分桶，否则用贪心
+    NMS_GREEDY = 1,   //按分数依次保留，与已保留框 IoU 超过阈值的候选被抑制
+    NMS_BUCKETED = 2, //结果与贪心相同，只和空间网格中相邻的已保留框比较
+    NMS_SOFT = 3,     //Gaussian Soft-NMS，重叠候选按 IoU 衰减分数而不是直接删除
+};
+
+struct NmsParams {
+    NmsParams();
+
+    NmsMethod method;
+    float iou_threshold;
+    float score_threshold;     //Soft-NMS 衰减后低于该分数的候选被丢弃
+    bool class_aware;          //只在同类别之间抑制
+    int top_k;                 //排序时只保留分数最高的 top_k 个候选，<= 0 表示不限制
+    int bucket_min_candidates; //NMS_AUTO 切换到分桶的候选数
+    float soft_sigma;
+};
+
+//非极大值抑制，内部缓冲跨帧复用
+class NmsEngine {
+public:
+    //预留 n 个候选所需的缓冲
+    void reserve(int n);
+    //按分数降序重排 proposals(超过 top_k 时截断)，picked 返回保留框的下标
+    //Soft-NMS 会把保留框的 prob 改写为衰减后的分数
+    void run(std::vector<Object>& proposals, std::vector<int>& picked, const NmsParams& params);
+
+private:
+    void load_boxes(const std::vector<Object>& proposals, bool class_aware);
+    float iou(int a, int b) const;
+    void greedy(int n, std::vector<int>& picked, float iou_threshold);
+    void bucketed(const std::vector<Object>& proposals, std::vector<int>& picked, float iou_threshold);
+    void soft(std::vector<Object>& proposals, std::vector<int>& picked, const NmsParams& params);
+
+    //class_aware 时已加上类别偏移
+    std::vector<float> x0;
+    std::vector<float> y0;
+    std::vector<float> x1;
+    std::vector<float> y1;
+    std::vector<float> areas;
+    std::vector<float> scores;
+    std::vector<int> visit;
+    std::vector<int> cell_head;
+    std::vector<int> entry_box;
+    std::vector<int> entry_next;
+};
+
+//YOLOv8 输出解码引擎：按 padded 输入尺寸缓存网格表，DFL 在行内计算，类别分数在 logit 域比较
+//decode() 只读 pred，不分配内存(proposals 容量足够时)
+class ProposalDecoder {
+public:
+    enum { REG_MAX = 16 };
+
+    ProposalDecoder();
+    //输入尺寸不变时直接复用网格表
+    void prepare(int in_w, int in_h);
+    int num_points() const;
+    //pred 每行为 4 * REG_MAX 个 DFL logit 加 num_class 个类别 logit，超过阈值的候选框追加到 proposals
+    void decode(const ncnn::Mat& pred, float prob_threshold, std::vector<Object>& proposals) const;
+
+private:
+    int in_w;
+    int in_h;
+    std::vector<GridAndStride> grid_strides;
+};
+
+//一次检测所需的全部中间缓冲，由调用方按处理实例持有并跨帧复用
+//输入分辨率不变时，稳定状态下 detect() 不再分配堆内存
+struct DetectScratch {
+    DetectScratch();
+    ~DetectScratch();
+
+    //网络输入的长边，<= 0 时使用 YOLO 加载时的 target_size；修改后在下一帧重建缩放表和 in_pad
+    int target_size;
+
+    //当前缓冲对应的输入分辨率与输入尺寸，变化时重建缩放表和 in_pad
+    int prepared_size;
+    int src_w;
+    int src_h;
+    int w;
+    int h;
+    int wpad;
+    int hpad;
+    float scale;
+
+    //双线性缩放表：目标列/行对应的源像素下标与权重
+    std::vector<int> xofs;
+    std::vector<float> xalpha;
+    std::vector<int> yofs;
+    std::vector<float> yalpha;
+    //YUV420 输入的色度平面缩放表，下标以色度样本计
+    std::vector<int> cxofs;
+    std::vector<float> cxalpha;
+    std::vector<int> cyofs;
+    std::vector<float> cyalpha;
+
+    ncnn::Mat in_pad;
+    ProposalDecoder decoder;
+    std::vector<Object> proposals;
+    std::vector<int> picked;
+    NmsEngine nms;
+    //detect_regions 中单个区域的检测结果
+    std::vector<Object> region_objects;
+
+    //每帧通过拷贝赋值把 ex 恢复为 ex_reset 的初始状态，复用 blob 表而不重新创建 Extractor
+    //多个 DetectScratch 可以同时对同一个 Net 推理，各自持有 Extractor 与分配器
+    const ncnn::Net* net;
+    ncnn::Extractor* ex;
+    ncnn::Extractor* ex_reset;
+    ScratchAllocator blob_allocator;
+    ScratchAllocator workspace_allocator;
+    //该实例推理使用的线程数，<= 0 时沿用 Net 的设置；只在绑定 Extractor 时生效
+    int num_threads;
+
+    //ncnn 推理内部(Extractor::extract)的 operator new 次数，仅在 YOLOV8_ALLOC_COUNTER 构建中有效
+    int64_t extract_allocations;
+
+    //两个 ScratchAllocator 向系统申请内存的总次数
+    int64_t pool_misses() const;
+
+    //释放绑定在 Net 上的 Extractor，所用的 YOLO 即将释放或更换时调用；下一次推理时重新绑定
+    void unbind();
+
+private:
+    DetectScratch(const DetectScratch&);
+    DetectScratch& operator=(const DetectScratch&);
+};
+
 class YOLO {
 public:
     YOLO();
+    ~YOLO();
     int load(int target_size, const float* mean_vals, const float* norm_vals, bool use_gpu = false);
-    int load(AAssetManager* mgr, int target_size, const float* mean_vals, const float* norm_vals, bool use_gpu = false);
+    //从 assets 加载 <model_name>.param 与 <model_name>.bin
+    //.bin 未压缩存放时直接引用 APK 中映射的权重，不再拷贝到堆上；压缩存放时退回流式读取
+    int load(AAssetManager* mgr, const char* model_name, int target_size, const float* mean_vals, const float* norm_vals, bool use_gpu = false);
+    int load(const char* parampath, const char* modelpath, int target_size, const float* mean_vals, const float* norm_vals, bool use_gpu = false);
+    //与上面相同，但以 mmap 映射 modelpath，权重直接引用映射的内存
+    int load_mapped(const char* parampath, const char* modelpath, int target_size, const float* mean_vals, const float* norm_vals, bool use_gpu = false);
+    //权重是否引用映射的内存；ncnn 在创建各层计算管线时重排过的权重仍是堆上的副本
+    bool weights_mapped() const;
+    //加载时指定的输入尺寸，DetectScratch::target_size 未设置时使用
+    int get_target_size() const;
     int detect(const cv::Mat& rgb, std::vector<Object>& objects, float prob_threshold = 0.4f, float nms_threshold = 0.5f);
-    int draw(cv::Mat& rgb, const std::vector<Object>& objects);
+    //只读取已加载的网络，不同线程使用各自的 scratch 时可以并发调用
+    int detect(const cv::Mat& rgb, std::vector<Object>& objects, DetectScratch& scratch, float prob_threshold = 0.4f, float nms_threshold = 0.5f) const;
+    //直接以解码器输出的 YUV420 平面为输入，缩放、颜色转换与归一化在一次遍历中完成
+    int detect(const YuvPlanes& planes, std::vector<Object>& objects, DetectScratch& scratch, float prob_threshold = 0.4f, float nms_threshold = 0.5f) const;
+    //在原图的若干区域上分别检测，结果映射回原图坐标后再做一次 NMS 合并，用于只关注已知目标附近的画面
+    //区域左上角按色度采样对齐到偶数像素；区域不大于 target_size 时以原始分辨率推理
+    int detect_regions(const YuvPlanes& planes, const std::vector<cv::Rect>& regions, std::vector<Object>& objects, DetectScratch& scratch, float prob_threshold = 0.4f, float nms_threshold = 0.5f) const;
+    //只生成 letterbox 后的归一化输入 scratch.in_pad，不运行网络
+    int preprocess(const cv::Mat& rgb, DetectScratch& scratch) const;
+    int preprocess(const YuvPlanes& planes, DetectScratch& scratch) const;
+    //detect 的两个阶段：预处理并运行网络，得到 [num_points, 4 * REG_MAX + num_class] 的原始输出
+    int forward(const cv::Mat& rgb, DetectScratch& scratch, ncnn::Mat& out) const;
+    int forward(const YuvPlanes& planes, DetectScratch& scratch, ncnn::Mat& out) const;
+    //把原始输出解码为原图坐标系下的检测结果，scratch 必须是产生 out 的那一次 forward 所用的
+    int postprocess(const ncnn::Mat& out, DetectScratch& scratch, std::vector<Object>& objects, float prob_threshold = 0.4f, float nms_threshold = 0.5f) const;
+    int draw(cv::Mat& rgb, const std::vector<Object>& objects) const;
+    //默认按类别做 NMS，候选较多时自动切换到分桶实现；只能在没有检测进行时调用
+    void set_nms_params(const NmsParams& params);
+    //只设置输入尺寸与归一化参数，供不加载模型的预处理基准使用
+    void set_input(int target_size, const float* mean_vals, const float* norm_vals);
 
 private:
+    YOLO(const YOLO&);
+    YOLO& operator=(const YOLO&);
+
+    void prepare_net(bool use_gpu);
+    //从映射的内存加载权重，数据需 4 字节对齐；失败时返回 -1，由调用方释放映射
+    int load_model_mapped(const unsigned char* data, size_t size);
+    void release_weights();
+    void prepare_scratch(DetectScratch& scratch, int width, int height) const;
+    void reset_extractor(DetectScratch& scratch) const;
+    int extract(DetectScratch& scratch, ncnn::Mat& out) const;
+
     ncnn::Net yolo;
     int target_size;
     float mean_vals[3];
     float norm_vals[3];
-    ncnn::UnlockedPoolAllocator blob_pool_allocator;
-    ncnn::PoolAllocator workspace_pool_allocator;
+    NmsParams nms_params;
+    DetectScratch default_scratch;
+
+    //Net 引用着映射的权重，必须在 Net 清空之后才能关闭
+    AAsset* weights_asset;
+    void* weights_map;
+    size_t weights_map_size;
 };
 
+//使用预渲染的字形表在 RGB 图像上绘制带底色的文字标签，不分配内存
+void get_label_size(const char* text, int* w, int* h);
+void draw_label(cv::Mat& rgb, const char* text, int x, int y, const unsigned char* background, const unsigned char* foreground);
+
 #endif //YOLOV8_YOLO_H
@@ -0,0 +1,926 @@
+//在设备上运行的命令行基准工具，不依赖 JNI
+//构建时打开 -DYOLOV8_BUILD_BENCHMARK=ON，adb push 到 /data/local/tmp 后运行：
+//
+//  yolov8_bench record <model.param> <model.bin> <frame.nv12> <width> <height> <out.tensor> [target_size]
+//      用一帧紧密排列的 NV12 原始数据跑一次网络，把输出张量连同输入尺寸保存下来
+//  yolov8_bench postprocess <out.tensor> [loops]
+//      在保存的输出张量上比较旧的候选框解码方式与 ProposalDecoder 的每帧耗时
+//  yolov8_bench nms [max_candidates]
+//      在合成的成簇候选框上按候选数比较各种 NMS 实现
+//  yolov8_bench preprocess [loops] [target_size]
+//      在合成的 NV12/I420 帧上按分辨率比较 RGB 转换 + 缩放 + 归一化与融合的 YUV letterbox
+//  yolov8_bench tiles <model.param> <model.bin> <frame.nv12> <width> <height> [loops] [lanes]
+//      在一帧 NV12 原始数据上按切片边长与重叠比例比较切片推理的吞吐量与检测数，并与整帧推理对照
+//  yolov8_bench seams
+//      不加载模型，用构造的切片检测结果检查接缝处被截断的框合并与重叠带内按类别去重，失败时返回 1
+//  yolov8_bench load <model.param> <model.bin> <copy|mapped> [loops]
+//      比较流式拷贝与 mmap 引用两种方式加载权重的耗时和常驻内存，两种方式各用一个进程运行，RSS 才不会互相干扰
+
+#include <float.h>
+#include <math.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include <algorithm>
+#include <random>
+#include <vector>
+
+#include <benchmark.h>
+#include <cpu.h>
+#include <layer.h>
+#include <net.h>
+
+#include <opencv2/core/core.hpp>
+
+#include "memory_usage.h"
+#include "tiled_detector.h"
+#include "yolo.h"
+#include "yuv_convert.h"
+
+static const int TENSOR_MAGIC = 0x54303859; // "Y80T"
+
+//保存的输出张量：magic, in_pad 宽高, out 宽高, 然后是 out.h 行 out.w 列 float
+struct RecordedTensor {
+    int in_w = 0;
+    int in_h = 0;
+    ncnn::Mat out;
+};
+
+static bool read_file(const char* path, std::vector<unsigned char>& data)
+{
+    FILE* fp = fopen(path, "rb");
+    if (!fp)
+    {
+        fprintf(stderr, "open %s failed\n", path);
+        return false;
+    }
+    fseek(fp, 0, SEEK_END);
+    long size = ftell(fp);
+    fseek(fp, 0, SEEK_SET);
+    data.resize(size > 0 ? size : 0);
+    bool ok = size > 0 && fread(data.data(), 1, size, fp) == (size_t)size;
+    fclose(fp);
+    return ok;
+}
+
+static bool save_tensor(const char* path, const RecordedTensor& t)
+{
+    FILE* fp = fopen(path, "wb");
+    if (!fp)
+    {
+        fprintf(stderr, "open %s failed\n", path);
+        return false;
+    }
+    const int header[5] = {TENSOR_MAGIC, t.in_w, t.in_h, t.out.w, t.out.h};
+    bool ok = fwrite(header, sizeof(header), 1, fp) == 1;
+    for (int i = 0; ok && i < t.out.h; i++)
+    {
+        ok = fwrite(t.out.row(i), sizeof(float), t.out.w, fp) == (size_t)t.out.w;
+    }
+    fclose(fp);
+    return ok;
+}
+
+static bool load_tensor(const char* path, RecordedTensor& t)
+{
+    std::vector<unsigned char> data;
+    if (!read_file(path, data) || data.size() < sizeof(int) * 5)
+        return false;
+
+    int header[5];
+    memcpy(header, data.data(), sizeof(header));
+    if (header[0] != TENSOR_MAGIC || data.size() != sizeof(header) + (size_t)header[3] * header[4] * sizeof(float))
+    {
+        fprintf(stderr, "%s is not a recorded tensor\n", path);
+        return false;
+    }
+    t.in_w = header[1];
+    t.in_h = header[2];
+    t.out.create(header[3], header[4]);
+    memcpy(t.out.data, data.data() + sizeof(header), (size_t)header[3] * header[4] * sizeof(float));
+    return true;
+}
+
+static int record(int argc, char** argv)
+{
+    if (argc < 8)
+        return -1;
+
+    const char* parampath = argv[2];
+    const char* modelpath = argv[3];
+    const char* framepath = argv[4];
+    const int width = atoi(argv[5]);
+    const int height = atoi(argv[6]);
+    const char* outpath = argv[7];
+    const int target_size = argc > 8 ? atoi(argv[8]) : 320;
+
+    std::vector<unsigned char> frame;
+    if (!read_file(framepath, frame) || frame.size() < (size_t)width * height * 3 / 2)
+    {
+        fprintf(stderr, "%s is not a %dx%d nv12 frame\n", framepath, width, height);
+        return 1;
+    }
+
+    const float mean_vals[3] = {103.53f, 116.28f, 123.675f};
+    const float norm_vals[3] = {1 / 255.f, 1 / 255.f, 1 / 255.f};
+    YOLO yolo;
+    if (yolo.load(parampath, modelpath, target_size, mean_vals, norm_vals) != 0)
+    {
+        fprintf(stderr, "load %s %s failed\n", parampath, modelpath);
+        return 1;
+    }
+
+    cv::Mat rgb;
+    yuv420_to_rgb(yuv_planes_from_buffer(frame.data(), width, height, width, height, COLOR_FormatYUV420SemiPlanar), rgb);
+
+    DetectScratch scratch;
+    RecordedTensor t;
+    if (yolo.forward(rgb, scratch, t.out) != 0)
+    {
+        fprintf(stderr, "forward failed\n");
+        return 1;
+    }
+    t.in_w = scratch.in_pad.w;
+    t.in_h = scratch.in_pad.h;
+    if (!save_tensor(outpath, t))
+        return 1;
+
+    fprintf(stdout, "recorded %d x %d output for %d x %d input to %s\n", t.out.w, t.out.h, t.in_w, t.in_h, outpath);
+    return 0;
+}
+
+//旧实现：每帧重建网格表并按值传递，每个超过阈值的点都创建一次 Softmax 层
+namespace reference {
+
+static float fast_exp(float x)
+{
+    union {
+        uint32_t i;
+        float f;
+    } v{};
+    v.i = (1 << 23) * (1.4426950409 * x + 126.93490512f);
+    return v.f;
+}
+
+static float sigmoid(float x)
+{
+    return 1.0f / (1.0f + fast_exp(-x));
+}
+
+static void generate_grids_and_stride(const int target_w, const int target_h, std::vector<int>& strides, std::vector<GridAndStride>& grid_strides)
+{
+    for (int i = 0; i < (int)strides.size(); i++)
+    {
+        int stride = strides[i];
+        int num_grid_w = target_w / stride;
+        int num_grid_h = target_h / stride;
+        for (int g1 = 0; g1 < num_grid_h; g1++)
+        {
+            for (int g0 = 0; g0 < num_grid_w; g0++)
+            {
+                GridAndStride gs;
+                gs.grid0 = g0;
+                gs.grid1 = g1;
+                gs.stride = stride;
+                grid_strides.push_back(gs);
+            }
+        }
+    }
+}
+
+static void generate_proposals(std::vector<GridAndStride> grid_strides, const ncnn::Mat& pred, float prob_threshold, std::vector<Object>& objects)
+{
+    const int num_points = grid_strides.size();
+    const int num_class = 80;
+    const int reg_max_1 = 16;
+
+    for (int i = 0; i < num_points; i++)
+    {
+        const float* scores = pred.row(i) + 4 * reg_max_1;
+
+        int label = -1;
+        float score = -FLT_MAX;
+        for (int k = 0; k < num_class; k++)
+        {
+            float confidence = scores[k];
+            if (confidence > score)
+            {
+                label = k;
+                score = confidence;
+            }
+        }
+        float box_prob = sigmoid(score);
+        if (box_prob >= prob_threshold)
+        {
+            ncnn::Mat bbox_pred(reg_max_1, 4, (void*)pred.row(i));
+            {
+                ncnn::Layer* softmax = ncnn::create_layer("Softmax");
+
+                ncnn::ParamDict pd;
+                pd.set(0, 1); // axis
+                pd.set(1, 1);
+                softmax->load_param(pd);
+
+                ncnn::Option opt;
+                opt.num_threads = 1;
+                opt.use_packing_layout = false;
+
+                softmax->create_pipeline(opt);
+
+                softmax->forward_inplace(bbox_pred, opt);
+
+                softmax->destroy_pipeline(opt);
+
+                delete softmax;
+            }
+
+            float pred_ltrb[4];
+            for (int k = 0; k < 4; k++)
+            {
+                float dis = 0.f;
+                const float* dis_after_sm = bbox_pred.row(k);
+                for (int l = 0; l < reg_max_1; l++)
+                {
+                    dis += l * dis_after_sm[l];
+                }
+
+                pred_ltrb[k] = dis * grid_strides[i].stride;
+            }
+
+            float pb_cx = (grid_strides[i].grid0 + 0.5f) * grid_strides[i].stride;
+            float pb_cy = (grid_strides[i].grid1 + 0.5f) * grid_strides[i].stride;
+
+            Object obj;
+            obj.rect.x = pb_cx - pred_ltrb[0];
+            obj.rect.y = pb_cy - pred_ltrb[1];
+            obj.rect.width = pred_ltrb[0] + pred_ltrb[2];
+            obj.rect.height = pred_ltrb[1] + pred_ltrb[3];
+            obj.label = label;
+            obj.prob = box_prob;
+
+            objects.push_back(obj);
+        }
+    }
+}
+
+static float intersection_area(const Object& a, const Object& b)
+{
+    cv::Rect_<float> inter = a.rect & b.rect;
+    return inter.area();
+}
+
+static void qsort_descent_inplace(std::vector<Object>& faceobjects, int left, int right)
+{
+    int i = left;
+    int j = right;
+    float p = faceobjects[(left + right) / 2].prob;
+    while (i <= j)
+    {
+        while (faceobjects[i].prob > p) i++;
+        while (faceobjects[j].prob < p) j--;
+        if (i <= j)
+        {
+            std::swap(faceobjects[i], faceobjects[j]);
+            i++;
+            j--;
+        }
+    }
+
+    if (left < j) qsort_descent_inplace(faceobjects, left, j);
+    if (i < right) qsort_descent_inplace(faceobjects, i, right);
+}
+
+static void nms_sorted_bboxes(const std::vector<Object>& faceobjects, std::vector<int>& picked, float nms_threshold)
+{
+    picked.clear();
+
+    const int n = faceobjects.size();
+
+    std::vector<float> areas(n);
+    for (int i = 0; i < n; i++)
+    {
+        areas[i] = faceobjects[i].rect.width * faceobjects[i].rect.height;
+    }
+
+    for (int i = 0; i < n; i++)
+    {
+        const Object& a = faceobjects[i];
+
+        int keep = 1;
+        for (int j = 0; j < (int)picked.size(); j++)
+        {
+            const Object& b = faceobjects[picked[j]];
+
+            float inter_area = intersection_area(a, b);
+            float union_area = areas[i] + areas[picked[j]] - inter_area;
+            if (inter_area / union_area > nms_threshold)
+                keep = 0;
+        }
+
+        if (keep)
+            picked.push_back(i);
+    }
+}
+
+} // namespace reference
+
+struct Timing {
+    double total = 0;
+    double min = DBL_MAX;
+    int loops = 0;
+
+    void add(double ms)
+    {
+        total += ms;
+        min = std::min(min, ms);
+        loops++;
+    }
+    double avg() const
+    {
+        return loops ? total / loops : 0;
+    }
+};
+
+static int postprocess(int argc, char** argv)
+{
+    if (argc < 3)
+        return -1;
+
+    RecordedTensor t;
+    if (!load_tensor(argv[2], t))
+        return 1;
+    const int loops = argc > 3 ? std::max(1, atoi(argv[3])) : 200;
+    const float prob_threshold = 0.4f;
+
+    Timing before;
+    size_t before_count = 0;
+    for (int i = 0; i < loops; i++)
+    {
+        //旧实现会就地改写 DFL 部分，每次都从原始张量开始
+        ncnn::Mat pred = t.out.clone();
+        std::vector<Object> proposals;
+
+        double start = ncnn::get_current_time();
+        std::vector<int> strides = {8, 16, 32};
+        std::vector<GridAndStride> grid_strides;
+        reference::generate_grids_and_stride(t.in_w, t.in_h, strides, grid_strides);
+        reference::generate_proposals(grid_strides, pred, prob_threshold, proposals);
+        before.add(ncnn::get_current_time() - start);
+        before_count = proposals.size();
+    }
+
+    ProposalDecoder decoder;
+    std::vector<Object> proposals;
+    Timing after;
+    for (int i = 0; i < loops; i++)
+    {
+        proposals.clear();
+
+        double start = ncnn::get_current_time();
+        decoder.prepare(t.in_w, t.in_h);
+        decoder.decode(t.out, prob_threshold, proposals);
+        after.add(ncnn::get_current_time() - start);
+    }
+
+    fprintf(stdout, "postprocess %dx%d input, %d points, threshold %.2f, %d loops\n",
+            t.in_w, t.in_h, t.out.h, prob_threshold, loops);
+    fprintf(stdout, "  reference       avg %8.4f ms  min %8.4f ms  proposals %zu\n", before.avg(), before.min, before_count);
+    fprintf(stdout, "  ProposalDecoder avg %8.4f ms  min %8.4f ms  proposals %zu\n", after.avg(), after.min, proposals.size());
+    fprintf(stdout, "  speedup %.2fx\n", after.avg() > 0 ? before.avg() / after.avg() : 0.0);
+    return 0;
+}
+
+//围绕若干真实目标抖动生成候选框，模拟拥挤场景下低阈值时的网络输出
+static void synthesize_candidates(int count, std::vector<Object>& candidates)
+{
+    std::mt19937 rng(count);
+    std::uniform_real_distribution<float> unit(0.f, 1.f);
+
+    const int num_targets = std::max(1, count / 15);
+    std::vector<Object> targets(num_targets);
+    for (int i = 0; i < num_targets; i++)
+    {
+        const float w = 12.f + unit(rng) * 150.f;
+        const float h = 12.f + unit(rng) * 150.f;
+        targets[i].rect = cv::Rect_<float>(unit(rng) * (640.f - w), unit(rng) * (640.f - h), w, h);
+        targets[i].label = (int)(unit(rng) * 80) % 80;
+    }
+
+    candidates.resize(count);
+    for (int i = 0; i < count; i++)
+    {
+        const Object& t = targets[(int)(unit(rng) * num_targets) % num_targets];
+        const float jitter = 0.15f;
+        Object& c = candidates[i];
+        c.rect.x = t.rect.x + (unit(rng) - 0.5f) * jitter * t.rect.width;
+        c.rect.y = t.rect.y + (unit(rng) - 0.5f) * jitter * t.rect.height;
+        c.rect.width = t.rect.width * (1.f + (unit(rng) - 0.5f) * jitter);
+        c.rect.height = t.rect.height * (1.f + (unit(rng) - 0.5f) * jitter);
+        //少量候选被分到相邻类别
+        c.label = unit(rng) < 0.1f ? (t.label + 1) % 80 : t.label;
+        c.prob = 0.25f + unit(rng) * 0.75f;
+    }
+}
+
+static int nms(int argc, char** argv)
+{
+    const int max_candidates = argc > 2 ? std::max(1, atoi(argv[2])) : 10000;
+    static const int counts[] = {100, 300, 1000, 3000, 10000, 30000};
+
+    struct Variant {
+        const char* name;
+        NmsMethod method;
+        bool class_aware;
+        int top_k;
+    };
+    static const Variant variants[] = {
+        {"greedy", NMS_GREEDY, false, 0},
+        {"batched", NMS_GREEDY, true, 0},
+        {"bucketed", NMS_BUCKETED, true, 0},
+        {"soft", NMS_SOFT, true, 0},
+        {"auto+top1000", NMS_AUTO, true, 1000},
+    };
+
+    fprintf(stdout, "%8s %-14s %10s %10s %8s\n", "count", "method", "avg ms", "min ms", "kept");
+
+    std::vector<Object> candidates;
+    std::vector<Object> proposals;
+    std::vector<int> picked;
+    NmsEngine engine;
+    for (int c = 0; c < (int)(sizeof(counts) / sizeof(counts[0])) && counts[c] <= max_candidates; c++)
+    {
+        const int count = counts[c];
+        synthesize_candidates(count, candidates);
+        const int loops = std::max(3, std::min(200, 300000 / count));
+
+        Timing reference_timing;
+        for (int i = 0; i < loops; i++)
+        {
+            proposals = candidates;
+            double start = ncnn::get_current_time();
+            reference::qsort_descent_inplace(proposals, 0, (int)proposals.size() - 1);
+            reference::nms_sorted_bboxes(proposals, picked, 0.5f);
+            reference_timing.add(ncnn::get_current_time() - start);
+        }
+        fprintf(stdout, "%8d %-14s %10.4f %10.4f %8zu\n", count, "reference", reference_timing.avg(), reference_timing.min, picked.size());
+
+        for (size_t v = 0; v < sizeof(variants) / sizeof(variants[0]); v++)
+        {
+            //Soft-NMS 为 O(n^2)，候选过多时跳过
+            if (variants[v].method == NMS_SOFT && count > 3000)
+                continue;
+
+            NmsParams params;
+            params.method = variants[v].method;
+            params.class_aware = variants[v].class_aware;
+            params.top_k = variants[v].top_k;
+            params.iou_threshold = 0.5f;
+            params.score_threshold = 0.25f;
+
+            Timing timing;
+            for (int i = 0; i < loops; i++)
+            {
+                proposals = candidates;
+                double start = ncnn::get_current_time();
+                engine.run(proposals, picked, params);
+                timing.add(ncnn::get_current_time() - start);
+            }
+            fprintf(stdout, "%8d %-14s %10.4f %10.4f %8zu\n", count, variants[v].name, timing.avg(), timing.min, picked.size());
+        }
+    }
+    return 0;
+}
+
+//合成一帧带渐变与色块的 YUV420 数据，紧密排列
+static void synthesize_yuv(int width, int height, int color_format, std::vector<unsigned char>& data)
+{
+    const int cw = width / 2;
+    const int ch = height / 2;
+    data.resize((size_t)width * height + (size_t)cw * ch * 2);
+    unsigned char* y = data.data();
+    for (int j = 0; j < height; j++)
+    {
+        for (int i = 0; i < width; i++)
+        {
+            y[(size_t)j * width + i] = (unsigned char)(16 + (i * 7 + j * 3) % 220);
+        }
+    }
+
+    unsigned char* chroma = y + (size_t)width * height;
+    for (int j = 0; j < ch; j++)
+    {
+        for (int i = 0; i < cw; i++)
+        {
+            const unsigned char u = (unsigned char)(64 + (i / 16 * 37) % 128);
+            const unsigned char v = (unsigned char)(64 + (j / 16 * 53) % 128);
+            if (color_format == COLOR_FormatYUV420SemiPlanar)
+            {
+                chroma[(size_t)j * width + i * 2] = u;
+                chroma[(size_t)j * width + i * 2 + 1] = v;
+            }
+            else
+            {
+                chroma[(size_t)j * cw + i] = u;
+                chroma[(size_t)cw * ch + (size_t)j * cw + i] = v;
+            }
+        }
+    }
+}
+
+//修改前的预处理：全分辨率转 RGB，再 from_pixels_resize + copy_make_border + substract_mean_normalize
+static void reference_preprocess(const YuvPlanes& planes, cv::Mat& rgb, int target_size, const float* norm_vals, ncnn::Mat& in_pad)
+{
+    yuv420_to_rgb(planes, rgb);
+
+    const int width = rgb.cols;
+    const int height = rgb.rows;
+    int w = width;
+    int h = height;
+    float scale = 1.f;
+    if (w > h)
+    {
+        scale = (float)target_size / w;
+        w = target_size;
+        h = h * scale;
+    }
+    else
+    {
+        scale = (float)target_size / h;
+        h = target_size;
+        w = w * scale;
+    }
+
+    ncnn::Mat in = ncnn::Mat::from_pixels_resize(rgb.data, ncnn::Mat::PIXEL_RGB2BGR, width, height, w, h);
+    int wpad = (w + 31) / 32 * 32 - w;
+    int hpad = (h + 31) / 32 * 32 - h;
+    ncnn::copy_make_border(in, in_pad, hpad / 2, hpad - hpad / 2, wpad / 2, wpad - wpad / 2, ncnn::BORDER_CONSTANT, 0.f);
+    in_pad.substract_mean_normalize(0, norm_vals);
+}
+
+//两个输入张量之间的最大差值，换算回 0~255 的像素单位
+static float max_pixel_diff(const ncnn::Mat& a, const ncnn::Mat& b, const float* norm_vals)
+{
+    if (a.w != b.w || a.h != b.h || a.c != b.c)
+        return FLT_MAX;
+
+    float diff = 0.f;
+    for (int q = 0; q < a.c; q++)
+    {
+        const float* pa = a.channel(q);
+        const float* pb = b.channel(q);
+        for (int i = 0; i < a.w * a.h; i++)
+        {
+            diff = std::max(diff, fabsf(pa[i] - pb[i]) / norm_vals[q]);
+        }
+    }
+    return diff;
+}
+
+static int preprocess(int argc, char** argv)
+{
+    const int loops = argc > 2 ? std::max(1, atoi(argv[2])) : 50;
+    const int target_size = argc > 3 ? atoi(argv[3]) : 320;
+    static const int sizes[][2] = {{640, 360}, {1280, 720}, {1920, 1080}, {3840, 2160}};
+
+    struct Format {
+        const char* name;
+        int color_format;
+    };
+    static const Format formats[] = {
+        {"nv12", COLOR_FormatYUV420SemiPlanar},
+        {"i420", COLOR_FormatYUV420Planar},
+    };
+
+    const float mean_vals[3] = {103.53f, 116.28f, 123.675f};
+    const float norm_vals[3] = {1 / 255.f, 1 / 255.f, 1 / 255.f};
+    YOLO yolo;
+    yolo.set_input(target_size, mean_vals, norm_vals);
+
+    fprintf(stdout, "preprocess to %d, %d loops\n", target_size, loops);
+    fprintf(stdout, "%10s %-6s %12s %12s %12s %9s %9s\n", "size", "format", "reference ms", "rgb ms", "fused ms", "speedup", "max diff");
+
+    std::vector<unsigned char> data;
+    cv::Mat rgb;
+    ncnn::Mat reference_pad;
+    DetectScratch scratch;
+    for (size_t s = 0; s < sizeof(sizes) / sizeof(sizes[0]); s++)
+    {
+        const int width = sizes[s][0];
+        const int height = sizes[s][1];
+        for (size_t f = 0; f < sizeof(formats) / sizeof(formats[0]); f++)
+        {
+            synthesize_yuv(width, height, formats[f].color_format, data);
+            const YuvPlanes planes = yuv_planes_from_buffer(data.data(), width, height, width, height, formats[f].color_format);
+
+            Timing reference_timing;
+            for (int i = 0; i < loops; i++)
+            {
+                double start = ncnn::get_current_time();
+                reference_preprocess(planes, rgb, target_size, norm_vals, reference_pad);
+                reference_timing.add(ncnn::get_current_time() - start);
+            }
+
+            //全分辨率 RGB 仍然生成，只把缩放、填充与归一化合为一次遍历
+            Timing rgb_timing;
+            for (int i = 0; i < loops; i++)
+            {
+                double start = ncnn::get_current_time();
+                yuv420_to_rgb(planes, rgb);
+                yolo.preprocess(rgb, scratch);
+                rgb_timing.add(ncnn::get_current_time() - start);
+            }
+
+            Timing fused_timing;
+            for (int i = 0; i < loops; i++)
+            {
+                double start = ncnn::get_current_time();
+                yolo.preprocess(planes, scratch);
+                fused_timing.add(ncnn::get_current_time() - start);
+            }
+
+            char size[32];
+            snprintf(size, sizeof(size), "%dx%d", width, height);
+            fprintf(stdout, "%10s %-6s %12.4f %12.4f %12.4f %8.2fx %9.2f\n", size, formats[f].name,
+                    reference_timing.avg(), rgb_timing.avg(), fused_timing.avg(),
+                    fused_timing.avg() > 0 ? reference_timing.avg() / fused_timing.avg() : 0.0,
+                    max_pixel_diff(reference_pad, scratch.in_pad, norm_vals));
+        }
+    }
+    return 0;
+}
+
+static int tiles(int argc, char** argv)
+{
+    if (argc < 7)
+        return -1;
+
+    const char* parampath = argv[2];
+    const char* modelpath = argv[3];
+    const char* framepath = argv[4];
+    const int width = atoi(argv[5]);
+    const int height = atoi(argv[6]);
+    const int loops = argc > 7 ? std::max(1, atoi(argv[7])) : 10;
+    const int lanes = argc > 8 ? std::max(1, atoi(argv[8])) : ncnn::get_big_cpu_count();
+
+    std::vector<unsigned char> frame;
+    if (!read_file(framepath, frame) || frame.size() < (size_t)width * height * 3 / 2)
+    {
+        fprintf(stderr, "%s is not a %dx%d nv12 frame\n", framepath, width, height);
+        return 1;
+    }
+    const YuvPlanes planes = yuv_planes_from_buffer(frame.data(), width, height, width, height, COLOR_FormatYUV420SemiPlanar);
+
+    const float mean_vals[3] = {103.53f, 116.28f, 123.675f};
+    const float norm_vals[3] = {1 / 255.f, 1 / 255.f, 1 / 255.f};
+    YOLO yolo;
+    if (yolo.load(parampath, modelpath, 320, mean_vals, norm_vals) != 0)
+    {
+        fprintf(stderr, "load %s %s failed\n", parampath, modelpath);
+        return 1;
+    }
+
+    fprintf(stdout, "tiles on %dx%d, %d lanes, %d loops\n", width, height, lanes, loops);
+    fprintf(stdout, "%-22s %6s %10s %10s %8s %8s\n", "mode", "tiles", "avg ms", "min ms", "fps", "objects");
+
+    //对照：整帧缩到 320 与 1280
+    static const int full_sizes[] = {320, 1280};
+    std::vector<Object> objects;
+    for (size_t f = 0; f < sizeof(full_sizes) / sizeof(full_sizes[0]); f++)
+    {
+        DetectScratch scratch;
+        scratch.target_size = full_sizes[f];
+        yolo.detect(planes, objects, scratch);
+        Timing timing;
+        for (int i = 0; i < loops; i++)
+        {
+            double start = ncnn::get_current_time();
+            yolo.detect(planes, objects, scratch);
+            timing.add(ncnn::get_current_time() - start);
+        }
+        char mode[32];
+        snprintf(mode, sizeof(mode), "full %d", full_sizes[f]);
+        fprintf(stdout, "%-22s %6d %10.2f %10.2f %8.2f %8zu\n", mode, 1, timing.avg(), timing.min,
+                timing.avg() > 0 ? 1000.0 / timing.avg() : 0.0, objects.size());
+    }
+
+    static const int tile_sizes[] = {320, 480, 640};
+    static const float overlaps[] = {0.f, 0.1f, 0.2f, 0.3f};
+    TiledDetector detector(&yolo, lanes, 1);
+    for (size_t t = 0; t < sizeof(tile_sizes) / sizeof(tile_sizes[0]); t++)
+    {
+        for (size_t o = 0; o < sizeof(overlaps) / sizeof(overlaps[0]); o++)
+        {
+            //整帧低分辨率推理只在最常用的 20% 重叠上额外测一次
+            for (int full = 0; full < (overlaps[o] == 0.2f ? 2 : 1); full++)
+            {
+                detector.configure(tile_sizes[t], overlaps[o], full ? 320 : 0);
+                detector.detect(planes, objects);
+                Timing timing;
+                for (int i = 0; i < loops; i++)
+                {
+                    double start = ncnn::get_current_time();
+                    detector.detect(planes, objects);
+                    timing.add(ncnn::get_current_time() - start);
+                }
+                char mode[32];
+                snprintf(mode, sizeof(mode), "tile %d overlap %.1f%s", tile_sizes[t], overlaps[o], full ? " +full" : "");
+                fprintf(stdout, "%-22s %6d %10.2f %10.2f %8.2f %8zu\n", mode, detector.tile_count(), timing.avg(), timing.min,
+                        timing.avg() > 0 ? 1000.0 / timing.avg() : 0.0, objects.size());
+            }
+        }
+    }
+    return 0;
+}
+
+//构造的检测结果：坐标为原图像素，task 为切片下标，等于切片数时表示整帧推理
+struct SeamDetection {
+    int task;
+    int label;
+    float prob;
+    float x, y, w, h;
+};
+
+//按 plan_tiles 切分 width x height 的画面，把 detections 换算到各自切片内再合并
+static void merge_detections(int width, int height, int tile_size, float overlap,
+                             const SeamDetection* detections, int count, std::vector<Object>& objects)
+{
+    std::vector<cv::Rect> tiles;
+    TiledDetector::plan_tiles(width, height, tile_size, overlap, tiles);
+    std::vector<std::vector<Object> > results(tiles.size() + 1);
+    for (int i = 0; i < count; i++)
+    {
+        const SeamDetection& d = detections[i];
+        const cv::Rect tile = d.task < (int)tiles.size() ? tiles[d.task] : cv::Rect(0, 0, width, height);
+        Object obj;
+        obj.label = d.label;
+        obj.prob = d.prob;
+        obj.rect = cv::Rect_<float>(d.x - tile.x, d.y - tile.y, d.w, d.h);
+        results[d.task].push_back(obj);
+    }
+    TileMergeScratch scratch;
+    merge_tile_results(tiles, results, (int)results.size(), width, height, objects, scratch);
+}
+
+static bool same_box(const Object& obj, int label, float prob, float x, float y, float w, float h)
+{
+    return obj.label == label && fabsf(obj.prob - prob) < 1e-6f && fabsf(obj.rect.x - x) < 0.5f && fabsf(obj.rect.y - y) < 0.5f
+            && fabsf(obj.rect.width - w) < 0.5f && fabsf(obj.rect.height - h) < 0.5f;
+}
+
+static void print_objects(const std::vector<Object>& objects)
+{
+    for (size_t i = 0; i < objects.size(); i++)
+    {
+        const Object& obj = objects[i];
+        fprintf(stdout, "    label %d prob %.2f rect %.1f %.1f %.1f %.1f\n", obj.label, obj.prob,
+                obj.rect.x, obj.rect.y, obj.rect.width, obj.rect.height);
+    }
+}
+
+static int seams(int argc, char** argv)
+{
+    //1120x640 的画面按 640 的切片、0.25 的重叠切成 [0, 640) 与 [480, 1120) 两个切片，重叠带为 [480, 640)
+    const int width = 1120;
+    const int height = 640;
+    const int tile_size = 640;
+    const float overlap = 0.25f;
+    int failures = 0;
+    std::vector<Object> objects;
+
+    //目标横跨 [400, 800)，左切片只看到截在右边缘的 [400, 640)，右切片只看到截在左边缘的 [480, 800)，应合并为一个完整的框
+    static const SeamDetection cut[] = {
+        {0, 0, 0.8f, 400, 100, 240, 100},
+        {1, 0, 0.7f, 480, 100, 320, 100},
+    };
+    merge_detections(width, height, tile_size, overlap, cut, 2, objects);
+    const bool cut_ok = objects.size() == 1 && same_box(objects[0], 0, 0.8f, 400, 100, 400, 100);
+    fprintf(stdout, "%-40s %s\n", "box cut by inner tile edge is merged", cut_ok ? "PASS" : "FAIL");
+    if (!cut_ok)
+    {
+        print_objects(objects);
+        failures++;
+    }
+
+    //完整落在重叠带内的目标被两个切片各检出一次，同一位置另有一个其他类别的目标，每个类别应只保留一个框
+    static const SeamDetection band[] = {
+        {0, 0, 0.9f, 520, 300, 80, 80},
+        {1, 0, 0.85f, 524, 302, 80, 80},
+        {1, 2, 0.6f, 522, 301, 80, 80},
+    };
+    merge_detections(width, height, tile_size, overlap, band, 3, objects);
+    bool band_ok = objects.size() == 2;
+    for (size_t i = 0; band_ok && i < objects.size(); i++)
+    {
+        band_ok = objects[i].label == 0 ? same_box(objects[i], 0, 0.9f, 520, 300, 80, 80)
+                : same_box(objects[i], 2, 0.6f, 522, 301, 80, 80);
+    }
+    fprintf(stdout, "%-40s %s\n", "overlap band deduplicated per class", band_ok ? "PASS" : "FAIL");
+    if (!band_ok)
+    {
+        print_objects(objects);
+        failures++;
+    }
+
+    return failures > 0 ? 1 : 0;
+}
+
+static int load(int argc, char** argv)
+{
+    if (argc < 5)
+        return -1;
+
+    const char* parampath = argv[2];
+    const char* modelpath = argv[3];
+    const bool mapped = strcmp(argv[4], "mapped") == 0;
+    if (!mapped && strcmp(argv[4], "copy") != 0)
+        return -1;
+    const int loops = argc > 5 ? std::max(1, atoi(argv[5])) : 10;
+
+    const float mean_vals[3] = {103.53f, 116.28f, 123.675f};
+    const float norm_vals[3] = {1 / 255.f, 1 / 255.f, 1 / 255.f};
+    std::vector<unsigned char> frame((size_t)640 * 360 * 3 / 2, 128);
+    const YuvPlanes planes = yuv_planes_from_buffer(frame.data(), 640, 360, 640, 360, COLOR_FormatYUV420SemiPlanar);
+
+    //第一次加载：冷启动耗时与加载、首次推理之后的常驻内存
+    const MemoryUsage before = read_memory_usage();
+    double start = ncnn::get_current_time();
+    YOLO* yolo = new YOLO();
+    const int ret = mapped ? yolo->load_mapped(parampath, modelpath, 320, mean_vals, norm_vals)
+                           : yolo->load(parampath, modelpath, 320, mean_vals, norm_vals);
+    if (ret != 0)
+    {
+        fprintf(stderr, "load %s %s failed\n", parampath, modelpath);
+        delete yolo;
+        return 1;
+    }
+    const double first_load = ncnn::get_current_time() - start;
+    const MemoryUsage loaded = read_memory_usage();
+    std::vector<Object> objects;
+    DetectScratch scratch;
+    yolo->detect(planes, objects, scratch);
+    const MemoryUsage inferred = read_memory_usage();
+    scratch.unbind();
+    delete yolo;
+
+    //之后的加载文件已在页缓存中，只比较拷贝与引用本身的开销
+    Timing timing;
+    for (int i = 0; i < loops; i++)
+    {
+        start = ncnn::get_current_time();
+        YOLO reload;
+        if (mapped)
+            reload.load_mapped(parampath, modelpath, 320, mean_vals, norm_vals);
+        else
+            reload.load(parampath, modelpath, 320, mean_vals, norm_vals);
+        timing.add(ncnn::get_current_time() - start);
+    }
+
+    fprintf(stdout, "%s weights: first load %.2f ms, reload avg %.2f ms min %.2f ms (%d loops)\n",
+            mapped ? "mapped" : "copied", first_load, timing.avg(), timing.min, loops);
+    fprintf(stdout, "%-16s %10s %10s %10s\n", "RSS KB", "total", "anon", "file");
+    fprintf(stdout, "%-16s %10ld %10ld %10ld\n", "before", before.rss_kb, before.anon_kb, before.file_kb);
+    fprintf(stdout, "%-16s %+10ld %+10ld %+10ld\n", "after load", loaded.rss_kb - before.rss_kb,
+            loaded.anon_kb - before.anon_kb, loaded.file_kb - before.file_kb);
+    fprintf(stdout, "%-16s %+10ld %+10ld %+10ld\n", "after inference", inferred.rss_kb - before.rss_kb,
+            inferred.anon_kb - before.anon_kb, inferred.file_kb - before.file_kb);
+    return 0;
+}
+
+static void usage()
+{
+    fprintf(stderr, "usage:\n");
+    fprintf(stderr, "  yolov8_bench record <model.param> <model.bin> <frame.nv12> <width> <height> <out.tensor> [target_size]\n");
+    fprintf(stderr, "  yolov8_bench postprocess <out.tensor> [loops]\n");
+    fprintf(stderr, "  yolov8_bench nms [max_candidates]\n");
+    fprintf(stderr, "  yolov8_bench preprocess [loops] [target_size]\n");
+    fprintf(stderr, "  yolov8_bench tiles <model.param> <model.bin> <frame.nv12> <width> <height> [loops] [lanes]\n");
+    fprintf(stderr, "  yolov8_bench seams\n");
+    fprintf(stderr, "  yolov8_bench load <model.param> <model.bin> <copy|mapped> [loops]\n");
+}
+
+int main(int argc, char** argv)
+{
+    int ret = -1;
+    if (argc >= 2 && strcmp(argv[1], "record") == 0)
+        ret = record(argc, argv);
+    else if (argc >= 2 && strcmp(argv[1], "postprocess") == 0)
+        ret = postprocess(argc, argv);
+    else if (argc >= 2 && strcmp(argv[1], "nms") == 0)
+        ret = nms(argc, argv);
+    else if (argc >= 2 && strcmp(argv[1], "preprocess") == 0)
+        ret = preprocess(argc, argv);
+    else if (argc >= 2 && strcmp(argv[1], "tiles") == 0)
+        ret = tiles(argc, argv);
+    else if (argc >= 2 && strcmp(argv[1], "seams") == 0)
+        ret = seams(argc, argv);
+    else if (argc >= 2 && strcmp(argv[1], "load") == 0)
+        ret = load(argc, argv);
+
+    if (ret == -1)
+    {
+        usage();
+        return 1;
+    }
+    return ret;
+}
@@ -10,6 +10,12 @@
 
 #include <jni.h>
 
+#include <stdio.h>
+#include <stdlib.h>
+
+#include <algorithm>
+#include <atomic>
+#include <memory>
 #include <string>
 #include <vector>
 
@@ -17,6 +23,15 @@
 #include <benchmark.h>
 
 #include "yolo.h"
+#include "alloc_counter.h"
+#include "cascade_policy.h"
+#include "frame_queue.h"
+#include "memory_usage.h"
+#include "motion_gate.h"
+#include "resolution_controller.h"
+#include "roi_planner.h"
+#include "tiled_detector.h"
+#include "yuv_convert.h"
 #include "net.h"
 #include "cpu.h"
 
@@ -27,13 +42,164 @@
 #define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, TAG, __VA_ARGS__)
 #define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, TAG, __VA_ARGS__)
 
-static int draw_fps(cv::Mat& rgb)
+//采用结构体形式，方便在java与cpp之间实现传参
+struct NativeProcessor;
+
+//改变检测结果的推理模式，任何一位置位时结果不同于默认配置(默认模型、固定输入尺寸、整帧推理)
+enum InferenceMode {
+    MODE_MODEL = 1 << 0, //使用非默认模型，或正在切换模型
+    MODE_RESOLUTION = 1 << 1,
+    MODE_MOTION_GATE = 1 << 2,
+    MODE_CASCADE = 1 << 3,
+    MODE_TILING = 1 << 4,
+    MODE_ROI = 1 << 5,
+};
+
+//推理工作线程，各自持有 Extractor、分配器与中间缓冲，共享同一个只读的 Net
+struct InferenceWorker {
+    NativeProcessor* processor = nullptr;
+    ncnn::Thread* thread = nullptr;
+    //每个候选输入尺寸一份缓冲(Extractor、分配器、缩放表)，切换尺寸时不需要重新分配
+    std::vector<DetectScratch*> scratches;
+    int64_t frames = 0; //该线程处理的帧数，用于判断自己的缓冲是否已预热
+    //已在所有候选尺寸上预热过的帧分辨率，以及预热时丢弃的检测结果
+    int warm_width = 0;
+    int warm_height = 0;
+    std::vector<Object> warm_objects;
+    //区域推理使用独立的缓冲，裁剪尺寸变化时不影响整帧推理的缩放表
+    DetectScratch* roi_scratch = nullptr;
+    std::vector<cv::Rect> regions;
+    //切片推理，未启用时为 nullptr；工作线程的推理线程预算分给各切片通道
+    TiledDetector* tiler = nullptr;
+    //各缓冲当前绑定的模型，与 NativeProcessor::model 不同时在下一帧之前重新绑定
+    std::shared_ptr<const YOLO> model;
+    //级联推理中大模型使用的缓冲及其绑定的模型
+    DetectScratch* cascade_scratch = nullptr;
+    std::shared_ptr<const YOLO> cascade_model;
+
+    ~InferenceWorker()
+    {
+        for (size_t i = 0; i < scratches.size(); i++)
+            delete scratches[i];
+        delete roi_scratch;
+        delete cascade_scratch;
+        delete tiler;
+    }
+};
+
+//每个 VideoProcessor 对应一个实例，Java 侧持有其指针；不同实例之间只共享只读的模型
+struct NativeProcessor {
+    ANativeWindow* window = nullptr; //离线分析实例与 Surface 销毁后没有窗口，渲染阶段改为写出检测结果
+    //Surface 随界面重建，窗口可以在流水线运行时更换；渲染线程持有该锁使用窗口
+    ncnn::Mutex window_lock;
+    //首帧耗时：从创建实例或绑定新 Surface 到第一帧显示的毫秒数，尚未显示时为 -1，不随流水线重新配置清零
+    double bind_time = 0;
+    bool awaiting_first_frame = false; //由 window_lock 保护
+    std::atomic<int64_t> first_frame_ms{-1};
+    //当前模型，与其他实例共享，由 acquire_model 取得；切换模型时整体替换，只能通过 std::atomic_load/atomic_store 访问
+    //工作线程与渲染线程各自持有引用，最后一个引用释放时通过 release_model 归还
+    std::shared_ptr<const YOLO> model;
+    std::string model_name; //由 model_lock 保护
+    ncnn::Mutex model_lock;
+    //后台加载新模型的线程，同一时间只有一个；加载所需的 AssetManager 以全局引用保存
+    //loading_cascade 为 true 时加载的是级联推理的大模型，否则是替换当前模型
+    ncnn::Thread* loader = nullptr;
+    std::atomic<bool> loading{false};
+    std::string loading_name;
+    bool loading_cascade = false;
+    jobject asset_manager = nullptr;
+    AAssetManager* mgr = nullptr;
+    bool use_gpu = false;
+    std::atomic<int64_t> model_switches{0};
+    //当前启用的 InferenceMode，由 set_inference_mode 修改；每次修改推理配置 config_generation 加一，
+    //检测缓存只在没有启用任何模式时使用，并据此判断一次播放期间推理配置是否变化过
+    std::atomic<int> inference_modes{0};
+    std::atomic<int64_t> config_generation{0};
+    //级联推理的大模型，未启用时为空；与 model 一样只能通过 std::atomic_load/atomic_store 访问
+    std::shared_ptr<const YOLO> cascade_model;
+    CascadePolicy cascade;
+    //大模型加载完成后生效的级联推理参数；cascade_pending 在加载期间关闭级联推理时清除，由 model_lock 保护
+    bool cascade_pending = false;
+    float cascade_min_confidence = 0.f;
+    float cascade_max_confidence = 0.f;
+    int cascade_min_uncertain = 0;
+    int cascade_refresh_interval = 0;
+    //保护流水线的重新配置，帧提交与 configurePipelineNative 互斥，只在本实例内竞争
+    ncnn::Mutex lock;
+    // 其他需要的成员变量
+    int surface_width = 0;
+    int surface_height = 0;
+
+    //解码(Java 线程) -> 推理工作线程池 -> 渲染线程，阶段之间用有界队列连接
+    //工作线程按到达顺序依次取帧，完成后经 reorderer 恢复时间戳顺序再进入渲染队列
+    FramePool frame_pool;
+    FrameQueue inference_queue{frame_pool};
+    FrameQueue render_queue{frame_pool};
+    FrameReorderer reorderer{render_queue};
+    ncnn::Mutex dispatch_lock; //保证取帧顺序与派发序号一致
+    std::vector<InferenceWorker*> workers;
+    ncnn::Thread* render_thread = nullptr;
+    //推理的总线程预算(<= 0 时为大核数)平均分给 inference_workers 个工作线程
+    //1 个工作线程 x N 线程延迟最低，N 个工作线程 x 1 线程吞吐量最高
+    int inference_threads = 0;
+    int inference_workers = 1;
+    //自适应输入尺寸：候选尺寸(升序)与每帧推理耗时预算，未配置时固定使用模型加载时的尺寸
+    std::vector<int> target_sizes;
+    float latency_budget_ms = 0.f;
+    ResolutionController resolution;
+    //区域推理：只在已知目标附近的裁剪区域上推理，定期整帧推理发现新目标
+    RoiPlanner roi_planner;
+    //切片推理：切片边长(<= 0 时关闭)、重叠比例与整帧推理的输入尺寸(<= 0 时不做)，启用后不再使用区域推理与自适应尺寸
+    int tile_size = 0;
+    float tile_overlap = 0.f;
+    int tile_full_frame_size = 0;
+    int inference_capacity = 2;
+    DropPolicy inference_policy = BLOCK;
+    int render_capacity = 2;
+    DropPolicy render_policy = BLOCK;
+    std::atomic<int64_t> decoded_frames{0};
+    std::atomic<int64_t> inferred_frames{0};
+    std::atomic<int64_t> rendered_frames{0};
+    std::atomic<int64_t> cached_frames{0};
+    std::atomic<int64_t> skipped_frames{0};
+    std::atomic<int64_t> roi_frames{0};
+    std::atomic<int64_t> tiled_frames{0};
+    std::atomic<int64_t> escalated_frames{0};
+
+    //运动门控：解码阶段判定为静止的帧不推理，渲染阶段沿用上一推理帧的检测结果
+    MotionGate motion_gate;
+    std::vector<Object> last_objects; //只在渲染线程中使用
+
+    //检测缓存命中时，Java 在提交一帧之前通过 setCachedDetectionsNative 给出该帧的检测结果
+    std::vector<Object> cached_objects;
+    int64_t cached_timestamp = -1;
+    bool has_cached_objects = false;
+
+    //渲染阶段的 RGB 帧，只有真正显示的帧才做全分辨率颜色转换
+    cv::Mat render_rgb;
+    //最近 10 帧显示间隔的帧率，只在渲染线程中使用
+    double fps_t0 = 0;
+    float fps_history[10] = {0.f};
+    //检测结果输出文件，由 openOutputNative 打开，渲染线程逐帧写入；播放时用于记录检测缓存
+    FILE* output = nullptr;
+    int64_t output_detections = 0;
+
+    //预热帧之后各阶段的堆分配次数，仅在 YOLOV8_ALLOC_COUNTER 构建中统计
+    //extract_allocations 是 ncnn 推理内部的分配，单独列出，不计入推理阶段
+    std::atomic<int64_t> decode_allocations{0};
+    std::atomic<int64_t> inference_allocations{0};
+    std::atomic<int64_t> render_allocations{0};
+    std::atomic<int64_t> extract_allocations{0};
+};
+
+//帧率按实例统计，只在该实例的渲染线程中调用
+static int draw_fps(NativeProcessor* processor, cv::Mat& rgb)
 {
     // resolve moving average
     float avg_fps = 0.f;
     {
-        static double t0 = 0.f;
-        static float fps_history[10] = {0.f};
+        double& t0 = processor->fps_t0;
+        float* fps_history = processor->fps_history;
 
         double t1 = ncnn::get_current_time();
         if (t0 == 0.f)
@@ -64,170 +230,1137 @@ static int draw_fps(cv::Mat& rgb)
     }
 
     char text[32];
-    sprintf(text, "FPS=%.2f", avg_fps);
+    snprintf(text, sizeof(text), "FPS=%.2f", avg_fps);
 
-    int baseLine = 0;
-    cv::Size label_size = cv::getTextSize(text, cv::FONT_HERSHEY_SIMPLEX, 0.5, 1, &baseLine);
+    int label_w = 0;
+    int label_h = 0;
+    get_label_size(text, &label_w, &label_h);
 
-    int y = 0;
-    int x = rgb.cols - label_size.width;
+    static const unsigned char white[3] = {255, 255, 255};
+    static const unsigned char black[3] = {0, 0, 0};
+    draw_label(rgb, text, rgb.cols - label_w, 0, white, black);
 
-    cv::rectangle(rgb, cv::Rect(cv::Point(x, y), cv::Size(label_size.width, label_size.height + baseLine)),
-                  cv::Scalar(255, 255, 255), -1);
+    return 0;
+}
+//前几帧会按分辨率建立缓冲，不计入稳定状态的分配统计
+static const int64_t ALLOC_WARMUP_FRAMES = 8;
 
-    cv::putText(rgb, text, cv::Point(x, y + label_size.height),
-                cv::FONT_HERSHEY_SIMPLEX, 0.5, cv::Scalar(0, 0, 0));
+static void account_allocations(std::atomic<int64_t>& counter, int64_t frame_index, int64_t allocations)
+{
+    if (frame_index >= ALLOC_WARMUP_FRAMES)
+        counter += allocations;
+}
 
-    return 0;
+//记录一种推理模式的开关，新增的推理模式在其配置函数中调用，检测缓存随之失效
+static void set_inference_mode(NativeProcessor* processor, int mode, bool enabled)
+{
+    if (enabled)
+        processor->inference_modes |= mode;
+    else
+        processor->inference_modes &= ~mode;
+    processor->config_generation++;
 }
-//采用结构体形式，方便在java与cpp之间实现传参
-struct NativeProcessor {
-    ANativeWindow* window = nullptr;
-    YOLO* yolo_detector = nullptr; // 你的YOLO检测器实例
-    // 其他需要的成员变量
-    int surface_width = 0;
-    int surface_height = 0;
+
+//已加载的模型按名称与是否使用 GPU 区分，加载后只读，由所有处理实例共享，引用计数归零时释放
+struct SharedModel {
+    YOLO* yolo = nullptr;
+    std::string name;
+    bool use_gpu = false;
+    int refcount = 0;
 };
+static std::vector<SharedModel> g_models;
+static ncnn::Mutex g_models_lock; //只保护登记表，加载模型时不持有，切换模型时释放旧模型不会等待另一个模型加载
 
-// 全局或静态变量来持有 NativeProcessor 实例 (需要考虑多实例场景)
-static NativeProcessor* g_processor = nullptr;
-static ncnn::Mutex g_lock; // 用于保护对 g_processor 的访问
-extern "C" {
-    JNIEXPORT jlong JNICALL
-    Java_com_example_yolov8_VideoProcessor_initNative(JNIEnv *env, jobject thiz, jobject surface, jobject assetManager, jboolean use_gpu) {
-        ncnn::MutexLockGuard guard(g_lock); //ncnn加锁，防止多线程同时初始化
-        //防止重复初始化
-        if (g_processor) {
-            LOGE("Native processor already initialized!");
-            if (g_processor->window) {
-                ANativeWindow_release(g_processor->window);
-                g_processor->window = nullptr;
+static const char* DEFAULT_MODEL = "yolov8n";
+//输出检测结果的置信度阈值，与 YOLO::detect 的默认值一致
+static const float PROB_THRESHOLD = 0.4f;
+
+static const YOLO* find_model(const std::string& name, bool use_gpu)
+{
+    for (size_t i = 0; i < g_models.size(); i++) {
+        if (g_models[i].name == name && g_models[i].use_gpu == use_gpu) {
+            g_models[i].refcount++;
+            return g_models[i].yolo;
+        }
+    }
+    return nullptr;
+}
+
+static const YOLO* acquire_model(AAssetManager* mgr, const std::string& name, bool use_gpu)
+{
+    {
+        ncnn::MutexLockGuard guard(g_models_lock);
+        if (const YOLO* yolo = find_model(name, use_gpu))
+            return yolo;
+    }
+
+    const int target_size = 320;
+    const float mean_vals[3] = {103.53f, 116.28f, 123.675f};
+    const float norm_vals[3] = {1 / 255.f, 1 / 255.f, 1 / 255.f};
+    //加载yolo模型，记录耗时与常驻内存的变化，权重映射时增长主要在 RssFile
+    const double start = ncnn::get_current_time();
+    const MemoryUsage before = read_memory_usage();
+    YOLO* yolo = new YOLO();
+    if (yolo->load(mgr, name.c_str(), target_size, mean_vals, norm_vals, use_gpu) != 0) {
+        LOGE("Failed to load YOLO model %s", name.c_str());
+        delete yolo;
+        return nullptr;
+    }
+    const MemoryUsage after = read_memory_usage();
+    LOGD("Loaded model %s in %.1fms, %s weights, RSS %+ldKB (anon %+ldKB, file %+ldKB)", name.c_str(),
+         ncnn::get_current_time() - start, yolo->weights_mapped() ? "mapped" : "copied",
+         after.rss_kb - before.rss_kb, after.anon_kb - before.anon_kb, after.file_kb - before.file_kb);
+
+    ncnn::MutexLockGuard guard(g_models_lock);
+    //加载期间另一个实例可能已经加载了同一个模型
+    if (const YOLO* loaded = find_model(name, use_gpu)) {
+        delete yolo;
+        return loaded;
+    }
+    SharedModel model;
+    model.yolo = yolo;
+    model.name = name;
+    model.use_gpu = use_gpu;
+    model.refcount = 1;
+    g_models.push_back(model);
+    return yolo;
+}
+
+static void release_model(const YOLO* yolo)
+{
+    YOLO* unused = nullptr;
+    {
+        ncnn::MutexLockGuard guard(g_models_lock);
+        for (size_t i = 0; i < g_models.size(); i++) {
+            if (g_models[i].yolo == yolo) {
+                if (--g_models[i].refcount == 0) {
+                    unused = g_models[i].yolo;
+                    g_models.erase(g_models.begin() + i);
+                }
+                break;
             }
+        }
+    }
+    delete unused;
+}
 
+//取得共享模型并包装为 shared_ptr，最后一个引用释放时归还
+static std::shared_ptr<const YOLO> acquire_shared_model(AAssetManager* mgr, const std::string& name, bool use_gpu)
+{
+    const YOLO* yolo = acquire_model(mgr, name, use_gpu);
+    if (!yolo)
+        return std::shared_ptr<const YOLO>();
+    return std::shared_ptr<const YOLO>(yolo, release_model);
+}
+
+static std::shared_ptr<const YOLO> current_model(NativeProcessor* processor)
+{
+    return std::atomic_load(&processor->model);
+}
+
+//在合成的灰色帧上推理一次，使新模型的权重换入内存、各层的首次初始化在后台完成
+//target_size <= 0 时使用模型默认尺寸，num_threads <= 0 时使用 Net 的线程数
+static void warm_up_model(const YOLO* yolo, int target_size, int num_threads)
+{
+    const int width = 640;
+    const int height = 360;
+    std::vector<uint8_t> frame((size_t)width * height * 3 / 2, 128);
+    DetectScratch scratch;
+    scratch.target_size = target_size;
+    scratch.num_threads = num_threads;
+    std::vector<Object> objects;
+    yolo->detect(yuv_planes_from_buffer(frame.data(), width, height, width, height, COLOR_FormatYUV420SemiPlanar), objects, scratch);
+}
+
+//大模型加载并预热之后在加载线程中调用：启用级联推理，下一帧开始使用；加载失败时保持原来的配置
+static void load_cascade(NativeProcessor* processor, const std::shared_ptr<const YOLO>& model, double start)
+{
+    ncnn::MutexLockGuard guard(processor->model_lock);
+    //加载期间级联推理被关闭时丢弃加载的模型
+    if (model && processor->cascade_pending) {
+        std::atomic_store(&processor->cascade_model, model);
+        processor->cascade.configure(processor->cascade_min_confidence, processor->cascade_max_confidence,
+                                     processor->cascade_min_uncertain, processor->cascade_refresh_interval);
+        LOGD("Cascade configured: %s in %.1fms, confidence [%.2f, %.2f), %d uncertain, refresh %d",
+             processor->loading_name.c_str(), ncnn::get_current_time() - start, processor->cascade_min_confidence,
+             processor->cascade_max_confidence, processor->cascade_min_uncertain, processor->cascade_refresh_interval);
+    }
+    processor->cascade_pending = false;
+    set_inference_mode(processor, MODE_CASCADE, std::atomic_load(&processor->cascade_model) != nullptr);
+}
+
+//后台加载线程：加载并预热 loading_name 指定的模型，然后在帧之间整体替换当前模型或级联推理的大模型
+static void* load_main(void* args)
+{
+    NativeProcessor* processor = static_cast<NativeProcessor*>(args);
+    const double start = ncnn::get_current_time();
+    std::shared_ptr<const YOLO> model = acquire_shared_model(processor->mgr, processor->loading_name, processor->use_gpu);
+    if (model) {
+        //播放仍在进行，预热只占一个线程
+        warm_up_model(model.get(), 0, 1);
+    }
+    if (processor->loading_cascade) {
+        load_cascade(processor, model, start);
+        processor->loading = false;
+        return nullptr;
+    }
+    if (model) {
+        std::atomic_store(&processor->model, model);
+        {
+            ncnn::MutexLockGuard guard(processor->model_lock);
+            processor->model_name = processor->loading_name;
         }
-        //创建新processor对象
-        g_processor = new NativeProcessor(); //
-        if (!g_processor) {
-            LOGE("Failed to allocate NativeProcessor");
-            return 0;
+        processor->model_switches++;
+        LOGD("Switched to model %s in %.1fms", processor->loading_name.c_str(), ncnn::get_current_time() - start);
+    }
+    {
+        ncnn::MutexLockGuard guard(processor->model_lock);
+        set_inference_mode(processor, MODE_MODEL, processor->model_name != DEFAULT_MODEL);
+    }
+    processor->loading = false;
+    return nullptr;
+}
+
+//等待上一次的加载线程退出
+static void join_loader(NativeProcessor* processor)
+{
+    if (processor->loader) {
+        processor->loader->join();
+        delete processor->loader;
+        processor->loader = nullptr;
+    }
+}
+
+//把工作线程的缓冲改绑到新模型：先释放绑定在旧 Net 上的 Extractor，再放开对旧模型的引用
+static void bind_model(InferenceWorker* worker, const std::shared_ptr<const YOLO>& model)
+{
+    for (size_t i = 0; i < worker->scratches.size(); i++)
+        worker->scratches[i]->unbind();
+    worker->roi_scratch->unbind();
+    if (worker->tiler)
+        worker->tiler->set_yolo(model.get());
+    worker->warm_width = 0;
+    worker->warm_height = 0;
+    worker->model = model;
+}
+
+//把大模型的缓冲改绑到当前的级联模型，未启用级联时返回 nullptr
+static const YOLO* bind_cascade_model(InferenceWorker* worker, NativeProcessor* processor)
+{
+    const std::shared_ptr<const YOLO> cascade = std::atomic_load(&processor->cascade_model);
+    if (cascade != worker->cascade_model) {
+        worker->cascade_scratch->unbind();
+        worker->cascade_model = cascade;
+    }
+    return cascade && processor->cascade.enabled() ? cascade.get() : nullptr;
+}
+
+//转换为 RGB、绘制检测结果并提交到 ANativeWindow，只在渲染线程中调用
+static void present_frame(NativeProcessor* processor, FrameSlot* slot)
+{
+    cv::Mat& rgb_frame = processor->render_rgb;
+    yuv420_to_rgb(slot->frame.planes, rgb_frame);
+    const int width = rgb_frame.cols;
+    const int height = rgb_frame.rows;
+
+    current_model(processor)->draw(rgb_frame, slot->objects);
+
+    draw_fps(processor, rgb_frame);
+    ANativeWindow_Buffer buffer;
+
+    if (processor->surface_width != width || processor->surface_height != height) {
+        if (ANativeWindow_setBuffersGeometry(processor->window, width, height, WINDOW_FORMAT_RGBA_8888) < 0) {
+            LOGE("Cannot set ANativeWindow buffer geometry");
+            return;
         }
-        //实例化window对象
-        g_processor->window = ANativeWindow_fromSurface(env, surface);
-        if (!g_processor->window) {
-            LOGE("Failed to get ANativeWindow from Surface");
-            delete g_processor;
-            g_processor = nullptr;
-            return 0;
+        processor->surface_width = width;
+        processor->surface_height = height;
+        LOGD("Set ANativeWindow buffer geometry to %d x %d", width, height);
+    }
+
+    if (ANativeWindow_lock(processor->window, &buffer, nullptr) < 0) {
+        LOGE("Cannot lock ANativeWindow");
+        return;
+    }
+
+    auto* dst_pixels = static_cast<uint8_t*>(buffer.bits);
+    int dst_stride = buffer.stride * 4; // stride in bytes for RGBA_8888
+
+    //直接转换到窗口缓冲区，尺寸尚未生效时只写重叠区域
+    cv::Mat dst_mat(buffer.height, buffer.width, CV_8UC4, dst_pixels, dst_stride);
+    cv::Rect roi(0, 0, std::min(width, (int)buffer.width), std::min(height, (int)buffer.height));
+    cv::cvtColor(rgb_frame(roi), dst_mat(roi), cv::COLOR_RGB2RGBA);
+
+    if (ANativeWindow_unlockAndPost(processor->window) < 0) {
+        LOGE("Cannot unlock ANativeWindow and post");
+        return;
+    }
+    if (processor->awaiting_first_frame) {
+        processor->awaiting_first_frame = false;
+        processor->first_frame_ms = (int64_t)(ncnn::get_current_time() - processor->bind_time);
+        LOGD("First frame presented %lldms after surface bind", (long long)processor->first_frame_ms);
+    }
+}
+
+//更换渲染窗口，surface 为 null 时解除绑定；调用返回后旧窗口不再被使用
+static void bind_window(JNIEnv* env, NativeProcessor* processor, jobject surface, double bind_time)
+{
+    ANativeWindow* window = surface ? ANativeWindow_fromSurface(env, surface) : nullptr;
+    ncnn::MutexLockGuard guard(processor->window_lock);
+    if (processor->window)
+        ANativeWindow_release(processor->window);
+    processor->window = window;
+    //新窗口需要重新设置缓冲区尺寸
+    processor->surface_width = 0;
+    processor->surface_height = 0;
+    processor->bind_time = bind_time;
+    processor->awaiting_first_frame = window != nullptr;
+    if (window)
+        processor->first_frame_ms = -1;
+}
+
+//从推理队列取出一帧并分配派发序号，队列关闭且为空时返回 nullptr
+static FrameSlot* dispatch_frame(NativeProcessor* processor)
+{
+    ncnn::MutexLockGuard guard(processor->dispatch_lock);
+    FrameSlot* slot = processor->inference_queue.pop();
+    if (slot)
+        processor->reorderer.dispatch(slot);
+    return slot;
+}
+
+static void* inference_main(void* args)
+{
+    InferenceWorker* worker = static_cast<InferenceWorker*>(args);
+    NativeProcessor* processor = worker->processor;
+    while (FrameSlot* slot = dispatch_frame(processor)) {
+        if (slot->cached) {
+            processor->cached_frames++;
+            processor->reorderer.complete(slot);
+            continue;
+        }
+        if (slot->reuse) {
+            processor->skipped_frames++;
+            processor->reorderer.complete(slot);
+            continue;
+        }
+        //模型只在两帧之间切换，本帧自始至终使用同一个模型
+        const std::shared_ptr<const YOLO> model = current_model(processor);
+        if (model != worker->model)
+            bind_model(worker, model);
+        const YOLO* yolo = model.get();
+
+        const YuvPlanes& planes = slot->frame.planes;
+        if (worker->tiler) {
+            worker->tiler->detect(planes, slot->objects);
+            worker->frames++;
+            processor->inferred_frames++;
+            processor->tiled_frames++;
+            processor->reorderer.complete(slot);
+            continue;
+        }
+        const int index = processor->resolution.current();
+        DetectScratch& scratch = *worker->scratches[index];
+        //新的帧分辨率：先在其余候选尺寸上各推理一次，之后切换尺寸时缓冲与分配器都已就绪
+        if (worker->scratches.size() > 1 && (worker->warm_width != planes.width || worker->warm_height != planes.height)) {
+            for (size_t i = 0; i < worker->scratches.size(); i++) {
+                if ((int)i != index)
+                    yolo->detect(planes, worker->warm_objects, *worker->scratches[i]);
+            }
+            worker->warm_width = planes.width;
+            worker->warm_height = planes.height;
+        }
+
+        const YOLO* cascade = bind_cascade_model(worker, processor);
+        DetectScratch& cascade_scratch = *worker->cascade_scratch;
+
+        const int64_t allocations = alloc_counter::thread_count();
+        const int64_t extract_allocations = scratch.extract_allocations + cascade_scratch.extract_allocations;
+        const int64_t pool_misses = scratch.pool_misses() + cascade_scratch.pool_misses();
+
+        //区域推理的耗时与区域数有关，不代表当前输入尺寸的整帧耗时，只有整帧推理参与尺寸调整
+        const int crop_size = processor->resolution.size(index);
+        if (processor->roi_planner.plan(slot->timestamp, planes.width, planes.height, crop_size, worker->regions)) {
+            worker->roi_scratch->target_size = crop_size;
+            yolo->detect_regions(planes, worker->regions, slot->objects, *worker->roi_scratch);
+            processor->roi_frames++;
+        } else if (cascade) {
+            //小模型以较低的阈值输出候选，接近阈值的候选较多时本帧改用大模型的结果
+            const double start = ncnn::get_current_time();
+            yolo->detect(planes, slot->objects, scratch, processor->cascade.candidate_threshold(PROB_THRESHOLD));
+            processor->resolution.report(index, ncnn::get_current_time() - start);
+            if (processor->cascade.should_escalate(slot->objects)) {
+                cascade_scratch.target_size = crop_size;
+                cascade->detect(planes, slot->objects, cascade_scratch, PROB_THRESHOLD);
+                processor->escalated_frames++;
+            } else {
+                CascadePolicy::drop_below(slot->objects, PROB_THRESHOLD);
+            }
+        } else {
+            const double start = ncnn::get_current_time();
+            yolo->detect(planes, slot->objects, scratch);
+            processor->resolution.report(index, ncnn::get_current_time() - start);
+        }
+        processor->roi_planner.update(slot->timestamp, slot->objects);
+
+        const int64_t extract = scratch.extract_allocations + cascade_scratch.extract_allocations - extract_allocations;
+        const int64_t inference = alloc_counter::thread_count() - allocations - extract
+                + scratch.pool_misses() + cascade_scratch.pool_misses() - pool_misses;
+        account_allocations(processor->inference_allocations, worker->frames, inference);
+        account_allocations(processor->extract_allocations, worker->frames, extract);
+        worker->frames++;
+        processor->inferred_frames++;
+        processor->reorderer.complete(slot);
+    }
+    return nullptr;
+}
+
+//写出检测结果：每个检测结果写一行 timestamp_us,label,score,x,y,width,height，坐标为原图像素
+static void write_detections(NativeProcessor* processor, const FrameSlot* slot)
+{
+    for (size_t i = 0; i < slot->objects.size(); i++) {
+        const Object& obj = slot->objects[i];
+        fprintf(processor->output, "%lld,%d,%.4f,%.1f,%.1f,%.1f,%.1f\n", (long long)slot->timestamp, obj.label, obj.prob,
+                obj.rect.x, obj.rect.y, obj.rect.width, obj.rect.height);
+    }
+    processor->output_detections += slot->objects.size();
+}
+
+static void* render_main(void* args)
+{
+    NativeProcessor* processor = static_cast<NativeProcessor*>(args);
+    while (FrameSlot* slot = processor->render_queue.pop()) {
+        const int64_t allocations = alloc_counter::thread_count();
+        //渲染按时间戳顺序进行，静止帧之前的推理帧一定已经经过这里；容量已预留，赋值不会分配
+        if (slot->reuse)
+            slot->objects = processor->last_objects;
+        else
+            processor->last_objects = slot->objects;
+        {
+            ncnn::MutexLockGuard guard(processor->window_lock);
+            if (processor->window)
+                present_frame(processor, slot);
+        }
+        if (processor->output) {
+            write_detections(processor, slot);
         }
-        //实例化yolo检测器
-        g_processor->yolo_detector = new YOLO();
+        account_allocations(processor->render_allocations, processor->rendered_frames, alloc_counter::thread_count() - allocations);
+        processor->rendered_frames++;
+        processor->frame_pool.release(slot);
+    }
+    return nullptr;
+}
+
+//按当前配置分配帧池并启动推理/渲染线程
+static void start_pipeline(NativeProcessor* processor)
+{
+    const int workers = processor->inference_workers;
+    //重排窗口为工作线程数的两倍，一个慢帧不会立刻让其他工作线程停下
+    const int window = workers * 2;
+    //每个队列满载 + 重排窗口 + 等待派发的工作线程 + 解码/渲染阶段各持有一帧，保证解码阶段取帧时不会因池空而阻塞
+    processor->frame_pool.reset(processor->inference_capacity + processor->render_capacity + window + workers + 2);
+    processor->reorderer.reset(window);
+    processor->inference_queue.configure(processor->inference_capacity, processor->inference_policy);
+    processor->render_queue.configure(processor->render_capacity, processor->render_policy);
+    processor->inference_queue.open();
+    processor->render_queue.open();
+    processor->decoded_frames = 0;
+    processor->inferred_frames = 0;
+    processor->rendered_frames = 0;
+    processor->cached_frames = 0;
+    processor->skipped_frames = 0;
+    processor->roi_frames = 0;
+    processor->tiled_frames = 0;
+    processor->escalated_frames = 0;
+    processor->roi_planner.reset();
+    processor->cascade.reset();
+    processor->motion_gate.reset();
+    processor->last_objects.clear();
+    processor->last_objects.reserve(MAX_OBJECTS_PER_FRAME);
+    processor->decode_allocations = 0;
+    processor->inference_allocations = 0;
+    processor->render_allocations = 0;
+    processor->extract_allocations = 0;
+
+    //线程预算未指定且只有一个工作线程时沿用 Net 的默认线程数
+    int threads = 0;
+    if (processor->inference_threads > 0)
+        threads = std::max(1, processor->inference_threads / workers);
+    else if (workers > 1)
+        threads = std::max(1, ncnn::get_big_cpu_count() / workers);
+
+    //未配置候选尺寸时只有模型加载时的尺寸；初始尺寸取最接近它的候选
+    std::vector<int> sizes = processor->target_sizes;
+    const std::shared_ptr<const YOLO> model = current_model(processor);
+    const int default_size = model->get_target_size();
+    if (sizes.empty())
+        sizes.push_back(default_size);
+    int initial = 0;
+    for (int i = 1; i < (int)sizes.size(); i++) {
+        if (std::abs(sizes[i] - default_size) < std::abs(sizes[initial] - default_size))
+            initial = i;
+    }
+    processor->resolution.configure(sizes, processor->latency_budget_ms, initial);
+
+    //工作线程随配置重建，各自的缓冲在前几帧内预热
+    for (int i = 0; i < workers; i++) {
+        InferenceWorker* worker = new InferenceWorker();
+        worker->processor = processor;
+        worker->model = model;
+        for (size_t k = 0; k < sizes.size(); k++) {
+            DetectScratch* scratch = new DetectScratch();
+            scratch->num_threads = threads;
+            scratch->target_size = sizes[k];
+            worker->scratches.push_back(scratch);
+        }
+        worker->roi_scratch = new DetectScratch();
+        worker->roi_scratch->num_threads = threads;
+        worker->cascade_scratch = new DetectScratch();
+        worker->cascade_scratch->num_threads = threads;
+        if (processor->tile_size > 0) {
+            //每个通道单线程推理，通道数取该工作线程的线程预算
+            const int lanes = threads > 0 ? threads : std::max(1, ncnn::get_big_cpu_count());
+            worker->tiler = new TiledDetector(model.get(), lanes, 1);
+            worker->tiler->configure(processor->tile_size, processor->tile_overlap, processor->tile_full_frame_size);
+        }
+        worker->thread = new ncnn::Thread(inference_main, worker);
+        processor->workers.push_back(worker);
+    }
+    processor->render_thread = new ncnn::Thread(render_main, processor);
+}
+
+//关闭队列并等待两个阶段处理完剩余帧后退出
+static void stop_pipeline(NativeProcessor* processor)
+{
+    processor->inference_queue.close();
+    for (size_t i = 0; i < processor->workers.size(); i++) {
+        InferenceWorker* worker = processor->workers[i];
+        worker->thread->join();
+        delete worker->thread;
+        delete worker;
+    }
+    processor->workers.clear();
+    //所有工作线程都已把帧交给 reorderer，通知渲染线程处理完剩余帧后退出
+    processor->render_queue.close();
+    if (processor->render_thread) {
+        processor->render_thread->join();
+        delete processor->render_thread;
+        processor->render_thread = nullptr;
+    }
+}
+
+//解码阶段：把帧交给推理队列，由调用方(Java 解码线程)执行
+static void submit_frame(NativeProcessor* processor, FrameSlot* slot, int64_t timestamp)
+{
+    slot->timestamp = timestamp;
+    processor->decoded_frames++;
+    processor->inference_queue.push(slot);
+}
+//解码阶段：把解码器输出的平面紧凑拷贝到流水线的帧缓冲中，再交给推理队列
+static void convert_and_submit(NativeProcessor* processor, const YuvPlanes& planes, int64_t timestamp)
+{
+    ncnn::MutexLockGuard guard(processor->lock);
+    FrameSlot* slot = processor->frame_pool.acquire();
+    //帧缓冲第一次用于该分辨率时的分配属于预热
+    const bool warm = slot->frame.planes.width == planes.width && slot->frame.planes.height == planes.height;
+    const int64_t allocations = alloc_counter::thread_count();
+    copy_yuv_frame(planes, slot->frame);
+    if (warm)
+        account_allocations(processor->decode_allocations, processor->decoded_frames, alloc_counter::thread_count() - allocations);
+    //缓存的检测结果只属于同一时间戳的帧，交换后两边的 vector 容量都留作复用
+    slot->cached = processor->has_cached_objects && processor->cached_timestamp == timestamp;
+    if (slot->cached)
+        slot->objects.swap(processor->cached_objects);
+    processor->has_cached_objects = false;
+    //帧差在拷贝后的紧凑帧上计算，缓存命中的帧不经过门控
+    slot->reuse = !slot->cached && !processor->motion_gate.should_infer(slot->frame.planes, timestamp);
+    submit_frame(processor, slot, timestamp);
+}
+
+//取得 direct ByteBuffer 的地址，并检查其容量足以覆盖 rows 行、每行 cols 个像素
+static const uint8_t* get_plane_address(JNIEnv* env, jobject buffer, int row_stride, int pixel_stride, int cols, int rows)
+{
+    if (!buffer || row_stride <= 0 || pixel_stride <= 0 || cols <= 0 || rows <= 0)
+        return nullptr;
+    auto* address = static_cast<const uint8_t*>(env->GetDirectBufferAddress(buffer));
+    jlong capacity = env->GetDirectBufferCapacity(buffer);
+    //最后一行之后不一定有行填充
+    int64_t required = (int64_t)row_stride * (rows - 1) + (int64_t)pixel_stride * (cols - 1) + 1;
+    if (!address || capacity < required)
+        return nullptr;
+    return address;
+}
+extern "C" {
+    JNIEXPORT jlong JNICALL
+    Java_com_example_yolov8_VideoProcessor_initNative(JNIEnv *env, jobject thiz, jobject surface, jobject assetManager,
+                                                    jboolean use_gpu, jint num_threads) {
+        const double start = ncnn::get_current_time();
         AAssetManager* mgr = AAssetManager_fromJava(env, assetManager);
         if (mgr == nullptr) {
             LOGE("assert frome java failed");
-            return JNI_FALSE;
+            return 0;
         }
-        const int target_sizes[] = {
-            320,
-            320,
-        };
-        const float mean_vals[][3] = {
-            {103.53f, 116.28f, 123.675f},
-            {103.53f, 116.28f, 123.675f},
-        };
-        const float norm_vals[][3] = {
-            { 1 / 255.f, 1 / 255.f, 1 / 255.f },
-            { 1 / 255.f, 1 / 255.f, 1 / 255.f },
-        };
-        //加载yolo模型
-        int ret = g_processor->yolo_detector->load(mgr, target_sizes[0], mean_vals[0], norm_vals[0], (int)use_gpu);
-        if (ret) {
-            LOGE("Failed to load YOLO model");
-            ANativeWindow_release(g_processor->window);
-            delete g_processor->yolo_detector;
-            delete g_processor;
-            g_processor = nullptr;
+        //每次调用都创建独立的processor对象，由Java侧的VideoProcessor持有
+        NativeProcessor* processor = new NativeProcessor();
+        //实例化window对象，surface 为 null 时是离线分析实例，不做任何绘制与显示
+        //首帧耗时从这里开始计算，包含模型尚未加载时的加载时间
+        bind_window(env, processor, surface, start);
+        if (surface && !processor->window) {
+            LOGE("Failed to get ANativeWindow from Surface");
+            delete processor;
+            return 0;
+        }
+        //取得共享的yolo检测器，第一个实例负责加载模型；模型被 Detector 持有时直接取用
+        processor->model = acquire_shared_model(mgr, DEFAULT_MODEL, use_gpu);
+        if (!processor->model) {
+            if (processor->window) {
+                ANativeWindow_release(processor->window);
+            }
+            delete processor;
             return 0;
         }
-        LOGD("Native processor initialized successfully.");
-        return reinterpret_cast<jlong>(g_processor);
+        processor->model_name = DEFAULT_MODEL;
+        processor->asset_manager = env->NewGlobalRef(assetManager);
+        processor->mgr = mgr;
+        processor->use_gpu = use_gpu;
+        processor->inference_threads = num_threads;
+        start_pipeline(processor);
+        LOGD("Native processor %p initialized in %.1fms.", processor, ncnn::get_current_time() - start);
+        return reinterpret_cast<jlong>(processor);
     }
+    //直接读取 MediaCodec 输出的 direct ByteBuffer，避免 Java 侧 byte[] 拷贝和 JNI pin 拷贝
     JNIEXPORT void JNICALL
-    Java_com_example_yolov8_VideoProcessor_processFrameNative(JNIEnv *env, jobject thiz, jlong native_ptr,
-                                                            jbyteArray frame_data, jint width, jint height, jlong timestamp) {
-        ncnn::MutexLockGuard guard(g_lock);
+    Java_com_example_yolov8_VideoProcessor_processFrameBufferNative(JNIEnv *env, jobject thiz, jlong native_ptr,
+                                                                  jobject frame_buffer, jint offset, jint size,
+                                                                  jint width, jint height, jint stride, jint slice_height,
+                                                                  jint color_format, jlong timestamp) {
         NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
-        if (!processor || !processor->window || !processor->yolo_detector) {
-            LOGE("Native processor not initialized or window/detector is null.");
+        if (!processor || !current_model(processor)) {
+            LOGE("Native processor not initialized or detector is null.");
             return;
         }
 
-        jbyte* pixels = env->GetByteArrayElements(frame_data, nullptr);
-        if (!pixels) {
-            LOGE("Failed to get byte array elements");
+        auto* base = static_cast<uint8_t*>(env->GetDirectBufferAddress(frame_buffer));
+        jlong capacity = env->GetDirectBufferCapacity(frame_buffer);
+        if (!base || capacity < 0) {
+            LOGE("Frame buffer is not a direct ByteBuffer");
             return;
         }
 
-        cv::Mat yuv420_frame(height * 3 / 2, width, CV_8UC1, pixels);
-        cv::Mat rgb_frame;
-        cv::cvtColor(yuv420_frame, rgb_frame, cv::COLOR_YUV2RGB_NV12);
+        //stride / slice_height 描述的是解码器实际的内存布局，可能大于可见宽高
+        if (stride < width) stride = width;
+        if (slice_height < height) slice_height = height;
+        if (offset < 0 || (int64_t)offset + size > capacity) {
+            LOGE("Invalid frame buffer range: offset=%d size=%d capacity=%lld", offset, size, (long long)capacity);
+            return;
+        }
 
+        YuvPlanes planes = yuv_planes_from_buffer(base + offset, width, height, stride, slice_height, color_format);
+        //最后一行色度数据之后不一定有行填充
+        const uint8_t* chroma_end = std::max(planes.u, planes.v)
+                + (size_t)planes.uv_row_stride * (height / 2 - 1) + (size_t)planes.uv_pixel_stride * (width / 2 - 1) + 1;
+        if (chroma_end - planes.y > size) {
+            LOGE("Frame buffer too small: size=%d required=%lld", size, (long long)(chroma_end - planes.y));
+            return;
+        }
+        convert_and_submit(processor, planes, timestamp);
+    }
+    //按 android.media.Image 的三个平面读取帧，支持任意行跨度/像素跨度与 crop 区域
+    JNIEXPORT void JNICALL
+    Java_com_example_yolov8_VideoProcessor_processFrameImageNative(JNIEnv *env, jobject thiz, jlong native_ptr,
+                                                                 jobject y_buffer, jobject u_buffer, jobject v_buffer,
+                                                                 jint y_row_stride, jint uv_row_stride, jint uv_pixel_stride,
+                                                                 jint crop_left, jint crop_top, jint crop_width, jint crop_height,
+                                                                 jlong timestamp) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor || !current_model(processor)) {
+            LOGE("Native processor not initialized or detector is null.");
+            return;
+        }
 
-        std::vector<Object> objects;
-        processor->yolo_detector->detect(rgb_frame, objects);
-        processor->yolo_detector->draw(rgb_frame, objects);
+        const int chroma_width = (crop_left + crop_width + 1) / 2;
+        const int chroma_height = (crop_top + crop_height + 1) / 2;
+        YuvPlanes planes;
+        planes.y = get_plane_address(env, y_buffer, y_row_stride, 1, crop_left + crop_width, crop_top + crop_height);
+        planes.u = get_plane_address(env, u_buffer, uv_row_stride, uv_pixel_stride, chroma_width, chroma_height);
+        planes.v = get_plane_address(env, v_buffer, uv_row_stride, uv_pixel_stride, chroma_width, chroma_height);
+        if (!planes.y || !planes.u || !planes.v) {
+            LOGE("Invalid image planes: row strides %d/%d, pixel stride %d, crop %d,%d %dx%d",
+                 y_row_stride, uv_row_stride, uv_pixel_stride, crop_left, crop_top, crop_width, crop_height);
+            return;
+        }
+        planes.y_row_stride = y_row_stride;
+        planes.uv_row_stride = uv_row_stride;
+        planes.uv_pixel_stride = uv_pixel_stride;
+        planes.width = crop_left + crop_width;
+        planes.height = crop_top + crop_height;
 
-        draw_fps(rgb_frame); // 确保 draw_fps 接受 cv::Mat&
-        cv::Mat rgba_frame;
-        cv::cvtColor(rgb_frame, rgba_frame, cv::COLOR_RGB2RGBA);
-        ANativeWindow_Buffer buffer;
+        convert_and_submit(processor, crop_yuv_planes(planes, crop_left, crop_top, crop_width, crop_height), timestamp);
+    }
+    //绑定新的 Surface 或在 surface 为 null 时解除绑定，模型与流水线保持不变；可在解码过程中调用
+    JNIEXPORT jboolean JNICALL
+    Java_com_example_yolov8_VideoProcessor_attachSurfaceNative(JNIEnv *env, jobject thiz, jlong native_ptr, jobject surface) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            LOGE("Native processor not initialized.");
+            return JNI_FALSE;
+        }
+        bind_window(env, processor, surface, ncnn::get_current_time());
+        if (surface && !processor->window) {
+            LOGE("Failed to get ANativeWindow from Surface");
+            return JNI_FALSE;
+        }
+        return JNI_TRUE;
+    }
+    //应用范围内持有一份模型引用，持有期间模型留在登记表中，新建的处理实例直接取用，不随界面重建重新加载
+    //返回的句柄由 releaseModelNative 释放，加载失败时返回 0
+    JNIEXPORT jlong JNICALL
+    Java_com_example_yolov8_Detector_retainModelNative(JNIEnv *env, jobject thiz, jobject assetManager, jstring name, jboolean use_gpu) {
+        AAssetManager* mgr = AAssetManager_fromJava(env, assetManager);
+        const char* chars = name ? env->GetStringUTFChars(name, nullptr) : nullptr;
+        if (!mgr || !chars) {
+            LOGE("Invalid asset manager or model name");
+            return 0;
+        }
+        const std::string model_name(chars);
+        env->ReleaseStringUTFChars(name, chars);
 
-        if (processor->surface_width != width || processor->surface_height != height) {
-            if (ANativeWindow_setBuffersGeometry(processor->window, width, height, WINDOW_FORMAT_RGBA_8888) < 0) {
-                LOGE("Cannot set ANativeWindow buffer geometry");
-                env->ReleaseByteArrayElements(frame_data, pixels, JNI_ABORT);
+        const double start = ncnn::get_current_time();
+        std::shared_ptr<const YOLO> model = acquire_shared_model(mgr, model_name, use_gpu);
+        if (!model) {
+            return 0;
+        }
+        LOGD("Retained model %s in %.1fms", model_name.c_str(), ncnn::get_current_time() - start);
+        return reinterpret_cast<jlong>(new std::shared_ptr<const YOLO>(model));
+    }
+    //以 target_size 在合成帧上推理一次，提前完成首次推理的初始化与内存分配，返回耗时(毫秒)
+    JNIEXPORT jdouble JNICALL
+    Java_com_example_yolov8_Detector_warmUpNative(JNIEnv *env, jobject thiz, jlong handle, jint target_size) {
+        const std::shared_ptr<const YOLO>* model = reinterpret_cast<std::shared_ptr<const YOLO>*>(handle);
+        if (!model || (target_size > 0 && target_size % 32 != 0)) {
+            LOGE("Invalid warm-up target size %d", target_size);
+            return -1;
+        }
+        const double start = ncnn::get_current_time();
+        warm_up_model(model->get(), target_size, 0);
+        return ncnn::get_current_time() - start;
+    }
+    JNIEXPORT void JNICALL
+    Java_com_example_yolov8_Detector_releaseModelNative(JNIEnv *env, jobject thiz, jlong handle) {
+        delete reinterpret_cast<std::shared_ptr<const YOLO>*>(handle);
+    }
+    //重新配置队列容量与丢帧策略，会先排空当前流水线，不应在解码过程中调用
+    JNIEXPORT void JNICALL
+    Java_com_example_yolov8_VideoProcessor_configurePipelineNative(JNIEnv *env, jobject thiz, jlong native_ptr,
+                                                                 jint inference_capacity, jint inference_policy,
+                                                                 jint render_capacity, jint render_policy) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            LOGE("Native processor not initialized.");
+            return;
+        }
+        ncnn::MutexLockGuard guard(processor->lock);
+        if (inference_policy < DROP_OLDEST || inference_policy > BLOCK || render_policy < DROP_OLDEST || render_policy > BLOCK) {
+            LOGE("Invalid drop policy %d / %d", inference_policy, render_policy);
+            return;
+        }
+        stop_pipeline(processor);
+        processor->inference_capacity = std::max(1, (int)inference_capacity);
+        processor->inference_policy = (DropPolicy)inference_policy;
+        processor->render_capacity = std::max(1, (int)render_capacity);
+        processor->render_policy = (DropPolicy)render_policy;
+        start_pipeline(processor);
+        LOGD("Pipeline configured: inference %d/%d, render %d/%d",
+             processor->inference_capacity, processor->inference_policy,
+             processor->render_capacity, processor->render_policy);
+    }
+    //设置推理工作线程数，推理线程预算在工作线程之间平分；会先排空当前流水线，不应在解码过程中调用
+    JNIEXPORT void JNICALL
+    Java_com_example_yolov8_VideoProcessor_configureInferenceNative(JNIEnv *env, jobject thiz, jlong native_ptr, jint workers) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            LOGE("Native processor not initialized.");
+            return;
+        }
+        ncnn::MutexLockGuard guard(processor->lock);
+        stop_pipeline(processor);
+        processor->inference_workers = std::max(1, (int)workers);
+        start_pipeline(processor);
+        LOGD("Inference configured: %d workers, thread budget %d", processor->inference_workers, processor->inference_threads);
+    }
+    //自适应输入尺寸：sizes 为候选输入尺寸，budget_ms 为每帧推理耗时预算；sizes 为空时恢复模型默认尺寸
+    //会先排空当前流水线，不应在解码过程中调用
+    JNIEXPORT void JNICALL
+    Java_com_example_yolov8_VideoProcessor_configureResolutionNative(JNIEnv *env, jobject thiz, jlong native_ptr,
+                                                                   jintArray sizes, jfloat budget_ms) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            LOGE("Native processor not initialized.");
+            return;
+        }
+        std::vector<int> target_sizes;
+        const int count = sizes ? env->GetArrayLength(sizes) : 0;
+        if (count > 0) {
+            target_sizes.resize(count);
+            env->GetIntArrayRegion(sizes, 0, count, target_sizes.data());
+        }
+        //网络输入需要是 32 的倍数
+        for (size_t i = 0; i < target_sizes.size(); i++) {
+            if (target_sizes[i] < 32 || target_sizes[i] % 32 != 0) {
+                LOGE("Invalid target size %d", target_sizes[i]);
                 return;
             }
-            processor->surface_width = width;
-            processor->surface_height = height;
-            LOGD("Set ANativeWindow buffer geometry to %d x %d", width, height);
         }
+        std::sort(target_sizes.begin(), target_sizes.end());
+        target_sizes.erase(std::unique(target_sizes.begin(), target_sizes.end()), target_sizes.end());
 
-        if (ANativeWindow_lock(processor->window, &buffer, nullptr) < 0) {
-            LOGE("Cannot lock ANativeWindow");
-            env->ReleaseByteArrayElements(frame_data, pixels, JNI_ABORT);
+        ncnn::MutexLockGuard guard(processor->lock);
+        stop_pipeline(processor);
+        processor->target_sizes = target_sizes;
+        processor->latency_budget_ms = budget_ms;
+        set_inference_mode(processor, MODE_RESOLUTION, !target_sizes.empty());
+        start_pipeline(processor);
+        LOGD("Resolution configured: %d sizes, budget %.1fms", (int)target_sizes.size(), budget_ms);
+    }
+    //运动门控：网格单元平均亮度变化超过 luma_delta 的单元占比不超过 changed_fraction 时不推理，
+    //距离上一次推理超过 max_stale_ms 时强制推理；max_stale_ms <= 0 时关闭。可在解码过程中调用
+    JNIEXPORT void JNICALL
+    Java_com_example_yolov8_VideoProcessor_configureMotionGateNative(JNIEnv *env, jobject thiz, jlong native_ptr,
+                                                                   jint luma_delta, jfloat changed_fraction, jint max_stale_ms) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            LOGE("Native processor not initialized.");
             return;
         }
+        if (luma_delta < 0 || luma_delta > 255 || changed_fraction < 0.f || changed_fraction > 1.f) {
+            LOGE("Invalid motion gate thresholds: delta=%d fraction=%.3f", luma_delta, changed_fraction);
+            return;
+        }
+        ncnn::MutexLockGuard guard(processor->lock);
+        processor->motion_gate.configure(luma_delta, changed_fraction, (int64_t)max_stale_ms * 1000);
+        set_inference_mode(processor, MODE_MOTION_GATE, processor->motion_gate.enabled());
+        LOGD("Motion gate configured: delta %d, fraction %.3f, max stale %dms", luma_delta, changed_fraction, max_stale_ms);
+    }
+    //在后台线程加载并预热 assets 中的 <name>.param/.bin，完成后在两帧之间切换，播放不会因加载而停顿
+    //已有切换在进行、名称无效时返回 false；名称与当前模型相同时直接返回 true
+    JNIEXPORT jboolean JNICALL
+    Java_com_example_yolov8_VideoProcessor_switchModelNative(JNIEnv *env, jobject thiz, jlong native_ptr, jstring name) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor || !name) {
+            LOGE("Native processor not initialized.");
+            return JNI_FALSE;
+        }
+        const char* chars = env->GetStringUTFChars(name, nullptr);
+        if (!chars) {
+            return JNI_FALSE;
+        }
+        const std::string model_name(chars);
+        env->ReleaseStringUTFChars(name, chars);
+        //只接受 assets 根目录下的文件名
+        if (model_name.empty() || model_name.size() > 64 || model_name.find('/') != std::string::npos) {
+            LOGE("Invalid model name %s", model_name.c_str());
+            return JNI_FALSE;
+        }
 
-        auto* dst_pixels = static_cast<uint8_t*>(buffer.bits);
-        int dst_stride = buffer.stride * 4; // stride in bytes for RGBA_8888
-
-        cv::Mat dst_mat(buffer.height, buffer.width, CV_8UC4, dst_pixels, dst_stride);
-        rgba_frame.copyTo(dst_mat);
-
-        if (ANativeWindow_unlockAndPost(processor->window) < 0) {
-            LOGE("Cannot unlock ANativeWindow and post");
+        if (processor->loading.exchange(true)) {
+            LOGE("Model switch to %s already in progress", processor->loading_name.c_str());
+            return JNI_FALSE;
+        }
+        join_loader(processor);
+        {
+            ncnn::MutexLockGuard guard(processor->model_lock);
+            if (processor->model_name == model_name) {
+                processor->loading = false;
+                return JNI_TRUE;
+            }
+        }
+        //切换完成之前的帧仍来自旧模型，从现在起就视为非默认配置
+        set_inference_mode(processor, MODE_MODEL, true);
+        processor->loading_name = model_name;
+        processor->loading_cascade = false;
+        processor->loader = new ncnn::Thread(load_main, processor);
+        return JNI_TRUE;
+    }
+    JNIEXPORT jstring JNICALL
+    Java_com_example_yolov8_VideoProcessor_getModelNameNative(JNIEnv *env, jobject thiz, jlong native_ptr) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            return nullptr;
+        }
+        ncnn::MutexLockGuard guard(processor->model_lock);
+        return env->NewStringUTF(processor->model_name.c_str());
+    }
+    //没有启用任何改变检测结果的推理模式时返回当前的配置代数，否则返回 -1
+    JNIEXPORT jlong JNICALL
+    Java_com_example_yolov8_VideoProcessor_getInferenceConfigNative(JNIEnv *env, jobject thiz, jlong native_ptr) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            return -1;
+        }
+        //先读代数：读到之后配置若有变化，代数随之改变，调用方再次读取时能够发现
+        const int64_t generation = processor->config_generation;
+        return processor->inference_modes == 0 ? generation : -1;
+    }
+    JNIEXPORT jboolean JNICALL
+    Java_com_example_yolov8_VideoProcessor_isModelLoadingNative(JNIEnv *env, jobject thiz, jlong native_ptr) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        return processor && processor->loading ? JNI_TRUE : JNI_FALSE;
+    }
+    //级联推理：每帧先用当前模型推理，接近阈值的检测较多或每隔 refresh_interval 帧时改用 name 指定的大模型重新推理该帧
+    //大模型与 switchModelNative 一样在后台加载线程中加载并预热，完成之前沿用原来的配置，加载失败时保持原来的配置
+    //name 为 null 时关闭，同时丢弃正在加载的大模型；已有模型在加载或参数无效时返回 false。可在解码过程中调用
+    JNIEXPORT jboolean JNICALL
+    Java_com_example_yolov8_VideoProcessor_configureCascadeNative(JNIEnv *env, jobject thiz, jlong native_ptr, jstring name,
+                                                                jfloat min_confidence, jfloat max_confidence,
+                                                                jint min_uncertain, jint refresh_interval) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            LOGE("Native processor not initialized.");
+            return JNI_FALSE;
+        }
+        if (!name) {
+            ncnn::MutexLockGuard guard(processor->model_lock);
+            processor->cascade_pending = false;
+            processor->cascade.configure(0.f, 0.f, 0, 0);
+            std::atomic_store(&processor->cascade_model, std::shared_ptr<const YOLO>());
+            set_inference_mode(processor, MODE_CASCADE, false);
+            LOGD("Cascade disabled");
+            return JNI_TRUE;
+        }
+        if (min_confidence <= 0.f || min_confidence > PROB_THRESHOLD || max_confidence <= min_confidence
+                || (min_uncertain <= 0 && refresh_interval <= 0)) {
+            LOGE("Invalid cascade parameters: confidence [%.2f, %.2f), %d uncertain, refresh %d",
+                 min_confidence, max_confidence, min_uncertain, refresh_interval);
+            return JNI_FALSE;
+        }
+        const char* chars = env->GetStringUTFChars(name, nullptr);
+        if (!chars) {
+            return JNI_FALSE;
+        }
+        const std::string model_name(chars);
+        env->ReleaseStringUTFChars(name, chars);
+        if (model_name.empty() || model_name.size() > 64 || model_name.find('/') != std::string::npos) {
+            LOGE("Invalid model name %s", model_name.c_str());
+            return JNI_FALSE;
         }
 
-        env->ReleaseByteArrayElements(frame_data, pixels, JNI_ABORT);
+        if (processor->loading.exchange(true)) {
+            LOGE("Model load of %s already in progress", processor->loading_name.c_str());
+            return JNI_FALSE;
+        }
+        join_loader(processor);
+        {
+            ncnn::MutexLockGuard guard(processor->model_lock);
+            processor->cascade_pending = true;
+            processor->cascade_min_confidence = min_confidence;
+            processor->cascade_max_confidence = max_confidence;
+            processor->cascade_min_uncertain = min_uncertain;
+            processor->cascade_refresh_interval = refresh_interval;
+            //加载期间流水线照常运行，完成后下一帧开始使用；从现在起就视为非默认配置
+            set_inference_mode(processor, MODE_CASCADE, true);
+        }
+        processor->loading_name = model_name;
+        processor->loading_cascade = true;
+        processor->loader = new ncnn::Thread(load_main, processor);
+        return JNI_TRUE;
+    }
+    //切片推理：tile_size 为切片边长与网络输入尺寸(<= 0 时关闭)，overlap 为相邻切片的重叠比例，
+    //full_frame_size > 0 时额外做一次该输入尺寸的整帧推理；会先排空当前流水线，不应在解码过程中调用
+    JNIEXPORT void JNICALL
+    Java_com_example_yolov8_VideoProcessor_configureTilingNative(JNIEnv *env, jobject thiz, jlong native_ptr,
+                                                               jint tile_size, jfloat overlap, jint full_frame_size) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            LOGE("Native processor not initialized.");
+            return;
+        }
+        if ((tile_size > 0 && tile_size % 32 != 0) || (full_frame_size > 0 && full_frame_size % 32 != 0)
+                || overlap < 0.f || overlap >= 1.f) {
+            LOGE("Invalid tiling parameters: tile %d, overlap %.2f, full frame %d", tile_size, overlap, full_frame_size);
+            return;
+        }
+        ncnn::MutexLockGuard guard(processor->lock);
+        stop_pipeline(processor);
+        processor->tile_size = tile_size;
+        processor->tile_overlap = overlap;
+        processor->tile_full_frame_size = full_frame_size;
+        set_inference_mode(processor, MODE_TILING, tile_size > 0);
+        start_pipeline(processor);
+        LOGD("Tiling configured: tile %d, overlap %.2f, full frame %d", tile_size, overlap, full_frame_size);
+    }
+    //区域推理：每隔 full_interval 帧整帧推理一次，其余帧只在上一帧目标框按 margin 扩展后的区域上推理，
+    //区域合并后超过 max_regions 个时整帧推理；full_interval <= 1 时关闭。可在解码过程中调用
+    JNIEXPORT void JNICALL
+    Java_com_example_yolov8_VideoProcessor_configureRoiNative(JNIEnv *env, jobject thiz, jlong native_ptr,
+                                                            jint full_interval, jfloat margin, jint max_regions) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            LOGE("Native processor not initialized.");
+            return;
+        }
+        if (margin < 0.f || max_regions < 1) {
+            LOGE("Invalid ROI parameters: margin=%.3f regions=%d", margin, max_regions);
+            return;
+        }
+        processor->roi_planner.configure(full_interval, margin, max_regions);
+        set_inference_mode(processor, MODE_ROI, full_interval > 1);
+        LOGD("ROI inference configured: full pass every %d frames, margin %.2f, %d regions", full_interval, margin, max_regions);
+    }
+    //检测缓存命中：给出时间戳为 timestamp 的下一帧的检测结果，该帧不再推理
+    //rects 每个检测 4 个值 x, y, width, height，原图像素坐标
+    JNIEXPORT void JNICALL
+    Java_com_example_yolov8_VideoProcessor_setCachedDetectionsNative(JNIEnv *env, jobject thiz, jlong native_ptr, jlong timestamp,
+                                                                   jint count, jintArray labels, jfloatArray probs, jfloatArray rects) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            LOGE("Native processor not initialized.");
+            return;
+        }
+        if (count < 0 || env->GetArrayLength(labels) < count || env->GetArrayLength(probs) < count
+                || env->GetArrayLength(rects) < count * 4) {
+            LOGE("Invalid cached detections: count=%d", count);
+            return;
+        }
+        ncnn::MutexLockGuard guard(processor->lock);
+        std::vector<Object>& objects = processor->cached_objects;
+        objects.resize(count);
+        if (count > 0) {
+            auto* l = static_cast<jint*>(env->GetPrimitiveArrayCritical(labels, nullptr));
+            auto* p = static_cast<jfloat*>(env->GetPrimitiveArrayCritical(probs, nullptr));
+            auto* r = static_cast<jfloat*>(env->GetPrimitiveArrayCritical(rects, nullptr));
+            if (l && p && r) {
+                for (int i = 0; i < count; i++) {
+                    objects[i].label = l[i];
+                    objects[i].prob = p[i];
+                    objects[i].rect = cv::Rect_<float>(r[i * 4], r[i * 4 + 1], r[i * 4 + 2], r[i * 4 + 3]);
+                }
+            }
+            if (r) env->ReleasePrimitiveArrayCritical(rects, r, JNI_ABORT);
+            if (p) env->ReleasePrimitiveArrayCritical(probs, p, JNI_ABORT);
+            if (l) env->ReleasePrimitiveArrayCritical(labels, l, JNI_ABORT);
+            if (!l || !p || !r) {
+                return;
+            }
+        }
+        processor->cached_timestamp = timestamp;
+        processor->has_cached_objects = true;
+    }
+    //打开输出文件并写入表头，之后到达渲染阶段的帧都会写出检测结果；有窗口时照常显示
+    JNIEXPORT jboolean JNICALL
+    Java_com_example_yolov8_VideoProcessor_openOutputNative(JNIEnv *env, jobject thiz, jlong native_ptr, jstring path) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            LOGE("Native processor not initialized.");
+            return JNI_FALSE;
+        }
+        const char* filename = env->GetStringUTFChars(path, nullptr);
+        if (!filename) {
+            return JNI_FALSE;
+        }
+        ncnn::MutexLockGuard guard(processor->lock);
+        //排空上一次分析残留的帧，同时让渲染线程看到新的输出文件
+        stop_pipeline(processor);
+        if (processor->output) {
+            fclose(processor->output);
+        }
+        processor->output = fopen(filename, "w");
+        if (processor->output) {
+            fputs("timestamp_us,label,score,x,y,width,height\n", processor->output);
+        } else {
+            LOGE("Cannot open output file %s", filename);
+        }
+        processor->output_detections = 0;
+        start_pipeline(processor);
+        env->ReleaseStringUTFChars(path, filename);
+        return processor->output ? JNI_TRUE : JNI_FALSE;
+    }
+    //等待流水线处理完所有已提交的帧后关闭输出文件，返回 {写出的帧数, 检测结果数, 级联推理升级到大模型的帧数}
+    JNIEXPORT jlongArray JNICALL
+    Java_com_example_yolov8_VideoProcessor_closeOutputNative(JNIEnv *env, jobject thiz, jlong native_ptr) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            return nullptr;
+        }
+        ncnn::MutexLockGuard guard(processor->lock);
+        //关闭队列会让各阶段处理完剩余的帧后退出
+        stop_pipeline(processor);
+        jlong values[3] = {processor->rendered_frames, processor->output_detections, processor->escalated_frames};
+        if (processor->output) {
+            fclose(processor->output);
+            processor->output = nullptr;
+        }
+        start_pipeline(processor);
+        jlongArray result = env->NewLongArray(3);
+        if (result) {
+            env->SetLongArrayRegion(result, 0, 3, values);
+        }
+        return result;
+    }
+    //返回 {解码帧数, 推理帧数, 渲染帧数, 推理队列 深度/最大深度/丢帧数, 渲染队列 深度/最大深度/丢帧数,
+    //      解码/推理/渲染/ncnn 推理内部 的稳定状态堆分配次数(未启用计数时为 -1), 使用缓存检测结果的帧数,
+    //      当前输入尺寸, 输入尺寸切换次数, 运动门控跳过推理的帧数, 只在区域上推理的帧数,
+    //      累计切换模型的次数(不随流水线重新配置清零), 级联推理升级到大模型的帧数,
+    //      最近一次绑定 Surface 后的首帧耗时(毫秒，尚未显示时为 -1)}
+    JNIEXPORT jlongArray JNICALL
+    Java_com_example_yolov8_VideoProcessor_getPipelineStatsNative(JNIEnv *env, jobject thiz, jlong native_ptr) {
+        NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
+        if (!processor) {
+            return nullptr;
+        }
+        QueueStats inference = processor->inference_queue.stats();
+        QueueStats render = processor->render_queue.stats();
+        const bool counted = alloc_counter::enabled();
+        jlong values[22] = {
+            processor->decoded_frames,
+            processor->inferred_frames,
+            processor->rendered_frames,
+            inference.depth,
+            inference.max_depth,
+            inference.dropped,
+            render.depth,
+            render.max_depth,
+            render.dropped,
+            counted ? (jlong)processor->decode_allocations : -1,
+            counted ? (jlong)processor->inference_allocations : -1,
+            counted ? (jlong)processor->render_allocations : -1,
+            counted ? (jlong)processor->extract_allocations : -1,
+            processor->cached_frames,
+            processor->resolution.size(processor->resolution.current()),
+            processor->resolution.switches(),
+            processor->skipped_frames,
+            processor->roi_frames,
+            processor->model_switches,
+            processor->escalated_frames,
+            processor->first_frame_ms,
+            processor->tiled_frames,
+        };
+        jlongArray result = env->NewLongArray(22);
+        if (result) {
+            env->SetLongArrayRegion(result, 0, 22, values);
+        }
+        return result;
     }
     JNIEXPORT void JNICALL
     Java_com_example_yolov8_VideoProcessor_releaseNative(JNIEnv *env, jobject thiz, jlong native_ptr) {
-        ncnn::MutexLockGuard guard(g_lock);
         NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(native_ptr);
         if (processor) {
-            if (processor->window) {
-                ANativeWindow_release(processor->window);
-                processor->window = nullptr;
+            {
+                //与仍在进行的帧提交、输出文件的打开/关闭和流水线重新配置互斥，避免重复停止流水线
+                ncnn::MutexLockGuard guard(processor->lock);
+                stop_pipeline(processor);
+                bind_window(env, processor, nullptr, 0);
+                if (processor->output) {
+                    fclose(processor->output);
+                    processor->output = nullptr;
+                }
             }
-            if (processor->yolo_detector) {
-                delete processor->yolo_detector;
-                processor->yolo_detector = nullptr;
+            //Extractor 引用着共享的 Net，工作线程的缓冲已随流水线释放，删除实例时归还模型
+            join_loader(processor);
+            if (processor->asset_manager) {
+                env->DeleteGlobalRef(processor->asset_manager);
             }
+            LOGD("Native processor %p released.", processor);
             delete processor;
-            if (g_processor == processor) {
-                g_processor = nullptr;
-            }
-            LOGD("Native processor released.");
         }
     }
 }
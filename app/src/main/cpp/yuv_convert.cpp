@@ -0,0 +1,222 @@
+#include "yuv_convert.h"
+
+#include <string.h>
+
+#include <algorithm>
+
+#include <opencv2/core/core.hpp>
+#include <opencv2/imgproc/imgproc.hpp>
+
+YuvLayout detect_yuv_layout(const YuvPlanes& p)
+{
+    if (p.uv_pixel_stride == 2 && p.v == p.u + 1)
+        return YUV_LAYOUT_NV12;
+    if (p.uv_pixel_stride == 2 && p.u == p.v + 1)
+        return YUV_LAYOUT_NV21;
+
+    if (p.uv_pixel_stride == 1 && p.y_row_stride == p.width && p.uv_row_stride == p.width / 2)
+    {
+        const size_t y_size = (size_t)p.width * p.height;
+        const size_t uv_size = (size_t)(p.width / 2) * (p.height / 2);
+        if (p.u == p.y + y_size && p.v == p.u + uv_size)
+            return YUV_LAYOUT_I420;
+        if (p.v == p.y + y_size && p.u == p.v + uv_size)
+            return YUV_LAYOUT_YV12;
+    }
+
+    return YUV_LAYOUT_GENERIC;
+}
+
+YuvPlanes yuv_planes_from_buffer(const uint8_t* data, int width, int height, int stride, int slice_height, int color_format)
+{
+    YuvPlanes p;
+    p.y = data;
+    p.y_row_stride = stride;
+    p.width = width;
+    p.height = height;
+
+    const uint8_t* chroma = data + (size_t)stride * slice_height;
+    if (color_format == COLOR_FormatYUV420Planar || color_format == COLOR_FormatYUV420PackedPlanar)
+    {
+        p.uv_row_stride = stride / 2;
+        p.uv_pixel_stride = 1;
+        p.u = chroma;
+        p.v = chroma + (size_t)(stride / 2) * (slice_height / 2);
+    }
+    else
+    {
+        //半平面格式以及各厂商私有的 NV12 变体
+        p.uv_row_stride = stride;
+        p.uv_pixel_stride = 2;
+        p.u = chroma;
+        p.v = chroma + 1;
+    }
+    return p;
+}
+
+YuvPlanes crop_yuv_planes(const YuvPlanes& planes, int left, int top, int width, int height)
+{
+    left &= ~1;
+    top &= ~1;
+
+    YuvPlanes p = planes;
+    p.y += (size_t)top * planes.y_row_stride + left;
+    p.u += (size_t)(top / 2) * planes.uv_row_stride + (size_t)(left / 2) * planes.uv_pixel_stride;
+    p.v += (size_t)(top / 2) * planes.uv_row_stride + (size_t)(left / 2) * planes.uv_pixel_stride;
+    p.width = width;
+    p.height = height;
+    return p;
+}
+
+void copy_yuv_frame(const YuvPlanes& src, YuvFrame& dst)
+{
+    const int w = src.width;
+    const int h = src.height;
+    const int cw = (w + 1) / 2;
+    const int ch = (h + 1) / 2;
+    const size_t y_size = (size_t)w * h;
+    const size_t uv_size = (size_t)cw * ch;
+
+    dst.data.resize(y_size + uv_size * 2);
+    uint8_t* y = dst.data.data();
+    uint8_t* chroma = y + y_size;
+
+    for (int j = 0; j < h; j++)
+    {
+        memcpy(y + (size_t)j * w, src.y + (size_t)j * src.y_row_stride, w);
+    }
+
+    YuvPlanes& p = dst.planes;
+    p.y = y;
+    p.y_row_stride = w;
+    p.width = w;
+    p.height = h;
+
+    const YuvLayout layout = detect_yuv_layout(src);
+    if (layout == YUV_LAYOUT_NV12 || layout == YUV_LAYOUT_NV21)
+    {
+        //交错的色度行整行拷贝
+        const uint8_t* first = std::min(src.u, src.v);
+        for (int j = 0; j < ch; j++)
+        {
+            memcpy(chroma + (size_t)j * cw * 2, first + (size_t)j * src.uv_row_stride, cw * 2);
+        }
+        p.uv_row_stride = cw * 2;
+        p.uv_pixel_stride = 2;
+        p.u = layout == YUV_LAYOUT_NV12 ? chroma : chroma + 1;
+        p.v = layout == YUV_LAYOUT_NV12 ? chroma + 1 : chroma;
+        return;
+    }
+
+    uint8_t* u = chroma;
+    uint8_t* v = chroma + uv_size;
+    for (int j = 0; j < ch; j++)
+    {
+        const uint8_t* urow = src.u + (size_t)j * src.uv_row_stride;
+        const uint8_t* vrow = src.v + (size_t)j * src.uv_row_stride;
+        if (src.uv_pixel_stride == 1)
+        {
+            memcpy(u + (size_t)j * cw, urow, cw);
+            memcpy(v + (size_t)j * cw, vrow, cw);
+            continue;
+        }
+        for (int i = 0; i < cw; i++)
+        {
+            u[(size_t)j * cw + i] = urow[i * src.uv_pixel_stride];
+            v[(size_t)j * cw + i] = vrow[i * src.uv_pixel_stride];
+        }
+    }
+    p.uv_row_stride = cw;
+    p.uv_pixel_stride = 1;
+    p.u = u;
+    p.v = v;
+}
+
+static inline uint8_t clamp_u8(int v)
+{
+    return (uint8_t)(v < 0 ? 0 : (v > 255 ? 255 : v));
+}
+
+//BT.601 limited range 定点(Q10)转换，系数与 OpenCV COLOR_YUV2RGB_* 相同
+//每次处理两行，共用同一行色度，按行分块并行
+static void yuv420_generic_to_rgb(const YuvPlanes& p, cv::Mat& rgb)
+{
+    const int ps = p.uv_pixel_stride;
+
+    cv::parallel_for_(cv::Range(0, (p.height + 1) / 2), [&](const cv::Range& range) {
+        for (int j = range.start; j < range.end; j++)
+        {
+            const uint8_t* urow = p.u + (size_t)j * p.uv_row_stride;
+            const uint8_t* vrow = p.v + (size_t)j * p.uv_row_stride;
+
+            for (int dy = 0; dy < 2; dy++)
+            {
+                const int y = j * 2 + dy;
+                if (y >= p.height)
+                    break;
+
+                const uint8_t* yrow = p.y + (size_t)y * p.y_row_stride;
+                uint8_t* out = rgb.ptr<uint8_t>(y);
+
+                for (int x = 0; x < p.width; x += 2)
+                {
+                    const int u = urow[(x / 2) * ps] - 128;
+                    const int v = vrow[(x / 2) * ps] - 128;
+                    const int ruv = 1634 * v + 512;
+                    const int guv = -833 * v - 400 * u + 512;
+                    const int buv = 2066 * u + 512;
+
+                    const int n = x + 1 < p.width ? 2 : 1;
+                    for (int k = 0; k < n; k++)
+                    {
+                        const int yy = std::max(yrow[x + k] - 16, 0) * 1192;
+                        out[0] = clamp_u8((yy + ruv) >> 10);
+                        out[1] = clamp_u8((yy + guv) >> 10);
+                        out[2] = clamp_u8((yy + buv) >> 10);
+                        out += 3;
+                    }
+                }
+            }
+        }
+    });
+}
+
+void yuv420_to_rgb(const YuvPlanes& p, cv::Mat& rgb)
+{
+    const int w = p.width;
+    const int h = p.height;
+
+    switch (detect_yuv_layout(p))
+    {
+    case YUV_LAYOUT_NV12:
+    {
+        cv::Mat y(h, w, CV_8UC1, (void*)p.y, p.y_row_stride);
+        cv::Mat uv(h / 2, w / 2, CV_8UC2, (void*)p.u, p.uv_row_stride);
+        cv::cvtColorTwoPlane(y, uv, rgb, cv::COLOR_YUV2RGB_NV12);
+        break;
+    }
+    case YUV_LAYOUT_NV21:
+    {
+        cv::Mat y(h, w, CV_8UC1, (void*)p.y, p.y_row_stride);
+        cv::Mat vu(h / 2, w / 2, CV_8UC2, (void*)p.v, p.uv_row_stride);
+        cv::cvtColorTwoPlane(y, vu, rgb, cv::COLOR_YUV2RGB_NV21);
+        break;
+    }
+    case YUV_LAYOUT_I420:
+    {
+        cv::Mat yuv(h * 3 / 2, w, CV_8UC1, (void*)p.y);
+        cv::cvtColor(yuv, rgb, cv::COLOR_YUV2RGB_I420);
+        break;
+    }
+    case YUV_LAYOUT_YV12:
+    {
+        cv::Mat yuv(h * 3 / 2, w, CV_8UC1, (void*)p.y);
+        cv::cvtColor(yuv, rgb, cv::COLOR_YUV2RGB_YV12);
+        break;
+    }
+    default:
+        rgb.create(h, w, CV_8UC3);
+        yuv420_generic_to_rgb(p, rgb);
+        break;
+    }
+}
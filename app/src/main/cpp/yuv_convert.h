@@ -0,0 +1,60 @@
+#ifndef YOLOV8_YUV_CONVERT_H
+#define YOLOV8_YUV_CONVERT_H
+
+#include <stdint.h>
+#include <vector>
+
+#include <opencv2/core/core.hpp>
+
+// MediaCodecInfo.CodecCapabilities 中与 YUV420 相关的颜色格式
+enum {
+    COLOR_FormatYUV420Planar = 19,
+    COLOR_FormatYUV420PackedPlanar = 20,
+    COLOR_FormatYUV420SemiPlanar = 21,
+    COLOR_FormatYUV420PackedSemiPlanar = 39,
+    COLOR_FormatYUV420Flexible = 0x7F420888,
+};
+
+//一帧 YUV420 图像的三个平面，描述方式与 android.media.Image.Plane 一致
+//U/V 平面可以是交错的(pixel_stride == 2，NV12/NV21)，也可以是独立的(pixel_stride == 1，I420/YV12)
+struct YuvPlanes {
+    const uint8_t* y;
+    const uint8_t* u;
+    const uint8_t* v;
+    int y_row_stride;
+    int uv_row_stride;
+    int uv_pixel_stride;
+    int width;
+    int height;
+};
+
+//紧凑保存的一帧 YUV420 数据，planes 中的指针指向 data 内部
+struct YuvFrame {
+    std::vector<uint8_t> data;
+    YuvPlanes planes = YuvPlanes();
+};
+
+enum YuvLayout {
+    YUV_LAYOUT_NV12 = 0,    //Y + UVUV...
+    YUV_LAYOUT_NV21 = 1,    //Y + VUVU...
+    YUV_LAYOUT_I420 = 2,    //Y + U + V 三个平面紧密相连
+    YUV_LAYOUT_YV12 = 3,    //Y + V + U 三个平面紧密相连
+    YUV_LAYOUT_GENERIC = 4, //任意行跨度/像素跨度的三平面
+};
+
+//根据平面指针和跨度判断内存布局
+YuvLayout detect_yuv_layout(const YuvPlanes& planes);
+
+//按 MediaCodec 的颜色格式从连续的输出缓冲区构造平面描述，stride/slice_height 为 Y 平面的行跨度与行数
+YuvPlanes yuv_planes_from_buffer(const uint8_t* data, int width, int height, int stride, int slice_height, int color_format);
+
+//将 crop 区域应用到平面指针上，left/top 会被对齐到偶数
+YuvPlanes crop_yuv_planes(const YuvPlanes& planes, int left, int top, int width, int height);
+
+//把 src 的可见区域紧凑拷贝到 dst，NV12/NV21 保持交错布局，其余布局转为 I420，dst.data 容量足够时不分配内存
+void copy_yuv_frame(const YuvPlanes& src, YuvFrame& dst);
+
+//按布局选择最快的转换路径直接读取各平面，输出 RGB，不会先拷贝成连续的 YUV 数组
+void yuv420_to_rgb(const YuvPlanes& planes, cv::Mat& rgb);
+
+#endif //YOLOV8_YUV_CONVERT_H
@@ -0,0 +1,101 @@
+package com.example.yolov8;
+
+import java.util.Locale;
+
+/**
+ * 一次解码过程的统计：帧延迟（送入解码器到拿到输出）、解码线程被唤醒的次数和 CPU 时间。
+ * 用于比较轮询和回调两种解码引擎，只应在单个线程中更新。
+ */
+public final class DecodeStats {
+
+    // 按 presentationTimeUs 记录送入解码器的时刻，容量需覆盖解码器内部的最大重排深度
+    private static final int PENDING_CAPACITY = 64;
+
+    private final long[] pendingPts = new long[PENDING_CAPACITY];
+    private final long[] pendingNanos = new long[PENDING_CAPACITY];
+    private int pendingNext = 0;
+
+    public final String engine;
+    private long frames;
+    private long wakeups;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    private long cpuTimeMillis;
+    private long wallTimeMillis;
+
+    public DecodeStats(String engine) {
+        this.engine = engine;
+        for (int i = 0; i < PENDING_CAPACITY; i++) {
+            pendingPts[i] = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * 解码线程从一次阻塞等待或回调中返回。
+     */
+    void onWakeup() {
+        wakeups++;
+    }
+
+    void onInputQueued(long presentationTimeUs, long nowNanos) {
+        pendingPts[pendingNext] = presentationTimeUs;
+        pendingNanos[pendingNext] = nowNanos;
+        pendingNext = (pendingNext + 1) % PENDING_CAPACITY;
+    }
+
+    void onOutputAvailable(long presentationTimeUs, long nowNanos) {
+        frames++;
+        for (int i = 0; i < PENDING_CAPACITY; i++) {
+            if (pendingPts[i] == presentationTimeUs) {
+                long latency = nowNanos - pendingNanos[i];
+                totalLatencyNanos += latency;
+                if (latency > maxLatencyNanos) {
+                    maxLatencyNanos = latency;
+                }
+                pendingPts[i] = Long.MIN_VALUE;
+                return;
+            }
+        }
+    }
+
+    void finish(long cpuTimeMillis, long wallTimeMillis) {
+        this.cpuTimeMillis = cpuTimeMillis;
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getWakeups() {
+        return wakeups;
+    }
+
+    public long getCpuTimeMillis() {
+        return cpuTimeMillis;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    public double getAverageLatencyMillis() {
+        return frames == 0 ? 0 : totalLatencyNanos / 1e6 / frames;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos / 1e6;
+    }
+
+    public double getWakeupsPerFrame() {
+        return frames == 0 ? 0 : (double) wakeups / frames;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%s: frames=%d avgLatency=%.2fms maxLatency=%.2fms wakeups=%d (%.2f/frame) cpu=%dms wall=%dms",
+                engine, frames, getAverageLatencyMillis(), getMaxLatencyMillis(),
+                wakeups, getWakeupsPerFrame(), cpuTimeMillis, wallTimeMillis);
+    }
+}
@@ -0,0 +1,382 @@
+package com.example.yolov8;
+
+import android.content.res.AssetManager;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 按视频内容指纹持久保存检测结果，再次打开同一个视频时直接使用缓存的结果，跳过推理。
+ *
+ * <p>指纹由模型文件、输入尺寸与阈值，视频轨道的格式与前 SAMPLE_TABLE_ENTRIES 个样本的
+ * (时间, 大小, 标志)，以及文件长度和均匀分布的 SAMPLED_CHUNKS 段原始字节计算，
+ * 只读取几十 KB，与视频时长无关。每个条目是一个检测日志(.ydl)：完整分析过的视频保存为 key.ydl；
+ * 中途停止的保存为 key.part.ydl，其最后一帧即覆盖到的时间，下次播放时这之前的帧使用缓存，之后的帧继续推理。
+ * 条目按最近使用时间(文件修改时间)淘汰，总大小不超过 maxBytes。
+ */
+public final class DetectionCache {
+
+    private static final String TAG = "DetectionCache";
+
+    static final int SAMPLE_TABLE_ENTRIES = 1024;
+    static final int SAMPLED_CHUNKS = 16;
+    static final int CHUNK_BYTES = 4096;
+
+    private static final String COMPLETE_SUFFIX = ".ydl";
+    private static final String PARTIAL_SUFFIX = ".part.ydl";
+
+    private final File directory;
+    private final long maxBytes;
+    private final AssetManager assetManager;
+    private String modelKey;
+
+    /**
+     * 一次播放使用的缓存条目。未完整命中时同时负责把本次播放的检测结果记录为新的条目。
+     * 不是线程安全的，只在解码线程中使用。
+     */
+    public final class Session implements Closeable {
+        private final String key;
+        private final int frameWidth;
+        private final int frameHeight;
+        private final DetectionLogReader reader;
+        private final boolean complete;
+        private final long coveredUs;
+        private final File recording;
+
+        private final DetectionLogReader.Frame frame = new DetectionLogReader.Frame();
+        private int count;
+        private int[] classIds = new int[64];
+        private float[] probs = new float[64];
+        private float[] rects = new float[64 * 4];
+
+        Session(String key, int frameWidth, int frameHeight) throws IOException {
+            this.key = key;
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+            File completeFile = new File(directory, key + COMPLETE_SUFFIX);
+            File partialFile = new File(directory, key + PARTIAL_SUFFIX);
+            File entry = completeFile.exists() ? completeFile : partialFile.exists() ? partialFile : null;
+            DetectionLogReader opened = null;
+            if (entry != null) {
+                try {
+                    opened = new DetectionLogReader(entry);
+                    entry.setLastModified(System.currentTimeMillis());
+                } catch (IOException e) {
+                    Log.w(TAG, "缓存条目损坏，删除 " + entry + ": " + e.getMessage());
+                    entry.delete();
+                }
+            }
+            reader = opened;
+            complete = reader != null && entry == completeFile;
+            if (complete) {
+                coveredUs = Long.MAX_VALUE;
+            } else if (reader == null || reader.getFrameCount() == 0) {
+                coveredUs = Long.MIN_VALUE;
+            } else {
+                reader.seek(reader.getFrameCount() - 1, frame);
+                coveredUs = frame.getTimestampUs();
+            }
+            try {
+                recording = complete ? null : File.createTempFile(key + "-rec", ".csv", directory);
+            } catch (IOException e) {
+                if (reader != null) {
+                    reader.close();
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * @return 缓存包含整段视频的检测结果，本次播放不需要推理。
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * @return 缓存覆盖到的最后一帧的时间戳，没有缓存时为 Long.MIN_VALUE，完整命中时为 Long.MAX_VALUE。
+         */
+        public long getCoveredUs() {
+            return coveredUs;
+        }
+
+        /**
+         * @return 本次播放需要写出检测结果的 CSV 文件(格式同离线分析)，完整命中时为 null。
+         */
+        public File getRecording() {
+            return recording;
+        }
+
+        /**
+         * 查找一帧的缓存结果，结果通过 getCount / getClassIds / getProbs / getRects 读取。
+         * 覆盖范围内日志中没有的帧即没有检测结果。
+         * @return 该帧在缓存覆盖范围内。
+         */
+        public boolean lookup(long timestampUs) {
+            count = 0;
+            if (reader == null || timestampUs > coveredUs) {
+                return false;
+            }
+            int index = reader.indexOf(timestampUs);
+            if (index < reader.getFrameCount()) {
+                reader.seek(index, frame);
+                if (frame.getTimestampUs() == timestampUs) {
+                    fill();
+                }
+            }
+            return true;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int[] getClassIds() {
+            return classIds;
+        }
+
+        public float[] getProbs() {
+            return probs;
+        }
+
+        /**
+         * @return 每个检测 4 个值 x, y, width, height，原图像素坐标。
+         */
+        public float[] getRects() {
+            return rects;
+        }
+
+        /**
+         * 把本次播放记录的结果保存为缓存条目。只在本次播放没有丢帧时调用，记录中才包含每一帧的结果。
+         * 未播放完且没有超出原有覆盖范围时保留原条目。
+         * @param lastTimestampUs 最后一个提交给流水线的帧的时间戳。
+         * @param complete 是否已经播放到视频结尾。
+         * @return 保存的条目，保留原条目时返回 null。
+         */
+        public File commit(long lastTimestampUs, boolean complete) throws IOException {
+            if (recording == null || (!complete && lastTimestampUs <= coveredUs)) {
+                return null;
+            }
+            File target = new File(directory, key + (complete ? COMPLETE_SUFFIX : PARTIAL_SUFFIX));
+            File temp = File.createTempFile(key + "-new", ".tmp", directory);
+            DetectionLogHeader header = new DetectionLogHeader(VideoProcessor.MODEL_NAME,
+                    VideoProcessor.TARGET_SIZE, VideoProcessor.TARGET_SIZE,
+                    VideoProcessor.PROB_THRESHOLD, VideoProcessor.NMS_THRESHOLD, frameWidth, frameHeight);
+            try (DetectionLogWriter writer = new DetectionLogWriter(temp, header)) {
+                writer.appendCsv(recording);
+                // CSV 中没有无检测结果的帧，补一个空帧标记覆盖范围的结束
+                if (!complete && writer.getLastTimestampUs() < lastTimestampUs) {
+                    writer.append(lastTimestampUs, 0, classIds, probs, rects);
+                }
+            }
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("无法写入缓存条目 " + target);
+            }
+            if (complete) {
+                new File(directory, key + PARTIAL_SUFFIX).delete();
+            }
+            evict(target);
+            return target;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (recording != null) {
+                recording.delete();
+            }
+            if (reader != null) {
+                reader.close();
+            }
+        }
+
+        private void fill() {
+            count = frame.getCount();
+            if (count > classIds.length) {
+                classIds = new int[count];
+                probs = new float[count];
+                rects = new float[count * 4];
+            }
+            for (int i = 0; i < count; i++) {
+                classIds[i] = frame.getClassId(i);
+                probs[i] = frame.getScore(i);
+                float left = frame.getLeft(i);
+                float top = frame.getTop(i);
+                rects[i * 4] = left;
+                rects[i * 4 + 1] = top;
+                rects[i * 4 + 2] = frame.getRight(i) - left;
+                rects[i * 4 + 3] = frame.getBottom(i) - top;
+            }
+        }
+    }
+
+    /**
+     * @param directory 缓存目录，不存在时创建。
+     * @param maxBytes 所有条目的总大小上限。
+     * @param assetManager 用于读取模型文件计算指纹，只在第一次打开视频时读取一次。
+     */
+    public DetectionCache(File directory, long maxBytes, AssetManager assetManager) {
+        this(directory, maxBytes, assetManager, null);
+    }
+
+    DetectionCache(File directory, long maxBytes, String modelKey) {
+        this(directory, maxBytes, null, modelKey);
+    }
+
+    private DetectionCache(File directory, long maxBytes, AssetManager assetManager, String modelKey) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.assetManager = assetManager;
+        this.modelKey = modelKey;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "无法创建缓存目录 " + directory);
+        }
+    }
+
+    /**
+     * 计算视频的指纹并打开对应的缓存条目。
+     * @param video 视频文件，只读取样本表和少量采样字节，不改变其读取位置。
+     * @param frameWidth 解码后的帧宽度，新条目的框坐标按它量化。
+     */
+    public Session open(ParcelFileDescriptor video, int frameWidth, int frameHeight) throws IOException {
+        return open(fingerprint(video), frameWidth, frameHeight);
+    }
+
+    Session open(String key, int frameWidth, int frameHeight) throws IOException {
+        return new Session(key, frameWidth, frameHeight);
+    }
+
+    /**
+     * 按最近使用时间从旧到新删除条目(完整与部分的)，直到总大小不超过上限，keep 不会被删除。
+     */
+    void evict(File keep) {
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith(COMPLETE_SUFFIX));
+        if (entries == null) {
+            return;
+        }
+        long total = 0;
+        for (File entry : entries) {
+            total += entry.length();
+        }
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < entries.length && total > maxBytes; i++) {
+            if (entries[i].equals(keep)) {
+                continue;
+            }
+            total -= entries[i].length();
+            entries[i].delete();
+        }
+    }
+
+    String fingerprint(ParcelFileDescriptor video) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(modelKey().getBytes(StandardCharsets.UTF_8));
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(video.getFileDescriptor());
+            digestSampleTable(digest, extractor);
+        } finally {
+            extractor.release();
+        }
+        // dup 出的描述符由输入流关闭，只做定位读取，不影响解码使用的描述符
+        try (FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(video.dup())) {
+            digestSampledBytes(digest, in.getChannel());
+        }
+        return hex(digest.digest());
+    }
+
+    // 视频轨道的格式与前 SAMPLE_TABLE_ENTRIES 个样本的时间、大小和标志
+    private static void digestSampleTable(MessageDigest digest, MediaExtractor extractor) throws IOException {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat format = extractor.getTrackFormat(i);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime == null || !mime.startsWith("video/")) {
+                continue;
+            }
+            ByteBuffer entry = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            digest.update(mime.getBytes(StandardCharsets.UTF_8));
+            entry.putInt(format.getInteger(MediaFormat.KEY_WIDTH)).putInt(format.getInteger(MediaFormat.KEY_HEIGHT))
+                    .putLong(format.containsKey(MediaFormat.KEY_DURATION) ? format.getLong(MediaFormat.KEY_DURATION) : -1);
+            digest.update(entry.array(), 0, entry.position());
+
+            extractor.selectTrack(i);
+            for (int n = 0; n < SAMPLE_TABLE_ENTRIES && extractor.getSampleTime() >= 0; n++) {
+                entry.clear();
+                entry.putLong(extractor.getSampleTime()).putLong(extractor.getSampleSize()).putInt(extractor.getSampleFlags());
+                digest.update(entry.array(), 0, entry.position());
+                extractor.advance();
+            }
+            return;
+        }
+        throw new IOException("未找到视频轨道");
+    }
+
+    /**
+     * 文件长度和均匀分布在文件中的 SAMPLED_CHUNKS 段、每段 CHUNK_BYTES 字节，包含文件开头与结尾。
+     */
+    static void digestSampledBytes(MessageDigest digest, FileChannel channel) throws IOException {
+        long length = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES);
+        buffer.putLong(length).flip();
+        digest.update(buffer);
+        long span = Math.max(0, length - CHUNK_BYTES);
+        for (int i = 0; i < SAMPLED_CHUNKS; i++) {
+            long position = span * i / (SAMPLED_CHUNKS - 1);
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                // 读满一段或到达文件结尾
+            }
+            buffer.flip();
+            digest.update(buffer);
+        }
+    }
+
+    // 模型文件内容、输入尺寸与阈值，任何一项变化都会使已有的缓存失效
+    private synchronized String modelKey() throws IOException {
+        if (modelKey == null) {
+            MessageDigest digest = sha256();
+            byte[] buffer = new byte[64 * 1024];
+            for (String name : new String[]{VideoProcessor.MODEL_NAME + ".param", VideoProcessor.MODEL_NAME + ".bin"}) {
+                try (InputStream in = assetManager.open(name)) {
+                    for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                        digest.update(buffer, 0, n);
+                    }
+                }
+            }
+            modelKey = hex(digest.digest()) + "/" + VideoProcessor.TARGET_SIZE
+                    + "/" + VideoProcessor.PROB_THRESHOLD + "/" + VideoProcessor.NMS_THRESHOLD;
+        }
+        return modelKey;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.yolov8;
+
+import java.util.Arrays;
+
+/**
+ * 检测日志上的时空索引，回答“某类别在某时间段内出现在某区域”的查询。
+ *
+ * <p>检测结果按 类别 -> 时间桶 -> GRID x GRID 空间网格 排序后存放在扁平数组中，
+ * 每个检测按框中心落入一个网格。查询时按时间桶内最大的框半宽/半高扩大查询区域，
+ * 只检查与扩大后区域相交的网格行区间，再逐个精确判断时间与框是否相交。
+ * 坐标统一为相对原图宽高的 [0, 1]，与分辨率无关。构建后只读，可以被多个线程同时查询。
+ */
+public final class DetectionIndex {
+
+    public static final int GRID = 8;
+    private static final int CELLS = GRID * GRID;
+    private static final int MAX_CLASSES = 256;
+
+    /**
+     * 查询结果，按检测在日志中的顺序(即时间顺序)排列，可跨查询复用以避免分配。
+     */
+    public static final class Result {
+        private int count;
+        private long[] timestamps = new long[64];
+        private float[] boxes = new float[64 * 4];
+        private long[] keys = new long[64];
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getTimestampUs(int i) {
+            return timestamps[i];
+        }
+
+        public float getLeft(int i) {
+            return boxes[i * 4];
+        }
+
+        public float getTop(int i) {
+            return boxes[i * 4 + 1];
+        }
+
+        public float getRight(int i) {
+            return boxes[i * 4 + 2];
+        }
+
+        public float getBottom(int i) {
+            return boxes[i * 4 + 3];
+        }
+
+        /**
+         * @return 结果中不同时间戳(帧)的个数。
+         */
+        public int countFrames() {
+            int frames = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || timestamps[i] != timestamps[i - 1]) {
+                    frames++;
+                }
+            }
+            return frames;
+        }
+
+        void add(long key) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+            }
+            keys[count++] = key;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (timestamps.length < capacity) {
+                timestamps = new long[Math.max(capacity, timestamps.length * 2)];
+                boxes = new float[timestamps.length * 4];
+            }
+        }
+    }
+
+    private final long baseUs;
+    private final long bucketUs;
+    private final int buckets;
+    private final int detections;
+
+    // 按类别分开存放，类别没有出现时为 null
+    private final int[][] cellStarts;   // [类别][桶 * CELLS + 网格]，长度 buckets * CELLS + 1
+    private final float[][] maxHalfWidths;
+    private final float[][] maxHalfHeights;
+    private final int[][] ordinals;     // 检测在日志中的序号
+    private final long[][] timestamps;
+    private final float[][] boxes;      // 每个检测 left, top, right, bottom
+
+    private DetectionIndex(long baseUs, long bucketUs, int buckets, int detections) {
+        this.baseUs = baseUs;
+        this.bucketUs = bucketUs;
+        this.buckets = buckets;
+        this.detections = detections;
+        cellStarts = new int[MAX_CLASSES][];
+        maxHalfWidths = new float[MAX_CLASSES][];
+        maxHalfHeights = new float[MAX_CLASSES][];
+        ordinals = new int[MAX_CLASSES][];
+        timestamps = new long[MAX_CLASSES][];
+        boxes = new float[MAX_CLASSES][];
+    }
+
+    /**
+     * 遍历两遍日志建立索引：第一遍统计每个网格的检测数，第二遍按计数排序填入。
+     * @param bucketUs 时间桶长度，桶越短时间过滤越精确，但每个出现过的类别占用 桶数 * 64 个 int。
+     */
+    public static DetectionIndex build(DetectionLogReader reader, long bucketUs) {
+        DetectionLogHeader header = reader.getHeader();
+        float width = Math.max(1, header.frameWidth);
+        float height = Math.max(1, header.frameHeight);
+        DetectionLogReader.Frame frame = new DetectionLogReader.Frame();
+
+        long first = 0;
+        long last = 0;
+        int total = 0;
+        if (reader.getFrameCount() > 0) {
+            reader.seek(0, frame);
+            first = frame.getTimestampUs();
+            reader.seek(reader.getFrameCount() - 1, frame);
+            last = frame.getTimestampUs();
+        }
+        int buckets = (int) Math.max(1, (last - first) / bucketUs + 1);
+
+        // 第一遍：每个网格的检测数，暂存在 cellStarts 中后一个位置
+        int[][] counts = new int[MAX_CLASSES][];
+        float[][] halfWidths = new float[MAX_CLASSES][];
+        float[][] halfHeights = new float[MAX_CLASSES][];
+        frame = new DetectionLogReader.Frame();
+        while (reader.next(frame)) {
+            int bucket = (int) ((frame.getTimestampUs() - first) / bucketUs);
+            for (int i = 0; i < frame.getCount(); i++) {
+                int c = frame.getClassId(i);
+                if (counts[c] == null) {
+                    counts[c] = new int[buckets * CELLS + 1];
+                    halfWidths[c] = new float[buckets];
+                    halfHeights[c] = new float[buckets];
+                }
+                float left = frame.getLeft(i) / width;
+                float top = frame.getTop(i) / height;
+                float right = frame.getRight(i) / width;
+                float bottom = frame.getBottom(i) / height;
+                counts[c][bucket * CELLS + cell(left, top, right, bottom) + 1]++;
+                halfWidths[c][bucket] = Math.max(halfWidths[c][bucket], (right - left) * 0.5f);
+                halfHeights[c][bucket] = Math.max(halfHeights[c][bucket], (bottom - top) * 0.5f);
+                total++;
+            }
+        }
+
+        DetectionIndex index = new DetectionIndex(first, bucketUs, buckets, total);
+        int[][] cursors = new int[MAX_CLASSES][];
+        for (int c = 0; c < MAX_CLASSES; c++) {
+            if (counts[c] == null) {
+                continue;
+            }
+            int[] starts = counts[c];
+            for (int k = 1; k < starts.length; k++) {
+                starts[k] += starts[k - 1];
+            }
+            int n = starts[starts.length - 1];
+            index.cellStarts[c] = starts;
+            index.maxHalfWidths[c] = halfWidths[c];
+            index.maxHalfHeights[c] = halfHeights[c];
+            index.ordinals[c] = new int[n];
+            index.timestamps[c] = new long[n];
+            index.boxes[c] = new float[n * 4];
+            cursors[c] = Arrays.copyOf(starts, starts.length - 1);
+        }
+
+        // 第二遍：按网格填入
+        int ordinal = 0;
+        frame = new DetectionLogReader.Frame();
+        while (reader.next(frame)) {
+            long timestamp = frame.getTimestampUs();
+            int bucket = (int) ((timestamp - first) / bucketUs);
+            for (int i = 0; i < frame.getCount(); i++) {
+                int c = frame.getClassId(i);
+                float left = frame.getLeft(i) / width;
+                float top = frame.getTop(i) / height;
+                float right = frame.getRight(i) / width;
+                float bottom = frame.getBottom(i) / height;
+                int slot = cursors[c][bucket * CELLS + cell(left, top, right, bottom)]++;
+                index.ordinals[c][slot] = ordinal++;
+                index.timestamps[c][slot] = timestamp;
+                float[] b = index.boxes[c];
+                b[slot * 4] = left;
+                b[slot * 4 + 1] = top;
+                b[slot * 4 + 2] = right;
+                b[slot * 4 + 3] = bottom;
+            }
+        }
+        return index;
+    }
+
+    public int getDetectionCount() {
+        return detections;
+    }
+
+    /**
+     * 查找类别为 classId、时间在 [startUs, endUs) 内、框与区域 [left, right) x [top, bottom) 相交的检测。
+     * 区域坐标为相对原图宽高的 [0, 1]，例如左三分之一为 (0, 0, 1/3, 1)。
+     * @return 匹配的检测数，结果写入 out。
+     */
+    public int query(int classId, long startUs, long endUs, float left, float top, float right, float bottom, Result out) {
+        out.count = 0;
+        if (classId < 0 || classId >= MAX_CLASSES || cellStarts[classId] == null || startUs >= endUs) {
+            return 0;
+        }
+        int[] starts = cellStarts[classId];
+        long[] ts = timestamps[classId];
+        float[] b = boxes[classId];
+        int[] ords = ordinals[classId];
+
+        int firstBucket = (int) Math.min(buckets, Math.max(0, Math.floorDiv(startUs - baseUs, bucketUs)));
+        int lastBucket = (int) Math.max(-1, Math.min(buckets - 1, Math.floorDiv(endUs - 1 - baseUs, bucketUs)));
+        for (int bucket = firstBucket; bucket <= lastBucket; bucket++) {
+            // 框中心落在扩大后的区域内，框才可能与查询区域相交
+            float hw = maxHalfWidths[classId][bucket];
+            float hh = maxHalfHeights[classId][bucket];
+            int x0 = clampCell(left - hw);
+            int x1 = clampCell(right + hw);
+            int y0 = clampCell(top - hh);
+            int y1 = clampCell(bottom + hh);
+            int base = bucket * CELLS;
+            for (int y = y0; y <= y1; y++) {
+                int end = starts[base + y * GRID + x1 + 1];
+                for (int k = starts[base + y * GRID + x0]; k < end; k++) {
+                    if (ts[k] >= startUs && ts[k] < endUs
+                            && b[k * 4] < right && b[k * 4 + 2] > left && b[k * 4 + 1] < bottom && b[k * 4 + 3] > top) {
+                        out.add(((long) ords[k] << 32) | k);
+                    }
+                }
+            }
+        }
+
+        // 不同网格的结果按日志顺序重新排列
+        Arrays.sort(out.keys, 0, out.count);
+        out.ensureCapacity(out.count);
+        for (int i = 0; i < out.count; i++) {
+            int k = (int) out.keys[i];
+            out.timestamps[i] = ts[k];
+            System.arraycopy(b, k * 4, out.boxes, i * 4, 4);
+        }
+        return out.count;
+    }
+
+    // 按框中心所在的网格
+    private static int cell(float left, float top, float right, float bottom) {
+        return clampCell((top + bottom) * 0.5f) * GRID + clampCell((left + right) * 0.5f);
+    }
+
+    private static int clampCell(float v) {
+        return Math.max(0, Math.min(GRID - 1, (int) Math.floor(v * GRID)));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.yolov8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 二进制检测日志(.ydl)的文件头，描述产生这些结果的模型与阈值，以及框坐标量化所用的原图尺寸。
+ *
+ * <p>文件布局(小端)：64 字节文件头，之后是若干个按列存储的帧块：
+ * <pre>
+ *   块头 24 字节: int 帧数, int 检测数, long 基准时间戳(us), int 块总字节数, int 保留
+ *   int[帧数]    与上一帧的时间戳差值，块内第一帧为 0
+ *   short[帧数]  每帧检测数(无符号)
+ *   short[检测数] 分数，score * 65535
+ *   short[检测数] x0 / y0 / x1 / y1 四列，坐标 / 原图宽高 * 65535
+ *   byte[检测数]  类别 id
+ *   补齐到 4 字节
+ * </pre>
+ */
+public final class DetectionLogHeader {
+
+    static final int MAGIC = 0x4C443859; // "Y8DL"
+    static final short VERSION = 1;
+    static final int SIZE = 64;
+    static final int BLOCK_HEADER_SIZE = 24;
+    static final int MAX_MODEL_NAME_BYTES = SIZE - 41;
+
+    // 文件头中各字段的偏移
+    static final int OFFSET_FRAME_COUNT = 8;
+    static final int OFFSET_DETECTION_COUNT = 12;
+
+    public final String modelName;
+    public final int inputWidth;
+    public final int inputHeight;
+    public final float probThreshold;
+    public final float nmsThreshold;
+    public final int frameWidth;
+    public final int frameHeight;
+
+    /**
+     * @param modelName 模型名，UTF-8 编码后超过 23 字节的部分被截断。
+     * @param frameWidth 原图宽度，框坐标按它量化。
+     */
+    public DetectionLogHeader(String modelName, int inputWidth, int inputHeight,
+                              float probThreshold, float nmsThreshold, int frameWidth, int frameHeight) {
+        this.modelName = modelName;
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+        this.probThreshold = probThreshold;
+        this.nmsThreshold = nmsThreshold;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+    }
+
+    void write(ByteBuffer buffer, int frameCount, int detectionCount) {
+        byte[] name = modelName.getBytes(StandardCharsets.UTF_8);
+        int nameLength = Math.min(name.length, MAX_MODEL_NAME_BYTES);
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putShort(6, (short) SIZE);
+        buffer.putInt(OFFSET_FRAME_COUNT, frameCount);
+        buffer.putInt(OFFSET_DETECTION_COUNT, detectionCount);
+        buffer.putInt(16, inputWidth);
+        buffer.putInt(20, inputHeight);
+        buffer.putFloat(24, probThreshold);
+        buffer.putFloat(28, nmsThreshold);
+        buffer.putInt(32, frameWidth);
+        buffer.putInt(36, frameHeight);
+        buffer.put(40, (byte) nameLength);
+        for (int i = 0; i < MAX_MODEL_NAME_BYTES; i++) {
+            buffer.put(41 + i, i < nameLength ? name[i] : 0);
+        }
+    }
+
+    static DetectionLogHeader read(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("不是检测日志文件");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("不支持的检测日志版本 " + buffer.getShort(4));
+        }
+        int nameLength = Math.min(buffer.get(40) & 0xff, MAX_MODEL_NAME_BYTES);
+        byte[] name = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            name[i] = buffer.get(41 + i);
+        }
+        return new DetectionLogHeader(new String(name, StandardCharsets.UTF_8),
+                buffer.getInt(16), buffer.getInt(20), buffer.getFloat(24), buffer.getFloat(28),
+                buffer.getInt(32), buffer.getInt(36));
+    }
+}
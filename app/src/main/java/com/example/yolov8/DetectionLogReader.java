@@ -0,0 +1,244 @@
+package com.example.yolov8;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 以只读映射方式读取 {@link DetectionLogWriter} 写出的检测日志。
+ * 打开时只扫描块头建立索引，帧与检测结果通过可复用的 {@link Frame} 直接从映射区域读取，不反序列化为对象。
+ * 不是线程安全的，多线程读取时每个线程各自打开一个 reader。
+ */
+public final class DetectionLogReader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final DetectionLogHeader header;
+    private final int frameCount;
+
+    // 块索引
+    private final int[] blockOffsets;
+    private final int[] blockFirstFrames;
+    private final long[] blockBaseTimestamps;
+
+    // 最近访问的块中各帧的时间戳与检测起始位置，按块缓存
+    private int cachedBlock = -1;
+    private final long[] frameTimestamps = new long[DetectionLogWriter.BLOCK_FRAMES];
+    private final int[] frameDetectionStarts = new int[DetectionLogWriter.BLOCK_FRAMES + 1];
+
+    /**
+     * 一帧的检测结果视图，由 {@link #seek} 或 {@link #next} 重新指向其他帧。
+     */
+    public static final class Frame {
+        private DetectionLogReader reader;
+        private int index = -1;
+        private long timestampUs;
+        private int count;
+        private int detectionStart;
+        private int blockDetections;
+        private int scoresOffset;
+        private int labelsOffset;
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getTimestampUs() {
+            return timestampUs;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getClassId(int i) {
+            return reader.buffer.get(labelsOffset + detectionStart + i) & 0xff;
+        }
+
+        public float getScore(int i) {
+            return readUnit(scoresOffset, i);
+        }
+
+        public float getLeft(int i) {
+            return readUnit(boxColumn(0), i) * reader.header.frameWidth;
+        }
+
+        public float getTop(int i) {
+            return readUnit(boxColumn(1), i) * reader.header.frameHeight;
+        }
+
+        public float getRight(int i) {
+            return readUnit(boxColumn(2), i) * reader.header.frameWidth;
+        }
+
+        public float getBottom(int i) {
+            return readUnit(boxColumn(3), i) * reader.header.frameHeight;
+        }
+
+        private int boxColumn(int k) {
+            return scoresOffset + (1 + k) * blockDetections * 2;
+        }
+
+        private float readUnit(int column, int i) {
+            return (reader.buffer.getShort(column + (detectionStart + i) * 2) & 0xffff) / 65535f;
+        }
+    }
+
+    public DetectionLogReader(File input) throws IOException {
+        file = new RandomAccessFile(input, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("检测日志超过 2GB");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            header = DetectionLogHeader.read(buffer);
+            frameCount = buffer.getInt(DetectionLogHeader.OFFSET_FRAME_COUNT);
+
+            int blocks = 0;
+            for (int offset = DetectionLogHeader.SIZE; offset < buffer.limit(); blocks++) {
+                int bytes = offset + DetectionLogHeader.BLOCK_HEADER_SIZE <= buffer.limit() ? buffer.getInt(offset + 16) : 0;
+                if (bytes < DetectionLogHeader.BLOCK_HEADER_SIZE || bytes > buffer.limit() - offset) {
+                    throw new IOException("检测日志块损坏，偏移 " + offset);
+                }
+                offset += bytes;
+            }
+            blockOffsets = new int[blocks];
+            blockFirstFrames = new int[blocks];
+            blockBaseTimestamps = new long[blocks];
+            int offset = DetectionLogHeader.SIZE;
+            int frames = 0;
+            for (int i = 0; i < blocks; i++) {
+                blockOffsets[i] = offset;
+                blockFirstFrames[i] = frames;
+                blockBaseTimestamps[i] = buffer.getLong(offset + 8);
+                frames += buffer.getInt(offset);
+                offset += buffer.getInt(offset + 16);
+            }
+            if (frames != frameCount) {
+                throw new IOException("检测日志不完整: " + frames + "/" + frameCount + " 帧");
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public DetectionLogHeader getHeader() {
+        return header;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * 让 frame 指向第 index 帧。
+     */
+    public void seek(int index, Frame frame) {
+        if (index < 0 || index >= frameCount) {
+            throw new IndexOutOfBoundsException("frame " + index + " of " + frameCount);
+        }
+        int block = findBlock(index);
+        loadBlock(block);
+        int offset = blockOffsets[block];
+        int frames = buffer.getInt(offset);
+        int local = index - blockFirstFrames[block];
+
+        frame.reader = this;
+        frame.index = index;
+        frame.timestampUs = frameTimestamps[local];
+        frame.detectionStart = frameDetectionStarts[local];
+        frame.count = frameDetectionStarts[local + 1] - frameDetectionStarts[local];
+        frame.blockDetections = buffer.getInt(offset + 4);
+        frame.scoresOffset = offset + DetectionLogHeader.BLOCK_HEADER_SIZE + frames * 4 + frames * 2;
+        frame.labelsOffset = frame.scoresOffset + frame.blockDetections * 2 * 5;
+    }
+
+    /**
+     * 让 frame 指向下一帧，frame 尚未指向任何帧时从第一帧开始。
+     * @return 已经没有下一帧时返回 false。
+     */
+    public boolean next(Frame frame) {
+        int index = frame.reader == this ? frame.index + 1 : 0;
+        if (index >= frameCount) {
+            return false;
+        }
+        seek(index, frame);
+        return true;
+    }
+
+    /**
+     * @return 第一个时间戳不早于 timestampUs 的帧序号，所有帧都更早时返回 getFrameCount()。
+     */
+    public int indexOf(long timestampUs) {
+        // 最后一个基准时间戳不晚于 timestampUs 的块
+        int lo = 0;
+        int hi = blockOffsets.length - 1;
+        int block = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blockBaseTimestamps[mid] <= timestampUs) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        for (; block < blockOffsets.length; block++) {
+            loadBlock(block);
+            int frames = buffer.getInt(blockOffsets[block]);
+            for (int i = 0; i < frames; i++) {
+                if (frameTimestamps[i] >= timestampUs) {
+                    return blockFirstFrames[block] + i;
+                }
+            }
+        }
+        return frameCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private int findBlock(int index) {
+        int lo = 0;
+        int hi = blockFirstFrames.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (blockFirstFrames[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    // 还原块内各帧的时间戳与检测起始位置
+    private void loadBlock(int block) {
+        if (cachedBlock == block) {
+            return;
+        }
+        int offset = blockOffsets[block];
+        int frames = buffer.getInt(offset);
+        int deltas = offset + DetectionLogHeader.BLOCK_HEADER_SIZE;
+        int counts = deltas + frames * 4;
+        long timestamp = blockBaseTimestamps[block];
+        int start = 0;
+        for (int i = 0; i < frames; i++) {
+            timestamp += buffer.getInt(deltas + i * 4);
+            frameTimestamps[i] = timestamp;
+            frameDetectionStarts[i] = start;
+            start += buffer.getShort(counts + i * 2) & 0xffff;
+        }
+        frameDetectionStarts[frames] = start;
+        cachedBlock = block;
+    }
+}
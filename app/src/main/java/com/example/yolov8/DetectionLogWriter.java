@@ -0,0 +1,217 @@
+package com.example.yolov8;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 以 MappedByteBuffer 追加写入二进制检测日志，格式见 {@link DetectionLogHeader}。
+ * 每 BLOCK_FRAMES 帧在内存中按列攒成一个块后整体写入映射区域，映射区域不足时按倍数扩大。
+ * 不是线程安全的，close 之后文件才包含正确的帧数并被截断到实际长度。
+ */
+public final class DetectionLogWriter implements Closeable {
+
+    static final int BLOCK_FRAMES = 256;
+
+    private static final int INITIAL_CAPACITY = 1 << 20;
+
+    private final DetectionLogHeader header;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long position = DetectionLogHeader.SIZE;
+
+    private int frameCount;
+    private int detectionCount;
+
+    // 当前块的各列
+    private long blockBaseTimestamp;
+    private long lastTimestamp;
+    private int blockFrames;
+    private int blockDetections;
+    private final int[] deltas = new int[BLOCK_FRAMES];
+    private final short[] counts = new short[BLOCK_FRAMES];
+    private short[] scores = new short[BLOCK_FRAMES];
+    private short[] boxes = new short[BLOCK_FRAMES * 4];
+    private byte[] labels = new byte[BLOCK_FRAMES];
+
+    public DetectionLogWriter(File output, DetectionLogHeader header) throws IOException {
+        this.header = header;
+        this.file = new RandomAccessFile(output, "rw");
+        this.file.setLength(0);
+        this.channel = file.getChannel();
+        map(INITIAL_CAPACITY);
+    }
+
+    /**
+     * 追加一帧的检测结果，时间戳应按显示顺序递增。
+     * @param rects 每个检测 4 个值 x, y, width, height，原图像素坐标。
+     */
+    public void append(long timestampUs, int count, int[] classIds, float[] probs, float[] rects) throws IOException {
+        if (count > 0xffff) {
+            throw new IllegalArgumentException("单帧检测数过多: " + count);
+        }
+        long delta = timestampUs - lastTimestamp;
+        if (blockFrames == BLOCK_FRAMES || (blockFrames > 0 && (delta > Integer.MAX_VALUE || delta < Integer.MIN_VALUE))) {
+            flushBlock();
+        }
+        if (blockFrames == 0) {
+            blockBaseTimestamp = timestampUs;
+            delta = 0;
+        }
+        deltas[blockFrames] = (int) delta;
+        counts[blockFrames] = (short) count;
+        blockFrames++;
+        lastTimestamp = timestampUs;
+
+        ensureDetections(blockDetections + count);
+        for (int i = 0; i < count; i++) {
+            int d = blockDetections + i;
+            float x = rects[i * 4];
+            float y = rects[i * 4 + 1];
+            labels[d] = (byte) classIds[i];
+            scores[d] = quantize(probs[i], 1f);
+            boxes[d * 4] = quantize(x, header.frameWidth);
+            boxes[d * 4 + 1] = quantize(y, header.frameHeight);
+            boxes[d * 4 + 2] = quantize(x + rects[i * 4 + 2], header.frameWidth);
+            boxes[d * 4 + 3] = quantize(y + rects[i * 4 + 3], header.frameHeight);
+        }
+        blockDetections += count;
+        frameCount++;
+        detectionCount += count;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return 最后追加的一帧的时间戳，尚未追加任何帧时返回 Long.MIN_VALUE。
+     */
+    public long getLastTimestampUs() {
+        return frameCount > 0 ? lastTimestamp : Long.MIN_VALUE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            header.write(buffer, frameCount, detectionCount);
+            buffer.force();
+            channel.truncate(position);
+        } finally {
+            channel.close();
+            file.close();
+        }
+    }
+
+    /**
+     * 从离线分析输出的 CSV(timestamp_us,label,score,x,y,width,height，按时间排序)导入，同一时间戳的行合并为一帧。
+     */
+    public void appendCsv(File csv) throws IOException {
+        int[] classIds = new int[64];
+        float[] probs = new float[64];
+        float[] rects = new float[64 * 4];
+        int count = 0;
+        long timestamp = Long.MIN_VALUE;
+        try (BufferedReader reader = new BufferedReader(new FileReader(csv))) {
+            reader.readLine(); // 表头
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] fields = line.split(",");
+                if (fields.length < 7) {
+                    continue;
+                }
+                long t = Long.parseLong(fields[0]);
+                if (t != timestamp && count > 0) {
+                    append(timestamp, count, classIds, probs, rects);
+                    count = 0;
+                }
+                timestamp = t;
+                if (count == classIds.length) {
+                    classIds = Arrays.copyOf(classIds, count * 2);
+                    probs = Arrays.copyOf(probs, count * 2);
+                    rects = Arrays.copyOf(rects, count * 8);
+                }
+                classIds[count] = Integer.parseInt(fields[1]);
+                probs[count] = Float.parseFloat(fields[2]);
+                for (int k = 0; k < 4; k++) {
+                    rects[count * 4 + k] = Float.parseFloat(fields[3 + k]);
+                }
+                count++;
+            }
+        }
+        if (count > 0) {
+            append(timestamp, count, classIds, probs, rects);
+        }
+    }
+
+    // 按比例量化到无符号 16 位，超出 [0, scale] 的部分被截断
+    private static short quantize(float value, float scale) {
+        float v = scale > 0 ? value / scale : 0f;
+        return (short) Math.round(Math.max(0f, Math.min(1f, v)) * 65535f);
+    }
+
+    private void ensureDetections(int required) {
+        if (required <= labels.length) {
+            return;
+        }
+        int capacity = Math.max(required, labels.length * 2);
+        labels = Arrays.copyOf(labels, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+        boxes = Arrays.copyOf(boxes, capacity * 4);
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockFrames == 0) {
+            return;
+        }
+        int bytes = DetectionLogHeader.BLOCK_HEADER_SIZE + blockFrames * 4 + blockFrames * 2
+                + blockDetections * 2 * 5 + blockDetections;
+        bytes = (bytes + 3) & ~3;
+        if (position + bytes > buffer.capacity()) {
+            map(Math.max(buffer.capacity() * 2L, position + bytes));
+        }
+
+        MappedByteBuffer b = buffer;
+        b.position((int) position);
+        b.putInt(blockFrames);
+        b.putInt(blockDetections);
+        b.putLong(blockBaseTimestamp);
+        b.putInt(bytes);
+        b.putInt(0);
+        for (int i = 0; i < blockFrames; i++) {
+            b.putInt(deltas[i]);
+        }
+        for (int i = 0; i < blockFrames; i++) {
+            b.putShort(counts[i]);
+        }
+        for (int i = 0; i < blockDetections; i++) {
+            b.putShort(scores[i]);
+        }
+        for (int k = 0; k < 4; k++) {
+            for (int i = 0; i < blockDetections; i++) {
+                b.putShort(boxes[i * 4 + k]);
+            }
+        }
+        b.put(labels, 0, blockDetections);
+        position += bytes;
+
+        blockFrames = 0;
+        blockDetections = 0;
+    }
+
+    private void map(long capacity) throws IOException {
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("检测日志超过 2GB");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
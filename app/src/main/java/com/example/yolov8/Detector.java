@@ -0,0 +1,128 @@
+package com.example.yolov8;
+
+import android.content.res.AssetManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 应用范围内长期持有的检测模型。持有期间模型一直留在内存中，新建的 {@link VideoProcessor} 直接取用已加载的模型，
+ * 旋转屏幕、多窗口调整或切换到后台导致 Surface 与 Activity 重建时只需重新绑定 Surface，不再重新加载模型。
+ * 通常在应用启动时通过 {@link #prewarm(AssetManager, int)} 在后台加载进程内的单例，不需要主动释放。
+ */
+public final class Detector {
+
+    private static final String TAG = "Detector_Yolo";
+
+    private static CompletableFuture<Detector> shared;
+
+    private final String modelName;
+    private long handle;
+
+    /**
+     * 在后台线程加载进程内共享的默认模型(yolov8n, CPU)，并以 targetSize 推理一次合成帧，
+     * 使第一段视频开始播放时不再等待模型加载与首次推理的初始化。
+     * 重复调用返回同一个 future；上一次加载失败时重新加载。
+     * @param assetManager 应使用 Application 的 AssetManager，不持有 Activity。
+     * @param targetSize 预热推理的输入尺寸，须为 32 的倍数；小于等于 0 时使用模型默认尺寸。
+     * @return 模型加载并预热完成后完成的 future，加载失败时结果为 null，加载线程抛出异常时以该异常完成。
+     */
+    public static synchronized CompletableFuture<Detector> prewarm(AssetManager assetManager, int targetSize) {
+        if (shared != null && !(shared.isDone() && (shared.isCompletedExceptionally() || shared.getNow(null) == null))) {
+            return shared;
+        }
+        CompletableFuture<Detector> future = new CompletableFuture<>();
+        long start = SystemClock.elapsedRealtime();
+        Thread thread = new Thread(() -> {
+            // 任何异常都要完成 future，否则等待模型的调用方会一直阻塞
+            try {
+                long loadStart = SystemClock.elapsedRealtime();
+                Detector detector = new Detector(assetManager, VideoProcessor.MODEL_NAME, false);
+                long loadMillis = SystemClock.elapsedRealtime() - loadStart;
+                if (!detector.isLoaded()) {
+                    future.complete(null);
+                    return;
+                }
+                double warmUpMillis = detector.warmUp(targetSize);
+                Log.i(TAG, String.format("冷启动: 等待线程 %dms, 加载模型 %dms, 预热推理 %.1fms, 共 %dms",
+                        loadStart - start, loadMillis, warmUpMillis, SystemClock.elapsedRealtime() - start));
+                future.complete(detector);
+            } catch (Throwable e) {
+                Log.e(TAG, "预热模型失败", e);
+                future.completeExceptionally(e);
+            }
+        }, "DetectorPrewarm");
+        thread.start();
+        shared = future;
+        return future;
+    }
+
+    /**
+     * 取得进程内共享的默认模型，尚未开始加载时在后台加载并等待完成。
+     * @return 模型加载失败时返回 null，之后的调用会重试。
+     */
+    public static Detector shared(AssetManager assetManager) {
+        return prewarm(assetManager, VideoProcessor.TARGET_SIZE).exceptionally(e -> null).join();
+    }
+
+    /**
+     * 放开共享的模型，供测试构造没有已加载模型的冷启动场景。
+     */
+    @VisibleForTesting
+    static synchronized void releaseShared() {
+        if (shared != null) {
+            Detector detector = shared.exceptionally(e -> null).join();
+            if (detector != null) {
+                detector.release();
+            }
+            shared = null;
+        }
+    }
+
+    /**
+     * 加载并持有 assets 中的 &lt;modelName&gt;.param 与 &lt;modelName&gt;.bin，已被其他实例加载时直接共享。
+     */
+    public Detector(AssetManager assetManager, String modelName, boolean useGpu) {
+        this.modelName = modelName;
+        long start = SystemClock.elapsedRealtime();
+        handle = retainModelNative(assetManager, modelName, useGpu);
+        if (handle == 0L) {
+            Log.e(TAG, "无法加载模型 " + modelName);
+        } else {
+            Log.d(TAG, "模型 " + modelName + " 已就绪，耗时 " + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public synchronized boolean isLoaded() {
+        return handle != 0L;
+    }
+
+    /**
+     * 以 targetSize 在合成帧上推理一次，提前完成首次推理的初始化与内存分配。
+     * @return 推理耗时(毫秒)，模型已释放或尺寸无效时返回 -1。
+     */
+    public synchronized double warmUp(int targetSize) {
+        return handle != 0L ? warmUpNative(handle, targetSize) : -1;
+    }
+
+    /**
+     * 放开对模型的引用，没有 VideoProcessor 使用时模型随之释放。
+     */
+    public synchronized void release() {
+        if (handle != 0L) {
+            releaseModelNative(handle);
+            handle = 0L;
+        }
+    }
+
+    private native long retainModelNative(AssetManager assetManager, String modelName, boolean useGpu);
+    private native double warmUpNative(long handle, int targetSize);
+    private native void releaseModelNative(long handle);
+}
@@ -0,0 +1,242 @@
+package com.example.yolov8;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 关键帧快速扫描的结果：只解码同步帧并做检测，按镜头汇总出现过的类别，用于快速了解视频内容。
+ *
+ * <p>相邻关键帧的亮度直方图差异超过 CUT_THRESHOLD 时认为发生了镜头切换；
+ * 编码器通常在场景切换处插入同步帧，镜头边界因此落在关键帧上，精度为一个 GOP。
+ */
+public final class KeyframeScan {
+
+    static final int HISTOGRAM_BINS = 32;
+    // 两个归一化直方图的 L1 距离的一半，范围 [0, 1]
+    static final float CUT_THRESHOLD = 0.35f;
+    // 计算直方图时在两个方向上每隔 HISTOGRAM_STEP 个像素取一个
+    private static final int HISTOGRAM_STEP = 8;
+
+    /**
+     * 一个镜头：显示时间 [startUs, endUs) 内的关键帧，以及在其中检测到的类别。
+     */
+    public static final class Shot {
+        public final long startUs;
+        public final long endUs;
+        public final int keyframes;
+        // 按出现的关键帧数从多到少排列
+        private final int[] classIds;
+        private final int[] classKeyframes;
+        private final int[] classMaxCounts;
+
+        Shot(long startUs, long endUs, int keyframes, int[] classIds, int[] classKeyframes, int[] classMaxCounts) {
+            this.startUs = startUs;
+            this.endUs = endUs;
+            this.keyframes = keyframes;
+            this.classIds = classIds;
+            this.classKeyframes = classKeyframes;
+            this.classMaxCounts = classMaxCounts;
+        }
+
+        public int getClassCount() {
+            return classIds.length;
+        }
+
+        public int getClassId(int i) {
+            return classIds[i];
+        }
+
+        /**
+         * @return 检测到该类别的关键帧数。
+         */
+        public int getClassKeyframes(int i) {
+            return classKeyframes[i];
+        }
+
+        /**
+         * @return 单个关键帧中该类别的最大检测数。
+         */
+        public int getClassMaxCount(int i) {
+            return classMaxCounts[i];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format(Locale.US, "[%.1fs, %.1fs) keyframes=%d",
+                    startUs / 1e6, endUs / 1e6, keyframes));
+            for (int i = 0; i < classIds.length; i++) {
+                builder.append(String.format(Locale.US, " class%d(%d/%d, max %d)",
+                        classIds[i], classKeyframes[i], keyframes, classMaxCounts[i]));
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 扫描过程中逐个记录关键帧的时间与亮度直方图，只在解码线程中使用。
+     */
+    static final class Builder {
+        private final List<Long> times = new ArrayList<>();
+        private final List<float[]> histograms = new ArrayList<>();
+
+        void addKeyframe(long timestampUs, float[] histogram) {
+            times.add(timestampUs);
+            histograms.add(histogram);
+        }
+
+        /**
+         * @param csv 扫描写出的检测结果，格式同离线分析。
+         * @param endUs 视频时长，作为最后一个镜头的结束时间，未知时使用最后一个关键帧的时间。
+         */
+        KeyframeScan build(File csv, long endUs, long wallTimeMillis) throws IOException {
+            long[] timestamps = new long[times.size()];
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = times.get(i);
+            }
+            int[][] counts = readClassCounts(csv, timestamps);
+            return new KeyframeScan(csv.getAbsolutePath(),
+                    split(timestamps, histograms.toArray(new float[0][]), counts, endUs), timestamps.length, wallTimeMillis);
+        }
+    }
+
+    public final String outputPath;
+    public final List<Shot> shots;
+    public final int keyframes;
+    public final long wallTimeMillis;
+
+    KeyframeScan(String outputPath, List<Shot> shots, int keyframes, long wallTimeMillis) {
+        this.outputPath = outputPath;
+        this.shots = Collections.unmodifiableList(shots);
+        this.keyframes = keyframes;
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    /**
+     * 按 HISTOGRAM_STEP 间隔采样一个亮度平面，得到 HISTOGRAM_BINS 个区间的归一化直方图。
+     * @param y 亮度平面，可见区域左上角位于 offset，行跨度为 rowStride。
+     */
+    static float[] lumaHistogram(ByteBuffer y, int offset, int rowStride, int width, int height) {
+        float[] histogram = new float[HISTOGRAM_BINS];
+        int samples = 0;
+        for (int row = HISTOGRAM_STEP / 2; row < height; row += HISTOGRAM_STEP) {
+            int base = offset + row * rowStride;
+            for (int col = HISTOGRAM_STEP / 2; col < width; col += HISTOGRAM_STEP) {
+                histogram[(y.get(base + col) & 0xff) * HISTOGRAM_BINS / 256]++;
+                samples++;
+            }
+        }
+        for (int i = 0; i < HISTOGRAM_BINS && samples > 0; i++) {
+            histogram[i] /= samples;
+        }
+        return histogram;
+    }
+
+    static float histogramDistance(float[] a, float[] b) {
+        float distance = 0;
+        for (int i = 0; i < HISTOGRAM_BINS; i++) {
+            distance += Math.abs(a[i] - b[i]);
+        }
+        return distance * 0.5f;
+    }
+
+    /**
+     * 在直方图突变处切分镜头，并统计每个镜头内各类别出现的关键帧数与单帧最大检测数。
+     * @param counts 每个关键帧中各类别的检测数，counts[k][classId]。
+     */
+    static List<Shot> split(long[] timestamps, float[][] histograms, int[][] counts, long endUs) {
+        List<Shot> shots = new ArrayList<>();
+        int start = 0;
+        for (int k = 1; k <= timestamps.length; k++) {
+            if (k < timestamps.length && histogramDistance(histograms[k - 1], histograms[k]) <= CUT_THRESHOLD) {
+                continue;
+            }
+            long shotEnd = k < timestamps.length ? timestamps[k] : Math.max(endUs, timestamps[k - 1]);
+            shots.add(summarize(timestamps[start], shotEnd, counts, start, k));
+            start = k;
+        }
+        return shots;
+    }
+
+    private static Shot summarize(long startUs, long endUs, int[][] counts, int from, int to) {
+        int classes = 0;
+        for (int k = from; k < to; k++) {
+            classes = Math.max(classes, counts[k].length);
+        }
+        int[] keyframes = new int[classes];
+        int[] maxCounts = new int[classes];
+        for (int k = from; k < to; k++) {
+            for (int c = 0; c < counts[k].length; c++) {
+                if (counts[k][c] > 0) {
+                    keyframes[c]++;
+                    maxCounts[c] = Math.max(maxCounts[c], counts[k][c]);
+                }
+            }
+        }
+
+        Integer[] order = new Integer[classes];
+        int present = 0;
+        for (int c = 0; c < classes; c++) {
+            if (keyframes[c] > 0) {
+                order[present++] = c;
+            }
+        }
+        Arrays.sort(order, 0, present, (a, b) -> keyframes[b] != keyframes[a] ? keyframes[b] - keyframes[a] : a - b);
+        int[] classIds = new int[present];
+        int[] classKeyframes = new int[present];
+        int[] classMaxCounts = new int[present];
+        for (int i = 0; i < present; i++) {
+            classIds[i] = order[i];
+            classKeyframes[i] = keyframes[order[i]];
+            classMaxCounts[i] = maxCounts[order[i]];
+        }
+        return new Shot(startUs, endUs, to - from, classIds, classKeyframes, classMaxCounts);
+    }
+
+    // 把 CSV 中的检测按时间戳归入对应的关键帧，timestamps 按升序排列
+    private static int[][] readClassCounts(File csv, long[] timestamps) throws IOException {
+        int[][] counts = new int[timestamps.length][];
+        for (int k = 0; k < counts.length; k++) {
+            counts[k] = new int[0];
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(csv))) {
+            reader.readLine(); // 表头
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] fields = line.split(",");
+                if (fields.length < 7) {
+                    continue;
+                }
+                int k = Arrays.binarySearch(timestamps, Long.parseLong(fields[0]));
+                int classId = Integer.parseInt(fields[1]);
+                if (k < 0 || classId < 0) {
+                    continue;
+                }
+                if (classId >= counts[k].length) {
+                    counts[k] = Arrays.copyOf(counts[k], classId + 1);
+                }
+                counts[k][classId]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 每秒扫描的关键帧数。
+     */
+    public double getKeyframesPerSecond() {
+        return wallTimeMillis <= 0 ? 0 : keyframes * 1000.0 / wallTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "keyframe scan: keyframes=%d shots=%d wall=%dms output=%s",
+                keyframes, shots.size(), wallTimeMillis, outputPath);
+    }
+}
@@ -4,6 +4,8 @@ import android.app.Activity;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
@@ -15,14 +17,29 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
 public class MainActivity extends AppCompatActivity implements SurfaceHolder.Callback {
 
     private static final String TAG = "MainActivity_Yolo";
 
+    // 检测缓存的总大小上限，一小时 30fps 视频的检测结果约 10MB
+    private static final long DETECTION_CACHE_BYTES = 64L << 20;
+
+    private static final String STATE_VIDEO_URI = "video_uri";
+
     private SurfaceView surfaceView;
     private Button buttonSelectVideo;
+    private Button buttonSwitchModel;
 
+    // 模型在应用范围内持有，Activity 与 Surface 重建时不重新加载；videoProcessor 只绑定当前的 Surface
+    // 启动时即在后台加载并预热，完成后才在主线程创建 videoProcessor，Surface 回调不等待模型
+    private CompletableFuture<Detector> detectorReady;
     private VideoProcessor videoProcessor;
+    private DetectionCache detectionCache;
+    // 正在播放的视频，Surface 重建后从头继续播放
+    private Uri currentVideoUri = null;
 
     // --- 新增代码 ---
     // 用于存储在 surface 创建之前选择的视频 URI
@@ -48,6 +65,7 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
                         // 2. 如果 videoProcessor 已经准备好了，就立即开始处理
                         //    (这种情况发生在用户选择第二个或之后的视频时)
                         if (videoProcessor != null) {
+                            currentVideoUri = pendingVideoUri;
                             videoProcessor.startProcessing(pendingVideoUri, this);
                             // 处理后清除，避免 surface重建时重复播放
                             pendingVideoUri = null;
@@ -71,6 +89,9 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        //模型加载与首次推理的初始化在后台进行，与布局和 Surface 的创建同时完成
+        detectorReady = Detector.prewarm(getApplicationContext().getAssets(), VideoProcessor.TARGET_SIZE);
+        Log.i(TAG, "冷启动: 进程启动到 onCreate " + (SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime()) + "ms");
         setContentView(R.layout.activity_main);
 
         surfaceView = findViewById(R.id.surfaceView);
@@ -78,6 +99,41 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
 
         buttonSelectVideo = findViewById(R.id.button_select_video);
         buttonSelectVideo.setOnClickListener(v -> openFileSelector());
+
+        //在 yolov8n 与 yolov8s 之间切换，播放中也可以切换，新模型在后台加载完成后生效
+        buttonSwitchModel = findViewById(R.id.button_switch_model);
+        buttonSwitchModel.setOnClickListener(v -> switchModel());
+
+        //再次打开分析过的视频时直接显示缓存的检测结果
+        detectionCache = new DetectionCache(new File(getCacheDir(), "detections"), DETECTION_CACHE_BYTES, getAssets());
+
+        detectorReady.whenCompleteAsync((detector, error) -> {
+            if (detector == null) {
+                Toast.makeText(this, "模型加载失败", Toast.LENGTH_LONG).show();
+            }
+        }, getMainExecutor());
+        if (savedInstanceState != null) {
+            pendingVideoUri = savedInstanceState.getParcelable(STATE_VIDEO_URI);
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(STATE_VIDEO_URI, currentVideoUri != null ? currentVideoUri : pendingVideoUri);
+    }
+
+    private void switchModel() {
+        if (videoProcessor == null) {
+            return;
+        }
+        String next = "yolov8s".equals(videoProcessor.getModelName()) ? "yolov8n" : "yolov8s";
+        if (videoProcessor.switchModel(next)) {
+            buttonSwitchModel.setText(next);
+            Toast.makeText(this, "正在加载 " + next, Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(this, "模型正在加载，请稍候", Toast.LENGTH_SHORT).show();
+        }
     }
 
     private void openFileSelector() {
@@ -92,16 +148,45 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
     public void surfaceCreated(@NonNull SurfaceHolder holder) {
         Log.d(TAG, "Surface 已创建");
         if (videoProcessor == null) {
-            videoProcessor = new VideoProcessor(holder.getSurface(), getApplicationContext().getAssets());
+            //模型在后台加载，冷启动或加载较大的模型时可能需要数百毫秒，就绪后再回到主线程创建实例
+            long start = SystemClock.elapsedRealtime();
+            detectorReady.whenCompleteAsync((detector, error) -> onDetectorReady(holder, start), getMainExecutor());
+            return;
         }
+        //从后台切回时 Activity 没有重建，只需绑定新的 Surface
+        videoProcessor.attachSurface(holder.getSurface());
+        startPendingVideo();
+    }
 
+    /**
+     * 模型就绪后创建处理实例；等待期间 Surface 可能已被销毁或 Activity 已结束，此时不再创建。
+     */
+    private void onDetectorReady(SurfaceHolder holder, long start) {
+        if (videoProcessor != null || isDestroyed() || !holder.getSurface().isValid()) {
+            return;
+        }
+        long waitMillis = SystemClock.elapsedRealtime() - start;
+        //模型由 Detector 持有，创建实例只需建立流水线
+        videoProcessor = new VideoProcessor(holder.getSurface(), getApplicationContext().getAssets());
+        videoProcessor.setDetectionCache(detectionCache);
+        buttonSwitchModel.setText(videoProcessor.getModelName());
+        Log.i(TAG, "冷启动: 等待模型就绪 " + waitMillis + "ms, 创建实例 "
+                + (SystemClock.elapsedRealtime() - start - waitMillis) + "ms");
+        startPendingVideo();
+    }
+
+    private void startPendingVideo() {
         // --- 新增代码 ---
         // 在 Surface 创建好后，检查是否有等待处理的视频
         if (pendingVideoUri != null) {
             Log.d(TAG, "检测到待处理的视频，现在开始播放。");
+            currentVideoUri = pendingVideoUri;
             videoProcessor.startProcessing(pendingVideoUri, this);
             // 处理完成后，将其置空，防止重复处理
             pendingVideoUri = null;
+        } else if (currentVideoUri != null && !videoProcessor.isProcessing()) {
+            Log.d(TAG, "Surface 重建，继续播放 " + currentVideoUri);
+            videoProcessor.startProcessing(currentVideoUri, this);
         }
         // --- 新增代码结束 ---
     }
@@ -114,9 +199,10 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
     @Override
     public void surfaceDestroyed(@NonNull SurfaceHolder holder) {
         Log.d(TAG, "Surface 已销毁");
+        //保留处理实例与模型，只解除与即将销毁的 Surface 的绑定
         if (videoProcessor != null) {
-            videoProcessor.release();
-            videoProcessor = null;
+            videoProcessor.stopProcessing();
+            videoProcessor.detachSurface();
         }
         // 当 surface 销毁时，也应该清除待处理的 URI
         pendingVideoUri = null;
@@ -0,0 +1,45 @@
+package com.example.yolov8;
+
+import java.util.Locale;
+
+/**
+ * 一次离线分析的结果：写出的帧数、检测结果数、级联推理升级到大模型的帧数和从开始解码到所有结果写完的端到端耗时。
+ */
+public final class OfflineAnalysisResult {
+
+    public final String outputPath;
+    public final long frames;
+    public final long detections;
+    public final long escalatedFrames;
+    public final long wallTimeMillis;
+
+    OfflineAnalysisResult(String outputPath, long frames, long detections, long escalatedFrames, long wallTimeMillis) {
+        this.outputPath = outputPath;
+        this.frames = frames;
+        this.detections = detections;
+        this.escalatedFrames = escalatedFrames;
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    /**
+     * 端到端帧率，包含解码、推理和写出文件的全部时间。
+     */
+    public double getFramesPerSecond() {
+        return wallTimeMillis <= 0 ? 0 : frames * 1000.0 / wallTimeMillis;
+    }
+
+    /**
+     * 级联推理中用大模型重新推理的帧所占的比例，未启用级联时为 0。
+     */
+    public double getEscalationRate() {
+        return frames <= 0 ? 0 : (double) escalatedFrames / frames;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "offline: frames=%d detections=%d%s wall=%dms fps=%.1f output=%s",
+                frames, detections,
+                escalatedFrames > 0 ? String.format(Locale.US, " escalated=%d (%.1f%%)", escalatedFrames, getEscalationRate() * 100) : "",
+                wallTimeMillis, getFramesPerSecond(), outputPath);
+    }
+}
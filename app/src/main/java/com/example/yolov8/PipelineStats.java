@@ -0,0 +1,140 @@
+package com.example.yolov8;
+
+/**
+ * 解码 -> 推理 -> 渲染 三段流水线的运行计数，用于根据设备性能调整队列容量与丢帧策略。
+ */
+public final class PipelineStats {
+
+    public final long decodedFrames;
+    public final long inferredFrames;
+    public final long renderedFrames;
+
+    public final long inferenceQueueDepth;
+    public final long inferenceQueueMaxDepth;
+    public final long inferenceQueueDropped;
+
+    public final long renderQueueDepth;
+    public final long renderQueueMaxDepth;
+    public final long renderQueueDropped;
+
+    /**
+     * 预热之后各阶段的堆分配次数，只有以 YOLOV8_ALLOC_COUNTER 构建的原生库(调试包)才会统计，否则为 -1。
+     * extractAllocations 是 ncnn 推理内部的分配，不计入 inferenceAllocations。
+     */
+    public final long decodeAllocations;
+    public final long inferenceAllocations;
+    public final long renderAllocations;
+    public final long extractAllocations;
+
+    /**
+     * 使用检测缓存中的结果、跳过推理的帧数，不计入 inferredFrames。
+     */
+    public final long cachedFrames;
+
+    /**
+     * 自适应输入尺寸：当前网络输入尺寸(长边)与累计切换次数，未启用时为模型默认尺寸与 0。
+     */
+    public final long inputSize;
+    public final long resolutionSwitches;
+
+    /**
+     * 运动门控判定为静止、沿用上一推理帧检测结果的帧数，不计入 inferredFrames。
+     */
+    public final long skippedFrames;
+
+    /**
+     * 只在已知目标附近的区域上推理的帧数，计入 inferredFrames。
+     */
+    public final long roiFrames;
+
+    /**
+     * 累计切换模型的次数，不随流水线重新配置清零。
+     */
+    public final long modelSwitches;
+
+    /**
+     * 级联推理中小模型的结果不可信、改用大模型重新推理的帧数，计入 inferredFrames。
+     */
+    public final long escalatedFrames;
+
+    /**
+     * 最近一次创建实例或绑定 Surface 到第一帧显示的毫秒数，包含等待开始播放的时间；尚未显示时为 -1。
+     * 不随流水线重新配置清零。
+     */
+    public final long timeToFirstFrameMillis;
+
+    /**
+     * 切片推理的帧数，计入 inferredFrames。
+     */
+    public final long tiledFrames;
+
+    /**
+     * @param values 原生层 getPipelineStatsNative 返回的数组，顺序与字段声明一致。
+     */
+    PipelineStats(long[] values) {
+        decodedFrames = values[0];
+        inferredFrames = values[1];
+        renderedFrames = values[2];
+        inferenceQueueDepth = values[3];
+        inferenceQueueMaxDepth = values[4];
+        inferenceQueueDropped = values[5];
+        renderQueueDepth = values[6];
+        renderQueueMaxDepth = values[7];
+        renderQueueDropped = values[8];
+        decodeAllocations = values[9];
+        inferenceAllocations = values[10];
+        renderAllocations = values[11];
+        extractAllocations = values[12];
+        cachedFrames = values[13];
+        inputSize = values[14];
+        resolutionSwitches = values[15];
+        skippedFrames = values[16];
+        roiFrames = values[17];
+        modelSwitches = values[18];
+        escalatedFrames = values[19];
+        timeToFirstFrameMillis = values[20];
+        tiledFrames = values[21];
+    }
+
+    /**
+     * 原生库是否统计了堆分配次数。
+     */
+    public boolean isAllocationCounted() {
+        return decodeAllocations >= 0;
+    }
+
+    /**
+     * 级联推理中升级到大模型的帧占推理帧的比例。
+     */
+    public double escalationRate() {
+        return inferredFrames > 0 ? (double) escalatedFrames / inferredFrames : 0;
+    }
+
+    /**
+     * 两个队列累计丢弃的帧数。
+     */
+    public long droppedFrames() {
+        return inferenceQueueDropped + renderQueueDropped;
+    }
+
+    @Override
+    public String toString() {
+        return "decoded=" + decodedFrames
+                + " inferred=" + inferredFrames
+                + " rendered=" + renderedFrames
+                + (cachedFrames > 0 ? " cached=" + cachedFrames : "")
+                + (skippedFrames > 0 ? " skipped=" + skippedFrames : "")
+                + (roiFrames > 0 ? " roi=" + roiFrames : "")
+                + (tiledFrames > 0 ? " tiled=" + tiledFrames : "")
+                + (escalatedFrames > 0 ? " escalated=" + escalatedFrames : "")
+                + " inputSize=" + inputSize + (resolutionSwitches > 0 ? " switches=" + resolutionSwitches : "")
+                + " inferenceQueue(depth=" + inferenceQueueDepth + ", max=" + inferenceQueueMaxDepth
+                + ", dropped=" + inferenceQueueDropped + ")"
+                + " renderQueue(depth=" + renderQueueDepth + ", max=" + renderQueueMaxDepth
+                + ", dropped=" + renderQueueDropped + ")"
+                + (isAllocationCounted()
+                        ? " allocations(decode=" + decodeAllocations + ", inference=" + inferenceAllocations
+                        + ", render=" + renderAllocations + ", extract=" + extractAllocations + ")"
+                        : "");
+    }
+}
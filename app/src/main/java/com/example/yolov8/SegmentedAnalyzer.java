@@ -0,0 +1,206 @@
+package com.example.yolov8;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把一段视频按同步帧切成若干段，每段由独立的离线 VideoProcessor(各自的提取器、解码器和推理上下文)并行分析，
+ * 最后按时间顺序合并为与顺序分析相同格式的 CSV 文件。
+ * 分段边界都是同步帧，对闭合 GOP 的视频结果与顺序分析逐帧一致；开放 GOP 中引用上一段的前置 B 帧会被丢弃。
+ */
+public final class SegmentedAnalyzer {
+
+    private static final String TAG = "SegmentedAnalyzer";
+
+    /**
+     * 一个分段，包含显示时间在 [startUs, endUs) 内的帧。
+     */
+    static final class Segment {
+        final long startUs;
+        final long endUs;
+
+        Segment(long startUs, long endUs) {
+            this.startUs = startUs;
+            this.endUs = endUs;
+        }
+    }
+
+    private final AssetManager assetManager;
+    private final int segments;
+    private final int threadsPerSegment;
+
+    /**
+     * @param segments 最多切分的段数，同时运行的解码器与推理实例数。
+     * @param threadsPerSegment 每段的推理线程预算，0 表示使用模型的默认设置。
+     */
+    public SegmentedAnalyzer(AssetManager assetManager, int segments, int threadsPerSegment) {
+        this.assetManager = assetManager;
+        this.segments = Math.max(1, segments);
+        this.threadsPerSegment = threadsPerSegment;
+    }
+
+    /**
+     * 阻塞直到整段视频分析完成，output 的内容与 VideoProcessor.startOfflineAnalysis 的输出相同。
+     */
+    public OfflineAnalysisResult analyze(Uri videoUri, Context context, File output)
+            throws IOException, InterruptedException {
+        long start = SystemClock.elapsedRealtime();
+        List<Segment> plan = scan(videoUri, context);
+        Log.d(TAG, "视频切分为 " + plan.size() + " 段");
+
+        List<VideoProcessor> processors = new ArrayList<>();
+        List<File> parts = new ArrayList<>();
+        long frames = 0;
+        long detections = 0;
+        long escalatedFrames = 0;
+        try {
+            for (int i = 0; i < plan.size(); i++) {
+                Segment segment = plan.get(i);
+                VideoProcessor processor = VideoProcessor.createOffline(assetManager, threadsPerSegment);
+                processors.add(processor);
+                File part = new File(output.getPath() + ".part" + i);
+                parts.add(part);
+                processor.setSegment(segment.startUs, segment.endUs);
+                processor.startOfflineAnalysis(videoUri, context, part);
+            }
+            for (VideoProcessor processor : processors) {
+                processor.awaitCompletion();
+                OfflineAnalysisResult result = processor.getLastOfflineResult();
+                if (result == null) {
+                    throw new IOException("分段分析失败");
+                }
+                frames += result.frames;
+                detections += result.detections;
+                escalatedFrames += result.escalatedFrames;
+            }
+            merge(parts, output);
+        } finally {
+            for (VideoProcessor processor : processors) {
+                processor.release();
+            }
+            for (File part : parts) {
+                if (!part.delete()) {
+                    Log.w(TAG, "无法删除临时文件 " + part);
+                }
+            }
+        }
+
+        OfflineAnalysisResult result = new OfflineAnalysisResult(output.getAbsolutePath(), frames, detections, escalatedFrames,
+                SystemClock.elapsedRealtime() - start);
+        Log.i(TAG, plan.size() + " 段并行分析完成: " + result);
+        return result;
+    }
+
+    /**
+     * 遍历视频轨道的样本，记录每个同步帧的时间与样本序号，再按样本数均分为分段。
+     */
+    private List<Segment> scan(Uri videoUri, Context context) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try (ParcelFileDescriptor fd = context.getContentResolver().openFileDescriptor(videoUri, "r")) {
+            if (fd == null) {
+                throw new IOException("无法打开 " + videoUri);
+            }
+            extractor.setDataSource(fd.getFileDescriptor());
+            int track = -1;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("video/")) {
+                    track = i;
+                    break;
+                }
+            }
+            if (track < 0) {
+                throw new IOException("未找到视频轨道");
+            }
+            extractor.selectTrack(track);
+
+            List<Long> syncTimes = new ArrayList<>();
+            List<Integer> syncIndices = new ArrayList<>();
+            int samples = 0;
+            for (long time = extractor.getSampleTime(); time >= 0; time = extractor.getSampleTime()) {
+                if ((extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) {
+                    syncTimes.add(time);
+                    syncIndices.add(samples);
+                }
+                samples++;
+                extractor.advance();
+            }
+
+            long[] times = new long[syncTimes.size()];
+            int[] indices = new int[syncIndices.size()];
+            for (int i = 0; i < times.length; i++) {
+                times[i] = syncTimes.get(i);
+                indices[i] = syncIndices.get(i);
+            }
+            return split(times, indices, samples, segments);
+        } finally {
+            extractor.release();
+        }
+    }
+
+    /**
+     * 在同步帧处切分，使各段的样本数尽量接近 totalSamples / segments。
+     * 第一段从头开始、最后一段到结尾，同步帧不足时段数相应减少。
+     * @param syncTimesUs 同步帧的显示时间，按解码顺序递增。
+     * @param syncIndices 同步帧在轨道中的样本序号。
+     */
+    static List<Segment> split(long[] syncTimesUs, int[] syncIndices, int totalSamples, int segments) {
+        List<Segment> plan = new ArrayList<>();
+        long start = Long.MIN_VALUE;
+        int previous = 0;
+        for (int k = 1; k < segments; k++) {
+            long target = (long) totalSamples * k / segments;
+            // 选择样本序号最接近目标的同步帧，且必须在上一个边界之后
+            int best = -1;
+            for (int i = previous + 1; i < syncIndices.length; i++) {
+                if (best < 0 || Math.abs(syncIndices[i] - target) < Math.abs(syncIndices[best] - target)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            plan.add(new Segment(start, syncTimesUs[best]));
+            start = syncTimesUs[best];
+            previous = best;
+        }
+        plan.add(new Segment(start, Long.MAX_VALUE));
+        return plan;
+    }
+
+    /**
+     * 各段的时间范围互不重叠且按顺序排列，按段顺序拼接即为时间顺序，只保留第一个表头。
+     */
+    private static void merge(List<File> parts, File output) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(output))) {
+            for (int i = 0; i < parts.size(); i++) {
+                try (BufferedReader reader = new BufferedReader(new FileReader(parts.get(i)))) {
+                    String header = reader.readLine();
+                    if (i == 0 && header != null) {
+                        writer.write(header);
+                        writer.newLine();
+                    }
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                }
+            }
+        }
+    }
+}
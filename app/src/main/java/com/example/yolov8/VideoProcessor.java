@@ -3,36 +3,128 @@ package com.example.yolov8; // 替换为你的包名
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.res.AssetManager;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.media.Image;
 import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Surface;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
 
 public class VideoProcessor {
 
     private static final String TAG = "VideoProcessor_Yolo";
 
+    // MediaFormat.KEY_CROP_* 在 API 33 才公开，键名在更早的版本中已经存在
+    private static final String KEY_CROP_LEFT = "crop-left";
+    private static final String KEY_CROP_TOP = "crop-top";
+    private static final String KEY_CROP_RIGHT = "crop-right";
+    private static final String KEY_CROP_BOTTOM = "crop-bottom";
+
+    // 原生层创建实例时加载的默认模型与 YOLO::detect 的默认阈值，用于标识检测结果的来源
+    static final String MODEL_NAME = "yolov8n";
+    static final int TARGET_SIZE = 320;
+    static final float PROB_THRESHOLD = 0.4f;
+    static final float NMS_THRESHOLD = 0.5f;
+
+    /**
+     * 解码引擎，两种引擎都把解码后的帧交给同一条原生处理流水线。
+     */
+    public enum DecodeMode {
+        /** 在解码线程中以 10ms 超时轮询输入/输出缓冲区。 */
+        POLLING,
+        /** 使用 MediaCodec.setCallback，在独立的回调线程中按事件驱动解码。 */
+        CALLBACK
+    }
+
+    /**
+     * 流水线队列已满时的处理策略，ordinal 与原生层 DropPolicy 保持一致。
+     */
+    public enum DropPolicy {
+        /** 丢弃队列中最旧的帧，为新帧腾出位置。 */
+        DROP_OLDEST,
+        /** 新帧到达时丢弃所有未处理的帧，下游总是拿到最新的一帧。 */
+        LATEST_WINS,
+        /** 阻塞上游直到队列出现空位，不丢帧。 */
+        BLOCK
+    }
+
     private long nativePointer = 0;
     private volatile boolean isProcessingRunning = false;
     private Thread decodeThread;
+    // 每次开始处理时重建，解码线程收尾(写完离线结果与检测缓存)后计数归零
+    private volatile CountDownLatch processingDone = new CountDownLatch(0);
+    private volatile DecodeMode decodeMode = DecodeMode.POLLING;
+    private volatile DecodeStats lastDecodeStats;
+    private volatile boolean useImagePlanes = true;
 
     private ParcelFileDescriptor currentVideoFileDescriptor;
 
+    // 离线分析：本次解码的输出文件与开始时刻，非离线运行时为 null
+    private volatile File offlineOutput;
+    private long offlineStartMillis;
+    private volatile OfflineAnalysisResult lastOfflineResult;
+
+    // 只处理显示时间在 [segmentStartUs, segmentEndUs) 内的帧，由 SegmentedAnalyzer 设置
+    private volatile long segmentStartUs = Long.MIN_VALUE;
+    private volatile long segmentEndUs = Long.MAX_VALUE;
+
+    // 关键帧扫描：只读取同步样本，记录每个关键帧的亮度直方图，非扫描运行时为 null
+    private volatile KeyframeScan.Builder keyframeScan;
+    private volatile KeyframeScan lastKeyframeScan;
+    private long scanDurationUs;
+    private long lastQueuedSampleUs;
+
+    // 检测缓存：命中的帧直接使用缓存的结果，其余帧推理后记录下来，结束时写回缓存
+    private volatile DetectionCache detectionCache;
+    private volatile DetectionCache.Session cacheSession;
+    private volatile long lastSubmittedUs;
+    private volatile boolean reachedEndOfStream;
+    // 打开缓存会话时原生层的推理配置代数，会话期间推理配置变化过则不写回缓存
+    private long cacheConfigGeneration;
+
+    // 解码器输出格式缓存，仅在 INFO_OUTPUT_FORMAT_CHANGED 时更新，避免每帧调用 getOutputFormat()
+    private int outputWidth;
+    private int outputHeight;
+    private int outputStride;
+    private int outputSliceHeight;
+    private int outputColorFormat;
+
     /**
      * 构造函数，初始化原生处理器。
      * @param surface 用于渲染视频帧的 Surface。
      * @param assetManager 用于从 assets 目录加载模型。
      */
     public VideoProcessor(Surface surface, AssetManager assetManager) {
-        this.nativePointer = initNative(surface, assetManager);
+        this(surface, assetManager, 0);
+    }
+
+    /**
+     * 构造函数，初始化原生处理器。每个实例拥有独立的流水线、推理缓冲和锁，
+     * 已加载的模型在所有实例之间共享，多个实例可以同时处理不同的视频。
+     * @param surface 用于渲染视频帧的 Surface，为 null 时创建不渲染的离线分析实例。
+     * @param assetManager 用于从 assets 目录加载模型。
+     * @param inferenceThreads 本实例推理使用的线程数，0 表示使用模型的默认设置；
+     *                         同时运行多个实例时按实例数分摊 CPU 核心可以避免互相争抢。
+     */
+    public VideoProcessor(Surface surface, AssetManager assetManager, int inferenceThreads) {
+        this.nativePointer = initNative(surface, assetManager, false, inferenceThreads);
         if (this.nativePointer == 0L) {
             Log.e(TAG, "关键错误：原生处理器初始化失败！");
             // 在实际应用中，这里可能需要向上层抛出异常
@@ -41,6 +133,112 @@ public class VideoProcessor {
         }
     }
 
+    /**
+     * 绑定新的 Surface，模型与流水线保持不变，Surface 重建后(旋转屏幕、切回前台)不需要重新创建实例。
+     * 可以在处理过程中调用，之后的帧显示到新的 Surface 上；
+     * 从绑定到第一帧显示的耗时见 {@link PipelineStats#timeToFirstFrameMillis}。
+     * @return 无法从 Surface 取得窗口或原生处理器未初始化时返回 false，此时不再显示。
+     */
+    public boolean attachSurface(Surface surface) {
+        if (nativePointer == 0L) {
+            Log.e(TAG, "无法绑定 Surface：原生处理器未初始化。");
+            return false;
+        }
+        return attachSurfaceNative(nativePointer, surface);
+    }
+
+    /**
+     * 解除与 Surface 的绑定，应在 surfaceDestroyed 返回之前调用；返回后原生层不再访问该 Surface。
+     */
+    public void detachSurface() {
+        if (nativePointer != 0L) {
+            attachSurfaceNative(nativePointer, null);
+        }
+    }
+
+    /**
+     * 创建不渲染的离线分析实例，只运行检测并把结果写入文件，配合 startOfflineAnalysis 使用。
+     * @param assetManager 用于从 assets 目录加载模型。
+     * @param inferenceThreads 推理线程预算，0 表示使用模型的默认设置。
+     */
+    public static VideoProcessor createOffline(AssetManager assetManager, int inferenceThreads) {
+        return new VideoProcessor(null, assetManager, inferenceThreads);
+    }
+
+    /**
+     * 以解码器允许的最快速度分析整段视频，不绘制也不显示，逐帧把检测结果写入 CSV 文件：
+     * 每行为 timestamp_us,label,score,x,y,width,height，坐标为原图像素。
+     * 流水线队列需保持 BLOCK 策略(默认)才不会丢帧。结束后可通过 getLastOfflineResult 取得端到端帧率。
+     * @param output 输出文件，已存在时覆盖。
+     */
+    public void startOfflineAnalysis(Uri videoUri, Context context, File output) {
+        if (isProcessingRunning) {
+            Log.w(TAG, "处理已经在运行，请先停止。");
+            return;
+        }
+        if (nativePointer == 0L || !openOutputNative(nativePointer, output.getAbsolutePath())) {
+            Log.e(TAG, "无法开始离线分析：原生处理器未就绪或无法打开输出文件 " + output);
+            return;
+        }
+        offlineOutput = output;
+        offlineStartMillis = SystemClock.elapsedRealtime();
+        startProcessing(videoUri, context);
+        if (!isProcessingRunning) {
+            finishOfflineAnalysis();
+        }
+    }
+
+    /**
+     * 关键帧快速扫描：提取器只在同步样本之间跳转，解码器只解码 I 帧，每个 I 帧都做检测，
+     * 结束后按镜头汇总检测到的类别，通过 getLastKeyframeScan 取得。解码量约为完整分析的 1/GOP 长度。
+     * 检测结果同样写入 output，格式与 startOfflineAnalysis 相同。
+     * @param output 输出文件，已存在时覆盖。
+     */
+    public void startKeyframeScan(Uri videoUri, Context context, File output) {
+        if (isProcessingRunning) {
+            Log.w(TAG, "处理已经在运行，请先停止。");
+            return;
+        }
+        keyframeScan = new KeyframeScan.Builder();
+        startOfflineAnalysis(videoUri, context, output);
+        if (!isProcessingRunning) {
+            keyframeScan = null;
+        }
+    }
+
+    /**
+     * @return 最近一次关键帧扫描的镜头汇总，尚未完成过扫描时返回 null。
+     */
+    public KeyframeScan getLastKeyframeScan() {
+        return lastKeyframeScan;
+    }
+
+    /**
+     * 限制下一次处理的时间范围。解码从 startUs 之前最近的同步帧开始，读到显示时间不早于 endUs 的样本时结束，
+     * 范围之外解码出的帧不送入流水线。startUs/endUs 应为同步帧的时间，才能与完整解码的结果逐帧一致。
+     */
+    void setSegment(long startUs, long endUs) {
+        segmentStartUs = startUs;
+        segmentEndUs = endUs;
+    }
+
+    /**
+     * 设置播放使用的检测缓存，在下一次 startProcessing 时生效，为 null 时不使用缓存。
+     * 已完整分析过的视频不再推理；中途停止过的视频从上次停止的位置继续推理并补全缓存。
+     * 离线分析与分段分析不使用缓存。只有使用默认推理配置时才读写缓存：切换模型、自适应输入尺寸、切片、区域推理、
+     * 运动门控与级联推理都会绕过缓存；本次播放期间推理配置变化过或有丢帧时不写回缓存。
+     */
+    public void setDetectionCache(DetectionCache cache) {
+        detectionCache = cache;
+    }
+
+    /**
+     * @return 最近一次离线分析的结果，尚未完成过离线分析时返回 null。
+     */
+    public OfflineAnalysisResult getLastOfflineResult() {
+        return lastOfflineResult;
+    }
+
     /**
      * 开始处理指定的视频 URI。
      * 此方法会启动一个新的后台线程来解码和处理视频。
@@ -57,6 +255,8 @@ public class VideoProcessor {
             Toast.makeText(context, "错误: 原生处理器未就绪", Toast.LENGTH_SHORT).show();
             return;
         }
+        // 上一次处理停止时可能仍在排空流水线、写回检测缓存，等它结束后才能复用描述符与缓存会话
+        joinDecodeThread();
 
         try {
             // 在开始新的处理前，关闭任何之前打开的描述符
@@ -70,13 +270,22 @@ public class VideoProcessor {
         }
 
         isProcessingRunning = true;
-        decodeThread = new Thread(() -> runDecodingLoop(context.getApplicationContext()));
+        CountDownLatch done = new CountDownLatch(1);
+        processingDone = done;
+        decodeThread = new Thread(() -> {
+            try {
+                runDecodingLoop(context.getApplicationContext());
+            } finally {
+                done.countDown();
+            }
+        });
         decodeThread.setName("VideoDecodeThread");
         decodeThread.start();
     }
 
     /**
-     * 停止视频处理线程。
+     * 停止视频处理线程，最多等待 1 秒。启用检测缓存时线程要排空流水线并写回缓存，常常超过这个时间，
+     * 此时线程在后台继续收尾，下一次 {@link #startProcessing} 与 {@link #release()} 会等待它结束。
      */
     public void stopProcessing() {
         if (!isProcessingRunning) {
@@ -90,22 +299,264 @@ public class VideoProcessor {
                 decodeThread.join(1000); // 等待线程终止
                 if (decodeThread.isAlive()) {
                     Log.w(TAG, "解码线程在超时后仍未终止。");
+                } else {
+                    decodeThread = null;
                 }
             } catch (InterruptedException e) {
                 Log.w(TAG, "在等待解码线程结束时被中断。", e);
                 Thread.currentThread().interrupt();
             }
-            decodeThread = null;
         }
         Log.d(TAG, "视频处理已停止。");
     }
 
+    /**
+     * 选择解码引擎，在下一次 startProcessing 时生效。
+     */
+    public void setDecodeMode(DecodeMode mode) {
+        decodeMode = mode;
+    }
+
+    /**
+     * 选择帧的读取方式，在下一次 startProcessing 时生效。
+     * @param enabled true 时通过 getOutputImage 按平面读取，能处理 I420/NV21/行填充/crop；
+     *                false 时直接读取输出 ByteBuffer，只支持 NV12 和 I420。
+     */
+    public void setUseImagePlanes(boolean enabled) {
+        useImagePlanes = enabled;
+    }
+
+    /**
+     * 等待当前这次处理结束，包括离线分析结果与检测缓存的写出；没有在处理时立即返回。
+     * 结束后 {@link #getLastOfflineResult()} 等结果已经可用。
+     */
+    public void awaitCompletion() throws InterruptedException {
+        processingDone.await();
+    }
+
+    /**
+     * @return 视频是否仍在解码处理中。
+     */
+    public boolean isProcessing() {
+        return isProcessingRunning;
+    }
+
+    /**
+     * @return 最近一次解码结束时的统计，尚未完成过解码时返回 null。
+     */
+    public DecodeStats getLastDecodeStats() {
+        return lastDecodeStats;
+    }
+
+    /**
+     * 配置 解码 -> 推理 -> 渲染 流水线的队列容量和丢帧策略。
+     * 会排空当前流水线中的帧，只能在未处理视频时调用。
+     * @param inferenceQueueCapacity 解码与推理之间的队列容量。
+     * @param inferencePolicy 推理队列已满时的策略。
+     * @param renderQueueCapacity 推理与渲染之间的队列容量。
+     * @param renderPolicy 渲染队列已满时的策略。
+     */
+    public void configurePipeline(int inferenceQueueCapacity, DropPolicy inferencePolicy,
+                                  int renderQueueCapacity, DropPolicy renderPolicy) {
+        if (isProcessingRunning) {
+            Log.w(TAG, "处理正在运行，无法重新配置流水线。");
+            return;
+        }
+        if (nativePointer == 0L) {
+            Log.e(TAG, "无法配置流水线：原生处理器未初始化。");
+            return;
+        }
+        configurePipelineNative(nativePointer, inferenceQueueCapacity, inferencePolicy.ordinal(),
+                renderQueueCapacity, renderPolicy.ordinal());
+    }
+
+    /**
+     * 设置推理工作线程数。构造时指定的推理线程预算在工作线程之间平分，
+     * 每个工作线程拥有独立的 Extractor 与分配器并共享同一个模型，结果仍按时间戳顺序渲染。
+     * 1 个工作线程延迟最低，工作线程数等于线程预算(每个工作线程单线程推理)时吞吐量最高。
+     * 会排空当前流水线中的帧，只能在未处理视频时调用。
+     * @param workers 工作线程数，至少为 1。
+     */
+    public void configureInference(int workers) {
+        if (isProcessingRunning) {
+            Log.w(TAG, "处理正在运行，无法重新配置推理线程。");
+            return;
+        }
+        if (nativePointer == 0L) {
+            Log.e(TAG, "无法配置推理线程：原生处理器未初始化。");
+            return;
+        }
+        configureInferenceNative(nativePointer, workers);
+    }
+
+    /**
+     * 按推理耗时在多个输入尺寸之间自动切换：平均耗时持续超出预算时换到更小的尺寸，
+     * 按面积估算的耗时持续低于预算一定比例时换回更大的尺寸，切换带有迟滞，避免来回抖动。
+     * 每个工作线程为所有候选尺寸各保留一份缓冲，遇到新的帧分辨率时全部预热，切换时不会分配内存。
+     * 当前尺寸与切换次数见 {@link PipelineStats#inputSize} 与 {@link PipelineStats#resolutionSwitches}。
+     * 会排空当前流水线中的帧，只能在未处理视频时调用。
+     * @param targetSizes 候选输入尺寸，须为 32 的倍数；为 null 或空数组时恢复模型默认的固定尺寸。
+     * @param budgetMs 每帧推理耗时预算(毫秒)。
+     */
+    public void configureAdaptiveResolution(int[] targetSizes, float budgetMs) {
+        if (isProcessingRunning) {
+            Log.w(TAG, "处理正在运行，无法重新配置输入尺寸。");
+            return;
+        }
+        if (nativePointer == 0L) {
+            Log.e(TAG, "无法配置输入尺寸：原生处理器未初始化。");
+            return;
+        }
+        configureResolutionNative(nativePointer, targetSizes, budgetMs);
+    }
+
+    /**
+     * 运动门控：在 Y 平面上把每帧缩成 32x18 个网格单元的平均亮度，与上一次推理的帧比较，
+     * 变化的单元不多时跳过推理，沿用上一推理帧的检测结果，适合固定机位的画面。
+     * 跳过的帧数见 {@link PipelineStats#skippedFrames}。可以在处理过程中调用。
+     * 启用门控时不读写检测缓存，播放过程中启用时本次播放的结果也不写回缓存。
+     * @param lumaDelta 单元平均亮度变化超过该值(0~255)时视为变化，建议 8~16。
+     * @param changedFraction 变化单元占比超过该值(0~1)时推理，建议 0.005~0.02。
+     * @param maxStaleMs 距离上一次推理超过该时长(按帧时间戳)时无论画面是否变化都推理；小于等于 0 时关闭门控。
+     */
+    public void configureMotionGate(int lumaDelta, float changedFraction, int maxStaleMs) {
+        if (nativePointer == 0L) {
+            Log.e(TAG, "无法配置运动门控：原生处理器未初始化。");
+            return;
+        }
+        configureMotionGateNative(nativePointer, lumaDelta, changedFraction, maxStaleMs);
+    }
+
+    /**
+     * 切换检测模型，例如 "yolov8n" 与 "yolov8s"，对应 assets 中的 &lt;name&gt;.param 与 &lt;name&gt;.bin。
+     * 新模型在后台线程加载并预热，完成后在两帧之间整体替换，正在播放的视频不会因加载而停顿；
+     * 加载失败时继续使用当前模型。可以在处理过程中调用，结果通过 {@link #getModelName()} 查询。
+     * 检测缓存只记录默认模型的结果。
+     * @return 已有切换在进行、名称无效或原生处理器未初始化时返回 false。
+     */
+    public boolean switchModel(String modelName) {
+        if (nativePointer == 0L) {
+            Log.e(TAG, "无法切换模型：原生处理器未初始化。");
+            return false;
+        }
+        return switchModelNative(nativePointer, modelName);
+    }
+
+    /**
+     * @return 当前使用的模型名称，原生处理器未初始化时返回 null。
+     */
+    public String getModelName() {
+        return nativePointer != 0L ? getModelNameNative(nativePointer) : null;
+    }
+
+    /**
+     * @return 是否有模型正在后台加载，包括 {@link #switchModel} 切换的模型与 {@link #configureCascade} 的大模型。
+     */
+    public boolean isModelSwitchPending() {
+        return nativePointer != 0L && isModelLoadingNative(nativePointer);
+    }
+
+    /**
+     * 级联推理：每帧先用当前模型(yolov8n)推理，只有结果不可信时才用更大的模型(例如 "yolov8s")重新推理这一帧，
+     * 以接近小模型的帧率获得接近大模型的检测质量。小模型以 minConfidence 为阈值输出候选，
+     * 落在 [minConfidence, maxConfidence) 之间的检测达到 minUncertain 个，或距上一次升级已满 refreshInterval 帧时，
+     * 本帧改用大模型的结果，否则只保留小模型中达到默认阈值 0.4 的检测。
+     * 只作用于整帧推理，切片推理与只在区域上推理的帧不会升级。升级的帧数见 {@link PipelineStats#escalatedFrames}
+     * 与 {@link OfflineAnalysisResult#escalatedFrames}。
+     * 大模型与 {@link #switchModel} 共用后台加载线程，加载并预热完成后才生效，在此之前沿用原来的配置，
+     * 可以在主线程与处理过程中调用，加载进度通过 {@link #isModelSwitchPending()} 查询；加载失败时保持原来的配置。
+     * @param modelName 大模型名称，对应 assets 中的 &lt;name&gt;.param 与 &lt;name&gt;.bin；为 null 时关闭级联推理。
+     * @param minConfidence 小模型输出候选的阈值，范围 (0, 0.4]，建议 0.25。
+     * @param maxConfidence 低于该分数的检测视为不可信，须大于 minConfidence，建议 0.5~0.6。
+     * @param minUncertain 不可信的检测达到该数量时升级，小于等于 0 时只定期升级。
+     * @param refreshInterval 每隔该帧数无论结果如何都升级一次，小于等于 0 时不定期升级。
+     * @return 已有模型在加载、名称或参数无效或原生处理器未初始化时返回 false，此时保持原来的配置。
+     */
+    public boolean configureCascade(String modelName, float minConfidence, float maxConfidence,
+                                    int minUncertain, int refreshInterval) {
+        if (nativePointer == 0L) {
+            Log.e(TAG, "无法配置级联推理：原生处理器未初始化。");
+            return false;
+        }
+        if (!configureCascadeNative(nativePointer, modelName, minConfidence, maxConfidence, minUncertain, refreshInterval)) {
+            Log.w(TAG, "无法配置级联推理: " + modelName);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 切片推理：把高分辨率画面切成相互重叠、边长为 tileSize 的切片，各切片按原始分辨率推理，
+     * 适合 4K 航拍与监控画面中的小目标。切片在工作线程的推理线程预算内并发执行，
+     * 结果映射回原图后合并接缝处被截断的框，再做全局按类别的 NMS。
+     * 启用后不再使用区域推理与自适应输入尺寸，也不读写检测缓存。会排空当前流水线中的帧，只能在未处理视频时调用。
+     * @param tileSize 切片边长(原图像素)，同时是网络输入尺寸，须为 32 的倍数；小于等于 0 时关闭。
+     * @param overlap 相邻切片重叠部分占切片边长的比例，范围 [0, 1)，建议 0.2。
+     * @param fullFrameSize 大于 0 时额外以该输入尺寸做一次整帧推理，检出跨越多个切片的大目标，须为 32 的倍数。
+     */
+    public void configureTiledInference(int tileSize, float overlap, int fullFrameSize) {
+        if (isProcessingRunning) {
+            Log.w(TAG, "处理正在运行，无法重新配置切片推理。");
+            return;
+        }
+        if (nativePointer == 0L) {
+            Log.e(TAG, "无法配置切片推理：原生处理器未初始化。");
+            return;
+        }
+        configureTilingNative(nativePointer, tileSize, overlap, fullFrameSize);
+    }
+
+    /**
+     * 区域推理：目标少且小时，只在上一帧目标框附近的裁剪区域上以原始分辨率推理，
+     * 相交的区域合并，各区域的结果映射回原图后经 NMS 合并；每隔 fullPassInterval 帧仍整帧推理一次以发现新目标。
+     * 没有已知目标、区域数超过 maxRegions 或区域面积超过半帧时整帧推理。
+     * 只在区域上推理的帧数见 {@link PipelineStats#roiFrames}。可以在处理过程中调用。
+     * 启用区域推理时不读写检测缓存，播放过程中有帧只在区域上推理时本次播放的结果也不写回缓存。
+     * @param fullPassInterval 两次整帧推理之间最多间隔的帧数，小于等于 1 时关闭。
+     * @param margin 区域在目标框四周各扩展框宽高的比例，建议 0.25~0.5。
+     * @param maxRegions 每帧最多推理的区域数，至少为 1。
+     */
+    public void configureRoiInference(int fullPassInterval, float margin, int maxRegions) {
+        if (nativePointer == 0L) {
+            Log.e(TAG, "无法配置区域推理：原生处理器未初始化。");
+            return;
+        }
+        configureRoiNative(nativePointer, fullPassInterval, margin, maxRegions);
+    }
+
+    /**
+     * 获取流水线的帧计数、队列深度和丢帧数。
+     * @return 原生处理器未初始化时返回 null。
+     */
+    public PipelineStats getPipelineStats() {
+        if (nativePointer == 0L) {
+            return null;
+        }
+        long[] values = getPipelineStatsNative(nativePointer);
+        return values != null ? new PipelineStats(values) : null;
+    }
+
+    /**
+     * 绕过解码器，把一帧紧密排列的 NV12 数据直接送入原生流水线，供仪器测试构造确定的输入。
+     * @param nv12 direct ByteBuffer，容量至少为 width * height * 3 / 2。
+     */
+    @VisibleForTesting
+    void submitNv12Frame(ByteBuffer nv12, int width, int height, long timestampUs) {
+        if (nativePointer == 0L) {
+            return;
+        }
+        processFrameBufferNative(nativePointer, nv12, 0, nv12.capacity(), width, height, width, height,
+                MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420SemiPlanar, timestampUs);
+    }
+
     /**
      * 释放所有资源，包括停止线程和释放原生处理器。
      * 这个方法应该在不再需要此类实例时（例如在 surfaceDestroyed 中）调用。
      */
     public void release() {
         stopProcessing();
+        // 解码线程可能仍阻塞在原生的帧提交中或正在收尾，释放原生处理器之前必须等它结束
+        joinDecodeThread();
         closeFileDescriptor();
         if (nativePointer != 0L) {
             releaseNative(nativePointer);
@@ -114,6 +565,28 @@ public class VideoProcessor {
         }
     }
 
+    /**
+     * 等待解码线程结束，不设超时。线程会在处理完已提交的帧后退出。
+     */
+    private void joinDecodeThread() {
+        Thread thread = decodeThread;
+        if (thread == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        decodeThread = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void closeFileDescriptor() {
         if (currentVideoFileDescriptor != null) {
             try {
@@ -144,6 +617,9 @@ public class VideoProcessor {
                     videoTrackIndex = i;
                     format = trackFormat;
                     extractor.selectTrack(videoTrackIndex);
+                    if (segmentStartUs > 0) {
+                        extractor.seekTo(segmentStartUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                    }
                     codec = MediaCodec.createDecoderByType(mime);
                     break;
                 }
@@ -154,64 +630,28 @@ public class VideoProcessor {
                 return;
             }
 
-            int videoWidth = format.getInteger(MediaFormat.KEY_WIDTH);
-            int videoHeight = format.getInteger(MediaFormat.KEY_HEIGHT);
-
-            // 配置解码器，注意这里的 Surface 是 null，因为我们想手动获取解码后的数据
-            codec.configure(format, null, null, 0);
-            codec.start();
-
-            MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
-            boolean isInputEOS = false;
-            boolean isOutputEOS = false;
-
-            while (isProcessingRunning && !isOutputEOS && !Thread.currentThread().isInterrupted()) {
-                // 将数据送入解码器
-                if (!isInputEOS) {
-                    int inputBufferId = codec.dequeueInputBuffer(10000);
-                    if (inputBufferId >= 0) {
-                        ByteBuffer inputBuffer = codec.getInputBuffer(inputBufferId);
-                        int sampleSize = extractor.readSampleData(inputBuffer, 0);
-                        if (sampleSize < 0) {
-                            codec.queueInputBuffer(inputBufferId, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                            isInputEOS = true;
-                        } else {
-                            codec.queueInputBuffer(inputBufferId, 0, sampleSize, extractor.getSampleTime(), 0);
-                            extractor.advance();
-                        }
-                    }
-                }
-
-                // 从解码器获取数据
-                int outputBufferId = codec.dequeueOutputBuffer(bufferInfo, 10000);
-                if (outputBufferId >= 0) {
-                    ByteBuffer outputBuffer = codec.getOutputBuffer(outputBufferId);
-                    if (outputBuffer != null && bufferInfo.size > 0 && nativePointer != 0L) {
-                        byte[] frameData = new byte[bufferInfo.size];
-                        outputBuffer.get(frameData);
-
-                        // 将解码后的帧数据传递给原生代码进行处理和渲染
-                        processFrameNative(nativePointer, frameData, videoWidth, videoHeight,
-                                codec.getOutputFormat().getInteger(MediaFormat.KEY_COLOR_FORMAT),
-                                bufferInfo.presentationTimeUs);
-                    }
-                    // 释放 buffer 以便解码器可以重用它。
-                    // 注意：当使用 Surface 进行渲染时，第二个参数为 true。
-                    // 由于我们在这里不直接渲染到 MediaCodec 的 surface，而是将数据传递给 C++，
-                    // C++ 中的 ANativeWindow_lock 和 unlockAndPost 会处理渲染，
-                    // 因此这里 releaseOutputBuffer 的 render 参数应为 false。
-                    codec.releaseOutputBuffer(outputBufferId, false);
-
-                    if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                        isOutputEOS = true;
-                    }
-                } else if (outputBufferId == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                    Log.d(TAG, "解码器输出格式已更改: " + codec.getOutputFormat());
-                    // 如果需要，可以更新宽度/高度等信息
-                    videoWidth = codec.getOutputFormat().getInteger(MediaFormat.KEY_WIDTH);
-                    videoHeight = codec.getOutputFormat().getInteger(MediaFormat.KEY_HEIGHT);
-                }
+            updateOutputFormat(format);
+            lastSubmittedUs = Long.MIN_VALUE;
+            reachedEndOfStream = false;
+            lastQueuedSampleUs = Long.MIN_VALUE;
+            scanDurationUs = format.containsKey(MediaFormat.KEY_DURATION) ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+            if (detectionCache != null && offlineOutput == null
+                    && segmentStartUs == Long.MIN_VALUE && segmentEndUs == Long.MAX_VALUE) {
+                cacheSession = openCacheSession(detectionCache);
             }
+            if (useImagePlanes) {
+                // 请求 YUV420 Flexible 输出，保证 getOutputImage 可用
+                format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+            }
+
+            DecodeStats stats = decodeMode == DecodeMode.CALLBACK
+                    ? decodeWithCallback(extractor, codec, format)
+                    : decodeWithPolling(extractor, codec, format);
+            lastDecodeStats = stats;
+            Log.d(TAG, "解码统计: " + stats);
+        } catch (InterruptedException e) {
+            Log.d(TAG, "视频处理被中断。");
+            Thread.currentThread().interrupt();
         } catch (IOException e) {
             Log.e(TAG, "视频处理期间出现IO错误: ", e);
         } catch (IllegalStateException e) {
@@ -228,14 +668,380 @@ public class VideoProcessor {
             } catch (Exception e) {
                 Log.e(TAG, "释放编解码器/提取器资源时出错", e);
             }
-            Log.d(TAG, "视频处理线程结束。");
+            Log.d(TAG, "视频处理线程结束。流水线统计: " + getPipelineStats());
+            if (offlineOutput != null) {
+                finishOfflineAnalysis();
+            }
+            if (cacheSession != null) {
+                finishCacheSession();
+            }
             isProcessingRunning = false;
         }
     }
 
+    /**
+     * 轮询解码引擎：在当前线程中交替以 10ms 超时调用 dequeueInputBuffer / dequeueOutputBuffer。
+     */
+    private DecodeStats decodeWithPolling(MediaExtractor extractor, MediaCodec codec, MediaFormat format) {
+        DecodeStats stats = new DecodeStats("polling");
+        long cpuStart = SystemClock.currentThreadTimeMillis();
+        long wallStart = SystemClock.elapsedRealtime();
+
+        // 配置解码器，注意这里的 Surface 是 null，因为我们想手动获取解码后的数据
+        codec.configure(format, null, null, 0);
+        codec.start();
+
+        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+        boolean isInputEOS = false;
+        boolean isOutputEOS = false;
+
+        while (isProcessingRunning && !isOutputEOS && !Thread.currentThread().isInterrupted()) {
+            // 将数据送入解码器
+            if (!isInputEOS) {
+                int inputBufferId = codec.dequeueInputBuffer(10000);
+                stats.onWakeup();
+                if (inputBufferId >= 0) {
+                    isInputEOS = queueNextSample(extractor, codec, inputBufferId, stats);
+                }
+            }
+
+            // 从解码器获取数据
+            int outputBufferId = codec.dequeueOutputBuffer(bufferInfo, 10000);
+            stats.onWakeup();
+            if (outputBufferId >= 0) {
+                handleOutputBuffer(codec, outputBufferId, bufferInfo, stats);
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    isOutputEOS = true;
+                }
+            } else if (outputBufferId == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                MediaFormat outputFormat = codec.getOutputFormat();
+                Log.d(TAG, "解码器输出格式已更改: " + outputFormat);
+                updateOutputFormat(outputFormat);
+            }
+        }
+
+        stats.finish(SystemClock.currentThreadTimeMillis() - cpuStart, SystemClock.elapsedRealtime() - wallStart);
+        return stats;
+    }
+
+    /**
+     * 回调解码引擎：MediaCodec 在独立的 HandlerThread 上通知输入/输出缓冲区可用，
+     * 不再以固定超时轮询，当前线程只等待解码结束或被停止。
+     */
+    private DecodeStats decodeWithCallback(MediaExtractor extractor, MediaCodec codec, MediaFormat format)
+            throws InterruptedException {
+        DecodeStats stats = new DecodeStats("callback");
+        long wallStart = SystemClock.elapsedRealtime();
+        CountDownLatch finished = new CountDownLatch(1);
+
+        HandlerThread callbackThread = new HandlerThread("VideoCodecCallbackThread");
+        callbackThread.start();
+        Handler handler = new Handler(callbackThread.getLooper());
+
+        codec.setCallback(new MediaCodec.Callback() {
+            private boolean isInputEOS = false;
+
+            @Override
+            public void onInputBufferAvailable(@NonNull MediaCodec mc, int index) {
+                stats.onWakeup();
+                if (!isProcessingRunning || isInputEOS) {
+                    return;
+                }
+                try {
+                    isInputEOS = queueNextSample(extractor, mc, index, stats);
+                } catch (IllegalStateException e) {
+                    // 解码器已在其它线程中停止
+                    Log.w(TAG, "送入输入缓冲区失败: " + e.getMessage());
+                }
+            }
+
+            @Override
+            public void onOutputBufferAvailable(@NonNull MediaCodec mc, int index, @NonNull MediaCodec.BufferInfo info) {
+                stats.onWakeup();
+                try {
+                    handleOutputBuffer(mc, index, info, stats);
+                } catch (IllegalStateException e) {
+                    Log.w(TAG, "处理输出缓冲区失败: " + e.getMessage());
+                }
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0 || !isProcessingRunning) {
+                    finished.countDown();
+                }
+            }
+
+            @Override
+            public void onError(@NonNull MediaCodec mc, @NonNull MediaCodec.CodecException e) {
+                Log.e(TAG, "解码器回调报告错误: ", e);
+                finished.countDown();
+            }
+
+            @Override
+            public void onOutputFormatChanged(@NonNull MediaCodec mc, @NonNull MediaFormat outputFormat) {
+                stats.onWakeup();
+                Log.d(TAG, "解码器输出格式已更改: " + outputFormat);
+                updateOutputFormat(outputFormat);
+            }
+        }, handler);
+
+        // setCallback 必须在 configure 之前调用
+        codec.configure(format, null, null, 0);
+        codec.start();
+
+        final long[] callbackCpuMillis = new long[1];
+        try {
+            // stopProcessing 会中断当前线程
+            finished.await();
+        } finally {
+            codec.stop();
+            // 回调线程是本次解码新建的，其累计 CPU 时间即为回调引擎的开销
+            handler.post(() -> callbackCpuMillis[0] = SystemClock.currentThreadTimeMillis());
+            callbackThread.quitSafely();
+            callbackThread.join();
+        }
+
+        stats.finish(callbackCpuMillis[0], SystemClock.elapsedRealtime() - wallStart);
+        return stats;
+    }
+
+    /**
+     * 等待已提交的帧全部写出后关闭输出文件，记录端到端耗时。
+     */
+    private void finishOfflineAnalysis() {
+        File output = offlineOutput;
+        offlineOutput = null;
+        KeyframeScan.Builder scan = keyframeScan;
+        keyframeScan = null;
+        long[] values = nativePointer != 0L ? closeOutputNative(nativePointer) : null;
+        if (values == null) {
+            return;
+        }
+        long wallTimeMillis = SystemClock.elapsedRealtime() - offlineStartMillis;
+        lastOfflineResult = new OfflineAnalysisResult(output.getAbsolutePath(), values[0], values[1], values[2], wallTimeMillis);
+        Log.i(TAG, "离线分析完成: " + lastOfflineResult);
+        if (scan != null) {
+            try {
+                lastKeyframeScan = scan.build(output, scanDurationUs, wallTimeMillis);
+                Log.i(TAG, "关键帧扫描完成: " + lastKeyframeScan);
+                for (KeyframeScan.Shot shot : lastKeyframeScan.shots) {
+                    Log.d(TAG, "镜头 " + shot);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "无法汇总关键帧扫描结果: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 计算视频指纹并打开缓存条目，未完整命中时打开原生输出文件记录本次播放的检测结果。
+     * @return 无法使用缓存时返回 null，播放照常进行。
+     */
+    private DetectionCache.Session openCacheSession(DetectionCache cache) {
+        // 缓存只保存默认推理配置的结果，任何改变检测结果的推理模式(模型、输入尺寸、切片、区域、门控、级联)
+        // 都由原生层记录，这里不需要逐一列出
+        cacheConfigGeneration = getInferenceConfigNative(nativePointer);
+        if (cacheConfigGeneration < 0) {
+            Log.d(TAG, "启用了改变检测结果的推理模式，不使用检测缓存");
+            return null;
+        }
+        long start = SystemClock.elapsedRealtime();
+        DetectionCache.Session session = null;
+        try {
+            session = cache.open(currentVideoFileDescriptor, outputWidth, outputHeight);
+            File recording = session.getRecording();
+            if (recording != null && !openOutputNative(nativePointer, recording.getAbsolutePath())) {
+                throw new IOException("无法打开记录文件 " + recording);
+            }
+            Log.d(TAG, "检测缓存" + (session.isComplete() ? "完整命中"
+                    : session.getCoveredUs() == Long.MIN_VALUE ? "未命中" : "命中至 " + session.getCoveredUs() + "us")
+                    + "，指纹耗时 " + (SystemClock.elapsedRealtime() - start) + "ms");
+            return session;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "无法使用检测缓存: " + e.getMessage());
+            if (session != null) {
+                try {
+                    session.close();
+                } catch (IOException ignored) {
+                    // 已经放弃使用缓存
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 等待流水线写完记录后关闭输出文件，没有丢帧时把记录写回缓存。
+     * 在解码线程的收尾阶段调用，要排空队列与重排窗口中的帧；释放原生处理器前会等待这里完成。
+     */
+    private void finishCacheSession() {
+        DetectionCache.Session session = cacheSession;
+        cacheSession = null;
+        try {
+            if (session.getRecording() != null) {
+                PipelineStats stats = getPipelineStats();
+                long[] values = nativePointer != 0L ? closeOutputNative(nativePointer) : null;
+                // 每个提交的帧都写出了结果且都来自默认推理配置，记录才能代表这段视频
+                if (getInferenceConfigNative(nativePointer) != cacheConfigGeneration) {
+                    Log.w(TAG, "本次播放期间推理配置发生过变化，不写回检测缓存");
+                } else if (stats != null && values != null && values[0] == stats.decodedFrames) {
+                    File entry = session.commit(lastSubmittedUs, reachedEndOfStream);
+                    if (entry != null) {
+                        Log.d(TAG, "检测缓存已写回: " + entry.getName() + " (" + entry.length() + " 字节)");
+                    }
+                } else {
+                    Log.w(TAG, "本次播放有丢帧，不写回检测缓存: " + stats);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "写回检测缓存失败: " + e.getMessage());
+        } finally {
+            try {
+                session.close();
+            } catch (IOException e) {
+                Log.w(TAG, "关闭检测缓存失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 从提取器读取下一个样本送入解码器。
+     * @return 是否已送入输入流结束标志。
+     */
+    private boolean queueNextSample(MediaExtractor extractor, MediaCodec codec, int inputBufferId, DecodeStats stats) {
+        ByteBuffer inputBuffer = codec.getInputBuffer(inputBufferId);
+        int sampleSize = extractor.readSampleData(inputBuffer, 0);
+        long sampleTime = extractor.getSampleTime();
+        boolean keyframesOnly = keyframeScan != null;
+        // 到达分段的结束位置(下一段的同步帧)时同样按输入结束处理；
+        // 关键帧扫描时 seekTo 找不到更靠后的同步帧即为结束
+        if (sampleSize < 0 || sampleTime >= segmentEndUs || (keyframesOnly && sampleTime <= lastQueuedSampleUs)) {
+            codec.queueInputBuffer(inputBufferId, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            return true;
+        }
+        codec.queueInputBuffer(inputBufferId, 0, sampleSize, sampleTime, 0);
+        stats.onInputQueued(sampleTime, System.nanoTime());
+        lastQueuedSampleUs = sampleTime;
+        if (keyframesOnly) {
+            // 直接跳到下一个同步样本，中间的样本既不读取也不解码
+            extractor.seekTo(sampleTime + 1, MediaExtractor.SEEK_TO_NEXT_SYNC);
+        } else {
+            extractor.advance();
+        }
+        return false;
+    }
+
+    /**
+     * 将解码后的帧交给原生流水线并归还输出缓冲区，两种解码引擎共用。
+     */
+    private void handleOutputBuffer(MediaCodec codec, int outputBufferId, MediaCodec.BufferInfo bufferInfo, DecodeStats stats) {
+        long pts = bufferInfo.presentationTimeUs;
+        if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+            reachedEndOfStream = true;
+        }
+        if (bufferInfo.size > 0 && nativePointer != 0L && pts >= segmentStartUs && pts < segmentEndUs) {
+            stats.onOutputAvailable(bufferInfo.presentationTimeUs, System.nanoTime());
+            DetectionCache.Session session = cacheSession;
+            if (session != null) {
+                if (session.lookup(pts)) {
+                    setCachedDetectionsNative(nativePointer, pts, session.getCount(),
+                            session.getClassIds(), session.getProbs(), session.getRects());
+                }
+                lastSubmittedUs = pts;
+            }
+            KeyframeScan.Builder scan = keyframeScan;
+            Image image = useImagePlanes ? codec.getOutputImage(outputBufferId) : null;
+            if (image != null && image.getFormat() == ImageFormat.YUV_420_888) {
+                if (scan != null) {
+                    Image.Plane luma = image.getPlanes()[0];
+                    Rect crop = image.getCropRect();
+                    scan.addKeyframe(pts, KeyframeScan.lumaHistogram(luma.getBuffer(),
+                            crop.top * luma.getRowStride() + crop.left, luma.getRowStride(), crop.width(), crop.height()));
+                }
+                submitImage(image, bufferInfo.presentationTimeUs);
+            } else {
+                ByteBuffer outputBuffer = codec.getOutputBuffer(outputBufferId);
+                if (outputBuffer != null) {
+                    if (scan != null) {
+                        scan.addKeyframe(pts, KeyframeScan.lumaHistogram(outputBuffer, bufferInfo.offset,
+                                outputStride, outputWidth, outputHeight));
+                    }
+                    // 直接把解码器的 direct ByteBuffer 交给原生代码进行处理和渲染，不再拷贝到 byte[]
+                    processFrameBufferNative(nativePointer, outputBuffer, bufferInfo.offset, bufferInfo.size,
+                            outputWidth, outputHeight, outputStride, outputSliceHeight,
+                            outputColorFormat, bufferInfo.presentationTimeUs);
+                }
+            }
+            if (image != null) {
+                image.close();
+            }
+        }
+        // 释放 buffer 以便解码器可以重用它。
+        // 注意：当使用 Surface 进行渲染时，第二个参数为 true。
+        // 由于我们在这里不直接渲染到 MediaCodec 的 surface，而是将数据传递给 C++，
+        // C++ 中的 ANativeWindow_lock 和 unlockAndPost 会处理渲染，
+        // 因此这里 releaseOutputBuffer 的 render 参数应为 false。
+        codec.releaseOutputBuffer(outputBufferId, false);
+    }
+
+    /**
+     * 把 Image 的三个平面连同行跨度、像素跨度和 crop 区域交给原生代码，
+     * 由原生代码按实际布局(NV12/NV21/I420/带填充的三平面)选择转换方式。
+     */
+    private void submitImage(Image image, long presentationTimeUs) {
+        Image.Plane[] planes = image.getPlanes();
+        Rect crop = image.getCropRect();
+        processFrameImageNative(nativePointer,
+                planes[0].getBuffer(), planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[0].getRowStride(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                crop.left, crop.top, crop.width(), crop.height(), presentationTimeUs);
+    }
+
+    /**
+     * 从解码器输出格式中读取帧尺寸与内存布局，缺省时按紧密排列的 NV12 处理。
+     * ByteBuffer 路径只使用 crop 区域的尺寸，假定其左上角为原点；任意 crop 由 Image 路径处理。
+     */
+    private void updateOutputFormat(MediaFormat format) {
+        outputWidth = format.getInteger(MediaFormat.KEY_WIDTH);
+        outputHeight = format.getInteger(MediaFormat.KEY_HEIGHT);
+        if (format.containsKey(KEY_CROP_RIGHT) && format.containsKey(KEY_CROP_BOTTOM)) {
+            outputWidth = format.getInteger(KEY_CROP_RIGHT) - format.getInteger(KEY_CROP_LEFT, 0) + 1;
+            outputHeight = format.getInteger(KEY_CROP_BOTTOM) - format.getInteger(KEY_CROP_TOP, 0) + 1;
+        }
+        outputStride = format.containsKey(MediaFormat.KEY_STRIDE)
+                ? format.getInteger(MediaFormat.KEY_STRIDE) : outputWidth;
+        outputSliceHeight = format.containsKey(MediaFormat.KEY_SLICE_HEIGHT)
+                ? format.getInteger(MediaFormat.KEY_SLICE_HEIGHT) : outputHeight;
+        outputColorFormat = format.containsKey(MediaFormat.KEY_COLOR_FORMAT)
+                ? format.getInteger(MediaFormat.KEY_COLOR_FORMAT)
+                : MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420SemiPlanar;
+    }
+
     // --- JNI 方法 ---
     // 这些方法现在是 VideoProcessor 类的一部分
-    private native long initNative(Surface surface, AssetManager assetManager);
-    private native void processFrameNative(long nativePtr, byte[] frameData, int width, int height, int colorFormat, long timestamp);
+    private native long initNative(Surface surface, AssetManager assetManager, boolean useGpu, int inferenceThreads);
+    private native void processFrameBufferNative(long nativePtr, ByteBuffer frameBuffer, int offset, int size,
+                                                 int width, int height, int stride, int sliceHeight,
+                                                 int colorFormat, long timestamp);
+    private native void processFrameImageNative(long nativePtr, ByteBuffer yBuffer, ByteBuffer uBuffer, ByteBuffer vBuffer,
+                                                int yRowStride, int uvRowStride, int uvPixelStride,
+                                                int cropLeft, int cropTop, int cropWidth, int cropHeight,
+                                                long timestamp);
+    private native boolean attachSurfaceNative(long nativePtr, Surface surface);
+    private native void configurePipelineNative(long nativePtr, int inferenceCapacity, int inferencePolicy,
+                                                int renderCapacity, int renderPolicy);
+    private native void configureInferenceNative(long nativePtr, int workers);
+    private native boolean switchModelNative(long nativePtr, String modelName);
+    private native String getModelNameNative(long nativePtr);
+    private native boolean isModelLoadingNative(long nativePtr);
+    private native long getInferenceConfigNative(long nativePtr);
+    private native boolean configureCascadeNative(long nativePtr, String modelName, float minConfidence, float maxConfidence,
+                                                  int minUncertain, int refreshInterval);
+    private native void configureTilingNative(long nativePtr, int tileSize, float overlap, int fullFrameSize);
+    private native void configureRoiNative(long nativePtr, int fullPassInterval, float margin, int maxRegions);
+    private native void configureMotionGateNative(long nativePtr, int lumaDelta, float changedFraction, int maxStaleMs);
+    private native void configureResolutionNative(long nativePtr, int[] targetSizes, float budgetMs);
+    private native void setCachedDetectionsNative(long nativePtr, long timestamp, int count,
+                                                  int[] classIds, float[] probs, float[] rects);
+    private native boolean openOutputNative(long nativePtr, String path);
+    private native long[] closeOutputNative(long nativePtr);
+    private native long[] getPipelineStatsNative(long nativePtr);
     private native void releaseNative(long nativePtr);
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.example.yolov8;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DecodeStatsTest {
+    @Test
+    public void latencyIsMatchedByPresentationTime() {
+        DecodeStats stats = new DecodeStats("test");
+        stats.onInputQueued(0, 1_000_000);
+        stats.onInputQueued(66_000, 2_000_000);
+        stats.onInputQueued(33_000, 3_000_000);
+
+        // 解码器按显示顺序输出，与送入顺序不同
+        stats.onOutputAvailable(0, 5_000_000);
+        stats.onOutputAvailable(33_000, 6_000_000);
+        stats.onOutputAvailable(66_000, 8_000_000);
+
+        assertEquals(3, stats.getFrames());
+        assertEquals((4 + 3 + 6) / 3.0, stats.getAverageLatencyMillis(), 1e-9);
+        assertEquals(6.0, stats.getMaxLatencyMillis(), 1e-9);
+    }
+
+    @Test
+    public void wakeupsPerFrame() {
+        DecodeStats stats = new DecodeStats("test");
+        assertEquals(0.0, stats.getWakeupsPerFrame(), 0);
+        for (int i = 0; i < 6; i++) {
+            stats.onWakeup();
+        }
+        stats.onInputQueued(0, 0);
+        stats.onOutputAvailable(0, 0);
+        stats.onInputQueued(1, 0);
+        stats.onOutputAvailable(1, 0);
+        assertEquals(3.0, stats.getWakeupsPerFrame(), 1e-9);
+    }
+}
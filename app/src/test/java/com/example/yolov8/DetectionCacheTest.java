@@ -0,0 +1,147 @@
+package com.example.yolov8;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.*;
+
+public class DetectionCacheTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 模拟渲染线程写出的记录：第 f 帧(f * 40ms)在 f 为偶数时有一个类别 f % 80 的框
+    private static void record(File csv, int firstFrame, int frames) throws Exception {
+        try (FileWriter writer = new FileWriter(csv)) {
+            writer.write("timestamp_us,label,score,x,y,width,height\n");
+            for (int f = firstFrame; f < firstFrame + frames; f++) {
+                if (f % 2 == 0) {
+                    writer.write((f * 40_000L) + "," + (f % 80) + ",0.8000," + f + ".0,10.0,100.0,50.0\n");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resumesPartialEntryAndCompletes() throws Exception {
+        DetectionCache cache = new DetectionCache(folder.newFolder("cache"), 1 << 20, "model");
+
+        try (DetectionCache.Session session = cache.open("video", WIDTH, HEIGHT)) {
+            assertFalse(session.isComplete());
+            assertFalse(session.lookup(0));
+            // 播放到第 49 帧时停止
+            record(session.getRecording(), 0, 50);
+            session.commit(49 * 40_000L, false);
+        }
+
+        try (DetectionCache.Session session = cache.open("video", WIDTH, HEIGHT)) {
+            assertFalse(session.isComplete());
+            assertEquals(49 * 40_000L, session.getCoveredUs());
+            assertTrue(session.lookup(10 * 40_000L));
+            assertEquals(1, session.getCount());
+            assertEquals(10, session.getClassIds()[0]);
+            assertEquals(0.8f, session.getProbs()[0], 1e-4f);
+            assertEquals(10f, session.getRects()[0], 0.02f);
+            assertEquals(100f, session.getRects()[2], 0.02f);
+            // 覆盖范围内没有检测结果的帧
+            assertTrue(session.lookup(49 * 40_000L));
+            assertEquals(0, session.getCount());
+            assertFalse(session.lookup(50 * 40_000L));
+
+            // 前 50 帧使用缓存，之后推理到结尾，记录包含整段视频
+            record(session.getRecording(), 0, 100);
+            session.commit(99 * 40_000L, true);
+        }
+
+        try (DetectionCache.Session session = cache.open("video", WIDTH, HEIGHT)) {
+            assertTrue(session.isComplete());
+            assertNull(session.getRecording());
+            assertTrue(session.lookup(98 * 40_000L));
+            assertEquals(1, session.getCount());
+            assertEquals(18, session.getClassIds()[0]);
+        }
+        assertFalse(new File(folder.getRoot(), "cache/video.part.ydl").exists());
+    }
+
+    @Test
+    public void keepsLongerPartialEntry() throws Exception {
+        DetectionCache cache = new DetectionCache(folder.newFolder("cache"), 1 << 20, "model");
+        try (DetectionCache.Session session = cache.open("video", WIDTH, HEIGHT)) {
+            record(session.getRecording(), 0, 50);
+            session.commit(49 * 40_000L, false);
+        }
+        // 第二次播放在缓存覆盖范围内就停止了
+        try (DetectionCache.Session session = cache.open("video", WIDTH, HEIGHT)) {
+            record(session.getRecording(), 0, 10);
+            session.commit(9 * 40_000L, false);
+        }
+        try (DetectionCache.Session session = cache.open("video", WIDTH, HEIGHT)) {
+            assertEquals(49 * 40_000L, session.getCoveredUs());
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        File directory = folder.newFolder("cache");
+        DetectionCache cache = new DetectionCache(directory, 1 << 20, "model");
+        for (String key : new String[]{"a", "b", "c"}) {
+            try (DetectionCache.Session session = cache.open(key, WIDTH, HEIGHT)) {
+                record(session.getRecording(), 0, 100);
+                session.commit(99 * 40_000L, true);
+            }
+        }
+        long entryBytes = new File(directory, "a.ydl").length();
+        new File(directory, "a.ydl").setLastModified(1_000_000L);
+        new File(directory, "b.ydl").setLastModified(3_000_000L);
+        new File(directory, "c.ydl").setLastModified(2_000_000L);
+
+        // 上限只够两个条目，最久未使用的 a 被淘汰
+        new DetectionCache(directory, entryBytes * 2, "model").evict(null);
+        assertFalse(new File(directory, "a.ydl").exists());
+        assertTrue(new File(directory, "b.ydl").exists());
+        assertTrue(new File(directory, "c.ydl").exists());
+    }
+
+    @Test
+    public void fingerprintCoversSampledBytesAndLength() throws Exception {
+        File video = folder.newFile("video.mp4");
+        byte[] content = new byte[1 << 20];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        java.nio.file.Files.write(video.toPath(), content);
+
+        String original = sampledHash(video);
+        assertEquals(original, sampledHash(video));
+
+        try (RandomAccessFile file = new RandomAccessFile(video, "rw")) {
+            file.seek(content.length - 1);
+            file.write(0x55);
+        }
+        String changedTail = sampledHash(video);
+        assertNotEquals(original, changedTail);
+
+        try (RandomAccessFile file = new RandomAccessFile(video, "rw")) {
+            file.setLength(content.length + 1);
+        }
+        assertNotEquals(changedTail, sampledHash(video));
+    }
+
+    private static String sampledHash(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+            DetectionCache.digestSampledBytes(digest, channel);
+        }
+        return DetectionCache.hex(digest.digest());
+    }
+}
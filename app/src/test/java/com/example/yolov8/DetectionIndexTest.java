@@ -0,0 +1,123 @@
+package com.example.yolov8;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DetectionIndexTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 30fps 共 3000 帧，每帧 0~9 个随机类别与大小的框
+    private File writeRandomLog(Random random) throws Exception {
+        File file = folder.newFile("log.ydl");
+        DetectionLogHeader header = new DetectionLogHeader("yolov8n", 320, 192, 0.4f, 0.5f, WIDTH, HEIGHT);
+        try (DetectionLogWriter writer = new DetectionLogWriter(file, header)) {
+            int[] classIds = new int[10];
+            float[] probs = new float[10];
+            float[] rects = new float[40];
+            for (int f = 0; f < 3000; f++) {
+                int count = random.nextInt(10);
+                for (int i = 0; i < count; i++) {
+                    classIds[i] = random.nextInt(5);
+                    probs[i] = 0.5f;
+                    float w = 10 + random.nextFloat() * 400;
+                    float h = 10 + random.nextFloat() * 300;
+                    rects[i * 4] = random.nextFloat() * (WIDTH - w);
+                    rects[i * 4 + 1] = random.nextFloat() * (HEIGHT - h);
+                    rects[i * 4 + 2] = w;
+                    rects[i * 4 + 3] = h;
+                }
+                writer.append(f * 33_333L, count, classIds, probs, rects);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void matchesFullScan() throws Exception {
+        Random random = new Random(7);
+        File file = writeRandomLog(random);
+
+        try (DetectionLogReader reader = new DetectionLogReader(file)) {
+            DetectionIndex index = DetectionIndex.build(reader, 2_000_000L);
+            DetectionIndex.Result result = new DetectionIndex.Result();
+            for (int q = 0; q < 200; q++) {
+                int classId = random.nextInt(6);
+                long start = (long) (random.nextFloat() * 110_000_000L) - 5_000_000L;
+                long end = start + (long) (random.nextFloat() * 30_000_000L);
+                float left = random.nextFloat();
+                float top = random.nextFloat();
+                float right = left + random.nextFloat() * (1 - left);
+                float bottom = top + random.nextFloat() * (1 - top);
+
+                index.query(classId, start, end, left, top, right, bottom, result);
+                List<long[]> expected = scan(reader, classId, start, end, left, top, right, bottom);
+
+                assertEquals(expected.size(), result.getCount());
+                for (int i = 0; i < result.getCount(); i++) {
+                    assertEquals(expected.get(i)[0], result.getTimestampUs(i));
+                    assertEquals(Float.intBitsToFloat((int) expected.get(i)[1]), result.getLeft(i), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void leftThirdBetweenTimes() throws Exception {
+        File file = folder.newFile("log.ydl");
+        DetectionLogHeader header = new DetectionLogHeader("yolov8n", 320, 192, 0.4f, 0.5f, WIDTH, HEIGHT);
+        try (DetectionLogWriter writer = new DetectionLogWriter(file, header)) {
+            // 类别 2 的框在第 0~99 帧位于左侧，之后位于右侧
+            for (int f = 0; f < 200; f++) {
+                float x = f < 100 ? 50 : 1000;
+                writer.append(f * 1_000_000L, 1, new int[]{2}, new float[]{0.9f}, new float[]{x, 100, 100, 100});
+            }
+        }
+
+        try (DetectionLogReader reader = new DetectionLogReader(file)) {
+            DetectionIndex index = DetectionIndex.build(reader, 10_000_000L);
+            DetectionIndex.Result result = new DetectionIndex.Result();
+
+            index.query(2, 10_000_000L, 120_000_000L, 0f, 0f, 1f / 3, 1f, result);
+            assertEquals(90, result.getCount());
+            assertEquals(90, result.countFrames());
+            assertEquals(10_000_000L, result.getTimestampUs(0));
+            assertEquals(99_000_000L, result.getTimestampUs(89));
+
+            assertEquals(0, index.query(0, 0, Long.MAX_VALUE, 0f, 0f, 1f, 1f, result));
+            assertEquals(0, index.query(2, 300_000_000L, 400_000_000L, 0f, 0f, 1f, 1f, result));
+        }
+    }
+
+    private static List<long[]> scan(DetectionLogReader reader, int classId, long start, long end,
+                                     float left, float top, float right, float bottom) {
+        List<long[]> matches = new ArrayList<>();
+        DetectionLogReader.Frame frame = new DetectionLogReader.Frame();
+        while (reader.next(frame)) {
+            long t = frame.getTimestampUs();
+            for (int i = 0; i < frame.getCount(); i++) {
+                float l = frame.getLeft(i) / WIDTH;
+                float r = frame.getRight(i) / WIDTH;
+                float tp = frame.getTop(i) / HEIGHT;
+                float b = frame.getBottom(i) / HEIGHT;
+                if (frame.getClassId(i) == classId && t >= start && t < end
+                        && l < right && r > left && tp < bottom && b > top) {
+                    matches.add(new long[]{t, Float.floatToIntBits(l)});
+                }
+            }
+        }
+        return matches;
+    }
+}
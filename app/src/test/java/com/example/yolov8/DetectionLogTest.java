@@ -0,0 +1,136 @@
+package com.example.yolov8;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import static org.junit.Assert.*;
+
+public class DetectionLogTest {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static DetectionLogHeader header() {
+        return new DetectionLogHeader("yolov8n", 320, 192, 0.4f, 0.5f, WIDTH, HEIGHT);
+    }
+
+    // 第 f 帧有 f % 5 个检测结果，跨越多个块
+    private static File writeFrames(File file, int frames) throws Exception {
+        try (DetectionLogWriter writer = new DetectionLogWriter(file, header())) {
+            for (int f = 0; f < frames; f++) {
+                int count = f % 5;
+                int[] classIds = new int[count];
+                float[] probs = new float[count];
+                float[] rects = new float[count * 4];
+                for (int i = 0; i < count; i++) {
+                    classIds[i] = (f + i) % 80;
+                    probs[i] = 0.4f + i * 0.1f;
+                    rects[i * 4] = f % WIDTH;
+                    rects[i * 4 + 1] = i * 100;
+                    rects[i * 4 + 2] = 50;
+                    rects[i * 4 + 3] = 80;
+                }
+                writer.append(f * 33_333L, count, classIds, probs, rects);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void roundTripsHeaderAndDetections() throws Exception {
+        File file = writeFrames(folder.newFile("log.ydl"), 600);
+
+        try (DetectionLogReader reader = new DetectionLogReader(file)) {
+            DetectionLogHeader header = reader.getHeader();
+            assertEquals("yolov8n", header.modelName);
+            assertEquals(320, header.inputWidth);
+            assertEquals(192, header.inputHeight);
+            assertEquals(0.4f, header.probThreshold, 0);
+            assertEquals(0.5f, header.nmsThreshold, 0);
+            assertEquals(600, reader.getFrameCount());
+
+            DetectionLogReader.Frame frame = new DetectionLogReader.Frame();
+            int frames = 0;
+            while (reader.next(frame)) {
+                int f = frames++;
+                assertEquals(f, frame.getIndex());
+                assertEquals(f * 33_333L, frame.getTimestampUs());
+                assertEquals(f % 5, frame.getCount());
+                for (int i = 0; i < frame.getCount(); i++) {
+                    assertEquals((f + i) % 80, frame.getClassId(i));
+                    assertEquals(0.4f + i * 0.1f, frame.getScore(i), 1e-4f);
+                    // 16 位量化，1920 像素宽时误差不超过 0.02 像素
+                    assertEquals(f % WIDTH, frame.getLeft(i), 0.02f);
+                    assertEquals(i * 100, frame.getTop(i), 0.02f);
+                    assertEquals(f % WIDTH + 50, frame.getRight(i), 0.02f);
+                    assertEquals(i * 100 + 80, frame.getBottom(i), 0.02f);
+                }
+            }
+            assertEquals(600, frames);
+        }
+    }
+
+    @Test
+    public void findsFramesByTimestamp() throws Exception {
+        File file = writeFrames(folder.newFile("log.ydl"), 600);
+
+        try (DetectionLogReader reader = new DetectionLogReader(file)) {
+            assertEquals(0, reader.indexOf(Long.MIN_VALUE));
+            assertEquals(300, reader.indexOf(300 * 33_333L));
+            assertEquals(301, reader.indexOf(300 * 33_333L + 1));
+            assertEquals(600, reader.indexOf(Long.MAX_VALUE));
+
+            DetectionLogReader.Frame frame = new DetectionLogReader.Frame();
+            reader.seek(517, frame);
+            assertEquals(517 * 33_333L, frame.getTimestampUs());
+            assertEquals(517 % 5, frame.getCount());
+        }
+    }
+
+    @Test
+    public void importsOfflineCsv() throws Exception {
+        File csv = folder.newFile("detections.csv");
+        try (FileWriter writer = new FileWriter(csv)) {
+            writer.write("timestamp_us,label,score,x,y,width,height\n");
+            writer.write("0,0,0.9000,10.0,20.0,30.0,40.0\n");
+            writer.write("0,2,0.5000,100.0,200.0,30.0,40.0\n");
+            writer.write("66666,1,0.7000,5.0,6.0,7.0,8.0\n");
+        }
+        File file = folder.newFile("log.ydl");
+        try (DetectionLogWriter writer = new DetectionLogWriter(file, header())) {
+            writer.appendCsv(csv);
+        }
+
+        try (DetectionLogReader reader = new DetectionLogReader(file)) {
+            assertEquals(2, reader.getFrameCount());
+            DetectionLogReader.Frame frame = new DetectionLogReader.Frame();
+            reader.seek(0, frame);
+            assertEquals(2, frame.getCount());
+            assertEquals(2, frame.getClassId(1));
+            assertEquals(130.0f, frame.getRight(1), 0.02f);
+            reader.seek(1, frame);
+            assertEquals(66666L, frame.getTimestampUs());
+            assertEquals(1, frame.getCount());
+            assertEquals(0.7f, frame.getScore(0), 1e-4f);
+        }
+    }
+
+    @Test
+    public void emptyLogHasNoFrames() throws Exception {
+        File file = folder.newFile("log.ydl");
+        new DetectionLogWriter(file, header()).close();
+
+        try (DetectionLogReader reader = new DetectionLogReader(file)) {
+            assertEquals(0, reader.getFrameCount());
+            assertEquals(0, reader.indexOf(0));
+            assertFalse(reader.next(new DetectionLogReader.Frame()));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.yolov8;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class KeyframeScanTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 带行填充的亮度平面，可见区域内全部为 value
+    private static ByteBuffer plane(int value, int offset, int stride, int width, int height) {
+        ByteBuffer y = ByteBuffer.allocateDirect(offset + stride * height);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                y.put(offset + row * stride + col, (byte) value);
+            }
+        }
+        return y;
+    }
+
+    @Test
+    public void histogramIgnoresPaddingAndCrop() {
+        float[] dark = KeyframeScan.lumaHistogram(plane(10, 64, 128, 96, 48), 64, 128, 96, 48);
+        assertEquals(1f, dark[10 * KeyframeScan.HISTOGRAM_BINS / 256], 1e-6f);
+
+        float[] bright = KeyframeScan.lumaHistogram(plane(240, 0, 96, 96, 48), 0, 96, 96, 48);
+        assertEquals(1f, KeyframeScan.histogramDistance(dark, bright), 1e-6f);
+        assertEquals(0f, KeyframeScan.histogramDistance(dark, dark), 0);
+    }
+
+    @Test
+    public void splitsShotsAtHistogramCuts() throws Exception {
+        float[] dark = KeyframeScan.lumaHistogram(plane(20, 0, 64, 64, 64), 0, 64, 64, 64);
+        float[] bright = KeyframeScan.lumaHistogram(plane(200, 0, 64, 64, 64), 0, 64, 64, 64);
+
+        // 关键帧每 2 秒一个，前三个暗、后两个亮
+        KeyframeScan.Builder builder = new KeyframeScan.Builder();
+        for (int k = 0; k < 5; k++) {
+            builder.addKeyframe(k * 2_000_000L, k < 3 ? dark : bright);
+        }
+        File csv = folder.newFile("scan.csv");
+        try (FileWriter writer = new FileWriter(csv)) {
+            writer.write("timestamp_us,label,score,x,y,width,height\n");
+            writer.write("0,0,0.9,1,1,10,10\n");
+            writer.write("0,0,0.8,20,1,10,10\n");
+            writer.write("2000000,2,0.7,1,1,10,10\n");
+            writer.write("4000000,0,0.9,1,1,10,10\n");
+            writer.write("8000000,15,0.6,1,1,10,10\n");
+        }
+
+        KeyframeScan scan = builder.build(csv, 9_500_000L, 100);
+        assertEquals(5, scan.keyframes);
+        assertEquals(2, scan.shots.size());
+
+        KeyframeScan.Shot first = scan.shots.get(0);
+        assertEquals(0, first.startUs);
+        assertEquals(6_000_000L, first.endUs);
+        assertEquals(3, first.keyframes);
+        assertEquals(2, first.getClassCount());
+        assertEquals(0, first.getClassId(0));
+        assertEquals(2, first.getClassKeyframes(0));
+        assertEquals(2, first.getClassMaxCount(0));
+        assertEquals(2, first.getClassId(1));
+        assertEquals(1, first.getClassKeyframes(1));
+
+        KeyframeScan.Shot second = scan.shots.get(1);
+        assertEquals(6_000_000L, second.startUs);
+        assertEquals(9_500_000L, second.endUs);
+        assertEquals(2, second.keyframes);
+        assertEquals(1, second.getClassCount());
+        assertEquals(15, second.getClassId(0));
+    }
+
+    @Test
+    public void emptyScanHasNoShots() throws Exception {
+        File csv = folder.newFile("scan.csv");
+        try (FileWriter writer = new FileWriter(csv)) {
+            writer.write("timestamp_us,label,score,x,y,width,height\n");
+        }
+        KeyframeScan scan = new KeyframeScan.Builder().build(csv, 0, 0);
+        assertEquals(0, scan.keyframes);
+        assertTrue(scan.shots.isEmpty());
+        assertEquals(0.0, scan.getKeyframesPerSecond(), 0);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.yolov8;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OfflineAnalysisResultTest {
+    @Test
+    public void framesPerSecondUsesWallTime() {
+        OfflineAnalysisResult result = new OfflineAnalysisResult("out.csv", 300, 1200, 0, 2500);
+        assertEquals(120.0, result.getFramesPerSecond(), 1e-9);
+    }
+
+    @Test
+    public void escalationRateIsFractionOfFrames() {
+        OfflineAnalysisResult result = new OfflineAnalysisResult("out.csv", 300, 1200, 45, 2500);
+        assertEquals(0.15, result.getEscalationRate(), 1e-9);
+        assertTrue(result.toString().contains("escalated=45"));
+    }
+
+    @Test
+    public void emptyRunHasZeroFps() {
+        OfflineAnalysisResult result = new OfflineAnalysisResult("out.csv", 0, 0, 0, 0);
+        assertEquals(0.0, result.getFramesPerSecond(), 0);
+        assertEquals(0.0, result.getEscalationRate(), 0);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.yolov8;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SegmentedAnalyzerTest {
+    @Test
+    public void splitsAtSyncSamplesClosestToEvenShares() {
+        // 每 30 个样本一个同步帧，共 300 个样本，30fps
+        long[] times = new long[10];
+        int[] indices = new int[10];
+        for (int i = 0; i < 10; i++) {
+            indices[i] = i * 30;
+            times[i] = i * 1_000_000L;
+        }
+
+        List<SegmentedAnalyzer.Segment> plan = SegmentedAnalyzer.split(times, indices, 300, 4);
+
+        assertEquals(4, plan.size());
+        assertEquals(Long.MIN_VALUE, plan.get(0).startUs);
+        assertEquals(2_000_000L, plan.get(0).endUs);
+        assertEquals(2_000_000L, plan.get(1).startUs);
+        assertEquals(5_000_000L, plan.get(1).endUs);
+        assertEquals(5_000_000L, plan.get(2).startUs);
+        assertEquals(7_000_000L, plan.get(2).endUs);
+        assertEquals(7_000_000L, plan.get(3).startUs);
+        assertEquals(Long.MAX_VALUE, plan.get(3).endUs);
+    }
+
+    @Test
+    public void fewerSegmentsWhenSyncSamplesRunOut() {
+        long[] times = {0, 4_000_000L};
+        int[] indices = {0, 120};
+
+        List<SegmentedAnalyzer.Segment> plan = SegmentedAnalyzer.split(times, indices, 240, 4);
+
+        assertEquals(2, plan.size());
+        assertEquals(4_000_000L, plan.get(0).endUs);
+        assertEquals(4_000_000L, plan.get(1).startUs);
+    }
+
+    @Test
+    public void singleSegmentCoversWholeVideo() {
+        List<SegmentedAnalyzer.Segment> plan = SegmentedAnalyzer.split(new long[]{0}, new int[]{0}, 100, 1);
+
+        assertEquals(1, plan.size());
+        assertEquals(Long.MIN_VALUE, plan.get(0).startUs);
+        assertEquals(Long.MAX_VALUE, plan.get(0).endUs);
+    }
+}